@@ -0,0 +1,132 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto;
+
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.toshi.crypto.keyStore.KeyStoreHandler;
+import com.toshi.crypto.util.HashUtil;
+import com.toshi.exception.KeyStoreException;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import org.spongycastle.util.encoders.DecoderException;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.Arrays;
+
+// Keeps the keys derived from the master seed, encrypted with the keystore,
+// so a warm start can skip building the bitcoinj wallet and stretching the seed.
+// The keys are stored with a fingerprint of the stored master seed they were derived from,
+// and are only restored while that same seed is stored.
+/* package */ class DerivedKeyCache {
+
+    private static final String DERIVED_KEYS = "dk";
+    private static final String SEPARATOR = ":";
+
+    /* package */ static class Keys {
+        /* package */ final ECKey identityKey;
+        /* package */ final ECKey paymentKey;
+
+        /* package */ Keys(final ECKey identityKey, final ECKey paymentKey) {
+            this.identityKey = identityKey;
+            this.paymentKey = paymentKey;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final String alias;
+
+    /* package */ DerivedKeyCache(final SharedPreferences prefs, final String alias) {
+        this.prefs = prefs;
+        this.alias = alias;
+    }
+
+    // storedSeed is the encrypted master seed as it is stored
+    /* package */ @Nullable Keys read(final String storedSeed) {
+        final String encryptedKeys = this.prefs.getString(DERIVED_KEYS, null);
+        if (encryptedKeys == null) return null;
+        try {
+            final KeyStoreHandler keyStoreHandler = new KeyStoreHandler(BaseApplication.get(), this.alias);
+            final Keys keys = decode(keyStoreHandler.decrypt(encryptedKeys, this::save), fingerprint(storedSeed));
+            if (keys == null) clear();
+            return keys;
+        } catch (final KeyStoreException e) {
+            LogUtil.exception(getClass(), "Unable to read derived keys", e);
+            return null;
+        }
+    }
+
+    /* package */ void write(final String storedSeed, final ECKey identityKey, final ECKey paymentKey) {
+        try {
+            final KeyStoreHandler keyStoreHandler = new KeyStoreHandler(BaseApplication.get(), this.alias);
+            save(keyStoreHandler.encrypt(encode(fingerprint(storedSeed), identityKey, paymentKey)));
+        } catch (final KeyStoreException e) {
+            // The cache is only an optimisation; the next start derives the keys again.
+            // Keys cached for an earlier wallet must not be left behind.
+            LogUtil.exception(getClass(), "Unable to store derived keys", e);
+            clear();
+        }
+    }
+
+    /* package */ void clear() {
+        this.prefs.edit()
+                .remove(DERIVED_KEYS)
+                .apply();
+    }
+
+    private void save(final String encryptedKeys) {
+        this.prefs.edit()
+                .putString(DERIVED_KEYS, encryptedKeys)
+                .apply();
+    }
+
+    /* package */ static String fingerprint(final String storedSeed) {
+        return Hex.toHexString(HashUtil.sha3(storedSeed.getBytes()));
+    }
+
+    /* package */ static String encode(final String seedFingerprint, final ECKey identityKey, final ECKey paymentKey) {
+        return seedFingerprint
+                + SEPARATOR + Hex.toHexString(identityKey.getPrivKeyBytes())
+                + SEPARATOR + Hex.toHexString(identityKey.getAddress())
+                + SEPARATOR + Hex.toHexString(paymentKey.getPrivKeyBytes())
+                + SEPARATOR + Hex.toHexString(paymentKey.getAddress());
+    }
+
+    // Returns null if the data is malformed, was derived from another seed,
+    // or a key no longer matches its stored address
+    /* package */ static @Nullable Keys decode(final String data, final String seedFingerprint) {
+        if (data == null) return null;
+        final String[] parts = data.split(SEPARATOR);
+        if (parts.length != 5 || !parts[0].equals(seedFingerprint)) return null;
+        try {
+            final ECKey identityKey = restoreKey(parts[1], parts[2]);
+            final ECKey paymentKey = restoreKey(parts[3], parts[4]);
+            if (identityKey == null || paymentKey == null) return null;
+            return new Keys(identityKey, paymentKey);
+        } catch (final DecoderException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static @Nullable ECKey restoreKey(final String privateKey, final String address) {
+        final ECKey key = ECKey.fromPrivate(Hex.decode(privateKey));
+        return Arrays.equals(key.getAddress(), Hex.decode(address)) ? key : null;
+    }
+}
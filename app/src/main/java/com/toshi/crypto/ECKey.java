@@ -54,7 +54,9 @@ import org.spongycastle.jce.spec.ECPrivateKeySpec;
 import org.spongycastle.jce.spec.ECPublicKeySpec;
 import org.spongycastle.math.ec.ECAlgorithms;
 import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECMultiplier;
 import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
 import org.spongycastle.util.BigIntegers;
 import org.spongycastle.util.encoders.Base64;
 import org.spongycastle.util.encoders.Hex;
@@ -124,6 +126,7 @@ public class ECKey implements Serializable {
     // Transient because it's calculated on demand.
     transient private byte[] pubKeyHash;
     transient private byte[] nodeId;
+    transient private ECPrivateKeyParameters privKeyParams;
 
     /**
      * Generates an entirely new keypair.
@@ -691,8 +694,7 @@ public class ECKey implements Serializable {
             throw new MissingPrivateKeyException();
         if (privKey instanceof BCECPrivateKey) {
             ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
-            ECPrivateKeyParameters privKeyParams = new ECPrivateKeyParameters(((BCECPrivateKey) privKey).getD(), CURVE);
-            signer.init(true, privKeyParams);
+            signer.init(true, getPrivKeyParams());
             BigInteger[] components = signer.generateSignature(input);
             return new ECDSASignature(components[0], components[1]).toCanonicalised();
         } else {
@@ -717,6 +719,10 @@ public class ECKey implements Serializable {
      * @throws IllegalStateException if this ECKey does not have the private part.
      */
     public ECDSASignature sign(byte[] messageHash) {
+        if (privKey instanceof BCECPrivateKey) {
+            return doSignRecoverable(messageHash);
+        }
+
         ECDSASignature sig = doSign(messageHash);
         // Now we have to work backwards to figure out the recId needed to recover the signature.
         int recId = -1;
@@ -735,6 +741,66 @@ public class ECKey implements Serializable {
     }
 
 
+    /**
+     * Deterministic (RFC 6979) ECDSA signing, producing the same R and S as {@link #doSign(byte[])}.
+     * The recovery id is taken from the R point while signing: bit 0 is the parity of R's y coordinate
+     * and bit 1 is set if R's x coordinate overflowed the curve order. Canonicalising S negates R,
+     * which flips the parity bit.
+     *
+     * @param messageHash 32-byte hash to sign
+     * @return signature with R, S and V set
+     */
+    private ECDSASignature doSignRecoverable(byte[] messageHash) {
+        if (messageHash.length != 32) {
+            throw new IllegalArgumentException("Expected 32 byte input to ECDSA signature, not " + messageHash.length);
+        }
+
+        final BigInteger n = CURVE.getN();
+        final BigInteger d = getPrivKeyParams().getD();
+        final BigInteger e = new BigInteger(1, messageHash);
+        final HMacDSAKCalculator kCalculator = new HMacDSAKCalculator(new SHA256Digest());
+        kCalculator.init(n, d, messageHash);
+        final ECMultiplier basePointMultiplier = new FixedPointCombMultiplier();
+
+        while (true) {
+            final BigInteger k = kCalculator.nextK();
+            final ECPoint point = basePointMultiplier.multiply(CURVE.getG(), k).normalize();
+            final BigInteger x = point.getAffineXCoord().toBigInteger();
+            final BigInteger r = x.mod(n);
+            if (r.signum() == 0) continue;
+
+            BigInteger s = k.modInverse(n).multiply(e.add(d.multiply(r))).mod(n);
+            if (s.signum() == 0) continue;
+
+            int recId = (point.getAffineYCoord().testBitZero() ? 1 : 0) | (x.compareTo(n) >= 0 ? 2 : 0);
+            if (s.compareTo(HALF_CURVE_ORDER) > 0) {
+                s = n.subtract(s);
+                recId ^= 1;
+            }
+
+            final ECDSASignature sig = new ECDSASignature(r, s);
+            sig.v = (byte) (recId + 27);
+            return sig;
+        }
+    }
+
+    /**
+     * Builds the fixed-base multiplication table for the curve generator up front.
+     * The table is cached on the generator and shared by every key, so signing
+     * after this call doesn't pay for the precomputation.
+     */
+    public static void precomputeBaseTable() {
+        new FixedPointCombMultiplier().multiply(CURVE.getG(), BigInteger.ONE);
+    }
+
+    private ECPrivateKeyParameters getPrivKeyParams() {
+        if (privKeyParams == null) {
+            privKeyParams = new ECPrivateKeyParameters(((BCECPrivateKey) privKey).getD(), CURVE);
+        }
+        return privKeyParams;
+    }
+
+
     /**
      * Given a piece of text and a message signature encoded in base64, returns an ECKey
      * containing the public key that was used to sign it. This can then be compared to the expected public key to
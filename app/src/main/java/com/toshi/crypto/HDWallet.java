@@ -39,8 +39,11 @@ import org.bitcoinj.wallet.UnreadableWalletException;
 import org.bitcoinj.wallet.Wallet;
 
 import java.io.IOException;
+import java.util.List;
 
+import rx.Observable;
 import rx.Single;
+import rx.schedulers.Schedulers;
 
 import static com.toshi.crypto.util.HashUtil.sha3;
 
@@ -50,34 +53,61 @@ public class HDWallet {
     private static final String MASTER_SEED = "ms";
 
     private SharedPreferences prefs;
+    private DerivedKeyCache keyCache;
     private ECKey identityKey;
     private ECKey paymentKey;
     private String masterSeed;
 
     public HDWallet() {
         this.prefs = BaseApplication.get().getSharedPreferences(FileNames.WALLET_PREFS, Context.MODE_PRIVATE);
+        this.keyCache = new DerivedKeyCache(this.prefs, ALIAS);
     }
 
     public HDWallet(@NonNull final SharedPreferences preferences) {
         this.prefs = preferences;
+        this.keyCache = new DerivedKeyCache(this.prefs, ALIAS);
     }
 
     public Single<HDWallet> getExistingWallet() {
         return Single.fromCallable(() -> {
+            final long start = System.nanoTime();
+            if (restoreKeysFromCache()) {
+                logStartupTime("Wallet restored from key cache", start);
+                return this;
+            }
+
             this.masterSeed = readMasterSeedFromStorage();
             if (this.masterSeed == null) throw new InvalidMasterSeedException(new Throwable("Master seed is null"));
             final Wallet wallet = initFromMasterSeed(this.masterSeed);
             deriveKeysFromWallet(wallet);
+            logStartupTime("Wallet derived from master seed", start);
 
             return this;
         });
     }
 
+    private boolean restoreKeysFromCache() {
+        // Without a master seed the cached keys belong to a wallet that no longer exists
+        if (!this.prefs.contains(MASTER_SEED)) return false;
+        final DerivedKeyCache.Keys keys = this.keyCache.read(this.prefs.getString(MASTER_SEED, null));
+        if (keys == null) return false;
+        this.identityKey = keys.identityKey;
+        this.paymentKey = keys.paymentKey;
+        ECKey.precomputeBaseTable();
+        return true;
+    }
+
+    private void logStartupTime(final String message, final long start) {
+        final long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        LogUtil.d(getClass(), message + " in " + elapsedMs + "ms");
+    }
+
     // WARNING: This will delete any wallet stored on disk
     public Single<HDWallet> createWallet() {
         return Single.fromCallable(() -> {
             final Wallet wallet = generateNewWallet();
             deriveKeysFromWallet(wallet);
+            cacheDerivedKeys();
 
             return this;
         });
@@ -110,6 +140,7 @@ public class HDWallet {
                 final Wallet wallet = constructFromSeed(seed);
                 deriveKeysFromWallet(wallet);
                 saveMasterSeedToStorage(masterSeed);
+                cacheDerivedKeys();
                 return this;
             } catch (final UnreadableWalletException | MnemonicException e) {
                 throw new InvalidMasterSeedException(e);
@@ -134,11 +165,19 @@ public class HDWallet {
         try {
             deriveIdentityKey(wallet);
             derivePaymentKey(wallet);
+            ECKey.precomputeBaseTable();
         } catch (final UnreadableWalletException | IOException ex) {
             throw new RuntimeException("Error deriving keys: " + ex);
         }
     }
 
+    // Only called once the master seed the keys were derived from is stored
+    private void cacheDerivedKeys() {
+        final String storedSeed = this.prefs.getString(MASTER_SEED, null);
+        if (storedSeed == null) return;
+        this.keyCache.write(storedSeed, this.identityKey, this.paymentKey);
+    }
+
     private void deriveIdentityKey(final Wallet wallet) throws IOException, UnreadableWalletException {
         this.identityKey = deriveKeyFromWallet(wallet, 0, KeyChain.KeyPurpose.AUTHENTICATION);
     }
@@ -168,19 +207,46 @@ public class HDWallet {
         try {
             final byte[] transactionBytes = TypeConverter.StringHexToByteArray(data);
             return sign(transactionBytes, this.paymentKey);
-        } catch (final Exception e) {
+        } catch (final IllegalArgumentException e) {
             LogUtil.print(getClass(), "Unable to sign transaction. " + e);
             return null;
         }
     }
 
+    // Signs every transaction with the payment key, spread over the computation threads.
+    // The results are in the same order as the input, and a failure only affects its own item.
+    public Single<List<SignatureResult>> signAll(final List<byte[]> transactions) {
+        return Observable
+                .from(transactions)
+                .concatMapEager(transaction ->
+                        Observable
+                        .fromCallable(() -> signForBatch(transaction))
+                        .subscribeOn(Schedulers.computation()))
+                .toList()
+                .toSingle();
+    }
+
+    private SignatureResult signForBatch(final byte[] transaction) {
+        try {
+            if (transaction == null) throw new IllegalArgumentException("Transaction is null");
+            return SignatureResult.success(sign(transaction, this.paymentKey));
+        } catch (final RuntimeException e) {
+            LogUtil.print(getClass(), "Unable to sign transaction. " + e);
+            return SignatureResult.failure(e);
+        }
+    }
+
     private String sign(final byte[] bytes, final ECKey key) {
         final byte[] msgHash = sha3(bytes);
         final ECKey.ECDSASignature signature = key.sign(msgHash);
         return signature.toHex();
     }
 
+    // The master seed is only decrypted on demand when the keys were restored from the cache
     public String getMasterSeed() {
+        if (this.masterSeed == null) {
+            this.masterSeed = readMasterSeedFromStorage();
+        }
         return this.masterSeed;
     }
 
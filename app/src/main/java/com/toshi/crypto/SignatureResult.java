@@ -0,0 +1,53 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto;
+
+
+import android.support.annotation.Nullable;
+
+// The outcome of signing a single item in a batch.
+// Exactly one of signature and error is set.
+public class SignatureResult {
+
+    private final String signature;
+    private final Throwable error;
+
+    /* package */ static SignatureResult success(final String signature) {
+        return new SignatureResult(signature, null);
+    }
+
+    /* package */ static SignatureResult failure(final Throwable error) {
+        return new SignatureResult(null, error);
+    }
+
+    private SignatureResult(final String signature, final Throwable error) {
+        this.signature = signature;
+        this.error = error;
+    }
+
+    public boolean isSuccess() {
+        return this.error == null;
+    }
+
+    public @Nullable String getSignature() {
+        return this.signature;
+    }
+
+    public @Nullable Throwable getError() {
+        return this.error;
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.cryptohash;
+
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Keccak-256 (the pre-standard SHA3 used by Ethereum) working directly on 64-bit lanes.
+ * <p>
+ * Unlike {@link Keccak256} it doesn't buffer input through {@link DigestEngine}:
+ * full blocks are absorbed straight from the caller's array or buffer, and the
+ * permutation is fully unrolled over local variables. An instance allocates nothing
+ * after construction, so it can be reused, for example through {@link #get()}.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public final class FastKeccak256 implements Digest {
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final int RATE = 200 - 2 * DIGEST_LENGTH;
+    private static final int RATE_LANES = RATE / 8;
+
+    private static final long[] ROUND_CONSTANTS = {
+            0x0000000000000001L, 0x0000000000008082L,
+            0x800000000000808AL, 0x8000000080008000L,
+            0x000000000000808BL, 0x0000000080000001L,
+            0x8000000080008081L, 0x8000000000008009L,
+            0x000000000000008AL, 0x0000000000000088L,
+            0x0000000080008009L, 0x000000008000000AL,
+            0x000000008000808BL, 0x800000000000008BL,
+            0x8000000000008089L, 0x8000000000008003L,
+            0x8000000000008002L, 0x8000000000000080L,
+            0x000000000000800AL, 0x800000008000000AL,
+            0x8000000080008081L, 0x8000000000008080L,
+            0x0000000080000001L, 0x8000000080008008L
+    };
+
+    private static final ThreadLocal<FastKeccak256> threadInstance = new ThreadLocal<FastKeccak256>() {
+        @Override
+        protected FastKeccak256 initialValue() {
+            return new FastKeccak256();
+        }
+    };
+
+    private final long[] state;
+    // Number of bytes absorbed into the current block
+    private int position;
+
+    /**
+     * Returns an instance owned by the calling thread. It is reset before being returned.
+     *
+     * @return  a ready to use instance
+     */
+    public static FastKeccak256 get() {
+        final FastKeccak256 digest = threadInstance.get();
+        digest.reset();
+        return digest;
+    }
+
+    public FastKeccak256() {
+        this.state = new long[25];
+    }
+
+    @Override
+    public void update(final byte in) {
+        absorbByte(in);
+    }
+
+    @Override
+    public void update(final byte[] inbuf) {
+        update(inbuf, 0, inbuf.length);
+    }
+
+    @Override
+    public void update(final byte[] inbuf, int off, int len) {
+        if (off < 0 || len < 0 || off + len > inbuf.length) {
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", length: " + inbuf.length);
+        }
+
+        // Finish a partially filled block
+        while (len > 0 && this.position != 0) {
+            absorbByte(inbuf[off++]);
+            len--;
+        }
+
+        // Absorb whole blocks straight from the input
+        while (len >= RATE) {
+            for (int i = 0; i < RATE_LANES; i++) {
+                this.state[i] ^= decodeLELong(inbuf, off + (i << 3));
+            }
+            permute(this.state);
+            off += RATE;
+            len -= RATE;
+        }
+
+        while (len > 0) {
+            absorbByte(inbuf[off++]);
+            len--;
+        }
+    }
+
+    /**
+     * Insert the remaining bytes of {@code buffer}. The buffer position is moved to its limit.
+     *
+     * @param buffer   the input data
+     */
+    public void update(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            final int length = buffer.remaining();
+            update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            return;
+        }
+
+        while (buffer.hasRemaining() && this.position != 0) {
+            absorbByte(buffer.get());
+        }
+
+        final ByteOrder originalOrder = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.remaining() >= RATE) {
+            for (int i = 0; i < RATE_LANES; i++) {
+                this.state[i] ^= buffer.getLong();
+            }
+            permute(this.state);
+        }
+        buffer.order(originalOrder);
+
+        while (buffer.hasRemaining()) {
+            absorbByte(buffer.get());
+        }
+    }
+
+    @Override
+    public byte[] digest() {
+        final byte[] out = new byte[DIGEST_LENGTH];
+        digest(out, 0, DIGEST_LENGTH);
+        return out;
+    }
+
+    @Override
+    public byte[] digest(final byte[] inbuf) {
+        update(inbuf, 0, inbuf.length);
+        return digest();
+    }
+
+    @Override
+    public int digest(final byte[] outbuf, final int off, final int len) {
+        // Keccak padding: 0x01 after the message and 0x80 in the last byte of the block
+        this.state[this.position >>> 3] ^= 0x01L << ((this.position & 7) << 3);
+        this.state[RATE_LANES - 1] ^= 0x80L << 56;
+        permute(this.state);
+
+        final int outputLength = Math.min(len, DIGEST_LENGTH);
+        for (int i = 0; i < outputLength; i++) {
+            outbuf[off + i] = (byte) (this.state[i >>> 3] >>> ((i & 7) << 3));
+        }
+        reset();
+        return outputLength;
+    }
+
+    @Override
+    public int getDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < 25; i++) {
+            this.state[i] = 0;
+        }
+        this.position = 0;
+    }
+
+    @Override
+    public Digest copy() {
+        final FastKeccak256 copy = new FastKeccak256();
+        System.arraycopy(this.state, 0, copy.state, 0, 25);
+        copy.position = this.position;
+        return copy;
+    }
+
+    @Override
+    public int getBlockLength() {
+        return RATE;
+    }
+
+    @Override
+    public String toString() {
+        return "Keccak-256";
+    }
+
+    private void absorbByte(final byte in) {
+        this.state[this.position >>> 3] ^= (in & 0xFFL) << ((this.position & 7) << 3);
+        this.position++;
+        if (this.position == RATE) {
+            permute(this.state);
+            this.position = 0;
+        }
+    }
+
+    private static long decodeLELong(final byte[] buf, final int off) {
+        return (buf[off] & 0xFFL)
+                | ((buf[off + 1] & 0xFFL) << 8)
+                | ((buf[off + 2] & 0xFFL) << 16)
+                | ((buf[off + 3] & 0xFFL) << 24)
+                | ((buf[off + 4] & 0xFFL) << 32)
+                | ((buf[off + 5] & 0xFFL) << 40)
+                | ((buf[off + 6] & 0xFFL) << 48)
+                | ((buf[off + 7] & 0xFFL) << 56);
+    }
+
+    // Keccak-f[1600]. Lane (x, y) is stored at index x + 5 * y.
+    private static void permute(final long[] state) {
+        long a00 = state[0];
+        long a01 = state[1];
+        long a02 = state[2];
+        long a03 = state[3];
+        long a04 = state[4];
+        long a05 = state[5];
+        long a06 = state[6];
+        long a07 = state[7];
+        long a08 = state[8];
+        long a09 = state[9];
+        long a10 = state[10];
+        long a11 = state[11];
+        long a12 = state[12];
+        long a13 = state[13];
+        long a14 = state[14];
+        long a15 = state[15];
+        long a16 = state[16];
+        long a17 = state[17];
+        long a18 = state[18];
+        long a19 = state[19];
+        long a20 = state[20];
+        long a21 = state[21];
+        long a22 = state[22];
+        long a23 = state[23];
+        long a24 = state[24];
+
+        for (int round = 0; round < 24; round++) {
+            // Theta
+            final long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            final long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            final long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            final long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            final long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+            final long d0 = c4 ^ Long.rotateLeft(c1, 1);
+            final long d1 = c0 ^ Long.rotateLeft(c2, 1);
+            final long d2 = c1 ^ Long.rotateLeft(c3, 1);
+            final long d3 = c2 ^ Long.rotateLeft(c4, 1);
+            final long d4 = c3 ^ Long.rotateLeft(c0, 1);
+
+            // Rho and pi
+            final long b00 = a00 ^ d0;
+            final long b16 = Long.rotateLeft(a05 ^ d0, 36);
+            final long b07 = Long.rotateLeft(a10 ^ d0, 3);
+            final long b23 = Long.rotateLeft(a15 ^ d0, 41);
+            final long b14 = Long.rotateLeft(a20 ^ d0, 18);
+            final long b10 = Long.rotateLeft(a01 ^ d1, 1);
+            final long b01 = Long.rotateLeft(a06 ^ d1, 44);
+            final long b17 = Long.rotateLeft(a11 ^ d1, 10);
+            final long b08 = Long.rotateLeft(a16 ^ d1, 45);
+            final long b24 = Long.rotateLeft(a21 ^ d1, 2);
+            final long b20 = Long.rotateLeft(a02 ^ d2, 62);
+            final long b11 = Long.rotateLeft(a07 ^ d2, 6);
+            final long b02 = Long.rotateLeft(a12 ^ d2, 43);
+            final long b18 = Long.rotateLeft(a17 ^ d2, 15);
+            final long b09 = Long.rotateLeft(a22 ^ d2, 61);
+            final long b05 = Long.rotateLeft(a03 ^ d3, 28);
+            final long b21 = Long.rotateLeft(a08 ^ d3, 55);
+            final long b12 = Long.rotateLeft(a13 ^ d3, 25);
+            final long b03 = Long.rotateLeft(a18 ^ d3, 21);
+            final long b19 = Long.rotateLeft(a23 ^ d3, 56);
+            final long b15 = Long.rotateLeft(a04 ^ d4, 27);
+            final long b06 = Long.rotateLeft(a09 ^ d4, 20);
+            final long b22 = Long.rotateLeft(a14 ^ d4, 39);
+            final long b13 = Long.rotateLeft(a19 ^ d4, 8);
+            final long b04 = Long.rotateLeft(a24 ^ d4, 14);
+
+            // Chi
+            a00 = b00 ^ (~b01 & b02);
+            a01 = b01 ^ (~b02 & b03);
+            a02 = b02 ^ (~b03 & b04);
+            a03 = b03 ^ (~b04 & b00);
+            a04 = b04 ^ (~b00 & b01);
+            a05 = b05 ^ (~b06 & b07);
+            a06 = b06 ^ (~b07 & b08);
+            a07 = b07 ^ (~b08 & b09);
+            a08 = b08 ^ (~b09 & b05);
+            a09 = b09 ^ (~b05 & b06);
+            a10 = b10 ^ (~b11 & b12);
+            a11 = b11 ^ (~b12 & b13);
+            a12 = b12 ^ (~b13 & b14);
+            a13 = b13 ^ (~b14 & b10);
+            a14 = b14 ^ (~b10 & b11);
+            a15 = b15 ^ (~b16 & b17);
+            a16 = b16 ^ (~b17 & b18);
+            a17 = b17 ^ (~b18 & b19);
+            a18 = b18 ^ (~b19 & b15);
+            a19 = b19 ^ (~b15 & b16);
+            a20 = b20 ^ (~b21 & b22);
+            a21 = b21 ^ (~b22 & b23);
+            a22 = b22 ^ (~b23 & b24);
+            a23 = b23 ^ (~b24 & b20);
+            a24 = b24 ^ (~b20 & b21);
+
+            // Iota
+            a00 ^= ROUND_CONSTANTS[round];
+        }
+
+        state[0] = a00;
+        state[1] = a01;
+        state[2] = a02;
+        state[3] = a03;
+        state[4] = a04;
+        state[5] = a05;
+        state[6] = a06;
+        state[7] = a07;
+        state[8] = a08;
+        state[9] = a09;
+        state[10] = a10;
+        state[11] = a11;
+        state[12] = a12;
+        state[13] = a13;
+        state[14] = a14;
+        state[15] = a15;
+        state[16] = a16;
+        state[17] = a17;
+        state[18] = a18;
+        state[19] = a19;
+        state[20] = a20;
+        state[21] = a21;
+        state[22] = a22;
+        state[23] = a23;
+        state[24] = a24;
+    }
+}
@@ -22,10 +22,11 @@ import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.signal.model.SignalBootstrap;
 import com.toshi.crypto.signal.network.ChatInterface;
 import com.toshi.crypto.signal.store.ProtocolStore;
+import com.toshi.manager.network.ServiceEndpoints;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.SigningInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.squareup.moshi.Moshi;
+import com.toshi.model.adapter.MoshiProvider;
 import com.toshi.util.LogUtil;
 
 import org.whispersystems.libsignal.IdentityKey;
@@ -76,7 +77,7 @@ public final class ChatService extends SignalServiceAccountManager {
                         final String userAgent) {
         super(urls, user, password, userAgent);
         this.url = urls[0].getUrl();
-        this.client = new OkHttpClient.Builder();
+        this.client = ServiceEndpoints.get().newClientBuilder();
         this.chatInterface = generateSignalInterface();
     }
 
@@ -87,13 +88,10 @@ public final class ChatService extends SignalServiceAccountManager {
         addSigningInterceptor();
         addLogging();
 
-        final Moshi moshi = new Moshi.Builder()
-                .build();
-
         final Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(this.url)
                 .addConverterFactory(ScalarsConverterFactory.create())
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(client.build())
                 .build();
@@ -105,7 +103,7 @@ public final class ChatService extends SignalServiceAccountManager {
     }
 
     private void addSigningInterceptor() {
-        this.client.addInterceptor(new SigningInterceptor());
+        this.client.addInterceptor(new SigningInterceptor(() -> ServiceEndpoints.get().getWallet()));
     }
 
     private void addLogging() {
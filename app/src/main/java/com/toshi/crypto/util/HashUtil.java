@@ -18,11 +18,12 @@
 package com.toshi.crypto.util;
 
 
-import com.toshi.crypto.cryptohash.Keccak256;
+import com.toshi.crypto.cryptohash.FastKeccak256;
 
 import org.spongycastle.util.Arrays;
 import org.whispersystems.signalservice.internal.util.Base64;
 
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
@@ -34,7 +35,18 @@ public class HashUtil {
     }
 
     public static byte[] sha3(byte[] input) {
-        Keccak256 digest = new Keccak256();
+        return sha3(input, 0, input.length);
+    }
+
+    public static byte[] sha3(byte[] input, int offset, int length) {
+        final FastKeccak256 digest = FastKeccak256.get();
+        digest.update(input, offset, length);
+        return digest.digest();
+    }
+
+    // Hashes the remaining bytes of the buffer without copying them
+    public static byte[] sha3(ByteBuffer input) {
+        final FastKeccak256 digest = FastKeccak256.get();
         digest.update(input);
         return digest.digest();
     }
@@ -0,0 +1,191 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.util;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Lazy, read only view over one RLP encoded item or list.
+ * <p>
+ * Unlike {@link RLP#decode2}, nothing is copied or decoded up front. A view only records where
+ * its item sits in the backing array. List items are located the first time they are accessed,
+ * and bytes are only copied when {@link #getData()} or {@link #getEncoded()} is called.
+ */
+public final class RLPView {
+
+    private static final int SIZE_THRESHOLD = 56;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final byte[] data;
+    private final int offset;
+    private final int payloadOffset;
+    private final int payloadLength;
+    private final boolean isList;
+
+    // Offsets of the list items, found the first time an item is accessed
+    private int[] itemOffsets;
+
+    public static RLPView wrap(final byte[] data) {
+        return wrap(data, 0, data.length);
+    }
+
+    // The range has to hold exactly one item or list
+    public static RLPView wrap(final byte[] data, final int offset, final int length) {
+        if (length <= 0 || offset < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException("Invalid RLP range");
+        }
+        final RLPView view = new RLPView(data, offset, offset + length);
+        if (view.getEncodedLength() != length) {
+            throw new IllegalArgumentException("RLP length doesn't match the data");
+        }
+        return view;
+    }
+
+    private RLPView(final byte[] data, final int offset, final int limit) {
+        this.data = data;
+        this.offset = offset;
+
+        final int prefix = data[offset] & 0xFF;
+        if (prefix < OFFSET_SHORT_ITEM) {
+            this.isList = false;
+            this.payloadOffset = offset;
+            this.payloadLength = 1;
+        } else if (prefix <= OFFSET_LONG_ITEM) {
+            this.isList = false;
+            this.payloadOffset = offset + 1;
+            this.payloadLength = prefix - OFFSET_SHORT_ITEM;
+        } else if (prefix < OFFSET_SHORT_LIST) {
+            this.isList = false;
+            final int lengthOfLength = prefix - OFFSET_LONG_ITEM;
+            this.payloadOffset = offset + 1 + lengthOfLength;
+            this.payloadLength = readLength(data, offset + 1, lengthOfLength, limit);
+        } else if (prefix <= OFFSET_LONG_LIST) {
+            this.isList = true;
+            this.payloadOffset = offset + 1;
+            this.payloadLength = prefix - OFFSET_SHORT_LIST;
+        } else {
+            this.isList = true;
+            final int lengthOfLength = prefix - OFFSET_LONG_LIST;
+            this.payloadOffset = offset + 1 + lengthOfLength;
+            this.payloadLength = readLength(data, offset + 1, lengthOfLength, limit);
+        }
+
+        if (this.payloadOffset + this.payloadLength > limit) {
+            throw new IllegalArgumentException("RLP item runs past the end of the data");
+        }
+    }
+
+    private static int readLength(final byte[] data, final int offset, final int lengthOfLength, final int limit) {
+        if (lengthOfLength > 4 || offset + lengthOfLength > limit) {
+            throw new IllegalArgumentException("Invalid RLP length prefix");
+        }
+        long length = 0;
+        for (int i = 0; i < lengthOfLength; i++) {
+            length = (length << 8) | (data[offset + i] & 0xFF);
+        }
+        if (length < SIZE_THRESHOLD || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid RLP length prefix");
+        }
+        return (int) length;
+    }
+
+    public boolean isList() {
+        return this.isList;
+    }
+
+    public int size() {
+        if (!this.isList) throw new IllegalStateException("Not an RLP list");
+        return getItemOffsets().length;
+    }
+
+    public RLPView get(final int index) {
+        if (!this.isList) throw new IllegalStateException("Not an RLP list");
+        final int[] offsets = getItemOffsets();
+        if (index < 0 || index >= offsets.length) throw new IndexOutOfBoundsException("Index: " + index);
+        return new RLPView(this.data, offsets[index], getPayloadLimit());
+    }
+
+    private int[] getItemOffsets() {
+        if (this.itemOffsets != null) return this.itemOffsets;
+
+        final int limit = getPayloadLimit();
+        int[] offsets = new int[8];
+        int count = 0;
+        int position = this.payloadOffset;
+        while (position < limit) {
+            if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = position;
+            position += new RLPView(this.data, position, limit).getEncodedLength();
+        }
+        this.itemOffsets = Arrays.copyOf(offsets, count);
+        return this.itemOffsets;
+    }
+
+    private int getPayloadLimit() {
+        return this.payloadOffset + this.payloadLength;
+    }
+
+    // Length of the whole item, prefix included
+    public int getEncodedLength() {
+        return getPayloadLimit() - this.offset;
+    }
+
+    public int getPayloadLength() {
+        return this.payloadLength;
+    }
+
+    // A read only view of the payload; no bytes are copied
+    public ByteBuffer getPayload() {
+        return ByteBuffer
+                .wrap(this.data, this.payloadOffset, this.payloadLength)
+                .slice()
+                .asReadOnlyBuffer();
+    }
+
+    // Copy of the payload, or null for an empty item, the same as RLPItem.getRLPData()
+    public byte[] getData() {
+        if (this.payloadLength == 0) return null;
+        return Arrays.copyOfRange(this.data, this.payloadOffset, getPayloadLimit());
+    }
+
+    // Copy of the whole item, prefix included, the same as RLPList.getRLPData()
+    public byte[] getEncoded() {
+        return Arrays.copyOfRange(this.data, this.offset, getPayloadLimit());
+    }
+
+    public BigInteger asBigInteger() {
+        if (this.isList) throw new IllegalStateException("An RLP list isn't a number");
+        if (this.payloadLength == 0) return BigInteger.ZERO;
+        return new BigInteger(1, getData());
+    }
+
+    public long asLong() {
+        if (this.isList) throw new IllegalStateException("An RLP list isn't a number");
+        if (this.payloadLength > 8) throw new ArithmeticException("RLP item doesn't fit in a long");
+        long value = 0;
+        for (int i = this.payloadOffset; i < getPayloadLimit(); i++) {
+            value = (value << 8) | (this.data[i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.util;
+
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Streaming RLP encoder that writes straight into a caller supplied {@link ByteBuffer}.
+ * <p>
+ * The static <code>*Length</code> methods give the encoded size of each value, so the caller
+ * can size the buffer and the list headers up front and everything is written exactly once:
+ * <pre>
+ * final int payload = RLPWriter.longLength(nonce) + RLPWriter.elementLength(to);
+ * final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.listLength(payload));
+ * new RLPWriter(buffer)
+ *         .writeListHeader(payload)
+ *         .writeLong(nonce)
+ *         .writeElement(to);
+ * </pre>
+ * The output is byte for byte the same as {@link RLP#encodeElement}, {@link RLP#encodeBigInteger}
+ * and {@link RLP#encodeList}.
+ */
+public final class RLPWriter {
+
+    private static final int SIZE_THRESHOLD = 56;
+    private static final int OFFSET_SHORT_ITEM = 0x80;
+    private static final int OFFSET_LONG_ITEM = 0xb7;
+    private static final int OFFSET_SHORT_LIST = 0xc0;
+    private static final int OFFSET_LONG_LIST = 0xf7;
+
+    private final ByteBuffer buffer;
+
+    public RLPWriter(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    // Lengths
+
+    public static int elementLength(final byte[] data) {
+        return data == null ? 1 : elementLength(data, 0, data.length);
+    }
+
+    public static int elementLength(final byte[] data, final int offset, final int length) {
+        if (length == 1 && (data[offset] & 0xFF) < OFFSET_SHORT_ITEM) return 1;
+        return headerLength(length) + length;
+    }
+
+    public static int bigIntegerLength(final BigInteger value) {
+        if (value.signum() == 0) return 1;
+        if (value.bitLength() < Long.SIZE) return longLength(value.longValue());
+        final int length = unsignedLength(value);
+        return headerLength(length) + length;
+    }
+
+    // The value is treated as unsigned, like a BigInteger built from its bytes
+    public static int longLength(final long value) {
+        if (value == 0) return 1;
+        if (value > 0 && value < OFFSET_SHORT_ITEM) return 1;
+        return 1 + unsignedLength(value);
+    }
+
+    public static int listLength(final int payloadLength) {
+        return headerLength(payloadLength) + payloadLength;
+    }
+
+    private static int headerLength(final int length) {
+        return length < SIZE_THRESHOLD ? 1 : 1 + unsignedLength(length);
+    }
+
+    private static int unsignedLength(final long value) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(value) + 7) / 8;
+    }
+
+    private static int unsignedLength(final BigInteger value) {
+        return (value.bitLength() + 7) / 8;
+    }
+
+    // Writing
+
+    public RLPWriter writeElement(final byte[] data) {
+        if (data == null) {
+            this.buffer.put((byte) OFFSET_SHORT_ITEM);
+            return this;
+        }
+        return writeElement(data, 0, data.length);
+    }
+
+    public RLPWriter writeElement(final byte[] data, final int offset, final int length) {
+        if (length == 1 && (data[offset] & 0xFF) < OFFSET_SHORT_ITEM) {
+            this.buffer.put(data[offset]);
+            return this;
+        }
+        writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+        this.buffer.put(data, offset, length);
+        return this;
+    }
+
+    public RLPWriter writeBigInteger(final BigInteger value) {
+        if (value.signum() < 0) throw new IllegalArgumentException("Negative values can't be RLP encoded");
+        if (value.bitLength() < Long.SIZE) return writeLong(value.longValue());
+
+        final int length = unsignedLength(value);
+        writeHeader(length, OFFSET_SHORT_ITEM, OFFSET_LONG_ITEM);
+        final byte[] bytes = value.toByteArray();
+        // toByteArray may add a leading sign byte
+        this.buffer.put(bytes, bytes.length - length, length);
+        return this;
+    }
+
+    public RLPWriter writeLong(final long value) {
+        if (value == 0) {
+            this.buffer.put((byte) OFFSET_SHORT_ITEM);
+        } else if (value > 0 && value < OFFSET_SHORT_ITEM) {
+            this.buffer.put((byte) value);
+        } else {
+            final int length = unsignedLength(value);
+            this.buffer.put((byte) (OFFSET_SHORT_ITEM + length));
+            writeUnsigned(value, length);
+        }
+        return this;
+    }
+
+    // Writes the header of a list whose encoded items add up to payloadLength.
+    // The items are then written one after another.
+    public RLPWriter writeListHeader(final int payloadLength) {
+        writeHeader(payloadLength, OFFSET_SHORT_LIST, OFFSET_LONG_LIST);
+        return this;
+    }
+
+    // Copies an item or list that is already RLP encoded
+    public RLPWriter writeEncoded(final byte[] encoded) {
+        this.buffer.put(encoded);
+        return this;
+    }
+
+    private void writeHeader(final int length, final int shortOffset, final int longOffset) {
+        if (length < SIZE_THRESHOLD) {
+            this.buffer.put((byte) (shortOffset + length));
+        } else {
+            final int lengthOfLength = unsignedLength(length);
+            this.buffer.put((byte) (longOffset + lengthOfLength));
+            writeUnsigned(length, lengthOfLength);
+        }
+    }
+
+    private void writeUnsigned(final long value, final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            this.buffer.put((byte) (value >>> (8 * i)));
+        }
+    }
+}
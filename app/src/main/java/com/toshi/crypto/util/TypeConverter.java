@@ -18,6 +18,7 @@
 package com.toshi.crypto.util;
 
 
+import org.spongycastle.util.encoders.DecoderException;
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
@@ -37,12 +38,20 @@ public class TypeConverter {
         }
     }
 
-    public static byte[] StringHexToByteArray(String x) throws Exception {
+    // Throws IllegalArgumentException if the input isn't valid hex
+    public static byte[] StringHexToByteArray(String x) {
+        if (x == null) {
+            throw new IllegalArgumentException("Hex string is null");
+        }
         if (x.startsWith("0x")) {
             x = x.substring(2);
         }
         if (x.length() % 2 != 0) x = "0" + x;
-        return Hex.decode(x);
+        try {
+            return Hex.decode(x);
+        } catch (final DecoderException ex) {
+            throw new IllegalArgumentException("Invalid hex string", ex);
+        }
     }
 
     public static String toJsonHex(final byte[] x) {
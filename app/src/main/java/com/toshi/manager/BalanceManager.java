@@ -45,6 +45,7 @@ import com.toshi.view.BaseApplication;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.DecimalFormat;
+import java.util.List;
 
 import rx.Completable;
 import rx.Single;
@@ -240,10 +241,10 @@ public class BalanceManager {
                 .toCompletable();
     }
 
-    /* package */ Single<Payment> getTransactionStatus(final String transactionHash) {
+    /* package */ Single<List<Payment>> getTransactionStatuses(final List<String> transactionHashes) {
         return EthereumService
                 .get()
-                .getStatusOfTransaction(transactionHash);
+                .getStatusOfTransactions(transactionHashes);
     }
 
     private String readLastKnownBalance() {
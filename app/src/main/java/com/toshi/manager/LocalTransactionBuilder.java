@@ -0,0 +1,226 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import com.toshi.crypto.util.TypeConverter;
+import com.toshi.manager.network.EthereumInterface;
+import com.toshi.model.local.TransactionSkeleton;
+import com.toshi.model.network.ServerTime;
+import com.toshi.model.network.TransactionRequest;
+import com.toshi.model.network.UnsignedTransaction;
+import com.toshi.util.LogUtil;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import rx.Single;
+import rx.functions.Func0;
+
+// Builds payment transactions locally so a payment only needs the POST to /v1/tx.
+//
+// The gas price is learnt from a skeleton fetched from /v1/tx/skel, and the nonce is reconciled
+// with the one in it. The gas limit depends on the recipient, which may be a contract, so it is
+// learnt from the first skeleton fetched for each recipient. After that each payment reserves its nonce from the
+// NonceManager, so payments sent in a burst are pipelined instead of racing for the same nonce.
+// The parameters are fetched again once they expire, when the network changes and whenever
+// the nonce is invalidated. The server clock offset is cached the same way, so signing the
+// send request doesn't need its own round-trip to /v1/timestamp.
+/* package */ class LocalTransactionBuilder {
+
+    private static final long PARAMETERS_TTL = TimeUnit.MINUTES.toMillis(5);
+    private static final long CLOCK_TTL = TimeUnit.HOURS.toMillis(1);
+
+    private final Func0<EthereumInterface> apiSource;
+    private final NonceManager nonceManager;
+    private final Map<String, BigInteger> gasByRecipient;
+    private final Map<String, Single<BigInteger>> parametersRequests;
+
+    private EthereumInterface parametersApi;
+    private String fromAddress;
+    private BigInteger gasPrice;
+    private long parametersUpdatedAt;
+
+    private EthereumInterface clockApi;
+    private long serverTimeOffsetMs;
+    private long clockSyncedAt;
+
+    /* package */ LocalTransactionBuilder(final Func0<EthereumInterface> apiSource) {
+        this.apiSource = apiSource;
+        this.nonceManager = new NonceManager();
+        this.gasByRecipient = new HashMap<>();
+        this.parametersRequests = new HashMap<>();
+    }
+
+    /* package */ Single<UnsignedTransaction> createUnsignedTransaction(final TransactionRequest request) {
+        if (!isPlainPayment(request)) return createServerTransaction(request);
+
+        return Single.defer(() -> getParameters(request))
+                .map(gas -> buildLocally(request, gas));
+    }
+
+    // For transactions whose outcome the app never hears about, such as the ones dapps broadcast
+    // themselves. No nonce is reserved for them, since it would never be released.
+    /* package */ Single<UnsignedTransaction> createServerTransaction(final TransactionRequest request) {
+        // This uses a nonce the nonce manager doesn't know about
+        return Single.defer(() -> this.apiSource.call().createTransaction(request))
+                .doOnSuccess(__ -> this.nonceManager.invalidate());
+    }
+
+    // Contract calls and transactions with their own gas settings are left to the server
+    private boolean isPlainPayment(final TransactionRequest request) {
+        return request.getFromAddress() != null
+                && request.getToAddress() != null
+                && request.getData() == null
+                && request.getGas() == null
+                && request.getGasPrice() == null;
+    }
+
+    // Payments to the same recipient arriving while the parameters are being fetched share the same request.
+    // Emits the gas limit for the recipient.
+    private synchronized Single<BigInteger> getParameters(final TransactionRequest request) {
+        final String recipient = getRecipientKey(request);
+        if (areParametersValid(request)) return Single.just(this.gasByRecipient.get(recipient));
+        final Single<BigInteger> pendingRequest = this.parametersRequests.get(recipient);
+        if (pendingRequest != null) return pendingRequest;
+
+        final EthereumInterface api = this.apiSource.call();
+        final Single<BigInteger> parametersRequest = api
+                .createTransaction(request)
+                .map(transaction -> updateParameters(api, request, transaction))
+                .doOnError(__ -> clearParametersRequest(recipient))
+                .toObservable()
+                .cache()
+                .toSingle();
+        this.parametersRequests.put(recipient, parametersRequest);
+        return parametersRequest;
+    }
+
+    private boolean areParametersValid(final TransactionRequest request) {
+        return this.nonceManager.isKnown()
+                && request.getFromAddress().equalsIgnoreCase(this.fromAddress)
+                && this.apiSource.call() == this.parametersApi
+                && this.gasByRecipient.containsKey(getRecipientKey(request))
+                && System.currentTimeMillis() - this.parametersUpdatedAt < PARAMETERS_TTL;
+    }
+
+    private static String getRecipientKey(final TransactionRequest request) {
+        return request.getToAddress().toLowerCase(Locale.US);
+    }
+
+    // Throws IllegalArgumentException if the skeleton can't be read
+    private synchronized BigInteger updateParameters(final EthereumInterface api,
+                                                     final TransactionRequest request,
+                                                     final UnsignedTransaction transaction) {
+        final String recipient = getRecipientKey(request);
+        this.parametersRequests.remove(recipient);
+        final TransactionSkeleton skeleton = TransactionSkeleton.decode(transaction.getTransaction());
+        if (api != this.parametersApi || !request.getFromAddress().equalsIgnoreCase(this.fromAddress)) {
+            this.nonceManager.invalidate();
+            this.gasByRecipient.clear();
+        }
+        this.nonceManager.reconcile(skeleton.getNonce());
+        this.parametersApi = api;
+        this.fromAddress = request.getFromAddress();
+        this.gasPrice = skeleton.getGasPrice();
+        this.gasByRecipient.put(recipient, skeleton.getGas());
+        this.parametersUpdatedAt = System.currentTimeMillis();
+        return skeleton.getGas();
+    }
+
+    private synchronized void clearParametersRequest(final String recipient) {
+        this.parametersRequests.remove(recipient);
+    }
+
+    private synchronized UnsignedTransaction buildLocally(final TransactionRequest request, final BigInteger gas) {
+        final String skeleton = new TransactionSkeleton()
+                .setNonce(this.nonceManager.reserve())
+                .setGasPrice(this.gasPrice)
+                .setGas(gas)
+                .setToAddress(request.getToAddress())
+                .setValue(TypeConverter.StringHexToBigInteger(request.getValue()))
+                .encode();
+        return new UnsignedTransaction().setTransaction(skeleton);
+    }
+
+    // Call once the server has accepted the transaction
+    /* package */ void onTransactionSent(final UnsignedTransaction transaction) {
+        final BigInteger nonce = readNonce(transaction);
+        if (nonce != null) this.nonceManager.onAccepted(nonce);
+    }
+
+    // Call when the transaction was never sent or the server rejected it, so its nonce is used again
+    /* package */ void onTransactionNotSent(final UnsignedTransaction transaction) {
+        final BigInteger nonce = readNonce(transaction);
+        if (nonce != null) this.nonceManager.release(nonce);
+    }
+
+    // Call when it isn't known whether the server received the transaction.
+    // The nonce is left to the server to account for.
+    /* package */ void onTransactionOutcomeUnknown(final UnsignedTransaction transaction) {
+        final BigInteger nonce = readNonce(transaction);
+        if (nonce != null) this.nonceManager.onAccepted(nonce);
+        this.nonceManager.invalidate();
+    }
+
+    private BigInteger readNonce(final UnsignedTransaction transaction) {
+        try {
+            return TransactionSkeleton.decode(transaction.getTransaction()).getNonce();
+        } catch (final IllegalArgumentException ex) {
+            LogUtil.exception(getClass(), "Unable to read transaction nonce", ex);
+            return null;
+        }
+    }
+
+    // Makes the next transaction reconcile its nonce with the server first
+    /* package */ void invalidate() {
+        this.nonceManager.invalidate();
+    }
+
+    // The current server time in seconds
+    /* package */ Single<Long> getTimestamp() {
+        return Single.defer(() -> {
+            final Long timestamp = tryGetLocalTimestamp();
+            if (timestamp != null) return Single.just(timestamp);
+
+            final EthereumInterface api = this.apiSource.call();
+            final long requestedAt = System.currentTimeMillis();
+            return api
+                    .getTimestamp()
+                    .map(ServerTime::get)
+                    .doOnSuccess(serverTime -> syncClock(api, requestedAt, serverTime));
+        });
+    }
+
+    private synchronized Long tryGetLocalTimestamp() {
+        final long now = System.currentTimeMillis();
+        if (this.clockApi != this.apiSource.call() || now - this.clockSyncedAt >= CLOCK_TTL) return null;
+        return TimeUnit.MILLISECONDS.toSeconds(now + this.serverTimeOffsetMs);
+    }
+
+    private synchronized void syncClock(final EthereumInterface api, final long requestedAt, final long serverTime) {
+        final long now = System.currentTimeMillis();
+        // Assume the server read its clock halfway through the request
+        final long localTimeAtServerRead = requestedAt + (now - requestedAt) / 2;
+        this.serverTimeOffsetMs = TimeUnit.SECONDS.toMillis(serverTime) - localTimeAtServerRead;
+        this.clockApi = api;
+        this.clockSyncedAt = now;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import java.math.BigInteger;
+import java.util.TreeSet;
+
+// Hands out nonces for locally built transactions so several can be in flight at once.
+//
+// A nonce is reserved when a transaction is built and stays in flight until the server
+// accepts or rejects the transaction. A rejected nonce leaves a gap that would hold back
+// every later transaction, so released nonces are handed out again before new ones.
+// The next nonce is reconciled with the one the server reports whenever a skeleton is fetched.
+/* package */ class NonceManager {
+
+    private final TreeSet<BigInteger> inFlight = new TreeSet<>();
+    private final TreeSet<BigInteger> released = new TreeSet<>();
+    private BigInteger nextNonce;
+
+    /* package */ synchronized boolean isKnown() {
+        return this.nextNonce != null;
+    }
+
+    // serverNonce is the nonce the server would give the next transaction
+    /* package */ synchronized void reconcile(final BigInteger serverNonce) {
+        if (this.inFlight.isEmpty()) {
+            this.nextNonce = serverNonce;
+            this.released.clear();
+            return;
+        }
+
+        // Transactions in flight may not have reached the server yet, so their nonces are never handed out again
+        BigInteger localNonce = this.inFlight.last().add(BigInteger.ONE);
+        if (this.nextNonce != null) localNonce = localNonce.max(this.nextNonce);
+        this.nextNonce = localNonce.max(serverNonce);
+        // Released nonces below the server's have been used by another transaction
+        this.released.headSet(serverNonce).clear();
+    }
+
+    /* package */ synchronized BigInteger reserve() {
+        if (this.nextNonce == null) throw new IllegalStateException("Nonce hasn't been reconciled with the server");
+
+        final BigInteger nonce;
+        if (!this.released.isEmpty()) {
+            nonce = this.released.pollFirst();
+        } else {
+            nonce = this.nextNonce;
+            this.nextNonce = this.nextNonce.add(BigInteger.ONE);
+        }
+        this.inFlight.add(nonce);
+        return nonce;
+    }
+
+    /* package */ synchronized void onAccepted(final BigInteger nonce) {
+        this.inFlight.remove(nonce);
+    }
+
+    /* package */ synchronized void release(final BigInteger nonce) {
+        if (!this.inFlight.remove(nonce) || this.nextNonce == null) return;
+
+        this.released.add(nonce);
+        // Released nonces at the top aren't gaps; give them back to the counter
+        while (!this.released.isEmpty() && this.released.last().equals(this.nextNonce.subtract(BigInteger.ONE))) {
+            this.nextNonce = this.released.pollLast();
+        }
+    }
+
+    // Forces the next transaction to reconcile with the server first.
+    // Nonces in flight are kept so they aren't handed out again.
+    /* package */ synchronized void invalidate() {
+        this.nextNonce = null;
+        this.released.clear();
+    }
+}
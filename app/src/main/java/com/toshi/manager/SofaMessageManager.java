@@ -23,7 +23,6 @@ import android.content.SharedPreferences;
 import android.util.Pair;
 
 import com.toshi.BuildConfig;
-import com.toshi.R;
 import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.signal.ChatService;
 import com.toshi.crypto.signal.SignalPreferences;
@@ -33,15 +32,20 @@ import com.toshi.crypto.signal.store.SignalTrustStore;
 import com.toshi.manager.chat.SofaMessageReceiver;
 import com.toshi.manager.chat.SofaMessageRegistration;
 import com.toshi.manager.chat.SofaMessageSender;
+import com.toshi.manager.model.AttachmentProgress;
 import com.toshi.manager.model.SofaMessageTask;
+import com.toshi.manager.network.ServiceEndpoints;
+import com.toshi.manager.store.AttachmentStore;
 import com.toshi.manager.store.ConversationStore;
 import com.toshi.model.local.Conversation;
 import com.toshi.model.local.Group;
 import com.toshi.model.local.Recipient;
 import com.toshi.model.local.User;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.util.FileNames;
 import com.toshi.util.LogUtil;
+import com.toshi.util.ThumbnailCache;
 import com.toshi.view.BaseApplication;
 
 import org.whispersystems.signalservice.internal.push.SignalServiceUrl;
@@ -60,10 +64,11 @@ public final class SofaMessageManager {
     private final ConversationStore conversationStore;
 
     private final SharedPreferences sharedPreferences;
-    private final SignalServiceUrl[] signalServiceUrls;
     private final CompositeSubscription subscriptions;
+    private final PublishSubject<AttachmentProgress> attachmentProgressSubject;
     private final String userAgent;
 
+    private SignalServiceUrl[] signalServiceUrls;
     private ChatService chatService;
     private ProtocolStore protocolStore;
     private SofaMessageReceiver messageReceiver;
@@ -74,14 +79,15 @@ public final class SofaMessageManager {
     /*package*/ SofaMessageManager() {
         this.conversationStore = new ConversationStore();
         this.userAgent = "Android " + BuildConfig.APPLICATION_ID + " - " + BuildConfig.VERSION_NAME +  ":" + BuildConfig.VERSION_CODE;
-        this.signalServiceUrls = new SignalServiceUrl[1];
         this.sharedPreferences = BaseApplication.get().getSharedPreferences(FileNames.GCM_PREFS, Context.MODE_PRIVATE);
         this.subscriptions = new CompositeSubscription();
+        this.attachmentProgressSubject = PublishSubject.create();
     }
 
+    // Blocking; runs as a stage of the ToshiManager startup graph
     public final SofaMessageManager init(final HDWallet wallet) {
         this.wallet = wallet;
-        new Thread(this::initEverything).start();
+        initEverything();
         return this;
     }
 
@@ -89,20 +95,20 @@ public final class SofaMessageManager {
     // and store the message in the local database
     public final void sendAndSaveMessage(final Recipient receiver, final SofaMessage message) {
         final SofaMessageTask messageTask = new SofaMessageTask(receiver, message, SofaMessageTask.SEND_AND_SAVE);
-        this.messageSender.addNewTask(messageTask);
+        getMessageSender().addNewTask(messageTask);
     }
 
     // Will send the message to a remote peer
     // but not store the message in the local database
     public final void sendMessage(final Recipient recipient, final SofaMessage message) {
         final SofaMessageTask messageTask = new SofaMessageTask(recipient, message, SofaMessageTask.SEND_ONLY);
-        this.messageSender.addNewTask(messageTask);
+        getMessageSender().addNewTask(messageTask);
     }
 
     // Create a new group
     public final Single<Group> createGroup(final Group group) {
         return
-                this.messageSender.createGroup(group)
+                getMessageSender().createGroup(group)
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
                 .doOnSuccess(this.conversationStore::saveNewGroup);
@@ -113,13 +119,13 @@ public final class SofaMessageManager {
     /* package */ final void saveTransaction(final User user, final SofaMessage message) {
         final Recipient recipient = new Recipient(user);
         final SofaMessageTask messageTask = new SofaMessageTask(recipient, message, SofaMessageTask.SAVE_TRANSACTION);
-        this.messageSender.addNewTask(messageTask);
+        getMessageSender().addNewTask(messageTask);
     }
 
     // Updates a pre-existing message.
     /* package */ final void updateMessage(final Recipient recipient, final SofaMessage message) {
         final SofaMessageTask messageTask = new SofaMessageTask(recipient, message, SofaMessageTask.UPDATE_MESSAGE);
-        this.messageSender.addNewTask(messageTask);
+        getMessageSender().addNewTask(messageTask);
     }
 
     public final void resumeMessageReceiving() {
@@ -174,6 +180,10 @@ public final class SofaMessageManager {
         return this.conversationStore.registerForDeletedMessages(threadId);
     }
 
+    public final Observable<AttachmentProgress> registerForAttachmentProgress() {
+        return this.attachmentProgressSubject.asObservable();
+    }
+
     public final void stopListeningForChanges() {
         this.conversationStore.stopListeningForChanges();
     }
@@ -184,51 +194,67 @@ public final class SofaMessageManager {
                 .subscribeOn(Schedulers.io());
     }
 
+    // The chat service, sender and receiver all connect to the chat server,
+    // so they are built when first needed rather than during startup
     private void initEverything() {
         generateStores();
-        initMessageReceiver();
-        initMessageSender();
         initRegistrationTask();
+        AttachmentStore.get().sweepInBackground();
     }
 
-    private void generateStores() {
+    private synchronized void generateStores() {
         this.protocolStore = new ProtocolStore().init();
-        final SignalTrustStore trustStore = new SignalTrustStore();
+        // Built again for the new wallet and store
+        this.chatService = null;
+    }
 
+    private synchronized SignalServiceUrl[] getSignalServiceUrls() {
+        if (this.signalServiceUrls != null) return this.signalServiceUrls;
+        final SignalTrustStore trustStore = new SignalTrustStore();
         final SignalServiceUrl signalServiceUrl = new SignalServiceUrl(
-                BaseApplication.get().getResources().getString(R.string.chat_url),
+                ServiceEndpoints.get().getChatUrl(),
                 trustStore);
-        this.signalServiceUrls[0] = signalServiceUrl;
-        this.chatService = new ChatService(this.signalServiceUrls, this.wallet, this.protocolStore, this.userAgent);
+        this.signalServiceUrls = new SignalServiceUrl[] { signalServiceUrl };
+        return this.signalServiceUrls;
+    }
 
+    private synchronized ChatService getChatService() {
+        if (this.chatService != null) return this.chatService;
+        this.chatService = new ChatService(getSignalServiceUrls(), this.wallet, this.protocolStore, this.userAgent);
+        return this.chatService;
     }
 
-    private void initMessageReceiver() {
-        if (this.messageReceiver != null) return;
+    // The receiver opens a connection to the chat server, so it is only built once it is needed
+    private synchronized SofaMessageReceiver getMessageReceiver() {
+        if (this.messageReceiver != null) return this.messageReceiver;
         this.messageReceiver = new SofaMessageReceiver(
                 this.wallet,
                 this.protocolStore,
                 this.conversationStore,
-                this.signalServiceUrls);
+                getSignalServiceUrls());
+        return this.messageReceiver;
     }
 
-    private void initMessageSender() {
-        if (this.messageSender != null) return;
+    private synchronized SofaMessageSender getMessageSender() {
+        if (this.messageSender != null) return this.messageSender;
         this.messageSender = new SofaMessageSender(
                 this.wallet,
                 this.protocolStore,
                 this.conversationStore,
-                this.signalServiceUrls
+                getSignalServiceUrls(),
+                ServiceEndpoints.get().getConnectivity(),
+                this.attachmentProgressSubject
         );
+        return this.messageSender;
     }
 
     private void initRegistrationTask() {
         if (this.sofaGcmRegister != null) return;
-        this.sofaGcmRegister = new SofaMessageRegistration(this.sharedPreferences, this.chatService, this.protocolStore);
+        this.sofaGcmRegister = new SofaMessageRegistration(this.sharedPreferences, this::getChatService, this.protocolStore);
         this.sofaGcmRegister
                 .registerIfNeeded()
                 .subscribe(
-                        this.messageReceiver::receiveMessagesAsync,
+                        () -> getMessageReceiver().receiveMessagesAsync(),
                         ex -> LogUtil.e(getClass(), "Error during registration: " + ex)
                 );
     }
@@ -248,18 +274,20 @@ public final class SofaMessageManager {
     }
 
     public void resendPendingMessage(final SofaMessage sofaMessage) {
-        this.messageSender.sendPendingMessage(sofaMessage);
+        getMessageSender().sendPendingMessage(sofaMessage);
     }
 
     public DecryptedSignalMessage fetchLatestMessage() throws TimeoutException {
         try {
-            while (this.messageReceiver == null) {
-                Thread.sleep(200);
-            }
-        } catch (final InterruptedException e) {
+            BaseApplication
+                    .get()
+                    .getToshiManager()
+                    .ready(ToshiManager.MESSAGES)
+                    .await();
+        } catch (final RuntimeException e) {
             throw new TimeoutException(e.toString());
         }
-        return this.messageReceiver.fetchLatestMessage();
+        return getMessageReceiver().fetchLatestMessage();
     }
 
     public void clear() {
@@ -267,6 +295,8 @@ public final class SofaMessageManager {
         clearMessageSender();
         clearGcmRegistration();
         clearSubscriptions();
+        SofaPayloadCache.get().clear();
+        ThumbnailCache.get().clear();
         this.protocolStore.deleteAllSessions();
         this.sharedPreferences
                 .edit()
@@ -274,14 +304,14 @@ public final class SofaMessageManager {
                 .apply();
     }
 
-    private void clearMessageReceiver() {
+    private synchronized void clearMessageReceiver() {
         if (this.messageReceiver != null) {
             this.messageReceiver.shutdown();
             this.messageReceiver = null;
         }
     }
 
-    private void clearMessageSender() {
+    private synchronized void clearMessageSender() {
         if (this.messageSender != null) {
             this.messageSender.clear();
             this.messageSender = null;
@@ -0,0 +1,159 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import com.toshi.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import rx.Completable;
+import rx.Scheduler;
+import rx.subjects.BehaviorSubject;
+
+// Runs the startup stages of the managers. A stage starts as soon as every stage it
+// depends on has finished, so independent stages run concurrently on the scheduler.
+// Each stage exposes a ready signal, and the time each stage took is logged as a trace.
+/* package */ class StartupGraph {
+
+    /* package */ interface Stage {
+        void run() throws Exception;
+    }
+
+    private static class Node {
+        private final String name;
+        private final Stage stage;
+        private final List<String> dependencies;
+        private final BehaviorSubject<Boolean> readySubject = BehaviorSubject.create(false);
+        private volatile long startOffsetMs;
+        private volatile long durationMs;
+
+        private Node(final String name, final Stage stage, final List<String> dependencies) {
+            this.name = name;
+            this.stage = stage;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private Completable completion;
+    private long startTime;
+
+    // Dependencies have to be added before the stages that need them,
+    // which keeps the graph free of cycles.
+    /* package */ StartupGraph add(final String name, final Stage stage, final String... dependencies) {
+        if (this.nodes.containsKey(name)) {
+            throw new IllegalArgumentException("Stage already added: " + name);
+        }
+        for (final String dependency : dependencies) {
+            if (!this.nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Unknown dependency " + dependency + " for stage " + name);
+            }
+        }
+        this.nodes.put(name, new Node(name, stage, Arrays.asList(dependencies)));
+        return this;
+    }
+
+    // Starts every stage and completes when all of them have finished.
+    // Calling it again returns the same completion without rerunning anything.
+    /* package */ synchronized Completable start(final Scheduler scheduler) {
+        if (this.completion != null) return this.completion;
+
+        this.startTime = System.nanoTime();
+        final List<Completable> stages = new ArrayList<>(this.nodes.size());
+        for (final Node node : this.nodes.values()) {
+            startNode(node, scheduler);
+            stages.add(ready(node.name));
+        }
+        this.completion = Completable.merge(stages);
+        this.completion.subscribe(this::logTrace, __ -> {});
+        return this.completion;
+    }
+
+    private void startNode(final Node node, final Scheduler scheduler) {
+        final List<Completable> dependencies = new ArrayList<>(node.dependencies.size());
+        for (final String dependency : node.dependencies) {
+            dependencies.add(ready(dependency));
+        }
+
+        Completable
+                .merge(dependencies)
+                .andThen(Completable.fromAction(() -> runNode(node)).subscribeOn(scheduler))
+                .subscribe(
+                        () -> node.readySubject.onNext(true),
+                        ex -> {
+                            LogUtil.exception(getClass(), "Startup stage " + node.name + " failed", ex);
+                            node.readySubject.onError(ex);
+                        }
+                );
+    }
+
+    private void runNode(final Node node) {
+        final long start = System.nanoTime();
+        node.startOffsetMs = toMs(start - this.startTime);
+        try {
+            node.stage.run();
+        } catch (final Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            node.durationMs = toMs(System.nanoTime() - start);
+        }
+    }
+
+    // Completes once the stage has finished, or errors if it or one of its dependencies failed
+    /* package */ Completable ready(final String name) {
+        final Node node = this.nodes.get(name);
+        if (node == null) return Completable.error(new IllegalArgumentException("Unknown stage: " + name));
+        return node.readySubject
+                .filter(isReady -> isReady)
+                .first()
+                .toCompletable();
+    }
+
+    // Start offset and duration, in milliseconds, of every stage that has run
+    /* package */ Map<String, long[]> getTrace() {
+        final Map<String, long[]> trace = new LinkedHashMap<>();
+        for (final Node node : this.nodes.values()) {
+            if (Boolean.TRUE.equals(node.readySubject.getValue())) {
+                trace.put(node.name, new long[] {node.startOffsetMs, node.durationMs});
+            }
+        }
+        return trace;
+    }
+
+    private void logTrace() {
+        final StringBuilder sb = new StringBuilder("Startup trace:");
+        for (final Map.Entry<String, long[]> entry : getTrace().entrySet()) {
+            sb.append(' ')
+                    .append(entry.getKey())
+                    .append(" +")
+                    .append(entry.getValue()[0])
+                    .append("ms ")
+                    .append(entry.getValue()[1])
+                    .append("ms;");
+        }
+        LogUtil.d(getClass(), sb.toString());
+    }
+
+    private static long toMs(final long nanos) {
+        return nanos / 1_000_000;
+    }
+}
@@ -30,6 +30,7 @@ import java.util.concurrent.Executors;
 
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
+import rx.Completable;
 import rx.Single;
 import rx.schedulers.Schedulers;
 import rx.subjects.BehaviorSubject;
@@ -38,7 +39,15 @@ public class ToshiManager {
 
     public static final long CACHE_TIMEOUT = 1000 * 60 * 5;
 
+    // Startup stages that can be waited on with ready()
+    public static final String REALM = "realm";
+    public static final String BALANCE = "balance";
+    public static final String USER = "user";
+    public static final String MESSAGES = "messages";
+    public static final String TRANSACTIONS = "transactions";
+
     private final BehaviorSubject<HDWallet> walletSubject = BehaviorSubject.create();
+    private final BehaviorSubject<StartupGraph> startupSubject = BehaviorSubject.create();
 
     private AppsManager appsManager;
     private BalanceManager balanceManager;
@@ -51,6 +60,7 @@ public class ToshiManager {
     private ExecutorService singleExecutor;
     private boolean areManagersInitialised = false;
     private RealmConfiguration realmConfig;
+    private volatile StartupGraph startupGraph;
 
     public ToshiManager() {
         this.singleExecutor = Executors.newSingleThreadExecutor();
@@ -62,6 +72,7 @@ public class ToshiManager {
         this.transactionManager = new TransactionManager();
         this.recipientManager = new RecipientManager();
         this.walletSubject.onNext(null);
+        this.startupSubject.onNext(null);
 
         tryInit()
                 .subscribe(
@@ -105,18 +116,47 @@ public class ToshiManager {
     }
 
     private Single<ToshiManager> initManagers() {
-        return Single.fromCallable(() -> {
-            if (!this.areManagersInitialised) {
-                initRealm();
-                this.balanceManager.init(this.wallet);
-                this.sofaMessageManager.init(this.wallet);
-                this.transactionManager.init(this.wallet);
-                this.userManager.init(this.wallet);
-                this.reputationManager = new ReputationManager();
-                this.areManagersInitialised = true;
-            }
-            return this;
-        });
+        return Single
+                .fromCallable(this::getOrStartStartupGraph)
+                .flatMap(completion -> completion.toSingleDefault(this))
+                .doOnSuccess(__ -> this.areManagersInitialised = true);
+    }
+
+    // Only one startup runs at a time; callers arriving while it is running wait for the same one
+    private synchronized Completable getOrStartStartupGraph() {
+        if (this.startupGraph == null) {
+            this.startupGraph = buildStartupGraph();
+            this.startupSubject.onNext(this.startupGraph);
+        }
+        final StartupGraph graph = this.startupGraph;
+        return graph
+                .start(Schedulers.io())
+                .doOnError(__ -> resetStartupGraph(graph));
+    }
+
+    private StartupGraph buildStartupGraph() {
+        return new StartupGraph()
+                .add(REALM, this::initRealm)
+                .add(BALANCE, () -> this.balanceManager.init(this.wallet))
+                .add(USER, () -> this.userManager.init(this.wallet), REALM)
+                .add(MESSAGES, () -> this.sofaMessageManager.init(this.wallet), REALM)
+                .add(TRANSACTIONS, () -> this.transactionManager.init(this.wallet), REALM, BALANCE);
+    }
+
+    // A failed startup is dropped so the next init attempt starts from scratch
+    private synchronized void resetStartupGraph(final StartupGraph failedGraph) {
+        if (this.startupGraph != failedGraph) return;
+        this.startupGraph = null;
+        this.startupSubject.onNext(null);
+    }
+
+    // Completes once the given startup stage has finished
+    public Completable ready(final String stage) {
+        return this.startupSubject
+                .filter(graph -> graph != null)
+                .first()
+                .toSingle()
+                .flatMapCompletable(graph -> graph.ready(stage));
     }
 
     private void initRealm() {
@@ -136,16 +176,11 @@ public class ToshiManager {
 
     public final Single<Realm> getRealm() {
         return Single.fromCallable(() -> {
-            while (this.realmConfig == null) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+            // Realm instances are bound to the thread that opens them,
+            // so wait here rather than opening it on the thread that signals ready
+            ready(REALM).await();
             return Realm.getDefaultInstance();
         });
-
     }
 
     public final SofaMessageManager getSofaMessageManager() {
@@ -194,6 +229,8 @@ public class ToshiManager {
         this.transactionManager.clear();
         this.wallet.clear();
         this.areManagersInitialised = false;
+        this.startupGraph = null;
+        this.startupSubject.onNext(null);
         closeDatabase();
         SignalPreferences.clear();
         SharedPrefsUtil.setSignedOut();
@@ -22,6 +22,8 @@ import android.util.Pair;
 
 import com.toshi.R;
 import com.toshi.crypto.HDWallet;
+import com.toshi.crypto.SignatureResult;
+import com.toshi.crypto.util.TypeConverter;
 import com.toshi.exception.UnknownTransactionException;
 import com.toshi.manager.model.PaymentTask;
 import com.toshi.manager.network.EthereumService;
@@ -32,7 +34,6 @@ import com.toshi.model.local.SendState;
 import com.toshi.model.local.UnsignedW3Transaction;
 import com.toshi.model.local.User;
 import com.toshi.model.network.SentTransaction;
-import com.toshi.model.network.ServerTime;
 import com.toshi.model.network.SignedTransaction;
 import com.toshi.model.network.TransactionRequest;
 import com.toshi.model.network.UnsignedTransaction;
@@ -47,8 +48,10 @@ import com.toshi.view.BaseApplication;
 import com.toshi.view.notification.ChatNotificationManager;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
-import rx.Observable;
+import retrofit2.adapter.rxjava.HttpException;
 import rx.Single;
 import rx.Subscription;
 import rx.schedulers.Schedulers;
@@ -61,17 +64,23 @@ import static com.toshi.manager.model.PaymentTask.OUTGOING_EXTERNAL;
 
 public class TransactionManager {
 
+    private static final int MAX_SEND_RETRIES = 2;
+
     private final PublishSubject<PaymentTask> newOutgoingPaymentQueue = PublishSubject.create();
     private final PublishSubject<PaymentTask> newIncomingPaymentQueue = PublishSubject.create();
     private final PublishSubject<Payment> updatePaymentQueue = PublishSubject.create();
 
     private HDWallet wallet;
     private PendingTransactionStore pendingTransactionStore;
+    private TransactionStatusTracker statusTracker;
+    private LocalTransactionBuilder transactionBuilder;
     private CompositeSubscription subscriptions;
 
     /*package */ TransactionManager() {
         initDatabase();
         initSubscriptions();
+        initStatusTracker();
+        initTransactionBuilder();
     }
 
     private void initDatabase() {
@@ -82,9 +91,21 @@ public class TransactionManager {
         this.subscriptions = new CompositeSubscription();
     }
 
+    private void initStatusTracker() {
+        this.statusTracker = new TransactionStatusTracker(
+                this::getTransactionStatuses,
+                this::updatePendingTransaction,
+                Schedulers.io());
+    }
+
+    private void initTransactionBuilder() {
+        this.transactionBuilder = new LocalTransactionBuilder(EthereumService::getApi);
+    }
+
+    // Blocking; runs as a stage of the ToshiManager startup graph
     public TransactionManager init(final HDWallet wallet) {
         this.wallet = wallet;
-        new Thread(this::initEverything).start();
+        initEverything();
         return this;
     }
 
@@ -238,42 +259,40 @@ public class TransactionManager {
     private void updatePendingTransactions() {
         final Subscription sub = this.pendingTransactionStore
                 .loadAllTransactions()
-                .filter(this::isUnconfirmed)
-                .flatMap(pendingTransaction -> Observable.zip(
-                        Observable.just(pendingTransaction),
-                        getTransactionStatus(pendingTransaction),
-                        Pair::new
-                ))
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
-                .onErrorReturn(__ -> new Pair<>(null, null))
                 .subscribe(
-                        pair -> this.updatePendingTransaction(pair.first, pair.second),
-                        this::handlePendingTransactionError
+                        this::trackIfUnconfirmed,
+                        this::handlePendingTransactionError,
+                        this.statusTracker::start
                 );
 
         this.subscriptions.add(sub);
     }
 
-    @NonNull
-    private Observable<Payment> getTransactionStatus(final PendingTransaction pendingTransaction) {
-        return BaseApplication
-                .get()
-                .getBalanceManager()
-                .getTransactionStatus(pendingTransaction.getTxHash())
-                .toObservable();
-    }
-
-    private Boolean isUnconfirmed(final PendingTransaction pendingTransaction) {
+    private void trackIfUnconfirmed(final PendingTransaction pendingTransaction) {
         try {
             final SofaMessage sofaMessage = pendingTransaction.getSofaMessage();
             final Payment payment = SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
-            return payment.getStatus().equals(SofaType.UNCONFIRMED);
+            if (!payment.getStatus().equals(SofaType.UNCONFIRMED)) return;
+            this.statusTracker.track(pendingTransaction, payment, sofaMessage.getCreationTime());
         } catch (final IOException ex) {
-            return false;
+            LogUtil.exception(getClass(), "Unable to parse pending transaction", ex);
         }
     }
 
+    private void trackUnconfirmedTransaction(final PendingTransaction pendingTransaction, final Payment payment) {
+        this.statusTracker.track(pendingTransaction, payment, System.currentTimeMillis());
+    }
+
+    @NonNull
+    private Single<List<Payment>> getTransactionStatuses(final List<String> txHashes) {
+        return BaseApplication
+                .get()
+                .getBalanceManager()
+                .getTransactionStatuses(txHashes);
+    }
+
     public void sendExternalPayment(final String paymentAddress, final String amount) {
         new Payment()
                 .setToAddress(paymentAddress)
@@ -292,6 +311,7 @@ public class TransactionManager {
                         .setTxHash(payment.getTxHash())
                         .setSofaMessage(storedSofaMessage);
         this.pendingTransactionStore.save(pendingTransaction);
+        trackUnconfirmedTransaction(pendingTransaction, payment);
     }
 
     public void addIncomingPayment(final Payment payment) {
@@ -368,7 +388,7 @@ public class TransactionManager {
         final SofaMessage updatedMessage = generateMessageFromPayment(payment, getCurrentLocalUser());
         storedSofaMessage.setPayload(updatedMessage.getPayloadWithHeaders());
         updateMessageState(receiver, storedSofaMessage, SendState.STATE_SENT);
-        storeUnconfirmedTransaction(txHash, storedSofaMessage);
+        storeUnconfirmedTransaction(txHash, storedSofaMessage, payment);
 
         final Recipient recipient = new Recipient(receiver);
         BaseApplication
@@ -405,14 +425,18 @@ public class TransactionManager {
                 .observeOn(Schedulers.io())
                 .subscribeOn(Schedulers.io())
                 .subscribe(
-                        sentTransaction -> handleOutgoingExternalPaymentSuccess(sentTransaction, sofaMessage),
+                        sentTransaction -> handleOutgoingExternalPaymentSuccess(sentTransaction, payment, sofaMessage),
                         error -> handleOutgoingExternalPaymentError(error, payment)
                 );
     }
 
-    private void handleOutgoingExternalPaymentSuccess(final SentTransaction sentTransaction, final SofaMessage sofaMessage) {
+    private void handleOutgoingExternalPaymentSuccess(
+            final SentTransaction sentTransaction,
+            final Payment payment,
+            final SofaMessage sofaMessage) {
         final String txHash = sentTransaction.getTxHash();
-        storeUnconfirmedTransaction(txHash, sofaMessage);
+        payment.setTxHash(txHash);
+        storeUnconfirmedTransaction(txHash, sofaMessage, payment);
     }
 
     private void handleOutgoingExternalPaymentError(final Throwable error, final Payment payment) {
@@ -424,17 +448,15 @@ public class TransactionManager {
 
     public Single<SignedTransaction> signW3Transaction(final UnsignedW3Transaction transaction) {
         final TransactionRequest transactionRequest = generateTransactionRequest(transaction);
-        return EthereumService
-                .getApi()
-                .createTransaction(transactionRequest)
+        // The dapp broadcasts the transaction itself, so the app never learns whether its nonce was used
+        return this.transactionBuilder
+                .createServerTransaction(transactionRequest)
                 .flatMap(this::signTransaction);
     }
 
     private Single<UnsignedTransaction> createUnsignedTransaction(final Payment payment) {
         final TransactionRequest transactionRequest = generateTransactionRequest(payment);
-        return EthereumService
-                .getApi()
-                .createTransaction(transactionRequest);
+        return this.transactionBuilder.createUnsignedTransaction(transactionRequest);
     }
 
     private TransactionRequest generateTransactionRequest(final Payment payment) {
@@ -457,32 +479,49 @@ public class TransactionManager {
     private Single<SentTransaction> signAndSendTransaction(final UnsignedTransaction unsignedTransaction) {
         return Single.zip(
                     signTransaction(unsignedTransaction),
-                    getServerTime(),
+                    this.transactionBuilder.getTimestamp(),
                     Pair::new)
-                .flatMap(pair -> sendSignedTransaction(pair.first, pair.second));
+                // Nothing was sent, so the nonce can be used by the next transaction
+                .doOnError(__ -> this.transactionBuilder.onTransactionNotSent(unsignedTransaction))
+                .flatMap(pair -> sendSignedTransaction(unsignedTransaction, pair.first, pair.second));
     }
 
-    private Single<ServerTime> getServerTime() {
-        return EthereumService
-                .getApi()
-                .getTimestamp();
+    // Signs off the calling thread; a transaction that can't be signed fails instead of going out unsigned
+    private Single<SignedTransaction> signTransaction(final UnsignedTransaction unsignedTransaction) {
+        return Single
+                .fromCallable(() -> TypeConverter.StringHexToByteArray(unsignedTransaction.getTransaction()))
+                .flatMap(transactionBytes -> this.wallet.signAll(Collections.singletonList(transactionBytes)))
+                .map(results -> toSignedTransaction(unsignedTransaction, results.get(0)));
     }
 
-    private Single<SignedTransaction> signTransaction(final UnsignedTransaction unsignedTransaction) {
-        final String signature = this.wallet.signTransaction(unsignedTransaction.getTransaction());
-        final SignedTransaction signedTransaction =
-                new SignedTransaction()
+    private SignedTransaction toSignedTransaction(final UnsignedTransaction unsignedTransaction,
+                                                  final SignatureResult result) {
+        if (!result.isSuccess()) throw new IllegalStateException("Unable to sign transaction", result.getError());
+        return new SignedTransaction()
                 .setEncodedTransaction(unsignedTransaction.getTransaction())
-                .setSignature(signature);
-
-        return Single.just(signedTransaction);
+                .setSignature(result.getSignature());
     }
 
-    private Single<SentTransaction> sendSignedTransaction(final SignedTransaction signedTransaction, final ServerTime serverTime) {
-        final long timestamp = serverTime.get();
+    private Single<SentTransaction> sendSignedTransaction(
+            final UnsignedTransaction unsignedTransaction,
+            final SignedTransaction signedTransaction,
+            final long timestamp) {
         return EthereumService
                 .getApi()
-                .sendSignedTransaction(timestamp, signedTransaction);
+                .sendSignedTransaction(timestamp, signedTransaction)
+                // Resending the same signed transaction is safe; it can only be mined once
+                .retry((attempt, error) -> attempt <= MAX_SEND_RETRIES && error instanceof IOException)
+                .doOnSuccess(__ -> this.transactionBuilder.onTransactionSent(unsignedTransaction))
+                .doOnError(error -> handleSendError(unsignedTransaction, error));
+    }
+
+    private void handleSendError(final UnsignedTransaction unsignedTransaction, final Throwable error) {
+        final boolean wasRejected = error instanceof HttpException && ((HttpException) error).code() < 500;
+        if (wasRejected) {
+            this.transactionBuilder.onTransactionNotSent(unsignedTransaction);
+        } else {
+            this.transactionBuilder.onTransactionOutcomeUnknown(unsignedTransaction);
+        }
     }
 
     private void updateMessageState(final User user, final SofaMessage message, final @SendState.State int sendState) {
@@ -508,23 +547,41 @@ public class TransactionManager {
         LogUtil.exception(getClass(), "Error when updating payment", throwable);
     }
 
-    private void storeUnconfirmedTransaction(final String txHash, final SofaMessage message) {
+    private void storeUnconfirmedTransaction(final String txHash, final SofaMessage message, final Payment payment) {
         final PendingTransaction pendingTransaction = new PendingTransaction()
                                                             .setSofaMessage(message)
                                                             .setTxHash(txHash);
         this.pendingTransactionStore.save(pendingTransaction);
+        trackUnconfirmedTransaction(pendingTransaction, payment);
     }
 
     // Returns false if this is a new transaction that the app is unaware of.
     // Returns true if the transaction was correctly updated.
     private boolean updatePendingTransaction(final PendingTransaction pendingTransaction, final Payment updatedPayment) {
+        return updatePendingTransaction(pendingTransaction, null, updatedPayment);
+    }
+
+    // existingPayment is the already parsed payload of the pending transaction, if available.
+    private boolean updatePendingTransaction(
+            final PendingTransaction pendingTransaction,
+            final Payment existingPayment,
+            final Payment updatedPayment) {
         if (pendingTransaction == null) {
             return false;
         }
 
+        if (!updatedPayment.getStatus().equals(SofaType.UNCONFIRMED)) {
+            this.statusTracker.untrack(pendingTransaction.getTxHash());
+        }
+
+        if (updatedPayment.getStatus().equals(SofaType.FAILED)) {
+            // A dropped or replaced transaction can leave a gap in the nonces
+            this.transactionBuilder.invalidate();
+        }
+
         final SofaMessage updatedMessage;
         try {
-            updatedMessage = updateStatusFromPendingTransaction(pendingTransaction, updatedPayment);
+            updatedMessage = updateStatusFromPendingTransaction(pendingTransaction, existingPayment, updatedPayment);
         } catch (final IOException | UnknownTransactionException ex) {
             LogUtil.exception(getClass(), "Unable to update pending transaction", ex);
             return false;
@@ -542,13 +599,18 @@ public class TransactionManager {
         LogUtil.exception(getClass(), "Error during updating pending transaction", throwable);
     }
 
-    private SofaMessage updateStatusFromPendingTransaction(final PendingTransaction pendingTransaction, final Payment updatedPayment) throws IOException, UnknownTransactionException {
+    private SofaMessage updateStatusFromPendingTransaction(
+            final PendingTransaction pendingTransaction,
+            final Payment parsedPayment,
+            final Payment updatedPayment) throws IOException, UnknownTransactionException {
         if (pendingTransaction == null) {
             throw new UnknownTransactionException("PendingTransaction could not be found. This transaction probably came from outside of Toshi.");
         }
 
         final SofaMessage sofaMessage = pendingTransaction.getSofaMessage();
-        final Payment existingPayment = SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
+        final Payment existingPayment = parsedPayment != null
+                ? parsedPayment
+                : SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
 
         existingPayment.setStatus(updatedPayment.getStatus());
 
@@ -571,6 +633,7 @@ public class TransactionManager {
     }
 
     public void clear() {
+        this.statusTracker.stop();
         this.subscriptions.clear();
     }
 }
\ No newline at end of file
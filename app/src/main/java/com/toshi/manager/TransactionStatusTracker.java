@@ -0,0 +1,212 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import com.toshi.model.local.PendingTransaction;
+import com.toshi.model.sofa.Payment;
+import com.toshi.model.sofa.SofaType;
+import com.toshi.util.LogUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import rx.Completable;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Single;
+import rx.Subscription;
+
+// Keeps track of unconfirmed transactions and polls the server for their status.
+// Fresh transactions are polled often, older transactions less and less frequently.
+// Statuses are fetched in batches, with a bounded number of requests in flight.
+/* package */ class TransactionStatusTracker {
+
+    /* package */ interface StatusSource {
+        Single<List<Payment>> getStatuses(List<String> txHashes);
+    }
+
+    /* package */ interface Listener {
+        void onStatusChanged(PendingTransaction pendingTransaction, Payment existingPayment, Payment updatedPayment);
+    }
+
+    /* package */ static final int MAX_BATCH_SIZE = 20;
+    /* package */ static final int MAX_CONCURRENT_REQUESTS = 2;
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private final StatusSource statusSource;
+    private final Listener listener;
+    private final Scheduler scheduler;
+    private final Map<String, TrackedTransaction> trackedTransactions;
+    private final AtomicBoolean isPolling;
+    private Subscription tickSubscription;
+
+    /* package */ TransactionStatusTracker(
+            final StatusSource statusSource,
+            final Listener listener,
+            final Scheduler scheduler) {
+        this.statusSource = statusSource;
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.trackedTransactions = new ConcurrentHashMap<>();
+        this.isPolling = new AtomicBoolean(false);
+    }
+
+    // The payment is the already parsed payload of the pending transaction
+    // so it doesn't have to be parsed again on every poll.
+    // submittedAt decides how often the transaction is polled.
+    /* package */ void track(final PendingTransaction pendingTransaction, final Payment payment, final long submittedAt) {
+        final String txHash = pendingTransaction.getTxHash();
+        if (txHash == null) return;
+        this.trackedTransactions.put(txHash, new TrackedTransaction(pendingTransaction, payment, submittedAt));
+    }
+
+    /* package */ void untrack(final String txHash) {
+        if (txHash == null) return;
+        this.trackedTransactions.remove(txHash);
+    }
+
+    /* package */ int getTrackedCount() {
+        return this.trackedTransactions.size();
+    }
+
+    /* package */ synchronized void start() {
+        if (this.tickSubscription != null && !this.tickSubscription.isUnsubscribed()) return;
+        this.tickSubscription = Observable
+                .interval(0, TICK_INTERVAL, TimeUnit.MILLISECONDS, this.scheduler)
+                .onBackpressureDrop()
+                .subscribe(
+                        __ -> pollIfIdle(),
+                        this::handleTickError
+                );
+    }
+
+    /* package */ synchronized void stop() {
+        this.trackedTransactions.clear();
+        if (this.tickSubscription == null) return;
+        this.tickSubscription.unsubscribe();
+        this.tickSubscription = null;
+    }
+
+    private void pollIfIdle() {
+        // Skip this tick if the previous poll is still in flight
+        if (!this.isPolling.compareAndSet(false, true)) return;
+        poll(System.currentTimeMillis())
+                .doAfterTerminate(() -> this.isPolling.set(false))
+                .subscribe(
+                        () -> {},
+                        this::handleTickError
+                );
+    }
+
+    /* package */ Completable poll(final long now) {
+        final List<TrackedTransaction> due = getDueTransactions(now);
+        if (due.isEmpty()) return Completable.complete();
+
+        for (final TrackedTransaction tracked : due) {
+            tracked.scheduleNextPoll(now);
+        }
+
+        return Observable
+                .from(toBatches(due))
+                .flatMap(this::fetchBatch, MAX_CONCURRENT_REQUESTS)
+                .doOnNext(this::handleUpdatedPayment)
+                .toCompletable();
+    }
+
+    private List<TrackedTransaction> getDueTransactions(final long now) {
+        final List<TrackedTransaction> due = new ArrayList<>();
+        for (final TrackedTransaction tracked : this.trackedTransactions.values()) {
+            if (tracked.isDue(now)) due.add(tracked);
+        }
+        return due;
+    }
+
+    private List<List<String>> toBatches(final List<TrackedTransaction> due) {
+        final List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < due.size(); i += MAX_BATCH_SIZE) {
+            final int end = Math.min(i + MAX_BATCH_SIZE, due.size());
+            final List<String> batch = new ArrayList<>(end - i);
+            for (final TrackedTransaction tracked : due.subList(i, end)) {
+                batch.add(tracked.pendingTransaction.getTxHash());
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private Observable<Payment> fetchBatch(final List<String> txHashes) {
+        return this.statusSource
+                .getStatuses(txHashes)
+                .subscribeOn(this.scheduler)
+                .onErrorReturn(throwable -> {
+                    // The transactions stay tracked and are retried on their next poll
+                    LogUtil.exception(getClass(), "Error fetching transaction statuses", throwable);
+                    return Collections.emptyList();
+                })
+                .toObservable()
+                .flatMapIterable(payments -> payments);
+    }
+
+    private void handleUpdatedPayment(final Payment updatedPayment) {
+        if (updatedPayment == null || SofaType.UNCONFIRMED.equals(updatedPayment.getStatus())) return;
+        final TrackedTransaction tracked = this.trackedTransactions.remove(updatedPayment.getTxHash());
+        if (tracked == null) return;
+        this.listener.onStatusChanged(tracked.pendingTransaction, tracked.payment, updatedPayment);
+    }
+
+    private void handleTickError(final Throwable throwable) {
+        LogUtil.exception(getClass(), "Error while polling transaction statuses", throwable);
+    }
+
+    /* package */ static long getPollInterval(final long age) {
+        if (age < TimeUnit.MINUTES.toMillis(2)) return TimeUnit.SECONDS.toMillis(5);
+        if (age < TimeUnit.MINUTES.toMillis(10)) return TimeUnit.SECONDS.toMillis(20);
+        if (age < TimeUnit.HOURS.toMillis(1)) return TimeUnit.MINUTES.toMillis(1);
+        return TimeUnit.MINUTES.toMillis(5);
+    }
+
+    private static class TrackedTransaction {
+        private final PendingTransaction pendingTransaction;
+        private final Payment payment;
+        private final long submittedAt;
+        private volatile long nextPollAt;
+
+        private TrackedTransaction(
+                final PendingTransaction pendingTransaction,
+                final Payment payment,
+                final long submittedAt) {
+            this.pendingTransaction = pendingTransaction;
+            this.payment = payment;
+            this.submittedAt = submittedAt;
+            this.nextPollAt = submittedAt;
+        }
+
+        private boolean isDue(final long now) {
+            return now >= this.nextPollAt;
+        }
+
+        private void scheduleNextPoll(final long now) {
+            this.nextPollAt = now + getPollInterval(now - this.submittedAt);
+        }
+    }
+}
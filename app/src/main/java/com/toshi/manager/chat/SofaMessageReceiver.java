@@ -38,6 +38,7 @@ import com.toshi.model.sofa.SofaMessage;
 import com.toshi.model.sofa.SofaType;
 import com.toshi.util.FileUtil;
 import com.toshi.util.LogUtil;
+import com.toshi.util.ThumbnailGenerator;
 import com.toshi.view.BaseApplication;
 import com.toshi.view.notification.ChatNotificationManager;
 
@@ -266,6 +267,7 @@ public class SofaMessageReceiver {
         }
 
         this.conversationStore.saveNewMessage(senderRecipient, remoteMessage);
+        ThumbnailGenerator.generateInBackground(remoteMessage.getAttachmentFilePath());
     }
 
     private Single<Recipient> generateRecipientFromSignalMessage(final User sender, final DecryptedSignalMessage signalMessage) {
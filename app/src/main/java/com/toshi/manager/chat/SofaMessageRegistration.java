@@ -40,6 +40,7 @@ import org.whispersystems.libsignal.util.guava.Optional;
 import java.io.IOException;
 
 import rx.Completable;
+import rx.functions.Func0;
 import rx.schedulers.Schedulers;
 
 public class SofaMessageRegistration {
@@ -47,19 +48,19 @@ public class SofaMessageRegistration {
     private static final String ONBOARDING_BOT_NAME = "ToshiBot";
 
     private final SharedPreferences sharedPreferences;
-    private final ChatService chatService;
+    private final Func0<ChatService> chatServiceSource;
     private final ProtocolStore protocolStore;
     private String gcmToken;
 
     public SofaMessageRegistration(
             final SharedPreferences sharedPreferences,
-            final ChatService chatService,
+            final Func0<ChatService> chatServiceSource,
             final ProtocolStore protocolStore) {
         this.sharedPreferences = sharedPreferences;
-        this.chatService = chatService;
+        this.chatServiceSource = chatServiceSource;
         this.protocolStore = protocolStore;
 
-        if (this.sharedPreferences == null || this.chatService == null || this.protocolStore == null) {
+        if (this.sharedPreferences == null || this.chatServiceSource == null || this.protocolStore == null) {
             throw new NullPointerException("Initialised with null");
         }
     }
@@ -80,7 +81,8 @@ public class SofaMessageRegistration {
     }
 
     private Completable registerWithServer() {
-        return this.chatService
+        return this.chatServiceSource
+                .call()
                 .registerKeys(this.protocolStore)
                 .doOnCompleted(SignalPreferences::setRegisteredWithServer)
                 .doOnCompleted(this::tryRegisterGcm)
@@ -102,7 +104,7 @@ public class SofaMessageRegistration {
         }
         try {
             final Optional<String> optional = Optional.of(this.gcmToken);
-            this.chatService.setGcmId(optional);
+            this.chatServiceSource.call().setGcmId(optional);
             this.sharedPreferences.edit().putBoolean
                     (RegistrationIntentService.CHAT_SERVICE_SENT_TOKEN_TO_SERVER, true).apply();
             this.gcmToken = null;
@@ -116,7 +118,7 @@ public class SofaMessageRegistration {
     public Completable tryUnregisterGcm() {
         return Completable.fromAction(() -> {
                 try {
-                    this.chatService.setGcmId(Optional.absent());
+                    this.chatServiceSource.call().setGcmId(Optional.absent());
                     this.sharedPreferences.edit().putBoolean
                             (RegistrationIntentService.CHAT_SERVICE_SENT_TOKEN_TO_SERVER, false).apply();
                 } catch (IOException e) {
@@ -24,7 +24,9 @@ import com.toshi.BuildConfig;
 import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.signal.store.ProtocolStore;
 import com.toshi.exception.GroupCreationException;
+import com.toshi.manager.model.AttachmentProgress;
 import com.toshi.manager.model.SofaMessageTask;
+import com.toshi.manager.store.AttachmentStore;
 import com.toshi.manager.store.ConversationStore;
 import com.toshi.manager.store.PendingMessageStore;
 import com.toshi.model.local.Group;
@@ -34,7 +36,7 @@ import com.toshi.model.local.SendState;
 import com.toshi.model.sofa.OutgoingAttachment;
 import com.toshi.model.sofa.SofaMessage;
 import com.toshi.util.LogUtil;
-import com.toshi.view.BaseApplication;
+import com.toshi.util.ThumbnailGenerator;
 
 import org.whispersystems.libsignal.SignalProtocolAddress;
 import org.whispersystems.libsignal.util.Hex;
@@ -51,11 +53,16 @@ import org.whispersystems.signalservice.internal.push.SignalServiceUrl;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import rx.Scheduler;
 import rx.Single;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
+import rx.subjects.BehaviorSubject;
 import rx.subjects.PublishSubject;
 import rx.subscriptions.CompositeSubscription;
 
@@ -64,6 +71,8 @@ import static com.toshi.util.FileUtil.buildSignalServiceAttachment;
 public class SofaMessageSender {
 
     private final static String USER_AGENT = "Android " + BuildConfig.APPLICATION_ID + " - " + BuildConfig.VERSION_NAME +  ":" + BuildConfig.VERSION_CODE;
+    private final static int MAX_UPLOAD_ATTEMPTS = 3;
+    private final static long RECONNECT_TIMEOUT_MINUTES = 2;
 
     private final CompositeSubscription subscriptions;
     private final ConversationStore conversationStore;
@@ -71,23 +80,43 @@ public class SofaMessageSender {
     private final PendingMessageStore pendingMessageStore;
     private final ProtocolStore protocolStore;
     private final PublishSubject<SofaMessageTask> messageQueue;
-    private final SignalServiceMessageSender signalMessageSender;
+    private final PublishSubject<SofaMessageTask> attachmentQueue;
+    private final PublishSubject<AttachmentProgress> attachmentProgress;
+    private final ExecutorService uploadExecutor;
+    private final Scheduler uploadScheduler;
+    private final SignalServiceUrl[] urls;
+    private final BehaviorSubject<Boolean> connectivity;
+    private SignalServiceMessageSender signalMessageSender;
 
 
     public SofaMessageSender(@NonNull final HDWallet wallet,
                              @NonNull final ProtocolStore protocolStore,
                              @NonNull final ConversationStore conversationStore,
-                             @NonNull final SignalServiceUrl[] urls) {
+                             @NonNull final SignalServiceUrl[] urls,
+                             @NonNull final BehaviorSubject<Boolean> connectivity,
+                             @NonNull final PublishSubject<AttachmentProgress> attachmentProgress) {
         this.conversationStore = conversationStore;
         this.messageQueue = PublishSubject.create();
+        this.attachmentQueue = PublishSubject.create();
+        this.attachmentProgress = attachmentProgress;
+        this.uploadExecutor = Executors.newSingleThreadExecutor();
+        this.uploadScheduler = Schedulers.from(this.uploadExecutor);
         this.pendingMessageStore = new PendingMessageStore();
         this.protocolStore = protocolStore;
         this.subscriptions = new CompositeSubscription();
         this.wallet = wallet;
+        this.urls = urls;
+        this.connectivity = connectivity;
 
+        attachSubscriber();
+    }
+
+    // Connecting to the chat server loads its trust store, so it is left until the first message goes out
+    private synchronized SignalServiceMessageSender getSignalMessageSender() {
+        if (this.signalMessageSender != null) return this.signalMessageSender;
         this.signalMessageSender =
                 new SignalServiceMessageSender(
-                        urls,
+                        this.urls,
                         this.wallet.getOwnerAddress(),
                         this.protocolStore.getPassword(),
                         this.protocolStore,
@@ -95,8 +124,7 @@ public class SofaMessageSender {
                         Optional.absent(),
                         Optional.absent()
                 );
-
-        attachSubscriber();
+        return this.signalMessageSender;
     }
 
     private void attachSubscriber() {
@@ -108,7 +136,16 @@ public class SofaMessageSender {
                                 this::processTask,
                                 this::handleMessageError
                         );
-        this.subscriptions.add(sub);
+
+        // Attachments are uploaded one at a time on their own thread so they don't hold up other messages
+        final Subscription uploadSub =
+                this.attachmentQueue
+                        .observeOn(this.uploadScheduler)
+                        .subscribe(
+                                this::uploadAndSend,
+                                this::handleMessageError
+                        );
+        this.subscriptions.addAll(sub, uploadSub);
     }
 
     private void processTask(final SofaMessageTask messageTask) {
@@ -167,7 +204,7 @@ public class SofaMessageSender {
                         group.getAvatar().getStream());
                 final SignalServiceDataMessage groupDataMessage = new SignalServiceDataMessage(System.currentTimeMillis(), signalGroup, null, null);
 
-                this.signalMessageSender.sendMessage(group.getMemberAddresses(), groupDataMessage);
+                getSignalMessageSender().sendMessage(group.getMemberAddresses(), groupDataMessage);
                 return group;
             } catch (final IOException | EncapsulatedExceptions ex) {
                 throw new GroupCreationException(ex);
@@ -176,27 +213,89 @@ public class SofaMessageSender {
     }
 
     private void sendMessageToRecipient(final SofaMessageTask messageTask, final boolean saveMessageToDatabase) {
+        final SofaMessage message = messageTask.getSofaMessage();
+        if (saveMessageToDatabase) {
+            this.conversationStore.saveNewMessage(messageTask.getReceiver(), message);
+        }
+
+        if (message.hasAttachment()) {
+            this.attachmentQueue.onNext(messageTask);
+            return;
+        }
+
+        trySendMessageToRecipient(messageTask, saveMessageToDatabase, true);
+    }
+
+    // The attachment is uploaded as part of sending the message, so the message only goes out once
+    // the upload is complete. The first attempt is made straight away, which marks the message as
+    // pending if there is no connection; an interrupted upload is started again once there is one.
+    private void uploadAndSend(final SofaMessageTask messageTask) {
+        if (messageTask.getAction() == SofaMessageTask.SEND_AND_SAVE) adoptAttachment(messageTask);
+        uploadAndSend(messageTask, 1);
+    }
+
+    // Hashing and moving the attachment into the store is left to the upload thread,
+    // so the message is saved and shown without waiting for it
+    private void adoptAttachment(final SofaMessageTask messageTask) {
+        final SofaMessage message = messageTask.getSofaMessage();
+        final String path = message.getAttachmentFilePath();
+        final String storedPath = AttachmentStore.get().adopt(path);
+        if (storedPath != null && !storedPath.equals(path)) {
+            message.setAttachmentFilePath(storedPath);
+            updateExistingMessage(messageTask.getReceiver(), message);
+        }
+        ThumbnailGenerator.generateInBackground(message.getAttachmentFilePath());
+    }
+
+    private void uploadAndSend(final SofaMessageTask messageTask, final int attempt) {
+        final boolean saveMessageToDatabase = messageTask.getAction() == SofaMessageTask.SEND_AND_SAVE;
+        final boolean isLastAttempt = attempt == MAX_UPLOAD_ATTEMPTS;
+        if (trySendMessageToRecipient(messageTask, saveMessageToDatabase, isLastAttempt)) return;
+        LogUtil.i(getClass(), "Attachment upload interrupted; retrying when connected.");
+        retryWhenConnected(messageTask, attempt + 1);
+    }
+
+    // The upload thread moves on to the next attachment while this one waits for a connection,
+    // or for the timeout to pass, after which it is tried anyway
+    private void retryWhenConnected(final SofaMessageTask messageTask, final int attempt) {
+        final Subscription sub =
+                this.connectivity
+                        .filter(isConnected -> isConnected)
+                        .first()
+                        .timeout(RECONNECT_TIMEOUT_MINUTES, TimeUnit.MINUTES)
+                        .onErrorReturn(__ -> false)
+                        .observeOn(this.uploadScheduler)
+                        .subscribe(
+                                __ -> uploadAndSend(messageTask, attempt),
+                                this::handleMessageError
+                        );
+        this.subscriptions.add(sub);
+    }
+
+    // Returns false if sending failed and can be retried; the message is only marked as
+    // failed once isLastAttempt is true.
+    private boolean trySendMessageToRecipient(final SofaMessageTask messageTask,
+                                              final boolean saveMessageToDatabase,
+                                              final boolean isLastAttempt) {
         final Recipient receiver = messageTask.getReceiver();
         if (receiver.isGroup()) {
-            sendMessageToGroup(messageTask, saveMessageToDatabase);
+            return trySendMessageToGroup(messageTask, saveMessageToDatabase, isLastAttempt);
         } else {
-            sendMessageToUser(messageTask, saveMessageToDatabase);
+            return trySendMessageToUser(messageTask, saveMessageToDatabase, isLastAttempt);
         }
     }
 
-    private void sendMessageToGroup(final SofaMessageTask messageTask, final boolean saveMessageToDatabase) {
+    private boolean trySendMessageToGroup(final SofaMessageTask messageTask,
+                                          final boolean saveMessageToDatabase,
+                                          final boolean isLastAttempt) {
         final Recipient receiver = messageTask.getReceiver();
         final SofaMessage message = messageTask.getSofaMessage();
 
-        if (saveMessageToDatabase) {
-            this.conversationStore.saveNewMessage(receiver, message);
-        }
-
-        if (!BaseApplication.get().isConnected() && saveMessageToDatabase) {
+        if (!this.connectivity.getValue() && saveMessageToDatabase) {
             message.setSendState(SendState.STATE_PENDING);
             updateExistingMessage(receiver, message);
             savePendingMessage(receiver, message);
-            return;
+            return true;
         }
 
         try {
@@ -208,6 +307,7 @@ public class SofaMessageSender {
             }
         } catch (final IOException ex) {
             LogUtil.error(getClass(), ex.toString());
+            if (!isLastAttempt) return false;
             if (saveMessageToDatabase) {
                 message.setSendState(SendState.STATE_FAILED);
                 updateExistingMessage(receiver, message);
@@ -218,21 +318,20 @@ public class SofaMessageSender {
                 protocolStore.saveIdentity(new SignalProtocolAddress(uie.getE164Number(), SignalServiceAddress.DEFAULT_DEVICE_ID), uie.getIdentityKey());
             }
         }
+        return true;
     }
 
-    private void sendMessageToUser(final SofaMessageTask messageTask, final boolean saveMessageToDatabase) {
+    private boolean trySendMessageToUser(final SofaMessageTask messageTask,
+                                         final boolean saveMessageToDatabase,
+                                         final boolean isLastAttempt) {
         final Recipient receiver = messageTask.getReceiver();
         final SofaMessage message = messageTask.getSofaMessage();
 
-        if (saveMessageToDatabase) {
-            this.conversationStore.saveNewMessage(receiver, message);
-        }
-
-        if (!BaseApplication.get().isConnected() && saveMessageToDatabase) {
+        if (!this.connectivity.getValue() && saveMessageToDatabase) {
             message.setSendState(SendState.STATE_PENDING);
             updateExistingMessage(receiver, message);
             savePendingMessage(receiver, message);
-            return;
+            return true;
         }
 
         try {
@@ -249,23 +348,25 @@ public class SofaMessageSender {
                     ue.getIdentityKey());
         } catch (final IOException ex) {
             LogUtil.error(getClass(), ex.toString());
+            if (!isLastAttempt) return false;
             if (saveMessageToDatabase) {
                 message.setSendState(SendState.STATE_FAILED);
                 updateExistingMessage(receiver, message);
                 savePendingMessage(receiver, message);
             }
         }
+        return true;
     }
 
     private void sendToSignal(final List<SignalServiceAddress> signalAddresses, final SofaMessageTask messageTask) throws IOException, EncapsulatedExceptions {
         final SignalServiceDataMessage message = buildMessage(messageTask);
-        this.signalMessageSender.sendMessage(signalAddresses, message);
+        getSignalMessageSender().sendMessage(signalAddresses, message);
     }
 
     private void sendToSignal(final String signalAddress, final SofaMessageTask messageTask) throws UntrustedIdentityException, IOException {
         final SignalServiceAddress receivingAddress = new SignalServiceAddress(signalAddress);
         final SignalServiceDataMessage message = buildMessage(messageTask);
-        this.signalMessageSender.sendMessage(receivingAddress, message);
+        getSignalMessageSender().sendMessage(receivingAddress, message);
     }
 
     private SignalServiceDataMessage buildMessage(final SofaMessageTask messageTask) throws FileNotFoundException {
@@ -294,7 +395,9 @@ public class SofaMessageSender {
         try {
             final OutgoingAttachment outgoingAttachment = new OutgoingAttachment(messageTask.getSofaMessage());
             if (outgoingAttachment.isValid()) {
-                final SignalServiceAttachment signalAttachment = buildSignalServiceAttachment(outgoingAttachment);
+                final String messageId = messageTask.getSofaMessage().getPrivateKey();
+                final SignalServiceAttachment signalAttachment =
+                        buildSignalServiceAttachment(outgoingAttachment, new UploadProgressListener(messageId));
                 messageBuilder.withAttachment(signalAttachment);
             }
         } catch (final FileNotFoundException | IllegalStateException ex) {
@@ -320,5 +423,24 @@ public class SofaMessageSender {
 
     public void clear() {
         this.subscriptions.clear();
+        this.uploadExecutor.shutdownNow();
+    }
+
+    // Reported as the attachment stream is read in chunks; only whole percentage changes are emitted
+    private class UploadProgressListener implements SignalServiceAttachment.ProgressListener {
+        private final String messageId;
+        private int lastPercentage = -1;
+
+        private UploadProgressListener(final String messageId) {
+            this.messageId = messageId;
+        }
+
+        @Override
+        public void onAttachmentProgress(final long total, final long progress) {
+            final AttachmentProgress attachmentProgress = new AttachmentProgress(this.messageId, progress, total);
+            if (attachmentProgress.getPercentage() == this.lastPercentage) return;
+            this.lastPercentage = attachmentProgress.getPercentage();
+            SofaMessageSender.this.attachmentProgress.onNext(attachmentProgress);
+        }
     }
 }
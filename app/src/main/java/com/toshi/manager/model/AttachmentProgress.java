@@ -0,0 +1,53 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.model;
+
+
+// Upload progress of the attachment of an outgoing message
+public final class AttachmentProgress {
+
+    private final String messageId;
+    private final long bytesUploaded;
+    private final long totalBytes;
+
+    public AttachmentProgress(final String messageId, final long bytesUploaded, final long totalBytes) {
+        this.messageId = messageId;
+        this.bytesUploaded = bytesUploaded;
+        this.totalBytes = totalBytes;
+    }
+
+    public String getMessageId() {
+        return this.messageId;
+    }
+
+    public long getBytesUploaded() {
+        return this.bytesUploaded;
+    }
+
+    public long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    public int getPercentage() {
+        if (this.totalBytes <= 0) return 0;
+        return (int) Math.min(100, this.bytesUploaded * 100 / this.totalBytes);
+    }
+
+    public boolean isComplete() {
+        return this.totalBytes > 0 && this.bytesUploaded >= this.totalBytes;
+    }
+}
@@ -18,15 +18,11 @@
 package com.toshi.manager.network;
 
 
-import com.squareup.moshi.Moshi;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.OfflineCacheInterceptor;
 import com.toshi.manager.network.interceptor.ReadFromCacheInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.model.adapter.BigDecimalAdapter;
-import com.toshi.model.adapter.BigIntegerAdapter;
-import com.toshi.R;
-import com.toshi.view.BaseApplication;
+import com.toshi.model.adapter.MoshiProvider;
 
 import java.io.File;
 
@@ -40,7 +36,7 @@ import rx.schedulers.Schedulers;
 
 public class CurrencyService {
 
-    private static CurrencyService instance;
+    private static volatile CurrencyService instance;
 
     private final CurrencyInterface currencyInterface;
     private final OkHttpClient.Builder client;
@@ -64,26 +60,23 @@ public class CurrencyService {
     }
 
     private CurrencyService() {
+        ServicePrewarmer.warnIfMainThread(CurrencyService.class);
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory
                 .createWithScheduler(Schedulers.io());
-        final File cachePath = new File(BaseApplication.get().getCacheDir(), "ratesCache");
-        this.client = new OkHttpClient
-                .Builder()
+        final File cachePath = new File(ServiceEndpoints.get().getCacheDir(), "ratesCache");
+        this.client = ServiceEndpoints
+                .get()
+                .newClientBuilder()
                 .cache(new Cache(cachePath, 1024 * 1024))
-                .addNetworkInterceptor(new ReadFromCacheInterceptor())
-                .addInterceptor(new OfflineCacheInterceptor());
+                .addNetworkInterceptor(new ReadFromCacheInterceptor(() -> ServiceEndpoints.get().isConnected()))
+                .addInterceptor(new OfflineCacheInterceptor(() -> ServiceEndpoints.get().isConnected()));
 
         addUserAgentHeader();
         addLogging();
 
-        final Moshi moshi = new Moshi.Builder()
-                .add(new BigIntegerAdapter())
-                .add(new BigDecimalAdapter())
-                .build();
-
         final Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BaseApplication.get().getResources().getString(R.string.currency_url))
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .baseUrl(ServiceEndpoints.get().getCurrencyUrl())
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(client.build())
                 .build();
@@ -0,0 +1,46 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import com.toshi.view.BaseApplication;
+
+import java.io.File;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+
+// Fetches dapp pages for the WebView. Responses are streamed to the page as they arrive,
+// so no interceptor here may read the whole body, and the WebView's own headers
+// (such as its User-Agent) are passed on untouched.
+public class DappHttpClient {
+
+    private static final String CACHE_DIRECTORY = "ToshiDappCache";
+    private static final int CACHE_SIZE = 1024 * 1024 * 20;
+
+    private static OkHttpClient client;
+
+    public static synchronized OkHttpClient get() {
+        if (client == null) {
+            final File cacheDir = new File(BaseApplication.get().getCacheDir(), CACHE_DIRECTORY);
+            client = new OkHttpClient().newBuilder()
+                    .cache(new Cache(cacheDir, CACHE_SIZE))
+                    .build();
+        }
+        return client;
+    }
+}
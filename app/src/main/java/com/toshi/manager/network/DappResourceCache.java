@@ -0,0 +1,247 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.webkit.CookieManager;
+
+import com.toshi.R;
+import com.toshi.manager.network.rpc.JsonRpcProxyServer;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Completable;
+import rx.schedulers.Schedulers;
+
+// Resources shared by every dapp WebView in the process. The SOFA script is built once,
+// and pages and static assets go through DappHttpClient's disk cache, so a repeat visit
+// only revalidates what it already has. Recently opened dapps are warmed in the background.
+public class DappResourceCache {
+
+    private static final String PREFS_NAME = "dapp_resource_cache";
+    private static final String RECENT_DAPPS_KEY = "recent_dapps";
+    private static final String RECENT_DAPPS_SEPARATOR = "\n";
+    private static final int MAX_RECENT_DAPPS = 5;
+    private static final long MIN_PREFETCH_INTERVAL = TimeUnit.MINUTES.toMillis(15);
+    private static final String SCRIPT_ENCODING = "utf-8";
+    // OkHttp negotiates compression and revalidation itself, so callers always get a whole,
+    // decompressed body rather than a range or a bare 304
+    private static final List<String> DROPPED_REQUEST_HEADERS = Arrays.asList(
+            "accept-encoding", "range", "if-none-match", "if-modified-since");
+    private static final List<String> CACHEABLE_ASSET_EXTENSIONS = Arrays.asList(
+            "js", "css", "png", "jpg", "jpeg", "gif", "svg", "webp", "ico", "woff", "woff2", "ttf");
+
+    private static DappResourceCache instance;
+
+    private final SharedPreferences prefs;
+    private byte[] sofaScript;
+    private long lastPrefetch;
+
+    public static synchronized DappResourceCache get() {
+        if (instance == null) {
+            instance = new DappResourceCache();
+        }
+        return instance;
+    }
+
+    private DappResourceCache() {
+        this.prefs = BaseApplication.get().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // Blocks while the script is read the first time; call it off the main thread.
+    public synchronized byte[] getSofaScript() throws IOException {
+        if (this.sofaScript == null) {
+            this.sofaScript = buildSofaScript();
+        }
+        return this.sofaScript;
+    }
+
+    private byte[] buildSofaScript() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final InputStream stream = BaseApplication.get().getResources().openRawResource(R.raw.sofa);
+        final BufferedReader in = new BufferedReader(new InputStreamReader(stream));
+
+        sb.append(getRcpUrlInjection());
+
+        try {
+            String str;
+            while ((str = in.readLine()) != null) {
+                sb.append(str);
+                sb.append("\n");
+            }
+        } finally {
+            in.close();
+        }
+
+        return ("<script>" + sb.toString() + "</script>\n").getBytes(Charset.forName(SCRIPT_ENCODING));
+    }
+
+    private String getRcpUrlInjection() {
+        return String.format("window.SOFA = {config: {rcpUrl: \"%s\"}};", getRcpUrl());
+    }
+
+    // Dapps talk to the node through the in-app proxy, or directly if it can't be started
+    private String getRcpUrl() {
+        try {
+            return JsonRpcProxyServer.get().start();
+        } catch (final IOException ex) {
+            LogUtil.exception(getClass(), "Unable to start JSON-RPC proxy", ex);
+            return BaseApplication.get().getResources().getString(R.string.rcp_url);
+        }
+    }
+
+    // Fetches a page or asset through the disk cache. Fresh responses come straight from disk,
+    // stale ones are revalidated with the stored ETag or Last-Modified.
+    // The WebView's cookies are sent, and the ones the server sets are stored, as they would be had it loaded the url itself.
+    public Response fetch(@NonNull final String url,
+                          @Nullable final Map<String, String> requestHeaders) throws IOException {
+        final Request.Builder requestBuilder = new Request.Builder().url(url);
+        if (requestHeaders != null) {
+            for (final Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (DROPPED_REQUEST_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) continue;
+                requestBuilder.header(header.getKey(), header.getValue());
+            }
+        }
+
+        final CookieManager cookieManager = CookieManager.getInstance();
+        final String cookies = cookieManager.getCookie(url);
+        if (cookies != null) {
+            requestBuilder.header("Cookie", cookies);
+        }
+
+        final Response response = DappHttpClient.get().newCall(requestBuilder.build()).execute();
+        // Cached responses replay the cookies they were stored with, which may since have been replaced
+        final Response networkResponse = response.networkResponse();
+        if (networkResponse != null) {
+            for (final String cookie : networkResponse.headers("Set-Cookie")) {
+                cookieManager.setCookie(url, cookie);
+            }
+        }
+        return response;
+    }
+
+    // Only static files are worth serving from the cache; anything else is left to the WebView
+    public static boolean isCacheableAsset(@Nullable final String url) {
+        if (url == null || !url.toLowerCase(Locale.US).startsWith("http")) return false;
+        final String path = stripQueryAndFragment(url);
+        final int lastSlash = path.lastIndexOf('/');
+        final int lastDot = path.lastIndexOf('.');
+        if (lastDot <= lastSlash) return false;
+        final String extension = path.substring(lastDot + 1).toLowerCase(Locale.US);
+        return CACHEABLE_ASSET_EXTENSIONS.contains(extension);
+    }
+
+    private static String stripQueryAndFragment(final String url) {
+        int end = url.length();
+        final int query = url.indexOf('?');
+        if (query >= 0) end = query;
+        final int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) end = fragment;
+        return url.substring(0, end);
+    }
+
+    public synchronized void recordVisit(@NonNull final String url) {
+        final List<String> recentDapps = addRecent(getRecentDapps(), url, MAX_RECENT_DAPPS);
+        this.prefs.edit()
+                .putString(RECENT_DAPPS_KEY, join(recentDapps))
+                .apply();
+    }
+
+    private synchronized List<String> getRecentDapps() {
+        final String stored = this.prefs.getString(RECENT_DAPPS_KEY, null);
+        if (stored == null || stored.isEmpty()) return new ArrayList<>();
+        return new ArrayList<>(Arrays.asList(stored.split(RECENT_DAPPS_SEPARATOR)));
+    }
+
+    /* package */ static List<String> addRecent(final List<String> recent,
+                                                final String url,
+                                                final int max) {
+        final List<String> updated = new ArrayList<>(recent);
+        updated.remove(url);
+        updated.add(0, url);
+        while (updated.size() > max) {
+            updated.remove(updated.size() - 1);
+        }
+        return updated;
+    }
+
+    private static String join(final List<String> urls) {
+        final StringBuilder sb = new StringBuilder();
+        for (final String url : urls) {
+            if (sb.length() > 0) sb.append(RECENT_DAPPS_SEPARATOR);
+            sb.append(url);
+        }
+        return sb.toString();
+    }
+
+    // Warms the disk cache with the pages of recently opened dapps, and the SOFA script,
+    // so the next launch of a dapp only has to revalidate. At most once per interval.
+    public void prefetchRecentDapps() {
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            if (now - this.lastPrefetch < MIN_PREFETCH_INTERVAL) return;
+            this.lastPrefetch = now;
+        }
+
+        Completable.fromAction(this::prefetch)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        () -> {},
+                        t -> LogUtil.exception(getClass(), "Error while prefetching dapps", t)
+                );
+    }
+
+    private void prefetch() {
+        try {
+            getSofaScript();
+        } catch (final IOException ex) {
+            LogUtil.exception(getClass(), "Unable to build SOFA script", ex);
+        }
+
+        for (final String url : getRecentDapps()) {
+            try {
+                final Response response = fetch(url, null);
+                try {
+                    // The body has to be read to the end before OkHttp commits it to the cache
+                    response.body().bytes();
+                } finally {
+                    response.body().close();
+                }
+            } catch (final IOException | IllegalArgumentException ex) {
+                LogUtil.i(getClass(), "Unable to prefetch " + url);
+            }
+        }
+    }
+}
@@ -17,13 +17,11 @@
 
 package com.toshi.manager.network;
 
-import com.squareup.moshi.Moshi;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.OfflineCacheInterceptor;
 import com.toshi.manager.network.interceptor.ReadFromCacheInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.R;
-import com.toshi.view.BaseApplication;
+import com.toshi.model.adapter.MoshiProvider;
 
 import java.io.File;
 
@@ -37,7 +35,7 @@ import rx.schedulers.Schedulers;
 
 public class DirectoryService {
 
-    private static DirectoryService instance;
+    private static volatile DirectoryService instance;
 
     private final DirectoryInterface directoryInterface;
     private final OkHttpClient.Builder client;
@@ -61,24 +59,23 @@ public class DirectoryService {
     }
 
     private DirectoryService() {
+        ServicePrewarmer.warnIfMainThread(DirectoryService.class);
         final RxJavaCallAdapterFactory rxAdapter =
                 RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
-        final File cachePath = new File(BaseApplication.get().getCacheDir(), "dirCache");
-        this.client = new OkHttpClient
-                .Builder()
+        final File cachePath = new File(ServiceEndpoints.get().getCacheDir(), "dirCache");
+        this.client = ServiceEndpoints
+                .get()
+                .newClientBuilder()
                 .cache(new Cache(cachePath, 1024 * 1024 * 5))
-                .addNetworkInterceptor(new ReadFromCacheInterceptor())
-                .addInterceptor(new OfflineCacheInterceptor());
+                .addNetworkInterceptor(new ReadFromCacheInterceptor(() -> ServiceEndpoints.get().isConnected()))
+                .addInterceptor(new OfflineCacheInterceptor(() -> ServiceEndpoints.get().isConnected()));
 
         addUserAgentHeader();
         addLogging();
 
-        final Moshi moshi = new Moshi.Builder()
-                .build();
-
         final Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BaseApplication.get().getResources().getString(R.string.directory_url))
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .baseUrl(ServiceEndpoints.get().getDirectoryUrl())
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(client.build())
                 .build();
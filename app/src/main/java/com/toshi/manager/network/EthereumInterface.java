@@ -24,6 +24,8 @@ import com.toshi.model.network.SentTransaction;
 import com.toshi.model.network.ServerTime;
 import com.toshi.model.network.SignedTransaction;
 import com.toshi.model.network.TransactionRequest;
+import com.toshi.model.network.TransactionStatusRequest;
+import com.toshi.model.network.TransactionStatuses;
 import com.toshi.model.network.UnsignedTransaction;
 
 import retrofit2.http.Body;
@@ -44,6 +46,9 @@ public interface EthereumInterface {
             @Body SignedTransaction transaction);
 
 
+    @POST("/v1/tx/status")
+    Single<TransactionStatuses> getStatusOfTransactions(@Body TransactionStatusRequest request);
+
     @GET("/v1/balance/{id}")
     Single<Balance> getBalance(@Path("id") String walletAddress);
 
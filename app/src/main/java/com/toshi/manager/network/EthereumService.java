@@ -18,31 +18,35 @@
 package com.toshi.manager.network;
 
 
-import com.squareup.moshi.Moshi;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.SigningInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.model.adapter.BigIntegerAdapter;
-import com.toshi.model.local.Network;
-import com.toshi.model.local.Networks;
+import com.toshi.model.adapter.MoshiProvider;
+import com.toshi.model.network.TransactionStatusRequest;
+import com.toshi.model.network.TransactionStatuses;
 import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
 
+import java.util.List;
+
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.HttpException;
 import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
 import retrofit2.converter.moshi.MoshiConverterFactory;
+import rx.Observable;
 import rx.Single;
 import rx.schedulers.Schedulers;
 
 public class EthereumService {
 
-    private static EthereumService instance;
+    private static volatile EthereumService instance;
     private final OkHttpClient.Builder client;
+    private final OkHttpClient statusClient;
     private EthereumInterface ethereumInterface;
     private String baseUrl;
 
@@ -62,7 +66,9 @@ public class EthereumService {
     }
 
     private EthereumService() {
-        this.client = new OkHttpClient.Builder();
+        ServicePrewarmer.warnIfMainThread(EthereumService.class);
+        this.client = ServiceEndpoints.get().newClientBuilder();
+        this.statusClient = ServiceEndpoints.get().newClientBuilder().build();
 
         addUserAgentHeader();
         addSigningInterceptor();
@@ -73,8 +79,7 @@ public class EthereumService {
     }
 
     private String getBaseUrl() {
-        final Network network = Networks.getInstance().getCurrentNetwork();
-        return network.getUrl();
+        return ServiceEndpoints.get().getEthUrl();
     }
 
     public void changeBaseUrl(final String baseUrl) {
@@ -83,16 +88,12 @@ public class EthereumService {
     }
 
     private EthereumInterface buildEthereumInterface(final String baseUrl) {
-        final Moshi moshi = new Moshi.Builder()
-                .add(new BigIntegerAdapter())
-                .build();
-
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory
                 .createWithScheduler(Schedulers.io());
 
         final Retrofit retrofit = new Retrofit.Builder()
                 .baseUrl(baseUrl)
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(this.client.build())
                 .build();
@@ -104,7 +105,7 @@ public class EthereumService {
     }
 
     private void addSigningInterceptor() {
-        this.client.addInterceptor(new SigningInterceptor());
+        this.client.addInterceptor(new SigningInterceptor(() -> ServiceEndpoints.get().getWallet()));
     }
 
     private void addLogging() {
@@ -117,7 +118,7 @@ public class EthereumService {
         return Single.fromCallable(() -> {
             final String url = String.format(
                     "%s%s%s%s",
-                    Networks.getInstance().getDefaultNetwork().getUrl(),
+                    ServiceEndpoints.get().getDefaultEthUrl(),
                     "/v1/tx/",
                     transactionHash,
                     "?format=sofa"
@@ -126,7 +127,7 @@ public class EthereumService {
                     .url(url)
                     .build();
 
-            final Response response = new OkHttpClient()
+            final Response response = this.statusClient
                     .newCall(request)
                     .execute();
 
@@ -141,4 +142,32 @@ public class EthereumService {
             return SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
         });
     }
+
+    // Fetches the status of several transactions in a single request.
+    // Falls back to one request per transaction if the server doesn't support batching.
+    public Single<List<Payment>> getStatusOfTransactions(final List<String> transactionHashes) {
+        return getApi()
+                .getStatusOfTransactions(new TransactionStatusRequest(transactionHashes))
+                .map(TransactionStatuses::getPayments)
+                .onErrorResumeNext(throwable -> {
+                    if (isBatchingUnsupported(throwable)) {
+                        return getStatusOfTransactionsIndividually(transactionHashes);
+                    }
+                    return Single.error(throwable);
+                });
+    }
+
+    private boolean isBatchingUnsupported(final Throwable throwable) {
+        return throwable instanceof HttpException
+                && ((HttpException) throwable).code() == 404;
+    }
+
+    private Single<List<Payment>> getStatusOfTransactionsIndividually(final List<String> transactionHashes) {
+        return Observable
+                .from(transactionHashes)
+                .concatMap(txHash -> getStatusOfTransaction(txHash).toObservable())
+                .filter(payment -> payment != null)
+                .toList()
+                .toSingle();
+    }
 }
@@ -18,15 +18,14 @@
 package com.toshi.manager.network;
 
 
-import com.squareup.moshi.Moshi;
+import android.support.annotation.VisibleForTesting;
+
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.OfflineCacheInterceptor;
 import com.toshi.manager.network.interceptor.ReadFromCacheInterceptor;
 import com.toshi.manager.network.interceptor.SigningInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.model.adapter.RealmListAdapter;
-import com.toshi.R;
-import com.toshi.view.BaseApplication;
+import com.toshi.model.adapter.MoshiProvider;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,7 +40,7 @@ import rx.schedulers.Schedulers;
 
 public class IdService {
 
-    private static IdService instance;
+    private static volatile IdService instance;
 
     private final IdInterface idInterface;
     private final OkHttpClient.Builder client;
@@ -65,27 +64,31 @@ public class IdService {
         return instance;
     }
 
+    // The next call to get() builds the service again from the current ServiceEndpoints
+    @VisibleForTesting
+    /* package */ static synchronized void reset() {
+        instance = null;
+    }
+
     private IdService() {
+        ServicePrewarmer.warnIfMainThread(IdService.class);
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory.createWithScheduler(Schedulers.io());
-        final File cachePath = new File(BaseApplication.get().getCacheDir(), "idCache");
+        final File cachePath = new File(ServiceEndpoints.get().getCacheDir(), "idCache");
         this.cache = new Cache(cachePath, 1024 * 1024 * 2);
-        this.client = new OkHttpClient
-                .Builder()
+        this.client = ServiceEndpoints
+                .get()
+                .newClientBuilder()
                 .cache(this.cache)
-                .addNetworkInterceptor(new ReadFromCacheInterceptor())
-                .addInterceptor(new OfflineCacheInterceptor());
+                .addNetworkInterceptor(new ReadFromCacheInterceptor(() -> ServiceEndpoints.get().isConnected()))
+                .addInterceptor(new OfflineCacheInterceptor(() -> ServiceEndpoints.get().isConnected()));
 
         addUserAgentHeader();
         addSigningInterceptor();
         addLogging();
 
-        final Moshi moshi = new Moshi.Builder()
-                .add(new RealmListAdapter())
-                .build();
-
         final Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BaseApplication.get().getResources().getString(R.string.id_url))
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .baseUrl(ServiceEndpoints.get().getIdUrl())
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(client.build())
                 .build();
@@ -97,7 +100,7 @@ public class IdService {
     }
 
     private void addSigningInterceptor() {
-        this.client.addInterceptor(new SigningInterceptor());
+        this.client.addInterceptor(new SigningInterceptor(() -> ServiceEndpoints.get().getWallet()));
     }
 
     private void addLogging() {
@@ -17,14 +17,12 @@
 
 package com.toshi.manager.network;
 
-import com.squareup.moshi.Moshi;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
 import com.toshi.manager.network.interceptor.OfflineCacheInterceptor;
 import com.toshi.manager.network.interceptor.ReadFromCacheInterceptor;
 import com.toshi.manager.network.interceptor.SigningInterceptor;
 import com.toshi.manager.network.interceptor.UserAgentInterceptor;
-import com.toshi.R;
-import com.toshi.view.BaseApplication;
+import com.toshi.model.adapter.MoshiProvider;
 
 import java.io.File;
 
@@ -37,7 +35,7 @@ import retrofit2.converter.moshi.MoshiConverterFactory;
 import rx.schedulers.Schedulers;
 
 public class ReputationService {
-    private static ReputationService instance;
+    private static volatile ReputationService instance;
 
     private final ReputationInterface reputationInterface;
     private final OkHttpClient.Builder client;
@@ -61,26 +59,24 @@ public class ReputationService {
     }
 
     private ReputationService() {
+        ServicePrewarmer.warnIfMainThread(ReputationService.class);
         final RxJavaCallAdapterFactory rxAdapter = RxJavaCallAdapterFactory
                 .createWithScheduler(Schedulers.io());
-        final File cachePath = new File(BaseApplication.get().getCacheDir(), "repCache");
-        this.client = new OkHttpClient
-                .Builder()
+        final File cachePath = new File(ServiceEndpoints.get().getCacheDir(), "repCache");
+        this.client = ServiceEndpoints
+                .get()
+                .newClientBuilder()
                 .cache(new Cache(cachePath, 1024 * 1024))
-                .addNetworkInterceptor(new ReadFromCacheInterceptor())
-                .addInterceptor(new OfflineCacheInterceptor());
+                .addNetworkInterceptor(new ReadFromCacheInterceptor(() -> ServiceEndpoints.get().isConnected()))
+                .addInterceptor(new OfflineCacheInterceptor(() -> ServiceEndpoints.get().isConnected()));
 
         addSigningInterceptor();
         addUserAgentHeader();
         addLogging();
 
-        final Moshi moshi = new Moshi
-                .Builder()
-                .build();
-
         final Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl(BaseApplication.get().getResources().getString(R.string.rep_url))
-                .addConverterFactory(MoshiConverterFactory.create(moshi))
+                .baseUrl(ServiceEndpoints.get().getReputationUrl())
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
                 .addCallAdapterFactory(rxAdapter)
                 .client(client.build())
                 .build();
@@ -92,7 +88,7 @@ public class ReputationService {
     }
 
     private void addSigningInterceptor() {
-        this.client.addInterceptor(new SigningInterceptor());
+        this.client.addInterceptor(new SigningInterceptor(() -> ServiceEndpoints.get().getWallet()));
     }
 
     private void addLogging() {
@@ -0,0 +1,189 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
+import android.support.annotation.VisibleForTesting;
+
+import com.toshi.R;
+import com.toshi.crypto.HDWallet;
+import com.toshi.model.local.Networks;
+import com.toshi.view.BaseApplication;
+
+import java.io.File;
+
+import okhttp3.OkHttpClient;
+import rx.subjects.BehaviorSubject;
+
+/**
+ * Base URLs, the base HTTP client and the cache directory used by all network services,
+ * along with the connectivity and the wallet their interceptors depend on.
+ * <p>
+ * By default the URLs are read from the build type resources, the Ethereum URL follows
+ * the currently selected {@link com.toshi.model.local.Network}, and the connectivity and
+ * wallet come from the application. Tests and benchmarks can
+ * point every service at a local server with {@link #setOverride(ServiceEndpoints)} before
+ * the first service is created.
+ */
+public class ServiceEndpoints {
+
+    private static ServiceEndpoints instance;
+
+    private String idUrl;
+    private String ethUrl;
+    private String directoryUrl;
+    private String chatUrl;
+    private String reputationUrl;
+    private String currencyUrl;
+    private OkHttpClient baseClient;
+    private File cacheDir;
+    private BehaviorSubject<Boolean> connectivity;
+    private HDWallet wallet;
+
+    public static synchronized ServiceEndpoints get() {
+        if (instance == null) {
+            instance = new ServiceEndpoints();
+        }
+        return instance;
+    }
+
+    @VisibleForTesting
+    public static synchronized void setOverride(@Nullable final ServiceEndpoints endpoints) {
+        instance = endpoints;
+    }
+
+    public ServiceEndpoints setIdUrl(final String idUrl) {
+        this.idUrl = idUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setEthUrl(final String ethUrl) {
+        this.ethUrl = ethUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setDirectoryUrl(final String directoryUrl) {
+        this.directoryUrl = directoryUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setChatUrl(final String chatUrl) {
+        this.chatUrl = chatUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setReputationUrl(final String reputationUrl) {
+        this.reputationUrl = reputationUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setCurrencyUrl(final String currencyUrl) {
+        this.currencyUrl = currencyUrl;
+        return this;
+    }
+
+    public ServiceEndpoints setBaseClient(final OkHttpClient baseClient) {
+        this.baseClient = baseClient;
+        return this;
+    }
+
+    public ServiceEndpoints setCacheDir(final File cacheDir) {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    public ServiceEndpoints setConnectivity(final BehaviorSubject<Boolean> connectivity) {
+        this.connectivity = connectivity;
+        return this;
+    }
+
+    public ServiceEndpoints setWallet(final HDWallet wallet) {
+        this.wallet = wallet;
+        return this;
+    }
+
+    public String getIdUrl() {
+        return this.idUrl != null ? this.idUrl : getString(R.string.id_url);
+    }
+
+    public String getEthUrl() {
+        return this.ethUrl != null ? this.ethUrl : Networks.getInstance().getCurrentNetwork().getUrl();
+    }
+
+    public String getDefaultEthUrl() {
+        return this.ethUrl != null ? this.ethUrl : Networks.getInstance().getDefaultNetwork().getUrl();
+    }
+
+    public String getDirectoryUrl() {
+        return this.directoryUrl != null ? this.directoryUrl : getString(R.string.directory_url);
+    }
+
+    public String getChatUrl() {
+        return this.chatUrl != null ? this.chatUrl : getString(R.string.chat_url);
+    }
+
+    public String getReputationUrl() {
+        return this.reputationUrl != null ? this.reputationUrl : getString(R.string.rep_url);
+    }
+
+    public String getCurrencyUrl() {
+        return this.currencyUrl != null ? this.currencyUrl : getString(R.string.currency_url);
+    }
+
+    // The directory the services keep their HTTP caches in
+    public File getCacheDir() {
+        return this.cacheDir != null ? this.cacheDir : BaseApplication.get().getCacheDir();
+    }
+
+    public BehaviorSubject<Boolean> getConnectivity() {
+        return this.connectivity != null ? this.connectivity : BaseApplication.get().isConnectedSubject();
+    }
+
+    public boolean isConnected() {
+        return getConnectivity().getValue();
+    }
+
+    // The wallet that signs requests, or null if there isn't one yet
+    @Nullable
+    public HDWallet getWallet() {
+        if (this.wallet != null) return this.wallet;
+        return BaseApplication
+                .get()
+                .getToshiManager()
+                .getWallet()
+                .onErrorReturn(__ -> null)
+                .toBlocking()
+                .value();
+    }
+
+    // Every service derives its client from the same base client
+    // so they share one connection pool and dispatcher.
+    @NonNull
+    public synchronized OkHttpClient.Builder newClientBuilder() {
+        if (this.baseClient == null) {
+            this.baseClient = new OkHttpClient();
+        }
+        return this.baseClient.newBuilder();
+    }
+
+    private String getString(final @StringRes int id) {
+        return BaseApplication.get().getResources().getString(id);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import android.os.Looper;
+
+import com.toshi.model.adapter.MoshiProvider;
+import com.toshi.util.LogUtil;
+
+import rx.Completable;
+import rx.schedulers.Schedulers;
+
+// The services are built lazily the first time they are used. Prewarming builds them
+// on background threads ahead of time, so the first caller, often a presenter on the
+// main thread, doesn't have to wait for OkHttp, Moshi and Retrofit to be set up.
+public class ServicePrewarmer {
+
+    private ServicePrewarmer() {}
+
+    public static Completable prewarm() {
+        return Completable
+                .fromAction(MoshiProvider::get)
+                .andThen(Completable.merge(
+                        prewarm(IdService::getApi),
+                        prewarm(EthereumService::getApi),
+                        prewarm(CurrencyService::getApi),
+                        prewarm(DirectoryService::getApi),
+                        prewarm(ReputationService::getApi)))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private static Completable prewarm(final Runnable construction) {
+        return Completable
+                .fromAction(construction::run)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /* package */ static void warnIfMainThread(final Class<?> serviceClass) {
+        if (Looper.myLooper() != null && Looper.myLooper() == Looper.getMainLooper()) {
+            LogUtil.e(serviceClass, "Service built on the main thread. Prewarm it on a background thread.");
+        }
+    }
+}
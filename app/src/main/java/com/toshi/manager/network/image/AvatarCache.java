@@ -0,0 +1,189 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.image;
+
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.bumptech.glide.load.Key;
+import com.bumptech.glide.signature.StringSignature;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.CacheControl;
+import okhttp3.Request;
+import okhttp3.Response;
+import rx.Completable;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.subjects.PublishSubject;
+
+// Avatars are rendered from Glide's memory and disk caches. Each URL is revalidated
+// with the server in the background at most once per REVALIDATION_TTL; when the image
+// has changed its version is bumped, which changes the Glide cache key for that URL.
+public class AvatarCache {
+
+    private static final String PREFS_NAME = "avatar_cache";
+    private static final String ETAG_PREFIX = "etag:";
+    private static final String VERSION_PREFIX = "version:";
+    private static final long REVALIDATION_TTL = TimeUnit.HOURS.toMillis(1);
+    private static final int STATS_LOG_INTERVAL = 100;
+    // Avatars are decoded at one of these sizes so views of similar size share a bitmap
+    private static final int[] SIZE_BUCKETS = {64, 128, 256, 512};
+
+    private static AvatarCache instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, Long> validatedAt = new ConcurrentHashMap<>();
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final PublishSubject<String> changedUrls = PublishSubject.create();
+
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private final AtomicInteger memoryHitCount = new AtomicInteger();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicInteger revalidationCount = new AtomicInteger();
+    private final AtomicInteger changedCount = new AtomicInteger();
+
+    public static synchronized AvatarCache get() {
+        if (instance == null) {
+            instance = new AvatarCache();
+        }
+        return instance;
+    }
+
+    private AvatarCache() {
+        this.prefs = BaseApplication.get().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    public Key getSignature(final String url) {
+        return new StringSignature(String.valueOf(this.prefs.getInt(VERSION_PREFIX + url, 0)));
+    }
+
+    // Emits URLs whose image changed on the server
+    public Observable<String> getChangedUrls() {
+        return this.changedUrls.asObservable();
+    }
+
+    public static int getSizeBucket(final int size) {
+        for (final int bucket : SIZE_BUCKETS) {
+            if (size <= bucket) return bucket;
+        }
+        return SIZE_BUCKETS[SIZE_BUCKETS.length - 1];
+    }
+
+    public void revalidateIfStale(final String url) {
+        final Long lastValidated = this.validatedAt.get(url);
+        final long now = System.currentTimeMillis();
+        if (lastValidated != null && now - lastValidated < REVALIDATION_TTL) return;
+        if (!this.revalidating.add(url)) return;
+
+        this.validatedAt.put(url, now);
+        Completable
+                .fromAction(() -> revalidate(url))
+                .subscribeOn(Schedulers.io())
+                .doAfterTerminate(() -> this.revalidating.remove(url))
+                .subscribe(
+                        () -> {},
+                        throwable -> {
+                            this.validatedAt.remove(url);
+                            LogUtil.exception(getClass(), "Unable to revalidate avatar", throwable);
+                        }
+                );
+    }
+
+    // Forces the next render of the URL to revalidate with the server
+    public void invalidate(final String url) {
+        this.validatedAt.remove(url);
+    }
+
+    private void revalidate(final String url) throws IOException {
+        this.revalidationCount.incrementAndGet();
+        // max-age=0 makes OkHttp send a conditional request using the cached ETag
+        final Request request = new Request.Builder()
+                .url(url)
+                .cacheControl(new CacheControl.Builder().maxAge(0, TimeUnit.SECONDS).build())
+                .build();
+
+        final Response response = GlideOkHttpStack.getClient().newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) return;
+            final Response networkResponse = response.networkResponse();
+            final boolean isNewImage = networkResponse != null && networkResponse.code() != 304;
+            if (isNewImage) {
+                // Reading the body stores the new image in the HTTP cache, where Glide will find it
+                response.body().bytes();
+            }
+            // On a 304 this is the ETag of the cached response
+            updateEtag(url, response.header("ETag"), isNewImage);
+        } finally {
+            response.close();
+        }
+    }
+
+    private void updateEtag(final String url, final String etag, final boolean isNewImage) {
+        final String previousEtag = this.prefs.getString(ETAG_PREFIX + url, null);
+        // Without a recorded ETag there is no telling whether the image Glide has is the one just fetched
+        final boolean hasChanged = isNewImage && (etag == null || !etag.equals(previousEtag));
+        final boolean isEtagKnown = etag != null && etag.equals(previousEtag);
+        if (!hasChanged && isEtagKnown) return;
+
+        final SharedPreferences.Editor editor = this.prefs.edit().putString(ETAG_PREFIX + url, etag);
+        if (hasChanged) {
+            editor.putInt(VERSION_PREFIX + url, this.prefs.getInt(VERSION_PREFIX + url, 0) + 1);
+        }
+        editor.apply();
+
+        if (hasChanged) {
+            this.changedCount.incrementAndGet();
+            this.changedUrls.onNext(url);
+        }
+    }
+
+    public void onAvatarLoaded(final long startNanos, final boolean isFromMemoryCache) {
+        final int loads = this.loadCount.incrementAndGet();
+        if (isFromMemoryCache) {
+            this.memoryHitCount.incrementAndGet();
+        } else {
+            this.decodeNanos.addAndGet(System.nanoTime() - startNanos);
+        }
+        if (loads % STATS_LOG_INTERVAL == 0) LogUtil.d(getClass(), getStats());
+    }
+
+    public String getStats() {
+        final int loads = this.loadCount.get();
+        final int decodes = loads - this.memoryHitCount.get();
+        return String.format(
+                Locale.US,
+                "Avatars: loads=%d memoryHits=%d avgDecodeMs=%.2f revalidations=%d changed=%d",
+                loads,
+                this.memoryHitCount.get(),
+                decodes == 0 ? 0 : this.decodeNanos.get() / 1_000_000.0 / decodes,
+                this.revalidationCount.get(),
+                this.changedCount.get());
+    }
+}
@@ -22,6 +22,7 @@ import android.content.Context;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.GlideBuilder;
 import com.bumptech.glide.integration.okhttp3.OkHttpUrlLoader;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.module.GlideModule;
 import com.toshi.manager.network.interceptor.LoggingInterceptor;
@@ -38,25 +39,35 @@ import okhttp3.logging.HttpLoggingInterceptor;
 public class GlideOkHttpStack implements GlideModule {
 
     private static final int MAX_SIZE = 1024 * 1024 * 10;
+    private static final int RESULT_CACHE_SIZE = 1024 * 1024 * 25;
 
-    @Override
-    public void applyOptions(Context context, GlideBuilder builder) {}
+    private static OkHttpClient client;
 
-    @Override
-    public void registerComponents(Context context, Glide glide) {
-        final File cacheDir = new File(BaseApplication.get().getCacheDir(), "ToshiImageCache");
-        final Cache cache = new Cache(cacheDir, MAX_SIZE);
+    // Shared with AvatarCache so revalidation updates the cache Glide reads from
+    /* package */ static synchronized OkHttpClient getClient() {
+        if (client == null) {
+            final File cacheDir = new File(BaseApplication.get().getCacheDir(), "ToshiImageCache");
+            final Cache cache = new Cache(cacheDir, MAX_SIZE);
 
-        final OkHttpClient client =
-                new OkHttpClient().newBuilder()
-                .cache(cache)
-                .addInterceptor(new UserAgentInterceptor())
-                .addInterceptor(new HttpLoggingInterceptor(new LoggingInterceptor()).setLevel(HttpLoggingInterceptor.Level.BODY))
-                .build();
+            client = new OkHttpClient().newBuilder()
+                    .cache(cache)
+                    .addInterceptor(new UserAgentInterceptor())
+                    .addInterceptor(new HttpLoggingInterceptor(new LoggingInterceptor()).setLevel(HttpLoggingInterceptor.Level.BODY))
+                    .build();
+        }
+        return client;
+    }
 
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        // Decoded and transformed images, so a cached avatar doesn't need decoding at full size again
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, "ToshiImageResultCache", RESULT_CACHE_SIZE));
+    }
 
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+        final OkHttpClient client = getClient();
         glide.register(CachedGlideUrl.class, InputStream.class, superFactory(new OkHttpUrlLoader.Factory(client), CachedGlideUrl.class));
-        glide.register(ForceLoadGlideUrl.class, InputStream.class, superFactory(new OkHttpUrlLoader.Factory(client), ForceLoadGlideUrl.class));
     }
 
     /**
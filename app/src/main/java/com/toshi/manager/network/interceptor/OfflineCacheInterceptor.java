@@ -18,8 +18,6 @@
 package com.toshi.manager.network.interceptor;
 
 
-import com.toshi.view.BaseApplication;
-
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
@@ -27,11 +25,18 @@ import okhttp3.CacheControl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
+import rx.functions.Func0;
 
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
 
 public class OfflineCacheInterceptor implements Interceptor {
 
+    private final Func0<Boolean> isConnected;
+
+    public OfflineCacheInterceptor(final Func0<Boolean> isConnected) {
+        this.isConnected = isConnected;
+    }
+
     @Override
     public Response intercept(final Chain chain) throws IOException, IllegalStateException {
         Request request = chain.request();
@@ -45,7 +50,7 @@ public class OfflineCacheInterceptor implements Interceptor {
                 .maxAge(60, TimeUnit.SECONDS)
                 .build();
 
-        if (!BaseApplication.get().isConnected()) {
+        if (!this.isConnected.call()) {
             cacheControl = new CacheControl.Builder()
                     .maxAge(14, TimeUnit.DAYS)
                     .maxStale(14, TimeUnit.DAYS)
@@ -18,19 +18,24 @@
 package com.toshi.manager.network.interceptor;
 
 
-import com.toshi.view.BaseApplication;
-
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.CacheControl;
 import okhttp3.Interceptor;
 import okhttp3.Response;
+import rx.functions.Func0;
 
 import static com.google.common.net.HttpHeaders.CACHE_CONTROL;
 
 public class ReadFromCacheInterceptor implements Interceptor {
 
+    private final Func0<Boolean> isConnected;
+
+    public ReadFromCacheInterceptor(final Func0<Boolean> isConnected) {
+        this.isConnected = isConnected;
+    }
+
     @Override
     public Response intercept(final Chain chain) throws IOException, IllegalStateException {
         final Response response = chain.proceed( chain.request() );
@@ -39,7 +44,7 @@ public class ReadFromCacheInterceptor implements Interceptor {
                 .maxAge(60, TimeUnit.SECONDS)
                 .build();
 
-        if (!BaseApplication.get().isConnected()) {
+        if (!this.isConnected.call()) {
             cacheControl = new CacheControl.Builder()
                     .maxAge(14, TimeUnit.DAYS)
                     .build();
@@ -22,7 +22,6 @@ import android.util.Base64;
 
 import com.toshi.crypto.HDWallet;
 import com.toshi.crypto.util.HashUtil;
-import com.toshi.view.BaseApplication;
 
 import java.io.IOException;
 
@@ -31,6 +30,7 @@ import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
 import okio.Buffer;
+import rx.functions.Func0;
 
 public class SigningInterceptor implements Interceptor {
 
@@ -39,6 +39,12 @@ public class SigningInterceptor implements Interceptor {
     private final String SIGNATURE_HEADER = "Toshi-Signature";
     private final String TIMESTAMP_HEADER = "Toshi-Timestamp";
 
+    private final Func0<HDWallet> walletSource;
+
+    public SigningInterceptor(final Func0<HDWallet> walletSource) {
+        this.walletSource = walletSource;
+    }
+
     @Override
     public Response intercept(final Chain chain) throws IOException {
         final Request original = chain.request();
@@ -48,7 +54,7 @@ public class SigningInterceptor implements Interceptor {
             return chain.proceed(original);
         }
 
-        final HDWallet wallet = getWallet();
+        final HDWallet wallet = this.walletSource.call();
         if (wallet == null) {
             // Only signing outgoing requests that have a timestamp argument
             return chain.proceed(original);
@@ -84,14 +90,4 @@ public class SigningInterceptor implements Interceptor {
 
         return chain.proceed(request);
     }
-
-    public HDWallet getWallet() {
-            return BaseApplication
-                    .get()
-                    .getToshiManager()
-                    .getWallet()
-                    .onErrorReturn(__ -> null)
-                    .toBlocking()
-                    .value();
-    }
 }
@@ -0,0 +1,151 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Sends calls to the node in JSON-RPC batches. Calls made within the window, or while
+// every sender is waiting on the node, go out together in the next batch.
+/* package */ class JsonRpcBatcher {
+
+    private static final int MAX_BATCH_SIZE = 50;
+    private static final int INTERNAL_ERROR = -32603;
+
+    private final JsonRpcTransport transport;
+    private final JsonRpcMetrics metrics;
+    private final ScheduledExecutorService executor;
+    private final long windowMs;
+    private final List<PendingCall> queue;
+    private boolean flushScheduled;
+
+    /* package */ JsonRpcBatcher(final JsonRpcTransport transport,
+                                 final JsonRpcMetrics metrics,
+                                 final ScheduledExecutorService executor,
+                                 final long windowMs) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.windowMs = windowMs;
+        this.queue = new ArrayList<>();
+    }
+
+    /* package */ void enqueue(final PendingCall call) {
+        synchronized (this) {
+            this.queue.add(call);
+            if (this.flushScheduled) return;
+            this.flushScheduled = true;
+        }
+        this.executor.schedule(this::flush, this.windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        final List<PendingCall> batch;
+        final boolean hasMore;
+        synchronized (this) {
+            final List<PendingCall> head = this.queue.subList(0, Math.min(this.queue.size(), MAX_BATCH_SIZE));
+            batch = new ArrayList<>(head);
+            head.clear();
+            hasMore = !this.queue.isEmpty();
+            this.flushScheduled = hasMore;
+        }
+        if (hasMore) this.executor.execute(this::flush);
+        if (batch.isEmpty()) return;
+
+        try {
+            send(batch);
+        } catch (final IOException | RuntimeException ex) {
+            final String error = buildError(INTERNAL_ERROR, ex.getMessage());
+            for (final PendingCall call : batch) {
+                call.fail(error);
+            }
+        }
+    }
+
+    private void send(final List<PendingCall> batch) throws IOException {
+        if (batch.size() == 1) {
+            sendSingle(batch.get(0));
+            return;
+        }
+
+        final StringBuilder body = new StringBuilder("[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) body.append(',');
+            body.append(batch.get(i).getRequest().toJson(i));
+        }
+        body.append(']');
+
+        final String response = post(body.toString(), batch.size());
+        if (!JsonRpcJson.isArray(response)) {
+            // The node doesn't take batches
+            for (final PendingCall call : batch) {
+                sendSingle(call);
+            }
+            return;
+        }
+
+        final Map<String, String> responsesById = new HashMap<>();
+        for (final String element : JsonRpcJson.elements(response)) {
+            final String rawId = JsonRpcJson.members(element).get("id");
+            if (rawId != null) responsesById.put(rawId.trim(), element);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            final String element = responsesById.get(String.valueOf(i));
+            if (element == null) {
+                batch.get(i).fail(buildError(INTERNAL_ERROR, "No response from node"));
+            } else {
+                complete(batch.get(i), element);
+            }
+        }
+    }
+
+    private void sendSingle(final PendingCall call) throws IOException {
+        complete(call, post(call.getRequest().toJson(0), 1));
+    }
+
+    private String post(final String body, final int calls) throws IOException {
+        final long start = System.nanoTime();
+        final String response = this.transport.send(body);
+        this.metrics.recordUpstream(calls, System.nanoTime() - start);
+        return response;
+    }
+
+    private static void complete(final PendingCall call, final String rawResponse) {
+        final Map<String, String> members = JsonRpcJson.members(rawResponse);
+        final String error = members.get("error");
+        if (!JsonRpcJson.isNull(error)) {
+            call.fail(error);
+            return;
+        }
+        final String result = members.get("result");
+        call.succeed(result == null ? "null" : result);
+    }
+
+    /* package */ static String buildError(final int code, final String message) {
+        return String.format(
+                "{\"code\":%d,\"message\":%s}",
+                code,
+                JsonRpcJson.quote(message == null ? "Unknown error" : message)
+        );
+    }
+}
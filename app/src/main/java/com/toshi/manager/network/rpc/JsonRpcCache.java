@@ -0,0 +1,189 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Results of read calls. Anything pinned to a block hash never changes and is kept until evicted.
+// Results pinned to a block number or a mined transaction can still change in a reorg, so they are
+// only kept that long once the block is CONFIRMATION_DEPTH blocks below the last eth_blockNumber seen.
+// Until then, and for reads of the latest state, results are only reused for a few seconds, well within a block.
+/* package */ class JsonRpcCache {
+
+    /* package */ static final long NOT_CACHED = 0;
+    /* package */ static final long FOREVER = Long.MAX_VALUE;
+    /* package */ static final long RECENT_TTL = TimeUnit.SECONDS.toMillis(3);
+    private static final int MAX_ENTRIES = 512;
+    private static final long CONFIRMATION_DEPTH = 12;
+    private static final long UNKNOWN_BLOCK = -1;
+    private static final String LATEST = "latest";
+    private static final String PENDING = "pending";
+    private static final String EARLIEST = "earliest";
+    private static final String EMPTY_CODE = "0x";
+
+    private static final List<String> IMMUTABLE_METHODS = Arrays.asList(
+            "eth_getBlockByHash",
+            "eth_getBlockTransactionCountByHash",
+            "eth_getUncleCountByBlockHash",
+            "eth_getTransactionByBlockHashAndIndex",
+            "eth_getUncleByBlockHashAndIndex",
+            "net_version"
+    );
+    // Calls about a single transaction, which only settle once it is mined deep enough
+    private static final List<String> TRANSACTION_METHODS = Arrays.asList(
+            "eth_getTransactionByHash",
+            "eth_getTransactionReceipt"
+    );
+    private static final List<String> RECENT_METHODS = Arrays.asList(
+            "eth_blockNumber",
+            "eth_gasPrice"
+    );
+    // Calls that only read, which are safe to share between identical requests
+    private static final List<String> UNCACHED_READ_METHODS = Arrays.asList(
+            "eth_estimateGas"
+    );
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private long latestBlock = UNKNOWN_BLOCK;
+
+    /* package */ static boolean isReadOnly(final String method) {
+        return IMMUTABLE_METHODS.contains(method)
+                || TRANSACTION_METHODS.contains(method)
+                || RECENT_METHODS.contains(method)
+                || UNCACHED_READ_METHODS.contains(method)
+                || getBlockParamIndex(method) >= 0;
+    }
+
+    // How long the result of the call can be reused for
+    /* package */ synchronized long lifetimeOf(final JsonRpcRequest request, final String rawResult) {
+        final String method = request.getMethod();
+        if (JsonRpcJson.isNull(rawResult)) return NOT_CACHED;
+        if (IMMUTABLE_METHODS.contains(method)) return FOREVER;
+        if (TRANSACTION_METHODS.contains(method)) {
+            // A transaction isn't settled until it's in a block
+            final long blockNumber = readBlockNumber(rawResult);
+            if (blockNumber == UNKNOWN_BLOCK) return method.equals("eth_getTransactionByHash") ? NOT_CACHED : RECENT_TTL;
+            return isSettled(blockNumber) ? FOREVER : RECENT_TTL;
+        }
+        if (RECENT_METHODS.contains(method)) return RECENT_TTL;
+
+        final int blockParamIndex = getBlockParamIndex(method);
+        if (blockParamIndex < 0) return NOT_CACHED;
+        final String rawBlock = request.getParam(blockParamIndex);
+        final String block = rawBlock == null ? LATEST : JsonRpcJson.unquote(rawBlock);
+        if (block == null || block.equals(PENDING)) return NOT_CACHED;
+        if (block.equals(EARLIEST)) return FOREVER;
+        if (block.equals(LATEST)) {
+            // Deployed code doesn't change, only whether there is any yet
+            if (method.equals("eth_getCode") && !EMPTY_CODE.equals(JsonRpcJson.unquote(rawResult))) return FOREVER;
+            return RECENT_TTL;
+        }
+        return isSettled(parseQuantity(block)) ? FOREVER : RECENT_TTL;
+    }
+
+    private boolean isSettled(final long blockNumber) {
+        return blockNumber != UNKNOWN_BLOCK
+                && this.latestBlock != UNKNOWN_BLOCK
+                && blockNumber <= this.latestBlock - CONFIRMATION_DEPTH;
+    }
+
+    private static long readBlockNumber(final String rawTransaction) {
+        if (!JsonRpcJson.isObject(rawTransaction)) return UNKNOWN_BLOCK;
+        return parseQuantity(JsonRpcJson.unquote(JsonRpcJson.members(rawTransaction).get("blockNumber")));
+    }
+
+    // Returns UNKNOWN_BLOCK for anything that isn't a hex quantity, such as the newer block tags
+    private static long parseQuantity(final String quantity) {
+        if (quantity == null || !quantity.startsWith("0x") || quantity.length() < 3) return UNKNOWN_BLOCK;
+        try {
+            return Long.parseLong(quantity.substring(2), 16);
+        } catch (final NumberFormatException ex) {
+            return UNKNOWN_BLOCK;
+        }
+    }
+
+    // Returns the position of the block number or tag in the params, or -1 if the call doesn't take one
+    private static int getBlockParamIndex(final String method) {
+        switch (method) {
+            case "eth_getBlockByNumber":
+            case "eth_getBlockTransactionCountByNumber":
+            case "eth_getUncleCountByBlockNumber":
+            case "eth_getTransactionByBlockNumberAndIndex":
+            case "eth_getUncleByBlockNumberAndIndex":
+                return 0;
+            case "eth_getBalance":
+            case "eth_getCode":
+            case "eth_getTransactionCount":
+            case "eth_call":
+                return 1;
+            case "eth_getStorageAt":
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    /* package */ synchronized String get(final String key) {
+        final Entry entry = this.entries.get(key);
+        if (entry == null) return null;
+        if (entry.expiresAt <= now()) {
+            this.entries.remove(key);
+            return null;
+        }
+        return entry.rawResult;
+    }
+
+    // Caches the result for as long as lifetimeOf allows, and keeps track of the chain head
+    /* package */ synchronized void put(final JsonRpcRequest request, final String rawResult) {
+        if (request.getMethod().equals("eth_blockNumber")) {
+            final long blockNumber = parseQuantity(JsonRpcJson.unquote(rawResult));
+            // Not the highest seen, so a node that went back after a reorg makes the cache more careful
+            if (blockNumber != UNKNOWN_BLOCK) this.latestBlock = blockNumber;
+        }
+        put(request.getKey(), rawResult, lifetimeOf(request, rawResult));
+    }
+
+    /* package */ synchronized void put(final String key, final String rawResult, final long lifetime) {
+        if (lifetime == NOT_CACHED) return;
+        final long expiresAt = lifetime == FOREVER ? FOREVER : now() + lifetime;
+        this.entries.put(key, new Entry(rawResult, expiresAt));
+    }
+
+    /* package */ long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    private static class Entry {
+        private final String rawResult;
+        private final long expiresAt;
+
+        private Entry(final String rawResult, final long expiresAt) {
+            this.rawResult = rawResult;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import okio.Buffer;
+
+// Routes JSON-RPC messages without binding them to model classes. Values are passed around
+// as compact JSON text, so params can be compared as cache keys, ids and results are passed
+// on unchanged, and large numbers never go through a double.
+// Parsing is strict: anything that isn't a single valid JSON value throws IllegalArgumentException.
+/* package */ class JsonRpcJson {
+
+    /* package */ static boolean isArray(final String raw) {
+        return peek(raw) == JsonReader.Token.BEGIN_ARRAY;
+    }
+
+    /* package */ static boolean isObject(final String raw) {
+        return peek(raw) == JsonReader.Token.BEGIN_OBJECT;
+    }
+
+    /* package */ static boolean isNull(final String raw) {
+        return raw == null || peek(raw) == JsonReader.Token.NULL;
+    }
+
+    // Returns the elements of a JSON array, each as compact JSON
+    /* package */ static List<String> elements(final String rawArray) {
+        try {
+            final JsonReader reader = newReader(rawArray);
+            if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) throw new IllegalArgumentException("Not an array");
+            final List<String> elements = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                elements.add(readValue(reader));
+            }
+            reader.endArray();
+            requireEnd(reader);
+            return elements;
+        } catch (final IOException | JsonDataException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    // Returns the members of a JSON object by name, each as compact JSON
+    /* package */ static Map<String, String> members(final String rawObject) {
+        try {
+            final JsonReader reader = newReader(rawObject);
+            if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) throw new IllegalArgumentException("Not an object");
+            final Map<String, String> members = new LinkedHashMap<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                members.put(name, readValue(reader));
+            }
+            reader.endObject();
+            requireEnd(reader);
+            return members;
+        } catch (final IOException | JsonDataException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    // Returns the value of a JSON string, or null if the value isn't a string
+    /* package */ static String unquote(final String raw) {
+        if (raw == null || peek(raw) != JsonReader.Token.STRING) return null;
+        try {
+            return newReader(raw).nextString();
+        } catch (final IOException | JsonDataException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    /* package */ static String quote(final String value) {
+        try {
+            final Buffer buffer = new Buffer();
+            JsonWriter.of(buffer).value(value).close();
+            return buffer.readUtf8();
+        } catch (final IOException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    // Validates the value and drops the whitespace between tokens, so equal values
+    // sent with different formatting end up with the same text
+    /* package */ static String compact(final String raw) {
+        try {
+            final JsonReader reader = newReader(raw);
+            final String value = readValue(reader);
+            requireEnd(reader);
+            return value;
+        } catch (final IOException | JsonDataException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    private static JsonReader.Token peek(final String raw) {
+        try {
+            return newReader(raw).peek();
+        } catch (final IOException | JsonDataException ex) {
+            throw new IllegalArgumentException(ex.getMessage(), ex);
+        }
+    }
+
+    private static JsonReader newReader(final String raw) {
+        if (raw == null) throw new IllegalArgumentException("No JSON");
+        return JsonReader.of(new Buffer().writeUtf8(raw));
+    }
+
+    private static void requireEnd(final JsonReader reader) throws IOException {
+        if (reader.peek() != JsonReader.Token.END_DOCUMENT) {
+            throw new IllegalArgumentException("Unexpected data after JSON value at " + reader.getPath());
+        }
+    }
+
+    private static String readValue(final JsonReader reader) throws IOException {
+        final Buffer buffer = new Buffer();
+        final JsonWriter writer = JsonWriter.of(buffer);
+        // Keeps explicit nulls, such as a null id, in objects
+        writer.setSerializeNulls(true);
+        copyValue(reader, writer);
+        writer.close();
+        return buffer.readUtf8();
+    }
+
+    private static void copyValue(final JsonReader reader, final JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_ARRAY:
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) copyValue(reader, writer);
+                reader.endArray();
+                writer.endArray();
+                break;
+            case BEGIN_OBJECT:
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+                break;
+            case STRING:
+                writer.value(reader.nextString());
+                break;
+            case NUMBER:
+                // Read as text so no precision is lost
+                writer.value(new BigDecimal(reader.nextString()));
+                break;
+            case BOOLEAN:
+                writer.value(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                writer.nullValue();
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected " + reader.peek() + " at " + reader.getPath());
+        }
+    }
+}
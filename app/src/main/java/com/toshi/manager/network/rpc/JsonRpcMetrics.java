@@ -0,0 +1,125 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JsonRpcMetrics {
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+    private final AtomicLong upstreamCalls = new AtomicLong();
+    private final AtomicLong upstreamRequests = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong totalUpstreamLatencyNanos = new AtomicLong();
+
+    /* package */ void recordCall() {
+        this.calls.incrementAndGet();
+    }
+
+    /* package */ void recordCacheHit() {
+        this.cacheHits.incrementAndGet();
+    }
+
+    // A call answered by an identical call that was already on its way to the node
+    /* package */ void recordSharedCall() {
+        this.sharedCalls.incrementAndGet();
+    }
+
+    /* package */ void recordUpstream(final int batchSize, final long latencyNanos) {
+        this.upstreamRequests.incrementAndGet();
+        this.upstreamCalls.addAndGet(batchSize);
+        this.totalUpstreamLatencyNanos.addAndGet(latencyNanos);
+    }
+
+    /* package */ void recordRequest(final long latencyNanos) {
+        this.requests.incrementAndGet();
+        this.totalLatencyNanos.addAndGet(latencyNanos);
+        long max;
+        do {
+            max = this.maxLatencyNanos.get();
+        } while (latencyNanos > max && !this.maxLatencyNanos.compareAndSet(max, latencyNanos));
+    }
+
+    public long getCalls() {
+        return this.calls.get();
+    }
+
+    public long getCacheHits() {
+        return this.cacheHits.get();
+    }
+
+    public long getSharedCalls() {
+        return this.sharedCalls.get();
+    }
+
+    public long getUpstreamCalls() {
+        return this.upstreamCalls.get();
+    }
+
+    public long getUpstreamRequests() {
+        return this.upstreamRequests.get();
+    }
+
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    // Share of calls answered without a call of their own to the node
+    public double getHitRatio() {
+        final long calls = this.calls.get();
+        if (calls == 0) return 0;
+        return (double) (this.cacheHits.get() + this.sharedCalls.get()) / calls;
+    }
+
+    public double getAverageLatencyMs() {
+        return average(this.totalLatencyNanos.get(), this.requests.get());
+    }
+
+    public double getMaxLatencyMs() {
+        return toMillis(this.maxLatencyNanos.get());
+    }
+
+    public double getAverageUpstreamLatencyMs() {
+        return average(this.totalUpstreamLatencyNanos.get(), this.upstreamRequests.get());
+    }
+
+    private static double average(final long totalNanos, final long count) {
+        return count == 0 ? 0 : toMillis(totalNanos) / count;
+    }
+
+    private static double toMillis(final long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                Locale.US,
+                "calls=%d hitRatio=%.2f cacheHits=%d sharedCalls=%d upstreamCalls=%d upstreamRequests=%d "
+                        + "avgLatencyMs=%.1f maxLatencyMs=%.1f avgUpstreamLatencyMs=%.1f",
+                getCalls(), getHitRatio(), getCacheHits(), getSharedCalls(), getUpstreamCalls(),
+                getUpstreamRequests(), getAverageLatencyMs(), getMaxLatencyMs(), getAverageUpstreamLatencyMs()
+        );
+    }
+}
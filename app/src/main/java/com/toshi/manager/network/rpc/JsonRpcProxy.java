@@ -0,0 +1,171 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+// Answers JSON-RPC requests from dapps. Cached reads are answered locally, identical reads
+// that are already on their way to the node share its answer, and everything else is
+// batched to the node.
+/* package */ class JsonRpcProxy {
+
+    private static final long CALL_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(45);
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int INTERNAL_ERROR = -32603;
+
+    private final JsonRpcCache cache;
+    private final JsonRpcBatcher batcher;
+    private final JsonRpcMetrics metrics;
+    private final ConcurrentMap<String, PendingCall> inFlight;
+
+    /* package */ JsonRpcProxy(final JsonRpcCache cache,
+                               final JsonRpcBatcher batcher,
+                               final JsonRpcMetrics metrics) {
+        this.cache = cache;
+        this.batcher = batcher;
+        this.metrics = metrics;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    /* package */ JsonRpcMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    // Takes a request or a batch of requests and blocks until every one has its response
+    /* package */ String handle(final String body) {
+        final long start = System.nanoTime();
+        try {
+            final String json;
+            try {
+                json = JsonRpcJson.compact(body);
+            } catch (final IllegalArgumentException ex) {
+                return buildResponse("null", null, JsonRpcBatcher.buildError(PARSE_ERROR, ex.getMessage()));
+            }
+            return JsonRpcJson.isArray(json)
+                    ? handleBatch(JsonRpcJson.elements(json))
+                    : handleSingle(json);
+        } finally {
+            this.metrics.recordRequest(System.nanoTime() - start);
+        }
+    }
+
+    private String handleSingle(final String rawRequest) {
+        final JsonRpcRequest request = tryParse(rawRequest);
+        return request == null
+                ? buildInvalidRequestResponse()
+                : respond(request, start(request));
+    }
+
+    private String handleBatch(final List<String> rawRequests) {
+        if (rawRequests.isEmpty()) {
+            return buildResponse("null", null, JsonRpcBatcher.buildError(INVALID_REQUEST, "Empty batch"));
+        }
+
+        // Start every call before waiting on any, so the misses reach the node together.
+        // An invalid element gets its own error and doesn't affect the rest of the batch.
+        final List<JsonRpcRequest> requests = new ArrayList<>(rawRequests.size());
+        final List<PendingCall> calls = new ArrayList<>(rawRequests.size());
+        for (final String rawRequest : rawRequests) {
+            final JsonRpcRequest request = tryParse(rawRequest);
+            requests.add(request);
+            calls.add(request == null ? null : start(request));
+        }
+
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < requests.size(); i++) {
+            if (i > 0) sb.append(',');
+            final JsonRpcRequest request = requests.get(i);
+            sb.append(request == null
+                    ? buildInvalidRequestResponse()
+                    : respond(request, calls.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static JsonRpcRequest tryParse(final String rawRequest) {
+        try {
+            return JsonRpcRequest.from(rawRequest);
+        } catch (final IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private PendingCall start(final JsonRpcRequest request) {
+        this.metrics.recordCall();
+        if (!JsonRpcCache.isReadOnly(request.getMethod())) {
+            final PendingCall call = new PendingCall(request, null);
+            this.batcher.enqueue(call);
+            return call;
+        }
+
+        final String key = request.getKey();
+        final String cachedResult = this.cache.get(key);
+        if (cachedResult != null) {
+            this.metrics.recordCacheHit();
+            return PendingCall.completed(request, cachedResult);
+        }
+
+        final PendingCall call = new PendingCall(request, this::handleReadCompleted);
+        final PendingCall existing = this.inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            this.metrics.recordSharedCall();
+            return existing;
+        }
+        this.batcher.enqueue(call);
+        return call;
+    }
+
+    private void handleReadCompleted(final PendingCall call) {
+        final JsonRpcRequest request = call.getRequest();
+        if (call.isSuccessful()) {
+            this.cache.put(request, call.getResult());
+        }
+        this.inFlight.remove(request.getKey(), call);
+    }
+
+    // The response carries the id of the request it answers, which for a
+    // shared call isn't the id of the request that went to the node
+    private String respond(final JsonRpcRequest request, final PendingCall call) {
+        try {
+            if (!call.await(CALL_TIMEOUT_MS)) {
+                return buildResponse(request.getRawId(), null, JsonRpcBatcher.buildError(INTERNAL_ERROR, "Timed out"));
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return buildResponse(request.getRawId(), null, JsonRpcBatcher.buildError(INTERNAL_ERROR, "Interrupted"));
+        }
+        return call.isSuccessful()
+                ? buildResponse(request.getRawId(), call.getResult(), null)
+                : buildResponse(request.getRawId(), null, call.getError());
+    }
+
+    private static String buildInvalidRequestResponse() {
+        return buildResponse("null", null, JsonRpcBatcher.buildError(INVALID_REQUEST, "Invalid request"));
+    }
+
+    private static String buildResponse(final String rawId, final String rawResult, final String rawError) {
+        return rawError == null
+                ? String.format("{\"jsonrpc\":\"2.0\",\"id\":%s,\"result\":%s}", rawId, rawResult)
+                : String.format("{\"jsonrpc\":\"2.0\",\"id\":%s,\"error\":%s}", rawId, rawError);
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import com.toshi.R;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// A JSON-RPC endpoint on the loopback interface for the SOFA script's rcpUrl, so the web3
+// calls of every dapp go through JsonRpcProxy instead of straight to the node.
+// Only speaks as much HTTP/1.1 as a WebView needs: POST with a Content-Length,
+// CORS preflights and keep-alive.
+// Any page or app on the device can reach the loopback port, so requests are only served
+// on a random path that is handed out through start() and never leaves the process.
+public class JsonRpcProxyServer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int UPSTREAM_THREADS = 2;
+    private static final long BATCH_WINDOW_MS = 5;
+    private static final int IDLE_TIMEOUT_MS = (int) TimeUnit.SECONDS.toMillis(15);
+    private static final int MAX_BODY_SIZE = 1024 * 1024;
+    private static final int MAX_LINE_LENGTH = 8 * 1024;
+    private static final int LOG_METRICS_EVERY = 100;
+    private static final int TOKEN_LENGTH = 16;
+
+    private static JsonRpcProxyServer instance;
+
+    private final JsonRpcProxy proxy;
+    private final ExecutorService connectionExecutor;
+    private final String path;
+    private ServerSocket serverSocket;
+    private String url;
+
+    public static synchronized JsonRpcProxyServer get() {
+        if (instance == null) {
+            final String upstreamUrl = BaseApplication.get().getString(R.string.rcp_url);
+            instance = new JsonRpcProxyServer(new OkHttpJsonRpcTransport(upstreamUrl), BATCH_WINDOW_MS);
+        }
+        return instance;
+    }
+
+    /* package */ JsonRpcProxyServer(final JsonRpcTransport transport, final long batchWindowMs) {
+        final JsonRpcMetrics metrics = new JsonRpcMetrics();
+        final JsonRpcBatcher batcher = new JsonRpcBatcher(
+                transport,
+                metrics,
+                Executors.newScheduledThreadPool(UPSTREAM_THREADS),
+                batchWindowMs
+        );
+        this.proxy = new JsonRpcProxy(new JsonRpcCache(), batcher, metrics);
+        this.connectionExecutor = Executors.newCachedThreadPool();
+        this.path = "/" + generateToken();
+    }
+
+    private static String generateToken() {
+        final byte[] token = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(token);
+        return Hex.toHexString(token);
+    }
+
+    // Starts listening if it isn't already and returns the url to send requests to
+    public synchronized String start() throws IOException {
+        if (this.serverSocket != null) return this.url;
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.serverSocket = serverSocket;
+        this.url = String.format(Locale.US, "http://127.0.0.1:%d%s", serverSocket.getLocalPort(), this.path);
+        final Thread acceptThread = new Thread(() -> acceptConnections(serverSocket), "JsonRpcProxyServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        return this.url;
+    }
+
+    /* package */ synchronized void stop() throws IOException {
+        if (this.serverSocket == null) return;
+        this.serverSocket.close();
+        this.serverSocket = null;
+        this.url = null;
+    }
+
+    public JsonRpcMetrics getMetrics() {
+        return this.proxy.getMetrics();
+    }
+
+    private void acceptConnections(final ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                this.connectionExecutor.execute(() -> serveConnection(socket));
+            } catch (final IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    LogUtil.exception(getClass(), "Error while accepting connection", ex);
+                }
+            }
+        }
+    }
+
+    private void serveConnection(final Socket socket) {
+        try {
+            socket.setSoTimeout(IDLE_TIMEOUT_MS);
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final OutputStream out = socket.getOutputStream();
+            boolean keepAlive = true;
+            while (keepAlive) {
+                keepAlive = serveRequest(in, out);
+            }
+        } catch (final SocketTimeoutException | SocketException ex) {
+            // The WebView dropped or stopped using the connection
+        } catch (final IOException ex) {
+            LogUtil.exception(getClass(), "Error while serving JSON-RPC request", ex);
+        } finally {
+            try {
+                socket.close();
+            } catch (final IOException ex) {
+                // Nothing left to do with it
+            }
+        }
+    }
+
+    // Returns whether the connection can be used for another request
+    private boolean serveRequest(final InputStream in, final OutputStream out) throws IOException {
+        final String requestLine = readLine(in);
+        if (requestLine == null || requestLine.isEmpty()) return false;
+        final String[] parts = requestLine.split(" ");
+        if (parts.length < 3) {
+            writeResponse(out, 400, "Bad Request", null, null, false);
+            return false;
+        }
+        final String method = parts[0];
+        final String target = parts[1];
+        final boolean http10 = parts[2].equals("HTTP/1.0");
+
+        final Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            final int colon = line.indexOf(':');
+            if (colon <= 0) continue;
+            headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+        }
+        if (line == null) return false;
+
+        final String connection = headers.get("connection");
+        final boolean keepAlive = connection == null
+                ? !http10
+                : connection.toLowerCase(Locale.US).contains("keep-alive");
+
+        if (!target.equals(this.path)) {
+            writeResponse(out, 404, "Not Found", null, null, false);
+            return false;
+        }
+        if (method.equals("OPTIONS")) {
+            writeResponse(out, 204, "No Content", headers.get("access-control-request-headers"), null, keepAlive);
+            return keepAlive;
+        }
+        if (!method.equals("POST")) {
+            writeResponse(out, 405, "Method Not Allowed", null, null, false);
+            return false;
+        }
+
+        final int contentLength = parseContentLength(headers.get("content-length"));
+        if (contentLength < 0 || contentLength > MAX_BODY_SIZE) {
+            writeResponse(out, 411, "Length Required", null, null, false);
+            return false;
+        }
+
+        final String body = new String(readBody(in, contentLength), UTF_8);
+        final String response = this.proxy.handle(body);
+        writeResponse(out, 200, "OK", null, response.getBytes(UTF_8), keepAlive);
+        logMetrics();
+        return keepAlive;
+    }
+
+    private void logMetrics() {
+        final JsonRpcMetrics metrics = getMetrics();
+        if (metrics.getRequests() % LOG_METRICS_EVERY == 0) {
+            LogUtil.d(getClass(), metrics.toString());
+        }
+    }
+
+    private static int parseContentLength(final String contentLength) {
+        if (contentLength == null) return -1;
+        try {
+            return Integer.parseInt(contentLength);
+        } catch (final NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private static byte[] readBody(final InputStream in, final int contentLength) throws IOException {
+        final byte[] body = new byte[contentLength];
+        int read = 0;
+        while (read < contentLength) {
+            final int count = in.read(body, read, contentLength - read);
+            if (count < 0) throw new IOException("Connection closed before the end of the body");
+            read += count;
+        }
+        return body;
+    }
+
+    // Returns the next line without its line break, or null at the end of the stream
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+            if (line.size() > MAX_LINE_LENGTH) throw new IOException("Line too long");
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return new String(line.toByteArray(), UTF_8);
+    }
+
+    private static void writeResponse(final OutputStream out,
+                                      final int code,
+                                      final String reason,
+                                      final String allowedHeaders,
+                                      final byte[] body,
+                                      final boolean keepAlive) throws IOException {
+        final StringBuilder sb = new StringBuilder()
+                .append("HTTP/1.1 ").append(code).append(' ').append(reason).append("\r\n")
+                // Dapps are served from any origin
+                .append("Access-Control-Allow-Origin: *\r\n")
+                .append("Access-Control-Allow-Methods: POST, OPTIONS\r\n")
+                .append("Access-Control-Allow-Headers: ")
+                .append(allowedHeaders == null ? "Content-Type" : allowedHeaders).append("\r\n")
+                .append("Access-Control-Max-Age: 600\r\n")
+                .append("Cache-Control: no-store\r\n")
+                .append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n")
+                .append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        if (body != null) sb.append("Content-Type: application/json; charset=utf-8\r\n");
+        sb.append("\r\n");
+        out.write(sb.toString().getBytes(UTF_8));
+        if (body != null) out.write(body);
+        out.flush();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.util.List;
+import java.util.Map;
+
+/* package */ class JsonRpcRequest {
+
+    private final String rawId;
+    private final String method;
+    private final String rawParams;
+
+    // Throws IllegalArgumentException if the JSON isn't a valid JSON-RPC request
+    /* package */ static JsonRpcRequest from(final String rawObject) {
+        final Map<String, String> members = JsonRpcJson.members(rawObject);
+        final String method = JsonRpcJson.unquote(members.get("method"));
+        if (method == null) throw new IllegalArgumentException("Missing method");
+        final String rawId = members.get("id");
+        if (rawId != null && (JsonRpcJson.isArray(rawId) || JsonRpcJson.isObject(rawId))) {
+            throw new IllegalArgumentException("Invalid id");
+        }
+        final String rawParams = members.get("params");
+        if (rawParams != null && !JsonRpcJson.isArray(rawParams) && !JsonRpcJson.isObject(rawParams)) {
+            throw new IllegalArgumentException("Invalid params");
+        }
+        return new JsonRpcRequest(
+                rawId == null ? "null" : rawId,
+                method,
+                rawParams == null ? "[]" : rawParams
+        );
+    }
+
+    private JsonRpcRequest(final String rawId, final String method, final String rawParams) {
+        this.rawId = rawId;
+        this.method = method;
+        this.rawParams = rawParams;
+    }
+
+    /* package */ String getRawId() {
+        return this.rawId;
+    }
+
+    /* package */ String getMethod() {
+        return this.method;
+    }
+
+    // Identical calls have the same key, whatever ids they were sent with
+    /* package */ String getKey() {
+        return this.method + this.rawParams;
+    }
+
+    // Returns the raw param at the index, or null if it wasn't sent
+    /* package */ String getParam(final int index) {
+        if (!JsonRpcJson.isArray(this.rawParams)) return null;
+        final List<String> params = JsonRpcJson.elements(this.rawParams);
+        return index < params.size() ? params.get(index) : null;
+    }
+
+    /* package */ String toJson(final int id) {
+        return String.format(
+                "{\"jsonrpc\":\"2.0\",\"id\":%d,\"method\":%s,\"params\":%s}",
+                id,
+                JsonRpcJson.quote(this.method),
+                this.rawParams
+        );
+    }
+}
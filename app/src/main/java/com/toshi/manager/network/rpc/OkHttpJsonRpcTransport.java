@@ -0,0 +1,59 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/* package */ class OkHttpJsonRpcTransport implements JsonRpcTransport {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private final OkHttpClient client;
+    private final String url;
+
+    /* package */ OkHttpJsonRpcTransport(final String url) {
+        this.url = url;
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    public String send(final String body) throws IOException {
+        final Request request = new Request.Builder()
+                .url(this.url)
+                .post(RequestBody.create(JSON, body))
+                .build();
+        final Response response = this.client.newCall(request).execute();
+        try {
+            if (!response.isSuccessful()) throw new IOException("Node responded with " + response.code());
+            return response.body().string();
+        } finally {
+            response.body().close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// A call on its way to the node, which any number of identical requests can wait on
+/* package */ class PendingCall {
+
+    /* package */ interface OnCompleteListener {
+        void onComplete(PendingCall call);
+    }
+
+    private final JsonRpcRequest request;
+    private final OnCompleteListener listener;
+    private final CountDownLatch done;
+    private volatile String rawResult;
+    private volatile String rawError;
+
+    /* package */ static PendingCall completed(final JsonRpcRequest request, final String rawResult) {
+        final PendingCall call = new PendingCall(request, null);
+        call.succeed(rawResult);
+        return call;
+    }
+
+    /* package */ PendingCall(final JsonRpcRequest request, final OnCompleteListener listener) {
+        this.request = request;
+        this.listener = listener;
+        this.done = new CountDownLatch(1);
+    }
+
+    /* package */ JsonRpcRequest getRequest() {
+        return this.request;
+    }
+
+    /* package */ void succeed(final String rawResult) {
+        complete(rawResult, null);
+    }
+
+    /* package */ void fail(final String rawError) {
+        complete(null, rawError);
+    }
+
+    private synchronized void complete(final String rawResult, final String rawError) {
+        if (this.done.getCount() == 0) return;
+        this.rawResult = rawResult;
+        this.rawError = rawError;
+        // The listener runs first so the result is cached before anyone hears about it
+        if (this.listener != null) this.listener.onComplete(this);
+        this.done.countDown();
+    }
+
+    /* package */ boolean await(final long timeoutMs) throws InterruptedException {
+        return this.done.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /* package */ boolean isSuccessful() {
+        return this.rawError == null;
+    }
+
+    /* package */ String getResult() {
+        return this.rawResult;
+    }
+
+    /* package */ String getError() {
+        return this.rawError;
+    }
+}
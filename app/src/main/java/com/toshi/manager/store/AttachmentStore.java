@@ -0,0 +1,427 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.store;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import com.google.common.io.Files;
+import com.toshi.model.local.SendState;
+import com.toshi.model.sofa.SofaMessage;
+import com.toshi.util.LogUtil;
+import com.toshi.util.ThumbnailCache;
+import com.toshi.util.ThumbnailGenerator;
+import com.toshi.view.BaseApplication;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import rx.Completable;
+import rx.schedulers.Schedulers;
+
+// Attachments are stored once per content, named by the SHA-256 of their bytes, so an image
+// that is forwarded many times only takes up space once. A file is kept for as long as a
+// SofaMessage refers to it through its attachmentFilePath. When the store is over its quota,
+// the least recently used files are evicted, except those of messages still waiting to be sent.
+public class AttachmentStore {
+
+    private static final String PREFS_NAME = "attachment_store";
+    private static final String QUOTA_KEY = "quota";
+    private static final String DIRECTORY_NAME = "attachments";
+    // Received attachments were written here, with timestamp names, before this store existed
+    private static final String[] LEGACY_DIRECTORIES = {"images", "files"};
+    private static final String ATTACHMENT_PATH_FIELD = "attachmentFilePath";
+    private static final String SEND_STATE_FIELD = "sendState";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /* package */ static final long DEFAULT_QUOTA = 200L * 1024 * 1024;
+    // A file this new may belong to a message that hasn't been saved yet
+    private static final long ORPHAN_GRACE_PERIOD = TimeUnit.HOURS.toMillis(1);
+    private static final long SWEEP_DELAY_SECONDS = 30;
+    private static final int BUFFER_SIZE = 8192;
+
+    private static AttachmentStore instance;
+
+    private final SharedPreferences prefs;
+    private final File directory;
+    // Guards the files in the store while they are added, released or evicted
+    private final Object lock = new Object();
+
+    public static synchronized AttachmentStore get() {
+        if (instance == null) {
+            instance = new AttachmentStore();
+        }
+        return instance;
+    }
+
+    private AttachmentStore() {
+        this.prefs = BaseApplication.get().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.directory = new File(BaseApplication.get().getFilesDir(), DIRECTORY_NAME);
+    }
+
+    public long getQuota() {
+        return this.prefs.getLong(QUOTA_KEY, DEFAULT_QUOTA);
+    }
+
+    public void setQuota(final long quota) {
+        this.prefs.edit().putLong(QUOTA_KEY, quota).apply();
+        trimInBackground();
+    }
+
+    // Copies the stream into the store and closes it. Returns the stored file, which is an
+    // existing one if the same content has been stored before.
+    public File store(final InputStream inputStream, @Nullable final String extension) throws IOException {
+        ensureDirectory();
+        final File tempFile = File.createTempFile("attachment", TEMP_SUFFIX, this.directory);
+        final String hash;
+        try {
+            hash = copyAndHash(inputStream, tempFile);
+        } catch (final IOException ex) {
+            tempFile.delete();
+            throw ex;
+        }
+
+        final File storedFile = moveIntoStore(tempFile, hash, extension);
+        trimInBackground();
+        return storedFile;
+    }
+
+    // Moves a file written elsewhere, such as an outgoing attachment, into the store.
+    // Returns the path the file should be referred to by; if it can't be moved this is the given path.
+    public @Nullable String adopt(@Nullable final String path) {
+        if (path == null) return null;
+        final File file = new File(path);
+        if (isInStore(file) || !file.exists()) return path;
+
+        try {
+            final String hash = copyAndHash(new FileInputStream(file), null);
+            final File storedFile = moveIntoStore(file, hash, Files.getFileExtension(file.getName()));
+            trimInBackground();
+            return storedFile.getAbsolutePath();
+        } catch (final IOException ex) {
+            LogUtil.exception(getClass(), "Unable to move attachment into the store", ex);
+            return path;
+        }
+    }
+
+    // Marks the attachment as recently used, so it is among the last to be evicted
+    public void touch(@Nullable final String path) {
+        if (path == null) return;
+        new File(path).setLastModified(System.currentTimeMillis());
+    }
+
+    // Deletes the attachment if no message refers to it any more. Must be called off the main thread,
+    // after the message referring to it has been deleted.
+    public void release(@Nullable final String path) {
+        if (path == null) return;
+        final File file = new File(path);
+        if (!isManaged(file)) return;
+        // The same content may have just been stored for a message that isn't saved yet;
+        // if so the sweep deletes it later, once it is really unused
+        if (System.currentTimeMillis() - file.lastModified() < ORPHAN_GRACE_PERIOD) return;
+
+        synchronized (this.lock) {
+            final Realm realm = BaseApplication.get().getRealm();
+            try {
+                final long references = realm
+                        .where(SofaMessage.class)
+                        .equalTo(ATTACHMENT_PATH_FIELD, path)
+                        .count();
+                if (references > 0) return;
+            } finally {
+                realm.close();
+            }
+            delete(file);
+        }
+    }
+
+    // Deletes attachments that no message refers to, including any left behind by older
+    // versions, then trims the store to its quota
+    public void sweepInBackground() {
+        Completable
+                .timer(SWEEP_DELAY_SECONDS, TimeUnit.SECONDS)
+                .andThen(Completable.fromAction(this::sweep))
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        () -> {},
+                        ex -> LogUtil.exception(getClass(), "Error while sweeping attachments", ex)
+                );
+    }
+
+    private void sweep() {
+        final long startNanos = System.nanoTime();
+        final long now = System.currentTimeMillis();
+        int deletedCount = 0;
+        long freedBytes = 0;
+
+        synchronized (this.lock) {
+            final Set<String> referencedPaths = loadReferencedPaths(false);
+            for (final File directory : getManagedDirectories()) {
+                final File[] files = directory.listFiles();
+                if (files == null) continue;
+
+                for (final File file : files) {
+                    if (!isOrphan(file, referencedPaths, now)) continue;
+                    freedBytes += delete(file);
+                    deletedCount++;
+                }
+            }
+        }
+
+        LogUtil.d(getClass(), String.format(
+                Locale.US,
+                "Swept %d orphaned attachments, freeing %d bytes in %d ms",
+                deletedCount,
+                freedBytes,
+                (System.nanoTime() - startNanos) / 1_000_000));
+        trimToQuota();
+    }
+
+    private boolean isOrphan(final File file, final Set<String> referencedPaths, final long now) {
+        if (file.isDirectory()) return false;
+        if (now - file.lastModified() < ORPHAN_GRACE_PERIOD) return false;
+        if (file.getName().endsWith(TEMP_SUFFIX)) return true;
+        if (ThumbnailGenerator.isGeneratedFile(file)) return !ThumbnailGenerator.getOriginalFile(file).exists();
+        return !referencedPaths.contains(file.getAbsolutePath());
+    }
+
+    private void trimInBackground() {
+        Completable
+                .fromAction(this::trimToQuota)
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        () -> {},
+                        ex -> LogUtil.exception(getClass(), "Error while trimming attachments", ex)
+                );
+    }
+
+    private void trimToQuota() {
+        synchronized (this.lock) {
+            final File[] files = this.directory.listFiles();
+            if (files == null) return;
+
+            long totalSize = 0;
+            final List<StoredFile> storedFiles = new ArrayList<>();
+            for (final File file : files) {
+                totalSize += file.length();
+                if (file.getName().endsWith(TEMP_SUFFIX) || ThumbnailGenerator.isGeneratedFile(file)) continue;
+                storedFiles.add(new StoredFile(file.getAbsolutePath(), getSizeWithGeneratedFiles(file), file.lastModified()));
+            }
+
+            final long quota = getQuota();
+            if (totalSize <= quota) return;
+
+            final Set<String> pinnedPaths = loadReferencedPaths(true);
+            final List<StoredFile> evicted = selectForEviction(storedFiles, pinnedPaths, totalSize, quota);
+            long freedBytes = 0;
+            for (final StoredFile storedFile : evicted) {
+                freedBytes += delete(new File(storedFile.path));
+            }
+
+            LogUtil.i(getClass(), String.format(
+                    Locale.US,
+                    "Evicted %d attachments, freeing %d bytes of %d over a quota of %d",
+                    evicted.size(),
+                    freedBytes,
+                    totalSize,
+                    quota));
+        }
+    }
+
+    // Returns the least recently used unpinned files that need to go to bring totalSize within quota
+    /* package */ static List<StoredFile> selectForEviction(final List<StoredFile> storedFiles,
+                                                            final Set<String> pinnedPaths,
+                                                            final long totalSize,
+                                                            final long quota) {
+        final List<StoredFile> leastRecentlyUsedFirst = new ArrayList<>(storedFiles);
+        Collections.sort(leastRecentlyUsedFirst, (a, b) -> a.lastUsed < b.lastUsed ? -1 : (a.lastUsed == b.lastUsed ? 0 : 1));
+
+        final List<StoredFile> evicted = new ArrayList<>();
+        long remainingSize = totalSize;
+        for (final StoredFile storedFile : leastRecentlyUsedFirst) {
+            if (remainingSize <= quota) break;
+            if (pinnedPaths.contains(storedFile.path)) continue;
+            evicted.add(storedFile);
+            remainingSize -= storedFile.size;
+        }
+        return evicted;
+    }
+
+    // Paths referred to by any message, or if onlyUnsent is true, by messages still waiting to be sent
+    private Set<String> loadReferencedPaths(final boolean onlyUnsent) {
+        final Set<String> paths = new HashSet<>();
+        final Realm realm = BaseApplication.get().getRealm();
+        try {
+            final RealmResults<SofaMessage> messages = onlyUnsent
+                    ? realm
+                        .where(SofaMessage.class)
+                        .isNotNull(ATTACHMENT_PATH_FIELD)
+                        .beginGroup()
+                            .equalTo(SEND_STATE_FIELD, SendState.STATE_SENDING)
+                            .or()
+                            .equalTo(SEND_STATE_FIELD, SendState.STATE_PENDING)
+                            .or()
+                            .equalTo(SEND_STATE_FIELD, SendState.STATE_FAILED)
+                        .endGroup()
+                        .findAll()
+                    : realm
+                        .where(SofaMessage.class)
+                        .isNotNull(ATTACHMENT_PATH_FIELD)
+                        .findAll();
+            for (final SofaMessage message : messages) {
+                paths.add(message.getAttachmentFilePath());
+            }
+        } finally {
+            realm.close();
+        }
+        return paths;
+    }
+
+    private File moveIntoStore(final File file, final String hash, @Nullable final String extension) throws IOException {
+        ensureDirectory();
+        final String name = extension == null || extension.isEmpty() ? hash : hash + "." + extension;
+        final File destination = new File(this.directory, name);
+
+        synchronized (this.lock) {
+            if (destination.exists()) {
+                file.delete();
+                touch(destination.getAbsolutePath());
+                LogUtil.d(getClass(), "Attachment already stored as " + name);
+                return destination;
+            }
+
+            if (!file.renameTo(destination)) {
+                Files.copy(file, destination);
+                file.delete();
+            }
+            return destination;
+        }
+    }
+
+    // Returns the number of bytes freed
+    private long delete(final File file) {
+        final long length = file.length();
+        final long freed = (file.delete() ? length : 0) + ThumbnailGenerator.deleteGeneratedFiles(file);
+        ThumbnailCache.get().remove(file.getAbsolutePath());
+        return freed;
+    }
+
+    private long getSizeWithGeneratedFiles(final File file) {
+        return file.length()
+                + ThumbnailGenerator.getThumbnailFile(file).length()
+                + ThumbnailGenerator.getPreviewFile(file).length();
+    }
+
+    private boolean isInStore(final File file) {
+        return this.directory.equals(file.getParentFile());
+    }
+
+    // Files in these directories belong to the store, and are deleted once no message refers to them
+    private boolean isManaged(final File file) {
+        for (final File directory : getManagedDirectories()) {
+            if (directory.equals(file.getParentFile())) return true;
+        }
+        return false;
+    }
+
+    private List<File> getManagedDirectories() {
+        final List<File> directories = new ArrayList<>();
+        directories.add(this.directory);
+        for (final String name : LEGACY_DIRECTORIES) {
+            directories.add(new File(BaseApplication.get().getFilesDir(), name));
+        }
+        return directories;
+    }
+
+    private void ensureDirectory() throws IOException {
+        if (!this.directory.exists() && !this.directory.mkdirs()) {
+            throw new IOException("Unable to create " + this.directory);
+        }
+    }
+
+    // Reads the stream to the end, writing it to destination if that isn't null, and closes it.
+    // Returns the hex encoded SHA-256 of its content.
+    /* package */ static String copyAndHash(final InputStream inputStream,
+                                            @Nullable final File destination) throws IOException {
+        final MessageDigest digest = newDigest();
+        final InputStream input = new BufferedInputStream(inputStream);
+        final OutputStream output = destination == null ? null : new BufferedOutputStream(new FileOutputStream(destination));
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                if (output != null) output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+            if (output != null) output.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /* package */ static String toHex(final byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /* package */ static class StoredFile {
+        private final String path;
+        private final long size;
+        private final long lastUsed;
+
+        /* package */ StoredFile(final String path, final long size, final long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+
+        /* package */ String getPath() {
+            return this.path;
+        }
+    }
+}
@@ -27,9 +27,11 @@ import com.toshi.model.local.Group;
 import com.toshi.model.local.Recipient;
 import com.toshi.model.local.User;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -144,6 +146,7 @@ public class ConversationStore {
             final Conversation conversationForBroadcast = realm.copyFromRealm(storedConversation);
             realm.close();
 
+            SofaPayloadCache.get().warm(message);
             return conversationForBroadcast;
         });
     }
@@ -218,6 +221,9 @@ public class ConversationStore {
         final RealmResults<Conversation> results = query.findAllSorted("updatedTime", Sort.DESCENDING);
         final List<Conversation> allConversations = realm.copyFromRealm(results);
         realm.close();
+        for (final Conversation conversation : allConversations) {
+            SofaPayloadCache.get().warm(conversation.getLatestMessage());
+        }
         return allConversations;
     }
 
@@ -228,7 +234,9 @@ public class ConversationStore {
     public Single<Conversation> loadByThreadId(final String threadId) {
         return Single.fromCallable(() -> {
             resetUnreadMessageCounter(threadId);
-            return loadWhere(THREAD_ID_FIELD, threadId);
+            final Conversation conversation = loadWhere(THREAD_ID_FIELD, threadId);
+            if (conversation != null) SofaPayloadCache.get().warm(conversation.getAllMessages());
+            return conversation;
         });
     }
 
@@ -250,6 +258,7 @@ public class ConversationStore {
             realm.insertOrUpdate(message);
             realm.commitTransaction();
             realm.close();
+            SofaPayloadCache.get().warm(message);
         })
         .observeOn(Schedulers.immediate())
         .subscribeOn(Schedulers.from(dbThread))
@@ -263,13 +272,36 @@ public class ConversationStore {
         return Completable.fromAction(() -> {
             final Realm realm = BaseApplication.get().getRealm();
             realm.beginTransaction();
-            realm
+            final Conversation conversation = realm
                     .where(Conversation.class)
                     .equalTo(THREAD_ID_FIELD, threadId)
-                    .findFirst()
-                    .deleteFromRealm();
+                    .findFirst();
+            final List<String> messageIds = new ArrayList<>();
+            final List<String> attachmentPaths = new ArrayList<>();
+            if (conversation.getAllMessages() != null) {
+                for (final SofaMessage message : conversation.getAllMessages()) {
+                    messageIds.add(message.getPrivateKey());
+                    if (message.hasAttachment()) attachmentPaths.add(message.getAttachmentFilePath());
+                }
+            }
+            conversation.deleteFromRealm();
+            // The messages would otherwise stay in the database, keeping their attachments alive
+            if (messageIds.size() > 0) {
+                realm
+                        .where(SofaMessage.class)
+                        .in(MESSAGE_ID_FIELD, messageIds.toArray(new String[messageIds.size()]))
+                        .findAll()
+                        .deleteAllFromRealm();
+            }
             realm.commitTransaction();
             realm.close();
+
+            for (final String messageId : messageIds) {
+                SofaPayloadCache.get().remove(messageId);
+            }
+            for (final String attachmentPath : attachmentPaths) {
+                AttachmentStore.get().release(attachmentPath);
+            }
         });
     }
 
@@ -284,6 +316,8 @@ public class ConversationStore {
                     .deleteFromRealm();
             realm.commitTransaction();
             realm.close();
+            SofaPayloadCache.get().remove(message);
+            AttachmentStore.get().release(message.getAttachmentFilePath());
         })
         .observeOn(Schedulers.immediate())
         .subscribeOn(Schedulers.from(dbThread))
@@ -0,0 +1,39 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.adapter;
+
+
+import com.squareup.moshi.Moshi;
+
+// One Moshi instance with every custom adapter, shared by all services.
+// Moshi caches the adapters it generates, so sharing it means each model class is only reflected on once.
+public class MoshiProvider {
+
+    private MoshiProvider() {}
+
+    private static class Holder {
+        private static final Moshi MOSHI = new Moshi.Builder()
+                .add(new BigIntegerAdapter())
+                .add(new BigDecimalAdapter())
+                .add(new RealmListAdapter())
+                .build();
+    }
+
+    public static Moshi get() {
+        return Holder.MOSHI;
+    }
+}
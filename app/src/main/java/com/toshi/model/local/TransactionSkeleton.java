@@ -0,0 +1,123 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.local;
+
+
+import com.toshi.crypto.util.RLPView;
+import com.toshi.crypto.util.RLPWriter;
+import com.toshi.crypto.util.TypeConverter;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+// The fields of an unsigned transaction, encoded the same way as the skeletons
+// returned by the eth service: RLP([nonce, gasPrice, gas, to, value, data]).
+public class TransactionSkeleton {
+
+    private static final int FIELD_COUNT = 6;
+
+    private BigInteger nonce = BigInteger.ZERO;
+    private BigInteger gasPrice = BigInteger.ZERO;
+    private BigInteger gas = BigInteger.ZERO;
+    private byte[] to;
+    private BigInteger value = BigInteger.ZERO;
+    private byte[] data;
+
+    public TransactionSkeleton setNonce(final BigInteger nonce) {
+        this.nonce = nonce;
+        return this;
+    }
+
+    public TransactionSkeleton setGasPrice(final BigInteger gasPrice) {
+        this.gasPrice = gasPrice;
+        return this;
+    }
+
+    public TransactionSkeleton setGas(final BigInteger gas) {
+        this.gas = gas;
+        return this;
+    }
+
+    public TransactionSkeleton setToAddress(final String addressInHex) {
+        this.to = addressInHex == null ? null : TypeConverter.StringHexToByteArray(addressInHex);
+        return this;
+    }
+
+    public TransactionSkeleton setValue(final BigInteger value) {
+        this.value = value;
+        return this;
+    }
+
+    public TransactionSkeleton setData(final String dataInHex) {
+        this.data = dataInHex == null ? null : TypeConverter.StringHexToByteArray(dataInHex);
+        return this;
+    }
+
+    public BigInteger getNonce() {
+        return this.nonce;
+    }
+
+    public BigInteger getGasPrice() {
+        return this.gasPrice;
+    }
+
+    public BigInteger getGas() {
+        return this.gas;
+    }
+
+    public BigInteger getValue() {
+        return this.value;
+    }
+
+    // Hex encoded RLP, as used by UnsignedTransaction and SignedTransaction
+    public String encode() {
+        final int payloadLength = RLPWriter.bigIntegerLength(this.nonce)
+                + RLPWriter.bigIntegerLength(this.gasPrice)
+                + RLPWriter.bigIntegerLength(this.gas)
+                + RLPWriter.elementLength(this.to)
+                + RLPWriter.bigIntegerLength(this.value)
+                + RLPWriter.elementLength(this.data);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.listLength(payloadLength));
+        new RLPWriter(buffer)
+                .writeListHeader(payloadLength)
+                .writeBigInteger(this.nonce)
+                .writeBigInteger(this.gasPrice)
+                .writeBigInteger(this.gas)
+                .writeElement(this.to)
+                .writeBigInteger(this.value)
+                .writeElement(this.data);
+        return TypeConverter.toJsonHex(buffer.array());
+    }
+
+    // Throws IllegalArgumentException if the skeleton isn't a valid unsigned transaction
+    public static TransactionSkeleton decode(final String skeletonInHex) {
+        final RLPView view = RLPView.wrap(TypeConverter.StringHexToByteArray(skeletonInHex));
+        if (!view.isList() || view.size() != FIELD_COUNT) {
+            throw new IllegalArgumentException("Not an unsigned transaction");
+        }
+
+        final TransactionSkeleton skeleton = new TransactionSkeleton();
+        skeleton.nonce = view.get(0).asBigInteger();
+        skeleton.gasPrice = view.get(1).asBigInteger();
+        skeleton.gas = view.get(2).asBigInteger();
+        skeleton.to = view.get(3).getData();
+        skeleton.value = view.get(4).asBigInteger();
+        skeleton.data = view.get(5).getData();
+        return skeleton;
+    }
+}
@@ -56,4 +56,28 @@ public class TransactionRequest {
         this.gasPrice = gasPrice;
         return this;
     }
+
+    public String getValue() {
+        return this.value;
+    }
+
+    public String getToAddress() {
+        return this.to;
+    }
+
+    public String getFromAddress() {
+        return this.from;
+    }
+
+    public String getData() {
+        return this.data;
+    }
+
+    public String getGas() {
+        return this.gas;
+    }
+
+    public String getGasPrice() {
+        return this.gasPrice;
+    }
 }
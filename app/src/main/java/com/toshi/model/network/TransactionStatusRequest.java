@@ -14,18 +14,20 @@
  *     You should have received a copy of the GNU General Public License
  *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+package com.toshi.model.network;
 
-package com.toshi.manager.network.image;
 
-import com.bumptech.glide.load.model.*;
+import java.util.List;
 
-public class ForceLoadGlideUrl extends GlideUrl {
-    private static final Headers FORCE_ETAG_CHECK = new LazyHeaders.Builder()
-            // Force server side validation for the ETAG
-            .addHeader("Cache-Control", "max-age=0")
-            .build();
+public class TransactionStatusRequest {
 
-    public ForceLoadGlideUrl(String url) {
-        super(url, FORCE_ETAG_CHECK);
+    private List<String> tx_hashes;
+
+    public TransactionStatusRequest(final List<String> txHashes) {
+        this.tx_hashes = txHashes;
+    }
+
+    public List<String> getTxHashes() {
+        return this.tx_hashes;
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.network;
+
+
+import com.toshi.model.sofa.Payment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionStatuses {
+
+    private List<TransactionStatus> transactions;
+
+    // Statuses are mapped onto bare payments so they can be
+    // handled in the same way as a single SOFA::Payment status update.
+    public List<Payment> getPayments() {
+        final List<Payment> payments = new ArrayList<>();
+        if (this.transactions == null) return payments;
+
+        for (final TransactionStatus transaction : this.transactions) {
+            if (transaction == null || transaction.tx_hash == null) continue;
+            final Payment payment = new Payment()
+                    .setTxHash(transaction.tx_hash)
+                    .setStatus(transaction.status);
+            payments.add(payment);
+        }
+        return payments;
+    }
+
+    private static class TransactionStatus {
+        private String tx_hash;
+        private String status;
+    }
+}
@@ -21,6 +21,11 @@ package com.toshi.model.network;
 public class UnsignedTransaction {
     private String tx;
 
+    public UnsignedTransaction setTransaction(final String rlpEncodedTransaction) {
+        this.tx = rlpEncodedTransaction;
+        return this;
+    }
+
     public String getTransaction() {
         return this.tx;
     }
@@ -21,6 +21,7 @@ package com.toshi.model.sofa;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.JsonDataException;
 import com.squareup.moshi.Moshi;
+import com.toshi.model.adapter.MoshiProvider;
 import com.toshi.model.local.UnsignedW3Transaction;
 
 import java.io.IOException;
@@ -46,7 +47,7 @@ public class SofaAdapters {
     }
 
     private SofaAdapters() {
-        this.moshi = new Moshi.Builder().build();
+        this.moshi = MoshiProvider.get();
         this.messageAdapter = moshi.adapter(Message.class);
         this.paymentRequestAdapter = moshi.adapter(PaymentRequest.class);
         this.commandAdapter = moshi.adapter(Command.class);
@@ -0,0 +1,181 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.sofa;
+
+
+import android.support.annotation.Nullable;
+
+// Splits a SOFA payload such as 'SOFA::Message:{"body":"Hi"}' into its header and JSON body
+// by scanning for indices, without compiling or running a regex. The results match the
+// patterns "SOFA::.+?:" and "\{.*\}" that were used before, including their handling of line breaks.
+public final class SofaEnvelope {
+
+    private static final String HEADER_PREFIX = "SOFA::";
+    private static final String LOCAL_ONLY_KEY = "\"" + SofaType.LOCAL_ONLY_PAYLOAD + "\"";
+
+    private SofaEnvelope() {}
+
+    public static @Nullable String getHeader(final String payload) {
+        if (payload == null) return null;
+        final int length = payload.length();
+        int from = 0;
+        while (true) {
+            final int start = payload.indexOf(HEADER_PREFIX, from);
+            if (start == -1) return null;
+            final int typeStart = start + HEADER_PREFIX.length();
+            // The type is at least one character long and the header ends at the next colon on the same line
+            if (typeStart < length && !isLineTerminator(payload.charAt(typeStart))) {
+                for (int i = typeStart + 1; i < length; i++) {
+                    final char c = payload.charAt(i);
+                    if (c == ':') return payload.substring(start, i + 1);
+                    if (isLineTerminator(c)) break;
+                }
+            }
+            from = start + 1;
+        }
+    }
+
+    public static @SofaType.Type int getType(final String payload) {
+        return SofaType.getType(getHeader(payload));
+    }
+
+    // Returns the payload from the first '{' to the last '}' on the same line,
+    // or the payload unchanged if it has no body.
+    public static String getBody(final String payload) {
+        final int length = payload.length();
+        int from = 0;
+        while (from < length) {
+            final int open = payload.indexOf('{', from);
+            if (open == -1) return payload;
+            int lineEnd = open + 1;
+            while (lineEnd < length && !isLineTerminator(payload.charAt(lineEnd))) lineEnd++;
+            final int close = payload.lastIndexOf('}', lineEnd - 1);
+            if (close > open) return payload.substring(open, close + 1);
+            from = lineEnd + 1;
+        }
+        return payload;
+    }
+
+    // Returns the payload as it should be sent, without the object holding local-only data.
+    // Payloads that can't be scanned are returned unchanged.
+    public static String toWireFormat(final String payload) {
+        if (payload == null || !payload.contains(LOCAL_ONLY_KEY)) return payload;
+
+        final int bodyStart = payload.indexOf('{');
+        if (bodyStart == -1) return payload;
+        final int length = payload.length();
+        boolean expectKey = true;
+        int i = bodyStart + 1;
+        while (i < length) {
+            final char c = payload.charAt(i);
+            if (c == '"') {
+                if (expectKey && payload.startsWith(LOCAL_ONLY_KEY, i)) {
+                    final int colon = skipWhitespace(payload, i + LOCAL_ONLY_KEY.length());
+                    if (colon < length && payload.charAt(colon) == ':') {
+                        final int valueEnd = skipValue(payload, skipWhitespace(payload, colon + 1));
+                        if (valueEnd == -1) return payload;
+                        return removeMember(payload, i, valueEnd);
+                    }
+                }
+                i = skipString(payload, i);
+                if (i == -1) return payload;
+                expectKey = false;
+                continue;
+            }
+            if (c == '}') return payload;
+            if (c == ',') expectKey = true;
+            if (c == '{' || c == '[') {
+                i = skipValue(payload, i);
+                if (i == -1) return payload;
+                continue;
+            }
+            i++;
+        }
+        return payload;
+    }
+
+    // Removes [start, end) together with the comma that separates it from its neighbour
+    private static String removeMember(final String payload, final int start, final int end) {
+        final int next = skipWhitespace(payload, end);
+        if (next < payload.length() && payload.charAt(next) == ',') {
+            return payload.substring(0, start) + payload.substring(next + 1);
+        }
+
+        int previous = start - 1;
+        while (previous >= 0 && Character.isWhitespace(payload.charAt(previous))) previous--;
+        if (previous >= 0 && payload.charAt(previous) == ',') {
+            return payload.substring(0, previous) + payload.substring(end);
+        }
+        return payload.substring(0, start) + payload.substring(end);
+    }
+
+    // Returns the index after the value starting at start, or -1 if it doesn't end
+    private static int skipValue(final String payload, final int start) {
+        final int length = payload.length();
+        if (start >= length) return -1;
+        final char first = payload.charAt(start);
+        if (first == '"') return skipString(payload, start);
+        if (first != '{' && first != '[') {
+            int i = start;
+            while (i < length && ",}]".indexOf(payload.charAt(i)) == -1) i++;
+            return i < length ? i : -1;
+        }
+
+        int depth = 0;
+        int i = start;
+        while (i < length) {
+            final char c = payload.charAt(i);
+            if (c == '"') {
+                i = skipString(payload, i);
+                if (i == -1) return -1;
+                continue;
+            }
+            if (c == '{' || c == '[') depth++;
+            if (c == '}' || c == ']') depth--;
+            i++;
+            if (depth == 0) return i;
+        }
+        return -1;
+    }
+
+    // Returns the index after the closing quote of the string starting at start, or -1 if it doesn't end
+    private static int skipString(final String payload, final int start) {
+        final int length = payload.length();
+        int i = start + 1;
+        while (i < length) {
+            final char c = payload.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '"') return i + 1;
+            i++;
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(final String payload, final int start) {
+        int i = start;
+        while (i < payload.length() && Character.isWhitespace(payload.charAt(i))) i++;
+        return i;
+    }
+
+    // The characters '.' doesn't match in a regex
+    private static boolean isLineTerminator(final char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
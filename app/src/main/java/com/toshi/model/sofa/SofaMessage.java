@@ -24,8 +24,6 @@ import com.toshi.model.local.User;
 import com.toshi.util.ImageUtil;
 
 import java.util.UUID;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import io.realm.RealmObject;
 import io.realm.annotations.PrimaryKey;
@@ -80,7 +78,7 @@ public class SofaMessage extends RealmObject {
     }
 
     public String getPayload() {
-        return cleanPayload(this.payload);
+        return SofaEnvelope.getBody(this.payload);
     }
 
     public String getPayloadWithHeaders() {
@@ -102,8 +100,7 @@ public class SofaMessage extends RealmObject {
     // Return message in the correct format for SOFA
     public String getAsSofaMessage() {
         // Strip away local-only data before sending via Signal
-        final String matcher = "\"" + SofaType.LOCAL_ONLY_PAYLOAD + "\":\\{.*?\\},";
-        return this.payload.replaceFirst(matcher, "");
+        return SofaEnvelope.toWireFormat(this.payload);
     }
 
     public @SofaType.Type int getType() {
@@ -128,31 +125,10 @@ public class SofaMessage extends RealmObject {
         return this.attachmentFilePath != null;
     }
 
-    private String cleanPayload(final String payload) {
-        final String regexString = "\\{.*\\}";
-        final Pattern pattern = Pattern.compile(regexString);
-        final Matcher m = pattern.matcher(payload);
-        if (m.find()) {
-            return m.group();
-        }
-        return payload;
-    }
-
-    private String getSofaHeader(final String payload) {
-        final String regexString = "SOFA::.+?:";
-        final Pattern pattern = Pattern.compile(regexString);
-        final Matcher m = pattern.matcher(payload);
-        if (m.find()) {
-            return m.group();
-        }
-        return null;
-    }
-
     public SofaMessage makeNew(
             final User sender,
             final String sofaPayload) {
-        final String sofaHeader = getSofaHeader(sofaPayload);
-        final @SofaType.Type int sofaType = SofaType.getType(sofaHeader);
+        final @SofaType.Type int sofaType = SofaEnvelope.getType(sofaPayload);
 
         return  setSendState(SendState.STATE_SENDING)
                 .setType(sofaType)
@@ -161,8 +137,7 @@ public class SofaMessage extends RealmObject {
     }
 
     public SofaMessage makeNew(final String sofaPayload) {
-        final String sofaHeader = getSofaHeader(sofaPayload);
-        final @SofaType.Type int sofaType = SofaType.getType(sofaHeader);
+        final @SofaType.Type int sofaType = SofaEnvelope.getType(sofaPayload);
 
         return setType(sofaType)
                 .setPayload(sofaPayload);
@@ -0,0 +1,174 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.sofa;
+
+
+import com.toshi.util.LogUtil;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Parsed SOFA payloads keyed by message id. An entry is only used while the message
+// still has the payload it was parsed from, so updated messages are parsed again.
+// Parsed objects are shared between callers and must not be modified.
+public class SofaPayloadCache {
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static SofaPayloadCache instance;
+
+    private final Map<String, Entry> entries;
+    private final AtomicInteger parseCount = new AtomicInteger();
+
+    public static synchronized SofaPayloadCache get() {
+        if (instance == null) {
+            instance = new SofaPayloadCache(MAX_ENTRIES);
+        }
+        return instance;
+    }
+
+    /* package */ SofaPayloadCache(final int maxEntries) {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Message messageFrom(final SofaMessage sofaMessage) throws IOException {
+        return (Message) getOrParse(sofaMessage, SofaType.PLAIN_TEXT);
+    }
+
+    public Payment paymentFrom(final SofaMessage sofaMessage) throws IOException {
+        return (Payment) getOrParse(sofaMessage, SofaType.PAYMENT);
+    }
+
+    public PaymentRequest txRequestFrom(final SofaMessage sofaMessage) throws IOException {
+        return (PaymentRequest) getOrParse(sofaMessage, SofaType.PAYMENT_REQUEST);
+    }
+
+    // Parses the payloads that aren't cached yet. Blocking; call it where messages are loaded or saved.
+    public void warm(final Collection<SofaMessage> sofaMessages) {
+        if (sofaMessages == null) return;
+        for (final SofaMessage sofaMessage : sofaMessages) {
+            warm(sofaMessage);
+        }
+    }
+
+    public void warm(final SofaMessage sofaMessage) {
+        if (sofaMessage == null) return;
+        final @SofaType.Type int type = getParsedType(sofaMessage);
+        if (type == SofaType.UNKNOWN) return;
+        try {
+            getOrParse(sofaMessage, type);
+        } catch (final IOException ex) {
+            LogUtil.exception(getClass(), "Unable to parse payload", ex);
+        }
+    }
+
+    private @SofaType.Type int getParsedType(final SofaMessage sofaMessage) {
+        switch (sofaMessage.getType()) {
+            case SofaType.PLAIN_TEXT:
+            case SofaType.COMMAND_REQUEST:
+                return SofaType.PLAIN_TEXT;
+            case SofaType.PAYMENT:
+            case SofaType.PAYMENT_REQUEST:
+                return sofaMessage.getType();
+            default:
+                return SofaType.UNKNOWN;
+        }
+    }
+
+    private Object getOrParse(final SofaMessage sofaMessage, final @SofaType.Type int type) throws IOException {
+        final String privateKey = sofaMessage.getPrivateKey();
+        final String payload = sofaMessage.getPayloadWithHeaders();
+        if (payload == null) throw new IOException("Message has no payload");
+        final int payloadHash = payload.hashCode();
+
+        synchronized (this.entries) {
+            final Entry entry = this.entries.get(privateKey);
+            if (entry != null && entry.matches(type, payloadHash)) return entry.value;
+        }
+
+        final Object value = parse(sofaMessage.getPayload(), type);
+        synchronized (this.entries) {
+            this.entries.put(privateKey, new Entry(type, payloadHash, value));
+        }
+        return value;
+    }
+
+    private Object parse(final String payload, final @SofaType.Type int type) throws IOException {
+        this.parseCount.incrementAndGet();
+        final SofaAdapters adapters = SofaAdapters.get();
+        switch (type) {
+            case SofaType.PLAIN_TEXT:
+                return adapters.messageFrom(payload);
+            case SofaType.PAYMENT:
+                return adapters.paymentFrom(payload);
+            case SofaType.PAYMENT_REQUEST:
+                return adapters.txRequestFrom(payload);
+            default:
+                throw new IOException("Unsupported payload type: " + type);
+        }
+    }
+
+    public void remove(final SofaMessage sofaMessage) {
+        remove(sofaMessage.getPrivateKey());
+    }
+
+    public void remove(final String privateKey) {
+        synchronized (this.entries) {
+            this.entries.remove(privateKey);
+        }
+    }
+
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+        }
+    }
+
+    /* package */ int size() {
+        synchronized (this.entries) {
+            return this.entries.size();
+        }
+    }
+
+    /* package */ int getParseCount() {
+        return this.parseCount.get();
+    }
+
+    private static class Entry {
+        private final @SofaType.Type int type;
+        private final int payloadHash;
+        private final Object value;
+
+        private Entry(final @SofaType.Type int type, final int payloadHash, final Object value) {
+            this.type = type;
+            this.payloadHash = payloadHash;
+            this.value = value;
+        }
+
+        private boolean matches(final @SofaType.Type int type, final int payloadHash) {
+            return this.type == type && this.payloadHash == payloadHash;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package com.toshi.presenter;
 
 import android.content.Intent;
+import android.os.Looper;
 import android.support.v4.content.ContextCompat;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -28,6 +29,7 @@ import com.jakewharton.rxbinding.widget.RxTextView;
 import com.toshi.R;
 import com.toshi.manager.AppsManager;
 import com.toshi.manager.UserManager;
+import com.toshi.manager.network.DappResourceCache;
 import com.toshi.model.local.Dapp;
 import com.toshi.model.local.ToshiEntity;
 import com.toshi.model.local.User;
@@ -302,6 +304,15 @@ public class AppsPresenter implements Presenter<AppsFragment>{
         fetchFeaturedApps();
         fetchTopRatedPublicUsers();
         fetchLatestPublicUsers();
+        prefetchDappsWhenIdle();
+    }
+
+    // Waits until the browse screen has nothing left to draw before warming the dapp cache
+    private void prefetchDappsWhenIdle() {
+        Looper.myQueue().addIdleHandler(() -> {
+            DappResourceCache.get().prefetchRecentDapps();
+            return false;
+        });
     }
 
     private void fetchTopRatedApps() {
@@ -157,10 +157,8 @@ public class AttachmentConfirmationPresenter implements Presenter<AttachmentConf
     }
 
     private void saveAndCompressImageToFile() {
-        final FileUtil fileUtil = new FileUtil();
         final Subscription sub =
-                fileUtil.saveFileFromUri(this.activity, getAttachmentUri())
-                .flatMap(file -> fileUtil.compressImage(FileUtil.MAX_SIZE, file))
+                new FileUtil().saveCompressedImageFromUri(this.activity, getAttachmentUri(), FileUtil.MAX_SIZE)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         compressedFile -> finishWithResult(compressedFile.getAbsolutePath()),
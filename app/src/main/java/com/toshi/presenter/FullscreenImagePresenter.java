@@ -20,6 +20,7 @@ package com.toshi.presenter;
 import android.view.WindowManager;
 
 import com.toshi.util.ImageUtil;
+import com.toshi.util.ThumbnailGenerator;
 import com.toshi.view.activity.FullscreenImageActivity;
 
 import java.io.File;
@@ -46,7 +47,7 @@ public class FullscreenImagePresenter implements Presenter<FullscreenImageActivi
     }
 
     private void initView() {
-        final File file = new File(this.filePath);
+        final File file = ThumbnailGenerator.getPreviewOrOriginal(new File(this.filePath));
         ImageUtil.renderFileIntoTarget(file, this.activity.getBinding().image);
     }
 
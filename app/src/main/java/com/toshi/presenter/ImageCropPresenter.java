@@ -146,10 +146,8 @@ public class ImageCropPresenter implements Presenter<ImageCropActivity> {
     }
 
     private void createNewFileAndUploadAvatar(final Uri uri) {
-        final FileUtil fileUtil = new FileUtil();
         final Subscription sub =
-                fileUtil.saveFileFromUri(this.activity, uri)
-                .flatMap(file -> fileUtil.compressImage(FileUtil.MAX_SIZE, file))
+                new FileUtil().saveCompressedImageFromUri(this.activity, uri, FileUtil.MAX_SIZE)
                 .subscribe(
                         this::uploadAvatar,
                         __ -> handleUploadError()
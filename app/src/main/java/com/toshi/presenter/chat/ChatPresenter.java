@@ -105,6 +105,7 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
     private Subscription newMessageSubscription;
     private Subscription updatedMessageSubscription;
     private Subscription deletedMessageSubscription;
+    private Subscription attachmentProgressSubscription;
 
     private Pair<PublishSubject<SofaMessage>, PublishSubject<SofaMessage>> chatObservables;
     private Observable<SofaMessage> deleteObservable;
@@ -765,9 +766,22 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
                         this::handleError
                 );
 
+        this.attachmentProgressSubscription =
+                BaseApplication
+                .get()
+                .getSofaMessageManager()
+                .registerForAttachmentProgress()
+                .onBackpressureLatest()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        this.messageAdapter::setUploadProgress,
+                        this::handleError
+                );
+
         this.subscriptions.addAll(
                 this.newMessageSubscription,
-                this.updatedMessageSubscription
+                this.updatedMessageSubscription,
+                this.attachmentProgressSubscription
         );
     }
 
@@ -775,6 +789,7 @@ public final class ChatPresenter implements Presenter<ChatActivity> {
         if (this.newMessageSubscription != null) this.newMessageSubscription.unsubscribe();
         if (this.updatedMessageSubscription != null) this.updatedMessageSubscription.unsubscribe();
         if (this.deletedMessageSubscription != null) this.deletedMessageSubscription.unsubscribe();
+        if (this.attachmentProgressSubscription != null) this.attachmentProgressSubscription.unsubscribe();
     }
 
     private void handleNewMessage(final SofaMessage sofaMessage) {
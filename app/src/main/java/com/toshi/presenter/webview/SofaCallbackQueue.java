@@ -0,0 +1,56 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.presenter.webview;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Collects SOFA callbacks so that all of the callbacks that complete while the main thread
+// is busy reach the page in one script evaluation. SOFA.callback calls straight into the
+// dapp, so each callback is guarded to keep one that throws from losing the ones after it.
+/* package */ class SofaCallbackQueue {
+
+    private final List<String> pending = new ArrayList<>();
+    private boolean flushScheduled;
+
+    // Returns true if the caller has to schedule a flush, which is only
+    // the case for the first callback added after the previous flush.
+    /* package */ synchronized boolean add(final String id, final String encodedCallback) {
+        this.pending.add(String.format("try{SOFA.callback(\"%s\",\"%s\");}catch(e){}", id, encodedCallback));
+        if (this.flushScheduled) return false;
+        this.flushScheduled = true;
+        return true;
+    }
+
+    // Returns the script running every queued callback in order, or null if there are none
+    /* package */ synchronized String drain() {
+        this.flushScheduled = false;
+        if (this.pending.isEmpty()) return null;
+        final StringBuilder sb = new StringBuilder();
+        for (final String methodCall : this.pending) {
+            sb.append(methodCall);
+        }
+        this.pending.clear();
+        return sb.toString();
+    }
+
+    /* package */ synchronized void clear() {
+        this.pending.clear();
+        this.flushScheduled = false;
+    }
+}
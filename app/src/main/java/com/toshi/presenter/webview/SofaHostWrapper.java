@@ -22,6 +22,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.support.annotation.StringRes;
 import android.support.v7.app.AppCompatActivity;
 import android.webkit.WebView;
 
@@ -39,24 +40,45 @@ import com.toshi.view.BaseApplication;
 import com.toshi.view.fragment.DialogFragment.PaymentConfirmationDialog;
 
 import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import rx.Single;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.CompositeSubscription;
+
+// Routes requests from the page to the wallet. The bridge methods are called on the
+// WebView's JavaBridge thread and return straight away; each request completes on its own,
+// so a dapp can have several in flight, and the results are sent back in batches.
 /* package */ class SofaHostWrapper implements SofaHostListener {
 
     private final AppCompatActivity activity;
     private final WebView webView;
     private final SOFAHost sofaHost;
-    private final HDWallet wallet;
+    private final Single<HDWallet> wallet;
+    private final Handler mainHandler;
+    private final SofaCallbackQueue callbackQueue;
+    // Transactions waiting for the user, parsed once and kept until their callback is sent
+    private final Map<String, UnsignedW3Transaction> transactions;
+    private final CompositeSubscription subscriptions;
+    private volatile boolean destroyed;
 
     /* package */ SofaHostWrapper(final AppCompatActivity activity, final WebView webView) {
         this.activity = activity;
         this.webView = webView;
         this.sofaHost = new SOFAHost(this);
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        this.callbackQueue = new SofaCallbackQueue();
+        this.transactions = new ConcurrentHashMap<>();
+        this.subscriptions = new CompositeSubscription();
         this.wallet = BaseApplication
                         .get()
                         .getToshiManager()
                         .getWallet()
-                        .toBlocking()
-                        .value();
+                        .toObservable()
+                        .cache()
+                        .toSingle();
     }
 
     /* package */ SOFAHost getSofaHost() {
@@ -64,41 +86,67 @@ import java.io.IOException;
     }
 
     public void getAccounts(final String id) {
-        final GetAccountsCallback callback =
-                new GetAccountsCallback().setResult(this.wallet.getPaymentAddress());
+        final Subscription sub =
+                this.wallet
+                .subscribe(
+                        wallet -> handleAccounts(id, wallet),
+                        throwable -> {
+                            LogUtil.exception(getClass(), "Unable to get accounts", throwable);
+                            sendError(id, R.string.error__get_accounts);
+                        }
+                );
+        this.subscriptions.add(sub);
+    }
 
+    private void handleAccounts(final String id, final HDWallet wallet) {
+        if (wallet == null) {
+            LogUtil.i(getClass(), "No wallet to get accounts from");
+            sendError(id, R.string.error__get_accounts);
+            return;
+        }
+        final GetAccountsCallback callback =
+                new GetAccountsCallback().setResult(wallet.getPaymentAddress());
         doCallBack(id, callback.toJsonEncodedString());
     }
 
     public void approveTransaction(final String id, final String unsignedTransaction) {
-        final boolean shouldApprove = shouldApproveTransaction(unsignedTransaction);
+        final UnsignedW3Transaction transaction = parseTransaction(unsignedTransaction);
+        if (transaction == null) {
+            sendApproval(id, false);
+            return;
+        }
+
+        final Subscription sub =
+                this.wallet
+                .map(wallet -> wallet != null && transaction.getFrom().equals(wallet.getPaymentAddress()))
+                .subscribe(
+                        shouldApprove -> sendApproval(id, shouldApprove),
+                        throwable -> sendApproval(id, false)
+                );
+        this.subscriptions.add(sub);
+    }
+
+    private void sendApproval(final String id, final boolean shouldApprove) {
         final ApproveTransactionCallback callback =
                 new ApproveTransactionCallback()
                         .setResult(shouldApprove);
         doCallBack(id, callback.toJsonEncodedString());
     }
 
-    private boolean shouldApproveTransaction(final String unsignedTransaction) {
-        final UnsignedW3Transaction transaction;
-        try {
-            transaction = SofaAdapters.get().unsignedW3TransactionFrom(unsignedTransaction);
-        } catch (final IOException e) {
-            LogUtil.exception(getClass(), "Unable to parse unsigned transaction. ", e);
-            return false;
-        }
-
-        return transaction.getFrom().equals(this.wallet.getPaymentAddress());
-    }
-
     public void signTransaction(final String id, final String unsignedTransaction) {
-        final UnsignedW3Transaction transaction;
-        try {
-            transaction = SofaAdapters.get().unsignedW3TransactionFrom(unsignedTransaction);
-        } catch (final IOException e) {
-            LogUtil.exception(getClass(), "Unable to parse unsigned transaction. ", e);
+        final UnsignedW3Transaction transaction = parseTransaction(unsignedTransaction);
+        if (transaction == null) {
+            sendError(id, R.string.error__sign_transaction);
             return;
         }
-        if (this.activity == null) return;
+        this.transactions.put(id, transaction);
+        this.mainHandler.post(() -> showPaymentConfirmation(id, unsignedTransaction, transaction));
+    }
+
+    private void showPaymentConfirmation(final String id,
+                                         final String unsignedTransaction,
+                                         final UnsignedW3Transaction transaction) {
+        if (this.destroyed) return;
         final PaymentConfirmationDialog dialog =
                 PaymentConfirmationDialog
                         .newInstanceWebPayment(
@@ -120,22 +168,25 @@ import java.io.IOException;
     }
 
     private void handlePaymentApproved(final String callbackId, final String unsignedTransaction) {
-        final UnsignedW3Transaction transaction;
-        try {
-            transaction = SofaAdapters.get().unsignedW3TransactionFrom(unsignedTransaction);
-        } catch (final IOException e) {
-            LogUtil.exception(getClass(), "Unable to parse unsigned transaction. ", e);
-            return;
-        }
-
-        BaseApplication
+        // The dialog outlives this wrapper when the activity is recreated,
+        // in which case the transaction has to be parsed again
+        final UnsignedW3Transaction cachedTransaction = this.transactions.get(callbackId);
+        final UnsignedW3Transaction transaction = cachedTransaction != null
+                ? cachedTransaction
+                : parseTransaction(unsignedTransaction);
+        if (transaction == null) return;
+
+        final Subscription sub =
+                BaseApplication
                 .get()
                 .getTransactionManager()
                 .signW3Transaction(transaction)
+                .subscribeOn(Schedulers.io())
                 .subscribe(
                         signedTransaction -> handleSignedW3Transaction(callbackId, signedTransaction),
-                        throwable -> LogUtil.exception(getClass(), throwable)
+                        throwable -> handleSigningError(callbackId, throwable)
                 );
+        this.subscriptions.add(sub);
     }
 
     private void handleSignedW3Transaction(final String callbackId, final SignedTransaction signedTransaction) {
@@ -146,24 +197,57 @@ import java.io.IOException;
         doCallBack(callbackId, callback.toJsonEncodedString());
     }
 
+    private void handleSigningError(final String callbackId, final Throwable throwable) {
+        LogUtil.exception(getClass(), "Unable to sign transaction", throwable);
+        sendError(callbackId, R.string.error__sign_transaction);
+    }
+
     private void handleAcceptedCanceled(final Bundle bundle) {
         final String callbackId = bundle.getString(PaymentConfirmationDialog.CALLBACK_ID);
+        sendError(callbackId, R.string.error__reject_transaction);
+    }
+
+    private void sendError(final String callbackId, final @StringRes int errorRes) {
         final RejectTransactionCallback callback =
                 new RejectTransactionCallback()
-                        .setError(BaseApplication.get().getString(R.string.error__reject_transaction));
+                        .setError(BaseApplication.get().getString(errorRes));
         doCallBack(callbackId, callback.toJsonEncodedString());
     }
 
+    private UnsignedW3Transaction parseTransaction(final String unsignedTransaction) {
+        try {
+            return SofaAdapters.get().unsignedW3TransactionFrom(unsignedTransaction);
+        } catch (final IOException e) {
+            LogUtil.exception(getClass(), "Unable to parse unsigned transaction. ", e);
+            return null;
+        }
+    }
+
+    // Safe to call from any thread. Callbacks that complete before the main thread gets
+    // to the first one are sent along with it.
     private void doCallBack(final String id, final String encodedCallback) {
-        new Handler(Looper.getMainLooper()).post(() -> {
-            if (activity == null) return;
-            final String methodCall = String.format("SOFA.callback(\"%s\",\"%s\")", id, encodedCallback);
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-                webView.evaluateJavascript(methodCall, null);
-            } else {
-                webView.loadUrl("javascript:" + methodCall);
-            }
-        });
+        if (id != null) this.transactions.remove(id);
+        if (this.destroyed) return;
+        if (this.callbackQueue.add(id, encodedCallback)) {
+            this.mainHandler.post(this::flushCallbacks);
+        }
+    }
+
+    private void flushCallbacks() {
+        final String script = this.callbackQueue.drain();
+        if (script == null || this.destroyed) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            this.webView.evaluateJavascript(script, null);
+        } else {
+            this.webView.loadUrl("javascript:" + script);
+        }
+    }
 
+    /* package */ void destroy() {
+        this.destroyed = true;
+        this.subscriptions.clear();
+        this.mainHandler.removeCallbacksAndMessages(null);
+        this.callbackQueue.clear();
+        this.transactions.clear();
     }
 }
@@ -0,0 +1,146 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.presenter.webview;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Passes a page through as it is read, inserting the SOFA script right before the first
+// <script tag. The tag is matched on bytes, ignoring ASCII case, so the page is never decoded;
+// this relies on the page's encoding being ASCII compatible, as HTML encodings are in practice.
+// If there is no <script tag nothing is inserted.
+/* package */ class SofaInjectingInputStream extends FilterInputStream {
+
+    private static final byte[] SCRIPT_TAG = {'<', 's', 'c', 'r', 'i', 'p', 't'};
+    private static final int CHUNK_SIZE = 8192;
+
+    private final byte[] injection;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    // Bytes that could be the start of a <script tag, held back until it is known whether they are
+    private final ByteArrayOutputStream heldBack = new ByteArrayOutputStream(SCRIPT_TAG.length);
+    private final ByteArrayOutputStream scanned = new ByteArrayOutputStream(CHUNK_SIZE);
+    private byte[] ready = new byte[0];
+    private int readyPosition;
+    private int matched;
+    private boolean isInjected;
+    private boolean isEndOfStream;
+
+    /* package */ SofaInjectingInputStream(final InputStream inputStream, final byte[] injection) {
+        super(inputStream);
+        this.injection = injection;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+        final int count = read(single, 0, 1);
+        return count == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) return 0;
+
+        while (this.readyPosition >= this.ready.length) {
+            // Once injected, what is left of the page is passed straight through
+            if (this.isInjected && this.heldBack.size() == 0) return this.in.read(buffer, offset, length);
+            if (this.isEndOfStream) return -1;
+            fillReady();
+        }
+
+        final int count = Math.min(length, this.ready.length - this.readyPosition);
+        System.arraycopy(this.ready, this.readyPosition, buffer, offset, count);
+        this.readyPosition += count;
+        return count;
+    }
+
+    private void fillReady() throws IOException {
+        this.scanned.reset();
+        final int count = this.in.read(this.chunk, 0, this.chunk.length);
+        if (count == -1) {
+            this.isEndOfStream = true;
+            this.heldBack.writeTo(this.scanned);
+            this.heldBack.reset();
+        } else {
+            scan(this.chunk, count);
+        }
+        this.ready = this.scanned.toByteArray();
+        this.readyPosition = 0;
+    }
+
+    private void scan(final byte[] bytes, final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final byte b = bytes[i];
+            if (this.isInjected) {
+                this.scanned.write(bytes, i, count - i);
+                return;
+            }
+
+            if (toLowerCase(b) == SCRIPT_TAG[this.matched]) {
+                this.heldBack.write(b);
+                this.matched++;
+                if (this.matched == SCRIPT_TAG.length) inject();
+                continue;
+            }
+
+            // '<' only occurs at the start of the tag, so a mismatch can only restart the match on b itself
+            this.heldBack.writeTo(this.scanned);
+            this.heldBack.reset();
+            this.matched = 0;
+            if (b == SCRIPT_TAG[0]) {
+                this.heldBack.write(b);
+                this.matched = 1;
+            } else {
+                this.scanned.write(b);
+            }
+        }
+    }
+
+    private void inject() throws IOException {
+        this.scanned.write(this.injection);
+        this.heldBack.writeTo(this.scanned);
+        this.heldBack.reset();
+        this.matched = 0;
+        this.isInjected = true;
+    }
+
+    private static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    @Override
+    public int available() throws IOException {
+        final int readyCount = this.ready.length - this.readyPosition;
+        if (readyCount == 0 && this.isInjected) return this.in.available();
+        return readyCount;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        final byte[] skipped = new byte[(int) Math.min(count, CHUNK_SIZE)];
+        final int read = read(skipped, 0, skipped.length);
+        return read == -1 ? 0 : read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
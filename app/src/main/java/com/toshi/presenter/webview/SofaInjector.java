@@ -18,33 +18,42 @@
 package com.toshi.presenter.webview;
 
 
+import android.os.Build;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+import android.webkit.WebResourceResponse;
 
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.Request;
-import com.squareup.okhttp.Response;
-import com.toshi.R;
-import com.toshi.view.BaseApplication;
+import com.toshi.manager.network.DappResourceCache;
+import com.toshi.util.LogUtil;
 import com.toshi.view.custom.listener.OnLoadListener;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
-import rx.Completable;
+import okhttp3.MediaType;
+import okhttp3.Response;
 import rx.Single;
 import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 /* package */ class SofaInjector {
 
-    private final OkHttpClient client;
+    private static final String DEFAULT_MIME_TYPE = "text/html";
+    private static final String DEFAULT_ENCODING = "utf-8";
+    // The body is changed on its way to the WebView, so these no longer describe it
+    private static final String[] DROPPED_RESPONSE_HEADERS = {"content-length", "content-encoding", "transfer-encoding"};
+
     private final CompositeSubscription subscriptions;
     private final OnLoadListener listener;
 
-    private String sofaScript;
+    private volatile byte[] sofaScript;
 
     /**
      * Injects SOFA script into valid pages
@@ -53,89 +62,98 @@ import rx.subscriptions.CompositeSubscription;
      */
     /* package */ SofaInjector(@NonNull final OnLoadListener listener) {
         this.listener = listener;
-        this.client = new OkHttpClient();
         this.subscriptions = new CompositeSubscription();
         asyncLoadSofaScript();
     }
 
     private void asyncLoadSofaScript() {
         final Subscription sub =
-                loadSofaScript()
+                Single.fromCallable(() -> DappResourceCache.get().getSofaScript())
+                        .subscribeOn(Schedulers.io())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
-                                this.listener::onReady,
+                                this::handleSofaScript,
                                 this.listener::onError
                         );
         this.subscriptions.add(sub);
     }
 
-    /* package */ Single<SofaInjectResponse> loadUrl(final String url) {
-        return Single.fromCallable(() -> loadAndInjectSofa(url));
+    private void handleSofaScript(final byte[] sofaScript) {
+        this.sofaScript = sofaScript;
+        this.listener.onReady();
     }
 
-    private SofaInjectResponse loadAndInjectSofa(final String url) throws IOException {
-        final Request request = new Request.Builder()
-                .url(url)
-                .build();
-
-        final Response response = this.client.newCall(request).execute();
-        if (!response.isSuccessful()) throw new IOException("Unexpected code " + response);
-
-        final String body = response.body().string();
-        final String injectedBody = injectSofaScript(body);
-
-        return new SofaInjectResponse.Builder()
-                .setAddress(url)
-                .setData(injectedBody)
-                .setMimeType(response.header("content-type", "text/plain"))
-                .setEncoding(response.header("content-encoding", "utf-8"))
-                .build();
+    // Called by the WebView on a background thread for each main frame navigation. The page is
+    // handed to the WebView as a stream, so it renders while it downloads.
+    // Returns null to let the WebView load the page itself, without SOFA, if the request fails.
+    /* package */ @Nullable WebResourceResponse interceptMainFrame(final String url,
+                                                                   @Nullable final Map<String, String> requestHeaders) {
+        return intercept(url, requestHeaders, true);
     }
 
-    private Completable loadSofaScript() {
-        final StringBuilder sb = new StringBuilder();
-        final InputStream stream = BaseApplication.get().getResources().openRawResource(R.raw.sofa);
-        final BufferedReader in = new BufferedReader(new InputStreamReader(stream));
-
-        sb.append(getRcpUrlInjection());
+    // Called by the WebView on a background thread for static assets, which are served
+    // from the dapp disk cache and passed through unchanged.
+    /* package */ @Nullable WebResourceResponse interceptAsset(final String url,
+                                                              @Nullable final Map<String, String> requestHeaders) {
+        return intercept(url, requestHeaders, false);
+    }
 
+    private @Nullable WebResourceResponse intercept(final String url,
+                                                    @Nullable final Map<String, String> requestHeaders,
+                                                    final boolean injectSofa) {
+        final Response response;
         try {
-            String str;
-            while ((str = in.readLine()) != null) {
-                sb.append(str);
-                sb.append("\n");
-            }
-        } catch (final IOException ex) {
-            return Completable.error(ex);
-        } finally {
-            try {
-                in.close();
-            } catch (final IOException ex) {
-                // Return in a finally statement. We failed anyway.
-                return Completable.error(ex);
-            }
+            response = DappResourceCache.get().fetch(url, requestHeaders);
+        } catch (final IOException | IllegalArgumentException ex) {
+            LogUtil.exception(getClass(), "Unable to load " + url, ex);
+            return null;
         }
 
-        this.sofaScript = "<script>" + sb.toString() + "</script>\n";
+        final MediaType contentType = response.body().contentType();
+        final String mimeType = getMimeType(contentType);
+        final String encoding = getEncoding(contentType);
+        final InputStream body = injectSofa && mimeType.equals(DEFAULT_MIME_TYPE)
+                ? new SofaInjectingInputStream(response.body().byteStream(), this.sofaScript)
+                : response.body().byteStream();
 
-        return Completable.complete();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return buildResponse(response, mimeType, encoding, body);
+        }
+        return new WebResourceResponse(mimeType, encoding, body);
     }
 
-    private String getRcpUrlInjection() {
-        return String.format("window.SOFA = {config: {rcpUrl: \"%s\"}};", BaseApplication.get().getResources().getString(R.string.rcp_url));
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private WebResourceResponse buildResponse(final Response response,
+                                              final String mimeType,
+                                              final String encoding,
+                                              final InputStream body) {
+        final Map<String, String> headers = new HashMap<>();
+        for (final String name : response.headers().names()) {
+            if (contains(DROPPED_RESPONSE_HEADERS, name)) continue;
+            headers.put(name, response.header(name));
+        }
+        final String reasonPhrase = response.message() == null || response.message().isEmpty()
+                ? "OK"
+                : response.message();
+        return new WebResourceResponse(mimeType, encoding, response.code(), reasonPhrase, headers, body);
+    }
+
+    private static boolean contains(final String[] headerNames, final String name) {
+        final String lowerCaseName = name.toLowerCase(Locale.US);
+        for (final String headerName : headerNames) {
+            if (headerName.equals(lowerCaseName)) return true;
+        }
+        return false;
     }
 
-    private String injectSofaScript(final String body) {
-        final int position = getInjectionPosition(body);
-        if (position == -1) return body;
-        final String beforeTag = body.substring(0, position);
-        final String afterTab = body.substring(position);
-        return beforeTag + this.sofaScript + afterTab;
+    private static String getMimeType(@Nullable final MediaType contentType) {
+        if (contentType == null) return DEFAULT_MIME_TYPE;
+        return String.format("%s/%s", contentType.type(), contentType.subtype()).toLowerCase(Locale.US);
     }
 
-    private int getInjectionPosition(final String body) {
-        final String htmlTag = "<script";
-        return body.toLowerCase().indexOf(htmlTag);
+    private static String getEncoding(@Nullable final MediaType contentType) {
+        final Charset charset = contentType == null ? null : contentType.charset();
+        return charset == null ? DEFAULT_ENCODING : charset.name();
     }
 
     /* package */ void destroy() {
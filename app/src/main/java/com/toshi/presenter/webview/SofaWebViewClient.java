@@ -21,17 +21,58 @@ package com.toshi.presenter.webview;
 import android.os.Build;
 import android.support.annotation.NonNull;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
+import com.toshi.manager.network.DappResourceCache;
 import com.toshi.view.custom.listener.OnLoadListener;
 
 /* package */ class SofaWebViewClient extends WebViewClient {
 
     private final OnLoadListener listener;
+    private final SofaInjector sofaInjector;
+    // Before Lollipop requests don't say whether they are for the main frame,
+    // so the page being navigated to is remembered instead
+    private volatile String mainFrameUrl;
 
-    /* package */ SofaWebViewClient(@NonNull final OnLoadListener listener) {
+    /* package */ SofaWebViewClient(@NonNull final OnLoadListener listener,
+                                    @NonNull final SofaInjector sofaInjector) {
         this.listener = listener;
+        this.sofaInjector = sofaInjector;
+    }
+
+    /* package */ void loadUrl(final WebView webView, final String url) {
+        this.mainFrameUrl = url;
+        webView.loadUrl(url);
+    }
+
+    @Override
+    public WebResourceResponse shouldInterceptRequest(final WebView view, final WebResourceRequest request) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) return null;
+        if (!"GET".equals(request.getMethod())) return null;
+        final String url = request.getUrl().toString();
+        if (request.isForMainFrame()) {
+            return this.sofaInjector.interceptMainFrame(url, request.getRequestHeaders());
+        }
+        if (DappResourceCache.isCacheableAsset(url)) {
+            return this.sofaInjector.interceptAsset(url, request.getRequestHeaders());
+        }
+        return null;
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public WebResourceResponse shouldInterceptRequest(final WebView view, final String url) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) return null;
+        if (url == null) return null;
+        if (url.equals(this.mainFrameUrl)) {
+            return this.sofaInjector.interceptMainFrame(url, null);
+        }
+        if (DappResourceCache.isCacheableAsset(url)) {
+            return this.sofaInjector.interceptAsset(url, null);
+        }
+        return null;
     }
 
     @Override
@@ -28,6 +28,7 @@ import android.webkit.WebView;
 import android.widget.Toast;
 
 import com.toshi.R;
+import com.toshi.manager.network.DappResourceCache;
 import com.toshi.presenter.Presenter;
 import com.toshi.util.LogUtil;
 import com.toshi.view.activity.WebViewActivity;
@@ -35,9 +36,6 @@ import com.toshi.view.custom.listener.OnLoadListener;
 
 import java.net.URI;
 
-import rx.Subscription;
-import rx.android.schedulers.AndroidSchedulers;
-import rx.schedulers.Schedulers;
 import rx.subscriptions.CompositeSubscription;
 
 public class WebViewPresenter implements Presenter<WebViewActivity> {
@@ -79,15 +77,15 @@ public class WebViewPresenter implements Presenter<WebViewActivity> {
     }
 
     private void initInjectsAndEmbeds() {
-        this.webClient = new SofaWebViewClient(this.loadedListener);
         this.sofaInjector = new SofaInjector(this.loadedListener);
+        this.webClient = new SofaWebViewClient(this.loadedListener, this.sofaInjector);
         this.sofaHostWrapper = new SofaHostWrapper(this.activity, this.activity.getBinding().webview);
     }
 
     private void initWebSettings() {
         final WebSettings webSettings = this.activity.getBinding().webview.getSettings();
         webSettings.setJavaScriptEnabled(true);
-        webSettings.setCacheMode(WebSettings.LOAD_CACHE_ELSE_NETWORK);
+        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
         webSettings.setBuiltInZoomControls(true);
         webSettings.setDisplayZoomControls(false);
         webSettings.setUseWideViewPort(false);
@@ -140,34 +138,17 @@ public class WebViewPresenter implements Presenter<WebViewActivity> {
         private void handleOnReady() {
             try {
                 final String address = getAddress();
+                DappResourceCache.get().recordVisit(address);
                 loadUrlFromAddress(address);
             } catch (IllegalArgumentException e) {
                 showToast(R.string.unsupported_format);
             }
         }
 
+        // The SOFA script is injected as the page streams in; see SofaWebViewClient.shouldInterceptRequest
         private void loadUrlFromAddress(final String address) {
-            final Subscription sub = sofaInjector.loadUrl(address)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(
-                            this::handleWebResourceResponse,
-                            this::onError
-                    );
-
-            subscriptions.add(sub);
-        }
-
-        private void handleWebResourceResponse(final SofaInjectResponse response) {
-            if (activity == null) return;
-            activity.getBinding()
-                    .webview
-                    .loadDataWithBaseURL(
-                        response.getAddress(),
-                        response.getData(),
-                        response.getMimeType(),
-                        response.getEncoding(),
-                        null);
+            if (activity == null || webClient == null) return;
+            webClient.loadUrl(activity.getBinding().webview, address);
         }
 
         @Override
@@ -238,6 +219,7 @@ public class WebViewPresenter implements Presenter<WebViewActivity> {
         this.sofaInjector = null;
         this.webClient = null;
         this.isLoaded = false;
+        this.sofaHostWrapper.destroy();
         this.sofaHostWrapper = null;
     }
 
@@ -17,10 +17,11 @@
 
 package com.toshi.util;
 
+import android.content.ContentResolver;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.provider.MediaStore;
 import android.support.annotation.Nullable;
@@ -28,6 +29,7 @@ import android.support.v4.content.FileProvider;
 import android.webkit.MimeTypeMap;
 
 import com.toshi.BuildConfig;
+import com.toshi.manager.store.AttachmentStore;
 import com.toshi.model.local.Attachment;
 import com.toshi.model.sofa.OutgoingAttachment;
 import com.toshi.view.BaseApplication;
@@ -42,12 +44,8 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.UUID;
 
 import okio.BufferedSink;
@@ -78,11 +76,58 @@ public class FileUtil {
         .subscribeOn(Schedulers.io());
     }
 
+    // Images larger than maxSize are compressed while they are read from the uri, without
+    // a full size copy or a full resolution bitmap. Smaller files are copied as they are.
+    public Single<File> saveCompressedImageFromUri(final Context context, final Uri uri, final long maxSize) {
+        return Single.fromCallable(() -> {
+            final ContentResolver contentResolver = context.getContentResolver();
+            final long length = getContentLength(contentResolver, uri);
+            if (length >= 0 && length <= maxSize) {
+                final String fileExtension = MimeTypeMap.getSingleton().getExtensionFromMimeType(contentResolver.getType(uri));
+                final File destFile = new File(BaseApplication.get().getFilesDir(), String.format("%s.%s", UUID.randomUUID().toString(), fileExtension));
+                return writeToFileFromInputStream(destFile, openInputStream(contentResolver, uri));
+            }
+
+            return new ImageCompressor(maxSize)
+                    .compress(() -> openInputStream(contentResolver, uri), createImageFileWithRandomName());
+        })
+        .subscribeOn(Schedulers.io());
+    }
+
+    private InputStream openInputStream(final ContentResolver contentResolver, final Uri uri) throws FileNotFoundException {
+        final InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) throw new FileNotFoundException("Unable to open " + uri);
+        return inputStream;
+    }
+
+    // Returns -1 if the length isn't known
+    private long getContentLength(final ContentResolver contentResolver, final Uri uri) {
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = contentResolver.openAssetFileDescriptor(uri, "r");
+            return descriptor == null ? -1 : descriptor.getLength();
+        } catch (final FileNotFoundException | SecurityException ex) {
+            return -1;
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (final IOException ex) {
+                    LogUtil.exception(getClass(), "Error while closing file descriptor", ex);
+                }
+            }
+        }
+    }
+
     private File writeToFileFromInputStream(final File file, final InputStream inputStream) throws IOException {
-        final BufferedSink sink = Okio.buffer(Okio.sink(file));
         final Source source = Okio.source(inputStream);
-        sink.writeAll(source);
-        sink.close();
+        final BufferedSink sink = Okio.buffer(Okio.sink(file));
+        try {
+            sink.writeAll(source);
+        } finally {
+            sink.close();
+            source.close();
+        }
         return file;
     }
 
@@ -96,8 +141,8 @@ public class FileUtil {
             final int maxFileSize = 20 * 1024 * 1024;
             final InputStream inputStream = messageReceiver.retrieveAttachment(attachment, file, maxFileSize);
 
-            final File destFile = constructAttachmentFile(attachment.getContentType());
-            return writeToFileFromInputStream(destFile, inputStream);
+            final String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(attachment.getContentType());
+            return AttachmentStore.get().store(inputStream, extension);
         } catch (IOException | InvalidMessageException e) {
             LogUtil.exception(getClass(), "Error during writing attachment to file", e);
             return null;
@@ -108,22 +153,6 @@ public class FileUtil {
         }
     }
 
-    private File constructAttachmentFile(final String contentType) throws IOException {
-        final File baseDirectory = BaseApplication.get().getFilesDir();
-        final String directoryPath = contentType.startsWith("image/") ? "images" : "files";
-        final File outputDirectory = new File(baseDirectory, directoryPath);
-
-        if (!outputDirectory.exists()) {
-            outputDirectory.mkdir();
-        }
-
-        final String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(contentType);
-        final SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd-HHmmss");
-        final String baseName = dateFormatter.format(new Date());
-        final String filename = String.format("%s.%s", baseName, extension);
-        return new File(outputDirectory, filename);
-    }
-
     public File createImageFileWithRandomName() {
         final String filename = UUID.randomUUID().toString() + ".jpg";
         return new File(BaseApplication.get().getFilesDir(), filename);
@@ -136,14 +165,11 @@ public class FileUtil {
         return  MimeTypeMap.getSingleton().getMimeTypeFromExtension(fileExtension);
     }
 
+    // Replaces the file with a compressed copy if it is larger than maxSize
     public Single<File> compressImage(final long maxSize, final File file) {
         return Single.fromCallable(() -> {
             if (file.length() <= maxSize) return file;
-            final int compressPercentage = (int)(((double)maxSize / file.length()) * 100);
-            final Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
-            final OutputStream outputStream = new FileOutputStream(file);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, compressPercentage, outputStream);
-            return file;
+            return new ImageCompressor(maxSize).compress(() -> new FileInputStream(file), file);
         })
         .subscribeOn(Schedulers.io());
     }
@@ -194,13 +220,20 @@ public class FileUtil {
     }
 
     public static SignalServiceAttachment buildSignalServiceAttachment(final OutgoingAttachment attachment) throws FileNotFoundException, IllegalStateException {
+        return buildSignalServiceAttachment(attachment, null);
+    }
+
+    public static SignalServiceAttachment buildSignalServiceAttachment(
+            final OutgoingAttachment attachment,
+            @Nullable final SignalServiceAttachment.ProgressListener listener) throws FileNotFoundException, IllegalStateException {
         final File attachmentFile = attachment.getOutgoingAttachment();
         final FileInputStream attachmentStream = new FileInputStream(attachmentFile);
-        return newStreamBuilder()
+        final SignalServiceAttachment.Builder builder = newStreamBuilder()
                 .withStream(attachmentStream)
                 .withContentType(attachment.getMimeType())
-                .withLength(attachmentFile.length())
-                .build();
+                .withLength(attachmentFile.length());
+        if (listener != null) builder.withListener(listener);
+        return builder.build();
     }
 
     public static SignalServiceAttachmentStream buildSignalServiceAttachment(final Bitmap bitmap) {
@@ -0,0 +1,188 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+
+// Compresses an image to a JPEG no larger than maxSize without decoding it at full resolution.
+// The image is downsampled while decoding, so at most MAX_DIMENSION pixels are held along its
+// longest side, then the highest quality that fits is searched for. Only if even MIN_QUALITY
+// doesn't fit are the dimensions reduced further.
+public class ImageCompressor {
+
+    /* package */ static final int MAX_DIMENSION = 2048;
+    /* package */ static final int MIN_DIMENSION = 320;
+    /* package */ static final int MIN_QUALITY = 40;
+    /* package */ static final int MAX_QUALITY = 95;
+    private static final float DOWNSCALE_FACTOR = 0.75f;
+
+    public interface StreamSource {
+        // Called once to read the dimensions and once to decode
+        InputStream open() throws IOException;
+    }
+
+    /* package */ interface SizeAtQuality {
+        long getSize(int quality) throws IOException;
+    }
+
+    private final long maxSize;
+
+    public ImageCompressor(final long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public File compress(final StreamSource source, final File destination) throws IOException {
+        final long startNanos = System.nanoTime();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decode(source, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) throw new IOException("Unable to read image dimensions");
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, MAX_DIMENSION);
+        Bitmap bitmap = decode(source, options);
+        if (bitmap == null) throw new IOException("Unable to decode image");
+
+        long peakBitmapBytes = bitmap.getByteCount();
+        int quality;
+        while (true) {
+            final Bitmap candidate = bitmap;
+            quality = findQuality(q -> getCompressedSize(candidate, q), this.maxSize);
+            final int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+            if (quality != -1 || longestSide <= MIN_DIMENSION) break;
+
+            final Bitmap scaled = Bitmap.createScaledBitmap(
+                    bitmap,
+                    Math.max(1, (int) (bitmap.getWidth() * DOWNSCALE_FACTOR)),
+                    Math.max(1, (int) (bitmap.getHeight() * DOWNSCALE_FACTOR)),
+                    true);
+            peakBitmapBytes = Math.max(peakBitmapBytes, bitmap.getByteCount() + scaled.getByteCount());
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        final int finalQuality = quality == -1 ? MIN_QUALITY : quality;
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        try {
+            writeJpeg(bitmap, finalQuality, destination);
+        } finally {
+            bitmap.recycle();
+        }
+
+        LogUtil.d(getClass(), String.format(
+                Locale.US,
+                "Compressed %dx%d to %dx%d at quality %d: %d bytes, peak bitmap memory %.1f MB, %d ms",
+                bounds.outWidth, bounds.outHeight,
+                width, height,
+                finalQuality,
+                destination.length(),
+                peakBitmapBytes / (1024.0 * 1024.0),
+                (System.nanoTime() - startNanos) / 1_000_000));
+        return destination;
+    }
+
+    private Bitmap decode(final StreamSource source, final BitmapFactory.Options options) throws IOException {
+        final InputStream inputStream = new BufferedInputStream(source.open());
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    // Writes next to the destination first, so a failure never leaves a partial file behind
+    /* package */ static void writeJpeg(final Bitmap bitmap, final int quality, final File destination) throws IOException {
+        // Thumbnails can be written by the sender and by the renderer at once, so each writer gets its own temp file
+        final File tempFile = File.createTempFile(destination.getName() + ".", ".tmp", destination.getParentFile());
+        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(tempFile));
+        try {
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream)) {
+                throw new IOException("Unable to compress image");
+            }
+        } finally {
+            outputStream.close();
+        }
+
+        if (!tempFile.renameTo(destination)) {
+            tempFile.delete();
+            throw new IOException("Unable to move compressed image to " + destination);
+        }
+    }
+
+    // Compresses without keeping the output, only counting its size
+    private long getCompressedSize(final Bitmap bitmap, final int quality) {
+        final CountingOutputStream outputStream = new CountingOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
+        return outputStream.count;
+    }
+
+    // The smallest power of two that brings the longest side down to maxDimension or less
+    /* package */ static int calculateInSampleSize(final int width, final int height, final int maxDimension) {
+        final int longestSide = Math.max(width, height);
+        int inSampleSize = 1;
+        while (longestSide / inSampleSize > maxDimension) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    // Binary search for the highest quality in [MIN_QUALITY, MAX_QUALITY] whose size fits,
+    // or -1 if none does. The size is assumed to grow with the quality.
+    /* package */ static int findQuality(final SizeAtQuality sizeAtQuality, final long maxSize) throws IOException {
+        if (sizeAtQuality.getSize(MAX_QUALITY) <= maxSize) return MAX_QUALITY;
+
+        int low = MIN_QUALITY;
+        int high = MAX_QUALITY - 1;
+        int best = -1;
+        while (low <= high) {
+            final int quality = (low + high) >>> 1;
+            if (sizeAtQuality.getSize(quality) <= maxSize) {
+                best = quality;
+                low = quality + 1;
+            } else {
+                high = quality - 1;
+            }
+        }
+        return best;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            this.count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            this.count += len;
+        }
+    }
+}
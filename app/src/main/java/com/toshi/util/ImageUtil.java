@@ -23,10 +23,16 @@ import android.graphics.Color;
 import android.net.Uri;
 import android.support.annotation.Nullable;
 import android.support.v4.content.ContextCompat;
+import android.util.LruCache;
+import android.view.ViewGroup;
 import android.widget.ImageView;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
 import com.bumptech.glide.request.target.Target;
 import com.google.common.io.Files;
 import com.google.zxing.BarcodeFormat;
@@ -36,65 +42,122 @@ import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.toshi.R;
 import com.toshi.exception.QrCodeException;
+import com.toshi.manager.network.image.AvatarCache;
 import com.toshi.manager.network.image.CachedGlideUrl;
-import com.toshi.manager.network.image.ForceLoadGlideUrl;
 import com.toshi.view.BaseApplication;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.concurrent.ExecutionException;
 
 import rx.Single;
+import rx.Subscription;
 import rx.android.schedulers.AndroidSchedulers;
 import rx.schedulers.Schedulers;
 
 public class ImageUtil {
 
     private static final List<String> supportedImageTypes = Arrays.asList("jpg", "jpeg", "png", "gif", "bmp", "webp");
+    private static final int MAX_CACHED_QR_CODES = 8;
+    // QR code bitmaps by size and content, so the same address is only rendered once
+    private static final LruCache<String, Bitmap> qrCodeCache = new LruCache<>(MAX_CACHED_QR_CODES);
 
+    // The avatar URL each view is showing, so views can be re-rendered when an avatar changes.
+    // Only accessed on the main thread.
+    private static final Map<ImageView, String> boundAvatarUrls = new WeakHashMap<>();
+    private static Subscription avatarChangeSubscription;
+
+    // Renders from the memory or disk cache; the server is only asked whether the
+    // avatar changed once in a while, in the background.
     public static void load(final String url, final ImageView imageView) {
         if (url == null || imageView == null) return;
 
-        Single
-            .fromCallable(() -> loadFromNetwork(url, imageView))
-            .subscribeOn(Schedulers.io())
-            .observeOn(AndroidSchedulers.mainThread())
-            .doOnSubscribe(() -> renderFromCache(url, imageView))
-            .subscribe(
-                    __ -> {},
-                    throwable -> LogUtil.exception(ImageUtil.class, throwable)
-            );
+        listenForAvatarChanges();
+        boundAvatarUrls.put(imageView, url);
+        renderAvatar(url, imageView);
+        AvatarCache.get().revalidateIfStale(url);
+    }
+
+    // For avatars that are known to have just changed
+    public static void loadFromNetwork(final String url, final ImageView imageView) {
+        if (url == null) return;
+        AvatarCache.get().invalidate(url);
+        load(url, imageView);
     }
 
-    @Nullable
-    public static Target loadFromNetwork(final String url, final ImageView imageView) {
+    private static void renderAvatar(final String url, final ImageView imageView) {
         try {
-            return Glide
+            final DrawableRequestBuilder<CachedGlideUrl> request = Glide
                     .with(imageView.getContext())
-                    .load(new ForceLoadGlideUrl(url))
-                    .diskCacheStrategy(DiskCacheStrategy.NONE)
-                    .skipMemoryCache(true)
-                    .into(imageView);
+                    .load(new CachedGlideUrl(url))
+                    .signature(AvatarCache.get().getSignature(url))
+                    .diskCacheStrategy(DiskCacheStrategy.RESULT)
+                    .listener(new AvatarLoadListener(System.nanoTime()));
+            final int size = getAvatarSize(imageView);
+            if (size > 0) request.override(size, size);
+            request.into(imageView);
         } catch (final IllegalArgumentException ex) {
             LogUtil.i(ImageUtil.class, "Tried to render into a now destroyed view.");
-            return null;
         }
     }
 
-    private static void renderFromCache(final String url, final ImageView imageView) {
-        try {
-            Glide
-                .with(imageView.getContext())
-                .load(new CachedGlideUrl(url))
-                .diskCacheStrategy(DiskCacheStrategy.NONE)
-                .skipMemoryCache(true)
-                .into(imageView);
-        } catch (final IllegalArgumentException ex) {
-            LogUtil.i(ImageUtil.class, "Tried to render into a now destroyed view.");
+    private static int getAvatarSize(final ImageView imageView) {
+        final ViewGroup.LayoutParams params = imageView.getLayoutParams();
+        final int size = params != null && params.width > 0 && params.height > 0
+                ? Math.max(params.width, params.height)
+                : Math.max(imageView.getWidth(), imageView.getHeight());
+        // Unknown sizes are left for Glide to measure
+        return size > 0 ? AvatarCache.getSizeBucket(size) : 0;
+    }
+
+    private static void listenForAvatarChanges() {
+        if (avatarChangeSubscription != null) return;
+        avatarChangeSubscription = AvatarCache
+                .get()
+                .getChangedUrls()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        ImageUtil::rerenderAvatar,
+                        throwable -> LogUtil.exception(ImageUtil.class, throwable)
+                );
+    }
+
+    private static void rerenderAvatar(final String url) {
+        for (final Map.Entry<ImageView, String> entry : new ArrayList<>(boundAvatarUrls.entrySet())) {
+            final ImageView imageView = entry.getKey();
+            if (imageView != null && url.equals(entry.getValue())) renderAvatar(url, imageView);
+        }
+    }
+
+    private static class AvatarLoadListener implements RequestListener<GlideUrl, GlideDrawable> {
+        private final long startNanos;
+
+        private AvatarLoadListener(final long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean onException(final Exception e,
+                                   final GlideUrl model,
+                                   final Target<GlideDrawable> target,
+                                   final boolean isFirstResource) {
+            return false;
+        }
+
+        @Override
+        public boolean onResourceReady(final GlideDrawable resource,
+                                       final GlideUrl model,
+                                       final Target<GlideDrawable> target,
+                                       final boolean isFromMemoryCache,
+                                       final boolean isFirstResource) {
+            AvatarCache.get().onAvatarLoaded(this.startNanos, isFromMemoryCache);
+            return false;
         }
     }
 
@@ -112,6 +175,19 @@ public class ImageUtil {
         }
     }
 
+    // Image messages are shown from a small thumbnail; animated images still load the original
+    public static void renderThumbnailIntoTarget(final String path, final ImageView imageView) {
+        if (imageView == null || imageView.getContext() == null) return;
+
+        if (ThumbnailGenerator.canGenerate(path)) {
+            Glide.clear(imageView);
+            ThumbnailCache.get().renderInto(path, imageView);
+        } else {
+            ThumbnailCache.get().unbind(imageView);
+            renderFileIntoTarget(new File(path), imageView);
+        }
+    }
+
     public static void renderFileIntoTarget(final Uri uri, final ImageView imageView) {
         if (imageView == null || imageView.getContext() == null) return;
 
@@ -148,31 +224,59 @@ public class ImageUtil {
     public static Single<Bitmap> generateQrCode(final String value) {
         return Single.fromCallable(() -> {
             try {
-                return generateQrCodeBitmap(value);
+                return getQrCodeBitmap(value);
             } catch (final WriterException e) {
                 throw new QrCodeException(e);
             }
         });
     }
 
-    private static Bitmap generateQrCodeBitmap(final String value) throws WriterException {
+    private static Bitmap getQrCodeBitmap(final String value) throws WriterException {
         if (value == null) return null;
-        
-        final QRCodeWriter writer = new QRCodeWriter();
+
         final int size = BaseApplication.get().getResources().getDimensionPixelSize(R.dimen.qr_code_size);
-        final Map<EncodeHintType, Integer> map = new HashMap<>();
-        map.put(EncodeHintType.MARGIN, 0);
-        final BitMatrix bitMatrix = writer.encode(value, BarcodeFormat.QR_CODE, size, size, map);
+        final String cacheKey = size + ":" + value;
+        final Bitmap cachedBitmap = qrCodeCache.get(cacheKey);
+        if (cachedBitmap != null) return cachedBitmap;
+
+        final Bitmap bitmap = generateQrCodeBitmap(value, size);
+        qrCodeCache.put(cacheKey, bitmap);
+        return bitmap;
+    }
+
+    // Draws one pixel per module with a single setPixels call, then scales up without filtering
+    // so the modules stay sharp
+    private static Bitmap generateQrCodeBitmap(final String value, final int size) throws WriterException {
+        final int contrastColour = ContextCompat.getColor(BaseApplication.get(), R.color.windowBackground);
+        final BitMatrix bitMatrix = encodeQrCodeModules(value);
+        final int modules = bitMatrix.getWidth();
+        final int[] pixels = toPixels(bitMatrix, Color.BLACK, contrastColour);
+
+        final Bitmap moduleBitmap = Bitmap.createBitmap(modules, bitMatrix.getHeight(), Bitmap.Config.RGB_565);
+        moduleBitmap.setPixels(pixels, 0, modules, 0, 0, modules, bitMatrix.getHeight());
+        final Bitmap bitmap = Bitmap.createScaledBitmap(moduleBitmap, size, size, false);
+        if (bitmap != moduleBitmap) moduleBitmap.recycle();
+        return bitmap;
+    }
+
+    // Asking for the smallest possible size gives a matrix with one entry per module
+    /* package */ static BitMatrix encodeQrCodeModules(final String value) throws WriterException {
+        final Map<EncodeHintType, Integer> hints = new HashMap<>();
+        hints.put(EncodeHintType.MARGIN, 0);
+        return new QRCodeWriter().encode(value, BarcodeFormat.QR_CODE, 0, 0, hints);
+    }
+
+    /* package */ static int[] toPixels(final BitMatrix bitMatrix, final int darkColour, final int lightColour) {
         final int width = bitMatrix.getWidth();
         final int height = bitMatrix.getHeight();
-        final Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
-        final int contrastColour = ContextCompat.getColor(BaseApplication.get(), R.color.windowBackground);
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                bmp.setPixel(x, y, bitMatrix.get(x, y) ? Color.BLACK : contrastColour);
+        final int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            final int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[offset + x] = bitMatrix.get(x, y) ? darkColour : lightColour;
             }
         }
-        return bmp;
+        return pixels;
     }
 
     public static boolean isImageType(final String path) {
@@ -0,0 +1,113 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.toshi.manager.store.AttachmentStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import rx.Single;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
+
+// Decoded image message thumbnails, keyed by the path of the original attachment.
+// Thumbnails are decoded off the main thread, and the full-size original is never decoded.
+public class ThumbnailCache {
+
+    private static final int MEMORY_FRACTION = 16;
+
+    private static ThumbnailCache instance;
+
+    public static synchronized ThumbnailCache get() {
+        if (instance == null) instance = new ThumbnailCache();
+        return instance;
+    }
+
+    private final LruCache<String, Bitmap> cache;
+    // The attachment path each view should be showing. Only accessed on the main thread.
+    private final Map<ImageView, String> boundPaths;
+
+    private ThumbnailCache() {
+        final int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / MEMORY_FRACTION);
+        this.cache = new LruCache<String, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap bitmap) {
+                return bitmap.getByteCount() / 1024;
+            }
+        };
+        this.boundPaths = new WeakHashMap<>();
+    }
+
+    // Must be called on the main thread
+    public void renderInto(final String path, final ImageView imageView) {
+        this.boundPaths.put(imageView, path);
+        final Bitmap cached = this.cache.get(path);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+
+        imageView.setImageDrawable(null);
+        Single.fromCallable(() -> loadThumbnail(path))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        bitmap -> handleThumbnailLoaded(path, bitmap, imageView),
+                        ex -> LogUtil.exception(getClass(), "Unable to load thumbnail", ex)
+                );
+    }
+
+    // Stops a pending load from rendering into a view that is now used for something else
+    public void unbind(final ImageView imageView) {
+        this.boundPaths.remove(imageView);
+    }
+
+    private void handleThumbnailLoaded(final String path, @Nullable final Bitmap bitmap, final ImageView imageView) {
+        if (bitmap == null) return;
+        this.cache.put(path, bitmap);
+        if (path.equals(this.boundPaths.get(imageView))) imageView.setImageBitmap(bitmap);
+    }
+
+    private @Nullable Bitmap loadThumbnail(final String path) throws IOException {
+        final File original = new File(path);
+        if (!original.exists()) return null;
+        AttachmentStore.get().touch(path);
+        final File thumbnailFile = ThumbnailGenerator.getThumbnailFile(original);
+        if (!thumbnailFile.exists()) ThumbnailGenerator.generate(original);
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(thumbnailFile.getAbsolutePath(), options);
+    }
+
+    public void remove(final String path) {
+        this.cache.remove(path);
+    }
+
+    public void clear() {
+        this.cache.evictAll();
+    }
+}
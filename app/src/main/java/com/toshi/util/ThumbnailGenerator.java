@@ -0,0 +1,155 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import rx.Completable;
+import rx.schedulers.Schedulers;
+
+// Writes a small thumbnail, used by the chat list, and a medium preview, used fullscreen, next
+// to an image attachment. Both come from a single downsampled decode of the original.
+public class ThumbnailGenerator {
+
+    /* package */ static final int THUMBNAIL_SIZE = 480;
+    /* package */ static final int PREVIEW_SIZE = 1280;
+    private static final int THUMBNAIL_QUALITY = 80;
+    private static final int PREVIEW_QUALITY = 85;
+    private static final String THUMBNAIL_SUFFIX = ".thumbnail.jpg";
+    private static final String PREVIEW_SUFFIX = ".preview.jpg";
+
+    public static File getThumbnailFile(final File original) {
+        return new File(original.getParentFile(), original.getName() + THUMBNAIL_SUFFIX);
+    }
+
+    public static File getPreviewFile(final File original) {
+        return new File(original.getParentFile(), original.getName() + PREVIEW_SUFFIX);
+    }
+
+    // The preview if there is one; small images don't get a preview since the original will do
+    public static File getPreviewOrOriginal(final File original) {
+        final File preview = getPreviewFile(original);
+        return preview.exists() ? preview : original;
+    }
+
+    public static boolean isGeneratedFile(final File file) {
+        final String name = file.getName();
+        return name.endsWith(THUMBNAIL_SUFFIX) || name.endsWith(PREVIEW_SUFFIX);
+    }
+
+    // The attachment a thumbnail or preview was generated from
+    public static File getOriginalFile(final File generatedFile) {
+        final String name = generatedFile.getName();
+        final String suffix = name.endsWith(THUMBNAIL_SUFFIX) ? THUMBNAIL_SUFFIX : PREVIEW_SUFFIX;
+        return new File(generatedFile.getParentFile(), name.substring(0, name.length() - suffix.length()));
+    }
+
+    // Returns the number of bytes freed
+    public static long deleteGeneratedFiles(final File original) {
+        return delete(getThumbnailFile(original)) + delete(getPreviewFile(original));
+    }
+
+    private static long delete(final File file) {
+        final long length = file.length();
+        return file.delete() ? length : 0;
+    }
+
+    // Animated images are left to be rendered from the original
+    public static boolean canGenerate(@Nullable final String path) {
+        if (!ImageUtil.isImageType(path)) return false;
+        return !Files.getFileExtension(path.toLowerCase(Locale.US)).equals("gif");
+    }
+
+    // Does nothing if the thumbnail already exists
+    public static void generate(final File original) throws IOException {
+        final File thumbnailFile = getThumbnailFile(original);
+        if (thumbnailFile.exists()) return;
+
+        final long startNanos = System.nanoTime();
+        final BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) throw new IOException("Unable to read image dimensions");
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ImageCompressor.calculateInSampleSize(bounds.outWidth, bounds.outHeight, PREVIEW_SIZE);
+        final Bitmap preview = BitmapFactory.decodeFile(original.getAbsolutePath(), options);
+        if (preview == null) throw new IOException("Unable to decode image");
+
+        try {
+            if (Math.max(bounds.outWidth, bounds.outHeight) > PREVIEW_SIZE) {
+                ImageCompressor.writeJpeg(preview, PREVIEW_QUALITY, getPreviewFile(original));
+            }
+
+            final int[] size = fitWithin(preview.getWidth(), preview.getHeight(), THUMBNAIL_SIZE);
+            final Bitmap thumbnail = Bitmap.createScaledBitmap(preview, size[0], size[1], true);
+            try {
+                ImageCompressor.writeJpeg(thumbnail, THUMBNAIL_QUALITY, thumbnailFile);
+            } finally {
+                if (thumbnail != preview) thumbnail.recycle();
+            }
+        } finally {
+            preview.recycle();
+        }
+
+        LogUtil.d(ThumbnailGenerator.class, String.format(
+                Locale.US,
+                "Generated thumbnails for %dx%d image in %d ms",
+                bounds.outWidth, bounds.outHeight,
+                (System.nanoTime() - startNanos) / 1_000_000));
+    }
+
+    // Call once the message is saved, so neither the chat bubble nor the message queue waits on the decode.
+    // A thumbnail that fails to generate is generated again when it's first shown.
+    public static void generateInBackground(@Nullable final String path) {
+        if (!canGenerate(path)) return;
+        Completable
+                .fromAction(() -> tryGenerate(path))
+                .subscribeOn(Schedulers.io())
+                .subscribe(
+                        () -> {},
+                        ex -> LogUtil.exception(ThumbnailGenerator.class, "Unable to generate thumbnails", ex)
+                );
+    }
+
+    private static void tryGenerate(final String path) {
+        try {
+            generate(new File(path));
+        } catch (final IOException | RuntimeException ex) {
+            LogUtil.exception(ThumbnailGenerator.class, "Unable to generate thumbnails", ex);
+        }
+    }
+
+    // Scales width and height so the longest side is at most maxDimension, keeping the aspect ratio
+    /* package */ static int[] fitWithin(final int width, final int height, final int maxDimension) {
+        final int longestSide = Math.max(width, height);
+        if (longestSide <= maxDimension) return new int[] {width, height};
+        final float scale = (float) maxDimension / longestSide;
+        return new int[] {
+                Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale))
+        };
+    }
+}
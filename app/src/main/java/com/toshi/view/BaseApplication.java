@@ -30,6 +30,7 @@ import com.toshi.manager.SofaMessageManager;
 import com.toshi.manager.ToshiManager;
 import com.toshi.manager.TransactionManager;
 import com.toshi.manager.UserManager;
+import com.toshi.manager.network.ServicePrewarmer;
 import com.toshi.service.NetworkChangeReceiver;
 import com.toshi.util.LogUtil;
 
@@ -44,6 +45,7 @@ public final class BaseApplication extends MultiDexApplication {
 
     private ToshiManager toshiManager;
     private boolean inBackground = false;
+    private long startTime;
 
     public final Realm getRealm() {
         if (Thread.currentThread().getId() == 1) {
@@ -54,16 +56,32 @@ public final class BaseApplication extends MultiDexApplication {
 
     @Override
     public final void onCreate() {
+        this.startTime = System.nanoTime();
         super.onCreate();
         instance = this;
         init();
     }
 
     private void init() {
+        prewarmServices();
         initToshiManager();
         initConnectivityMonitor();
     }
 
+    private void prewarmServices() {
+        ServicePrewarmer
+                .prewarm()
+                .subscribe(
+                        () -> {},
+                        ex -> LogUtil.exception(getClass(), "Error while prewarming services", ex)
+                );
+    }
+
+    // Milliseconds since the application was created
+    public long getTimeSinceStart() {
+        return (System.nanoTime() - this.startTime) / 1_000_000;
+    }
+
     private void initConnectivityMonitor() {
         final IntentFilter connectivityIntent = new IntentFilter();
         connectivityIntent.addAction(android.net.ConnectivityManager.CONNECTIVITY_ACTION);
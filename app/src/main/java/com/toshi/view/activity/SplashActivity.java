@@ -26,6 +26,8 @@ import com.toshi.presenter.LoaderIds;
 import com.toshi.presenter.SplashPresenter;
 import com.toshi.presenter.factory.PresenterFactory;
 import com.toshi.presenter.factory.SplashPresenterFactory;
+import com.toshi.util.LogUtil;
+import com.toshi.view.BaseApplication;
 
 import io.fabric.sdk.android.Fabric;
 
@@ -40,6 +42,15 @@ public class SplashActivity extends BasePresenterActivity<SplashPresenter, Splas
         if (!BuildConfig.DEBUG) {
             Fabric.with(this, new Crashlytics());
         }
+
+        logTimeToFirstFrame();
+    }
+
+    private void logTimeToFirstFrame() {
+        // Posted runnables run after the first layout and draw pass of the window
+        getWindow()
+                .getDecorView()
+                .post(() -> LogUtil.d(getClass(), "Time to first frame: " + BaseApplication.get().getTimeSinceStart() + "ms"));
     }
 
     @NonNull
@@ -18,20 +18,22 @@
 package com.toshi.view.adapter;
 
 import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.toshi.R;
+import com.toshi.manager.model.AttachmentProgress;
 import com.toshi.model.local.ChainPosition;
 import com.toshi.model.local.Recipient;
 import com.toshi.model.local.User;
 import com.toshi.model.sofa.Message;
 import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.PaymentRequest;
-import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.model.sofa.SofaType;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
@@ -45,8 +47,14 @@ import com.toshi.view.adapter.viewholder.TimestampMessageViewHolder;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import rx.Single;
+import rx.Subscription;
+import rx.android.schedulers.AndroidSchedulers;
+import rx.schedulers.Schedulers;
 
 import static com.toshi.model.local.ChainPosition.FIRST;
 import static com.toshi.model.local.ChainPosition.LAST;
@@ -59,6 +67,16 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     private final static int SENDER_MASK = 0x1000;
 
     private final List<SofaMessage> sofaMessages;
+    // privateKey -> position in sofaMessages
+    private final Map<String, Integer> positions;
+    // privateKey -> stable item id
+    private final Map<String, Long> itemIds;
+    // privateKey -> upload percentage of an outgoing attachment
+    private final Map<String, Integer> uploadProgress;
+    private long nextItemId;
+    // The list a diff is being calculated for; null when no diff is running
+    private List<SofaMessage> pendingMessages;
+    private Subscription diffSubscription;
     private OnItemClickListener<SofaMessage> onPaymentRequestApproveListener;
     private OnItemClickListener<SofaMessage> onPaymentRequestRejectListener;
     private OnItemClickListener<String> onUsernameClickListener;
@@ -69,6 +87,10 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
     public MessageAdapter() {
         this.sofaMessages = new ArrayList<>();
+        this.positions = new HashMap<>();
+        this.itemIds = new HashMap<>();
+        this.uploadProgress = new HashMap<>();
+        setHasStableIds(true);
     }
 
     public final MessageAdapter addOnPaymentRequestApproveListener(final OnItemClickListener<SofaMessage> listener) {
@@ -108,10 +130,21 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     }
 
     public MessageAdapter setMessages(final List<SofaMessage> messages) {
-        final List<SofaMessage> messagesToAdd = messages == null
-                ? new ArrayList<>(0)
-                : messages;
-        addMessages(messagesToAdd);
+        final List<SofaMessage> messagesToShow = new ArrayList<>(messages == null ? 0 : messages.size());
+        if (messages != null) {
+            for (final SofaMessage sofaMessage : messages) {
+                if (shouldShowChatMessage(sofaMessage)) messagesToShow.add(sofaMessage);
+            }
+        }
+
+        if (this.sofaMessages.isEmpty() && this.pendingMessages == null) {
+            // Nothing to diff against, so the messages are shown straight away
+            this.sofaMessages.addAll(messagesToShow);
+            rebuildPositions();
+            notifyItemRangeInserted(0, messagesToShow.size());
+        } else {
+            submitMessages(messagesToShow);
+        }
         return this;
     }
 
@@ -120,18 +153,35 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         return this;
     }
 
-    private void addMessages(final Collection<SofaMessage> sofaMessages) {
-        this.sofaMessages.clear();
-        notifyDataSetChanged();
+    // The diff is calculated on a background thread and only the rows that changed are rebound
+    private void submitMessages(final List<SofaMessage> messages) {
+        if (this.diffSubscription != null) this.diffSubscription.unsubscribe();
+        this.pendingMessages = messages;
+
+        final List<SofaMessage> oldMessages = new ArrayList<>(this.sofaMessages);
+        final List<SofaMessage> newMessages = new ArrayList<>(messages);
+        this.diffSubscription = Single
+                .fromCallable(() -> DiffUtil.calculateDiff(new MessageDiffCallback(oldMessages, newMessages)))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        result -> applyDiff(newMessages, result),
+                        throwable -> LogUtil.exception(getClass(), "Error while diffing messages", throwable)
+                );
+    }
 
-        for (SofaMessage sofaMessage : sofaMessages) {
-            addMessage(sofaMessage);
-        }
+    private void applyDiff(final List<SofaMessage> newMessages, final DiffUtil.DiffResult result) {
+        this.pendingMessages = null;
+        this.diffSubscription = null;
+        this.sofaMessages.clear();
+        this.sofaMessages.addAll(newMessages);
+        rebuildPositions();
+        result.dispatchUpdatesTo(this);
     }
 
     private void addMessage(final SofaMessage sofaMessage) {
-        if (!shouldShowChatMessage(sofaMessage)) return;
         this.sofaMessages.add(sofaMessage);
+        this.positions.put(sofaMessage.getPrivateKey(), this.sofaMessages.size() - 1);
         notifyItemInserted(this.sofaMessages.size() - 1);
         if (this.sofaMessages.size() > 1) {
             // Update the previous message as well.
@@ -141,8 +191,21 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
     public final void updateMessage(final SofaMessage sofaMessage) {
         if (!shouldShowChatMessage(sofaMessage)) return;
-        final int position = this.sofaMessages.indexOf(sofaMessage);
-        if (position == -1) {
+        if (this.pendingMessages != null) {
+            // Applying it now would be undone by the pending diff, so diff again with the update included
+            final List<SofaMessage> messages = new ArrayList<>(this.pendingMessages);
+            final int pendingPosition = messages.indexOf(sofaMessage);
+            if (pendingPosition == -1) {
+                messages.add(sofaMessage);
+            } else {
+                messages.set(pendingPosition, sofaMessage);
+            }
+            submitMessages(messages);
+            return;
+        }
+
+        final Integer position = this.positions.get(sofaMessage.getPrivateKey());
+        if (position == null) {
             addMessage(sofaMessage);
             return;
         }
@@ -151,14 +214,60 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         notifyItemChanged(position);
     }
 
+    public final void setUploadProgress(final AttachmentProgress progress) {
+        if (progress.isComplete()) {
+            this.uploadProgress.remove(progress.getMessageId());
+        } else {
+            this.uploadProgress.put(progress.getMessageId(), progress.getPercentage());
+        }
+
+        final Integer position = this.positions.get(progress.getMessageId());
+        if (position != null) notifyItemChanged(position);
+    }
+
+    private int getUploadProgress(final SofaMessage sofaMessage) {
+        final Integer progress = this.uploadProgress.get(sofaMessage.getPrivateKey());
+        return progress == null ? -1 : progress;
+    }
+
     public final void deleteMessage(final SofaMessage sofaMessage) {
         if (!shouldShowChatMessage(sofaMessage)) return;
-        final int position = this.sofaMessages.indexOf(sofaMessage);
-        if (position == -1) return;
-        this.sofaMessages.remove(position);
+        if (this.pendingMessages != null) {
+            final List<SofaMessage> messages = new ArrayList<>(this.pendingMessages);
+            messages.remove(sofaMessage);
+            submitMessages(messages);
+            return;
+        }
+
+        final Integer position = this.positions.get(sofaMessage.getPrivateKey());
+        if (position == null) return;
+        this.sofaMessages.remove((int) position);
+        this.positions.remove(sofaMessage.getPrivateKey());
+        for (int i = position; i < this.sofaMessages.size(); i++) {
+            this.positions.put(this.sofaMessages.get(i).getPrivateKey(), i);
+        }
         notifyItemRemoved(position);
     }
 
+    private void rebuildPositions() {
+        this.positions.clear();
+        for (int i = 0; i < this.sofaMessages.size(); i++) {
+            this.positions.put(this.sofaMessages.get(i).getPrivateKey(), i);
+        }
+    }
+
+    @Override
+    public long getItemId(final int position) {
+        // Ids are handed out per privateKey so they can't collide the way a hash could
+        final String privateKey = this.sofaMessages.get(position).getPrivateKey();
+        final Long itemId = this.itemIds.get(privateKey);
+        if (itemId != null) return itemId;
+
+        final long newItemId = this.nextItemId++;
+        this.itemIds.put(privateKey, newItemId);
+        return newItemId;
+    }
+
     @Override
     public int getItemViewType(final int position) {
         final SofaMessage sofaMessage = this.sofaMessages.get(position);
@@ -226,11 +335,10 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
             final int position) {
 
         final SofaMessage sofaMessage = this.sofaMessages.get(position);
-        final String payload = sofaMessage.getPayload();
-        if (payload == null) return;
+        if (sofaMessage.getPayloadWithHeaders() == null) return;
 
         try {
-            renderChatMessageIntoViewHolder(holder, sofaMessage, payload, position);
+            renderChatMessageIntoViewHolder(holder, sofaMessage, position);
         } catch (final IOException ex) {
             LogUtil.error(getClass(), "Unable to render view holder: " + ex);
         }
@@ -239,7 +347,6 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     private void renderChatMessageIntoViewHolder(
             final RecyclerView.ViewHolder holder,
             final SofaMessage sofaMessage,
-            final String payload,
             final int position) throws IOException {
 
         final boolean isRemote = holder.getItemViewType() >= SENDER_MASK;
@@ -249,7 +356,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
             case SofaType.COMMAND_REQUEST:
             case SofaType.PLAIN_TEXT: {
                 final TextViewHolder vh = (TextViewHolder) holder;
-                final Message message = SofaAdapters.get().messageFrom(payload);
+                final Message message = SofaPayloadCache.get().messageFrom(sofaMessage);
                 final @ChainPosition.Position int chainPosition = getChainPosition(position);
                 final boolean showAvatar = chainPosition == LAST || chainPosition == NONE;
 
@@ -270,6 +377,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
                 vh
                         .setAvatarUri(sofaMessage.getSenderAvatar())
                         .setSendState(sofaMessage.getSendState())
+                        .setUploadProgress(getUploadProgress(sofaMessage))
                         .setAttachmentFilePath(sofaMessage.getAttachmentFilePath())
                         .setClickableImage(this.onImageClickListener, sofaMessage.getAttachmentFilePath())
                         .setOnResendListener(this.onResendListener, sofaMessage)
@@ -282,6 +390,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
                 vh
                         .setAttachmentPath(sofaMessage.getAttachmentFilePath())
                         .setSendState(sofaMessage.getSendState())
+                        .setUploadProgress(getUploadProgress(sofaMessage))
                         .setAvatarUri(sofaMessage.getSenderAvatar())
                         .setOnClickListener(this.onFileClickListener, sofaMessage.getAttachmentFilePath())
                         .setOnResendListener(this.onResendListener, sofaMessage)
@@ -291,7 +400,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
             case SofaType.PAYMENT: {
                 final PaymentViewHolder vh = (PaymentViewHolder) holder;
-                final Payment payment = SofaAdapters.get().paymentFrom(payload);
+                final Payment payment = SofaPayloadCache.get().paymentFrom(sofaMessage);
                 vh
                         .setPayment(payment)
                         .setAvatarUri(sofaMessage.getSenderAvatar())
@@ -302,7 +411,7 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
 
             case SofaType.PAYMENT_REQUEST: {
                 final PaymentRequestViewHolder vh = (PaymentRequestViewHolder) holder;
-                final PaymentRequest request = SofaAdapters.get().txRequestFrom(payload);
+                final PaymentRequest request = SofaPayloadCache.get().txRequestFrom(sofaMessage);
                 if (this.recipient != null && this.recipient.isGroup()) {
                     // Todo - support group payment requests
                     LogUtil.i(getClass(), "Payment requests to groups currently not supported.");
@@ -329,9 +438,13 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     }
 
     private @ChainPosition.Position int getChainPosition(final int position) {
-        final SofaMessage currentSofaMessage = this.sofaMessages.get(position);
-        final SofaMessage previousSofaMessage = getMessageAtPos(position - 1);
-        final SofaMessage nextSofaMessage = getMessageAtPos(position + 1);
+        return getChainPosition(this.sofaMessages, position);
+    }
+
+    private static @ChainPosition.Position int getChainPosition(final List<SofaMessage> sofaMessages, final int position) {
+        final SofaMessage currentSofaMessage = sofaMessages.get(position);
+        final SofaMessage previousSofaMessage = getMessageAtPos(sofaMessages, position - 1);
+        final SofaMessage nextSofaMessage = getMessageAtPos(sofaMessages, position + 1);
         final boolean previousMessageSentByCurrent = previousSofaMessage != null && previousSofaMessage.isSentBy(currentSofaMessage.getSender());
         final boolean nextMessageSentByCurrent = nextSofaMessage != null && nextSofaMessage.isSentBy(currentSofaMessage.getSender());
 
@@ -341,12 +454,9 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
         return LAST;
     }
 
-    private @Nullable SofaMessage getMessageAtPos(final int position) {
-        try {
-            return this.sofaMessages.get(position);
-        } catch (final IndexOutOfBoundsException ex) {
-            return null;
-        }
+    private static @Nullable SofaMessage getMessageAtPos(final List<SofaMessage> sofaMessages, final int position) {
+        if (position < 0 || position >= sofaMessages.size()) return null;
+        return sofaMessages.get(position);
     }
 
     @Override
@@ -392,7 +502,12 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
     }
 
     public void clear() {
+        if (this.diffSubscription != null) this.diffSubscription.unsubscribe();
+        this.diffSubscription = null;
+        this.pendingMessages = null;
         this.sofaMessages.clear();
+        this.positions.clear();
+        this.uploadProgress.clear();
         notifyDataSetChanged();
     }
 
@@ -405,4 +520,47 @@ public final class MessageAdapter extends RecyclerView.Adapter<RecyclerView.View
                 .toBlocking()
                 .value();
     }
+
+    private static class MessageDiffCallback extends DiffUtil.Callback {
+
+        private final List<SofaMessage> oldMessages;
+        private final List<SofaMessage> newMessages;
+
+        private MessageDiffCallback(final List<SofaMessage> oldMessages, final List<SofaMessage> newMessages) {
+            this.oldMessages = oldMessages;
+            this.newMessages = newMessages;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return this.oldMessages.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return this.newMessages.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(final int oldItemPosition, final int newItemPosition) {
+            return this.oldMessages.get(oldItemPosition).getPrivateKey()
+                    .equals(this.newMessages.get(newItemPosition).getPrivateKey());
+        }
+
+        @Override
+        public boolean areContentsTheSame(final int oldItemPosition, final int newItemPosition) {
+            final SofaMessage oldMessage = this.oldMessages.get(oldItemPosition);
+            final SofaMessage newMessage = this.newMessages.get(newItemPosition);
+            return oldMessage.getSendState() == newMessage.getSendState()
+                    && isEqual(oldMessage.getPayloadWithHeaders(), newMessage.getPayloadWithHeaders())
+                    && isEqual(oldMessage.getAttachmentFilePath(), newMessage.getAttachmentFilePath())
+                    && isEqual(oldMessage.getSenderAvatar(), newMessage.getSenderAvatar())
+                    // The avatar and bubble shape depend on the neighbouring messages
+                    && getChainPosition(this.oldMessages, oldItemPosition) == getChainPosition(this.newMessages, newItemPosition);
+        }
+
+        private static boolean isEqual(final Object first, final Object second) {
+            return first == null ? second == null : first.equals(second);
+        }
+    }
 }
\ No newline at end of file
@@ -33,8 +33,8 @@ import com.toshi.model.local.User;
 import com.toshi.model.sofa.Message;
 import com.toshi.model.sofa.Payment;
 import com.toshi.model.sofa.PaymentRequest;
-import com.toshi.model.sofa.SofaAdapters;
 import com.toshi.model.sofa.SofaMessage;
+import com.toshi.model.sofa.SofaPayloadCache;
 import com.toshi.model.sofa.SofaType;
 import com.toshi.util.LogUtil;
 import com.toshi.view.BaseApplication;
@@ -157,15 +157,15 @@ public class RecentAdapter extends RecyclerView.Adapter<ThreadViewHolder> implem
         try {
             switch (sofaMessage.getType()) {
                 case SofaType.PLAIN_TEXT: {
-                    final Message message = SofaAdapters.get().messageFrom(sofaMessage.getPayload());
+                    final Message message = SofaPayloadCache.get().messageFrom(sofaMessage);
                     return message.toUserVisibleString(sentByLocal, sofaMessage.hasAttachment());
                 }
                 case SofaType.PAYMENT: {
-                    final Payment payment = SofaAdapters.get().paymentFrom(sofaMessage.getPayload());
+                    final Payment payment = SofaPayloadCache.get().paymentFrom(sofaMessage);
                     return payment.toUserVisibleString(sentByLocal, sofaMessage.getSendState());
                 }
                 case SofaType.PAYMENT_REQUEST: {
-                    final PaymentRequest request = SofaAdapters.get().txRequestFrom(sofaMessage.getPayload());
+                    final PaymentRequest request = SofaPayloadCache.get().txRequestFrom(sofaMessage);
                     return request.toUserVisibleString(sentByLocal, sofaMessage.getSendState());
                 }
                 case SofaType.COMMAND_REQUEST:
@@ -24,6 +24,7 @@ import android.text.format.Formatter;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.toshi.R;
@@ -42,10 +43,12 @@ public class FileViewHolder extends RecyclerView.ViewHolder {
     private @Nullable ImageView avatar;
     private @Nullable ImageView sentStatus;
     private @Nullable TextView errorMessage;
+    private @Nullable ProgressBar uploadProgress;
 
     private String path;
     private String avatarUri;
     private @SendState.State int sendState;
+    private int progress = -1;
 
     public FileViewHolder(View v) {
         super(v);
@@ -55,6 +58,7 @@ public class FileViewHolder extends RecyclerView.ViewHolder {
         this.avatar = (ImageView) v.findViewById(R.id.avatar);
         this.sentStatus = (ImageView) v.findViewById(R.id.sent_status);
         this.errorMessage = (TextView) v.findViewById(R.id.error_message);
+        this.uploadProgress = (ProgressBar) v.findViewById(R.id.upload_progress);
     }
 
     public FileViewHolder setAttachmentPath(final String path) {
@@ -72,10 +76,16 @@ public class FileViewHolder extends RecyclerView.ViewHolder {
         return this;
     }
 
+    public FileViewHolder setUploadProgress(final int progress) {
+        this.progress = progress;
+        return this;
+    }
+
     public FileViewHolder draw() {
         setPath(this.path);
         renderAvatar();
         setSendState();
+        renderUploadProgress();
         return this;
     }
 
@@ -116,4 +126,11 @@ public class FileViewHolder extends RecyclerView.ViewHolder {
         this.sentStatus.setVisibility(visibility);
         this.errorMessage.setVisibility(visibility);
     }
+
+    private void renderUploadProgress() {
+        if (this.uploadProgress == null) return;
+        final boolean isUploading = this.sendState == SendState.STATE_SENDING && this.progress >= 0;
+        this.uploadProgress.setVisibility(isUploading ? View.VISIBLE : View.GONE);
+        if (isUploading) this.uploadProgress.setProgress(this.progress);
+    }
 }
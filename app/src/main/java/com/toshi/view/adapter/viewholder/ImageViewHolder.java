@@ -22,6 +22,7 @@ import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.ImageView;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import com.makeramen.roundedimageview.RoundedImageView;
@@ -31,8 +32,6 @@ import com.toshi.model.sofa.SofaMessage;
 import com.toshi.util.ImageUtil;
 import com.toshi.view.adapter.listeners.OnItemClickListener;
 
-import java.io.File;
-
 import de.hdodenhof.circleimageview.CircleImageView;
 
 public final class ImageViewHolder extends RecyclerView.ViewHolder {
@@ -40,11 +39,13 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
     private @Nullable CircleImageView avatar;
     private @Nullable ImageView sentStatus;
     private @Nullable TextView errorMessage;
+    private @Nullable ProgressBar uploadProgress;
     private @NonNull RoundedImageView image;
 
     private @SendState.State int sendState;
     private String attachmentFilePath;
     private String avatarUri;
+    private int progress = -1;
 
     public ImageViewHolder(final View v) {
         super(v);
@@ -52,6 +53,7 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
         this.image = (RoundedImageView) v.findViewById(R.id.image);
         this.sentStatus = (ImageView) v.findViewById(R.id.sent_status);
         this.errorMessage = (TextView) v.findViewById(R.id.error_message);
+        this.uploadProgress = (ProgressBar) v.findViewById(R.id.upload_progress);
     }
 
     public ImageViewHolder setAvatarUri(final String uri) {
@@ -64,6 +66,11 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
         return this;
     }
 
+    public ImageViewHolder setUploadProgress(final int progress) {
+        this.progress = progress;
+        return this;
+    }
+
     public ImageViewHolder setAttachmentFilePath(final String filePath) {
         this.attachmentFilePath = filePath;
         return this;
@@ -81,6 +88,7 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
         showImage();
         renderAvatar();
         setSendState();
+        renderUploadProgress();
         return this;
     }
 
@@ -91,8 +99,7 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
 
     private void showImage() {
         resetImage();
-        final File imageFile = new File(this.attachmentFilePath);
-        ImageUtil.renderFileIntoTarget(imageFile, this.image);
+        ImageUtil.renderThumbnailIntoTarget(this.attachmentFilePath, this.image);
         this.attachmentFilePath = null;
     }
 
@@ -109,6 +116,13 @@ public final class ImageViewHolder extends RecyclerView.ViewHolder {
         this.errorMessage.setVisibility(visibility);
     }
 
+    private void renderUploadProgress() {
+        if (this.uploadProgress == null) return;
+        final boolean isUploading = this.sendState == SendState.STATE_SENDING && this.progress >= 0;
+        this.uploadProgress.setVisibility(isUploading ? View.VISIBLE : View.GONE);
+        if (isUploading) this.uploadProgress.setProgress(this.progress);
+    }
+
     public ImageViewHolder setClickableImage(final OnItemClickListener<String> listener, final String filePath) {
         this.image.setOnClickListener(v -> listener.onItemClick(filePath));
         return this;
@@ -39,14 +39,27 @@ import com.toshi.view.BaseApplication;
 import com.toshi.view.notification.model.ChatNotification;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import rx.schedulers.Schedulers;
 
 public class ChatNotificationManager {
 
-    private static String currentlyOpenConversation;
-    private static final Map<String, ChatNotification> activeNotifications = new HashMap<>();
+    private static final long DEBOUNCE_MILLIS = 300;
+    private static final long MIN_UPDATE_INTERVAL_MILLIS = 2000;
+
+    private static volatile String currentlyOpenConversation;
+    private static final ConcurrentMap<String, ChatNotification> activeNotifications = new ConcurrentHashMap<>();
+    private static final NotificationScheduler scheduler =
+            new NotificationScheduler(DEBOUNCE_MILLIS, MIN_UPDATE_INTERVAL_MILLIS, Schedulers.io());
+    // Bodies of messages waiting for their sender to be looked up, by sender; a burst
+    // from one sender only needs one lookup. Guarded by itself.
+    private static final Map<String, List<String>> awaitingSender = new HashMap<>();
 
     public static void suppressNotificationsForConversation(final String conversationId) {
         currentlyOpenConversation = conversationId;
@@ -57,6 +70,7 @@ public class ChatNotificationManager {
 
     public static void handleNotificationDismissed(final String notificationTag) {
         activeNotifications.remove(notificationTag);
+        scheduler.reset(notificationTag);
     }
 
     public static void stopNotificationSuppression() {
@@ -66,30 +80,51 @@ public class ChatNotificationManager {
     public static void showNotification(final DecryptedSignalMessage signalMessage) {
         if (signalMessage == null) return;
 
+        final String body = getBodyFromMessage(signalMessage);
+        if (body == null) {
+            // This wasn't a SOFA::Message. Do not render.
+            LogUtil.i(ChatNotificationManager.class, "Not rendering PN");
+            return;
+        }
+
+        final String source = signalMessage.getSource();
+        synchronized (awaitingSender) {
+            final List<String> awaitingBodies = awaitingSender.get(source);
+            if (awaitingBodies != null) {
+                awaitingBodies.add(body);
+                return;
+            }
+            final List<String> bodies = new ArrayList<>();
+            bodies.add(body);
+            awaitingSender.put(source, bodies);
+        }
+
         BaseApplication
             .get()
             .getRecipientManager()
-            .getUserFromToshiId(signalMessage.getSource())
+            .getUserFromToshiId(source)
             .subscribe(
-                    (user) -> handleUserLookup(user, signalMessage),
-                    ChatNotificationManager::handleUserError
+                    (user) -> handleUserLookup(user, takeAwaitingBodies(source)),
+                    (throwable) -> handleUserError(throwable, takeAwaitingBodies(source))
             );
     }
 
-    private static void handleUserLookup(final User user, final DecryptedSignalMessage signalMessage) {
-        final String body = getBodyFromMessage(signalMessage);
-        if (body == null) {
-            // This wasn't a SOFA::Message. Do not render.
-            LogUtil.i(ChatNotificationManager.class, "Not rendering PN");
-            return;
+    private static List<String> takeAwaitingBodies(final String source) {
+        synchronized (awaitingSender) {
+            return awaitingSender.remove(source);
         }
+    }
+
+    private static void handleUserLookup(final User user, final List<String> bodies) {
         final Recipient recipient = new Recipient(user);
         // Todo - pass group avatar here (if it's a group)
-        showChatNotification(recipient, body);
+        for (final String body : bodies) {
+            showChatNotification(recipient, body);
+        }
     }
 
-    private static void handleUserError(final Throwable throwable) {
-        LogUtil.exception(ChatNotificationManager.class, "Error during fetching user", throwable);
+    private static void handleUserError(final Throwable throwable, final List<String> bodies) {
+        LogUtil.exception(ChatNotificationManager.class, "Error during fetching user; dropped " + bodies.size() + " notifications", throwable);
     }
 
     private static String getBodyFromMessage(final DecryptedSignalMessage dsm) {
@@ -115,17 +150,27 @@ public class ChatNotificationManager {
             return;
         }
 
-        final ChatNotification activeChatNotification
-                = activeNotifications.get(notificationKey) != null
-                ? activeNotifications.get(notificationKey)
-                : new ChatNotification(sender);
+        final ChatNotification newChatNotification = new ChatNotification(sender);
+        final ChatNotification existingChatNotification = activeNotifications.putIfAbsent(notificationKey, newChatNotification);
+        final ChatNotification activeChatNotification = existingChatNotification != null
+                ? existingChatNotification
+                : newChatNotification;
+
+        activeChatNotification.addUnreadMessage(content);
+        scheduler.schedule(notificationKey, () -> postChatNotification(notificationKey));
+    }
 
-        activeNotifications.put(notificationKey, activeChatNotification);
+    // Renders whatever the notification holds by the time the scheduler gets to it
+    private static void postChatNotification(final String notificationKey) {
+        final ChatNotification chatNotification = activeNotifications.get(notificationKey);
+        if (chatNotification == null) return;
 
-        activeChatNotification
-                .addUnreadMessage(content)
+        chatNotification
                 .generateLargeIcon()
-                .subscribe(() -> showChatNotification(activeChatNotification));
+                .subscribe(
+                        () -> showChatNotification(chatNotification),
+                        throwable -> LogUtil.exception(ChatNotificationManager.class, "Error while showing notification", throwable)
+                );
     }
 
     private static void showChatNotification(final ChatNotification chatNotification) {
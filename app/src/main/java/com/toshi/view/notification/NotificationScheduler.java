@@ -0,0 +1,73 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.view.notification;
+
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import rx.Scheduler;
+import rx.functions.Action0;
+
+// Coalesces notification updates per key. The first update waits a short debounce, so a burst
+// of messages is shown at once, and after that a key is posted at most once per interval.
+// Updates arriving while a post is scheduled are folded into it, since it renders the latest state.
+/* package */ class NotificationScheduler {
+
+    private final long debounceMillis;
+    private final long intervalMillis;
+    private final Scheduler scheduler;
+    private final Map<String, Long> lastPostedAt = new ConcurrentHashMap<>();
+    private final Set<String> scheduled = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /* package */ NotificationScheduler(final long debounceMillis,
+                                        final long intervalMillis,
+                                        final Scheduler scheduler) {
+        this.debounceMillis = debounceMillis;
+        this.intervalMillis = intervalMillis;
+        this.scheduler = scheduler;
+    }
+
+    /* package */ void schedule(final String key, final Action0 post) {
+        if (!this.scheduled.add(key)) return;
+
+        final Long lastPost = this.lastPostedAt.get(key);
+        final long now = this.scheduler.now();
+        final long untilNextAllowed = lastPost == null ? 0 : lastPost + this.intervalMillis - now;
+        final long delay = Math.max(this.debounceMillis, untilNextAllowed);
+
+        final Scheduler.Worker worker = this.scheduler.createWorker();
+        worker.schedule(() -> {
+            try {
+                // Removed before posting, so an update that comes in during the post schedules another
+                this.scheduled.remove(key);
+                this.lastPostedAt.put(key, this.scheduler.now());
+                post.call();
+            } finally {
+                worker.unsubscribe();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Forgets a key, e.g. when its notification is dismissed, so the next update isn't held back
+    /* package */ void reset(final String key) {
+        this.lastPostedAt.remove(key);
+    }
+}
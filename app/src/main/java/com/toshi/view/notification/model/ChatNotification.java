@@ -23,6 +23,7 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.support.v4.app.TaskStackBuilder;
+import android.util.LruCache;
 
 import com.bumptech.glide.Glide;
 import com.toshi.R;
@@ -51,7 +52,11 @@ public class ChatNotification {
     private List<String> lastFewMessages;
     private CharSequence lastMessage;
     private static final int MAXIMUM_NUMBER_OF_SHOWN_MESSAGES = 5;
-    private Bitmap largeIcon;
+    private static final int LARGE_ICON_SIZE = 200;
+    private static final int MAXIMUM_NUMBER_OF_CACHED_ICONS = 20;
+    // Circle cropped avatars by URL, so a new notification from a known sender doesn't fetch again
+    private static final LruCache<String, Bitmap> largeIconCache = new LruCache<>(MAXIMUM_NUMBER_OF_CACHED_ICONS);
+    private volatile Bitmap largeIcon;
 
     public ChatNotification(final Recipient sender) {
         this.sender = sender;
@@ -60,7 +65,7 @@ public class ChatNotification {
         generateLatestMessages(this.messages);
     }
 
-    public ChatNotification addUnreadMessage(final String unreadMessage) {
+    public synchronized ChatNotification addUnreadMessage(final String unreadMessage) {
         this.messages.add(unreadMessage);
         generateLatestMessages(this.messages);
         return this;
@@ -105,11 +110,11 @@ public class ChatNotification {
         return this.largeIcon;
     }
 
-    public CharSequence getLastMessage() {
+    public synchronized CharSequence getLastMessage() {
         return this.lastMessage;
     }
 
-    public List<String> getLastFewMessages() {
+    public synchronized List<String> getLastFewMessages() {
         return new ArrayList<>(lastFewMessages);
     }
 
@@ -156,7 +161,7 @@ public class ChatNotification {
                 PendingIntent.FLAG_UPDATE_CURRENT);
     }
 
-    public int getNumberOfUnreadMessages() {
+    public synchronized int getNumberOfUnreadMessages() {
         return messages.size();
     }
 
@@ -174,13 +179,21 @@ public class ChatNotification {
     }
 
     private void fetchUserAvatar() throws InterruptedException, ExecutionException {
+        final String avatarUri = getAvatarUri();
+        final Bitmap cachedIcon = largeIconCache.get(avatarUri);
+        if (cachedIcon != null) {
+            this.largeIcon = cachedIcon;
+            return;
+        }
+
         this.largeIcon = Glide
                         .with(BaseApplication.get())
-                        .load(getAvatarUri())
+                        .load(avatarUri)
                         .asBitmap()
                         .transform(new CropCircleTransformation(BaseApplication.get()))
-                        .into(200, 200)
+                        .into(LARGE_ICON_SIZE, LARGE_ICON_SIZE)
                         .get();
+        largeIconCache.put(avatarUri, this.largeIcon);
     }
 
     private Bitmap setDefaultLargeIcon() {
@@ -0,0 +1,113 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.benchmark;
+
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Minimal micro-benchmark runner for unit tests.
+ * <p>
+ * Runs a task a number of times after a warm-up and prints the latency distribution,
+ * so results can be compared between runs on the same machine. The number of iterations
+ * can be scaled with <code>-Dbenchmark.scale</code>.
+ */
+public final class Benchmark {
+
+    private static final double SCALE = Double.parseDouble(System.getProperty("benchmark.scale", "1"));
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private Benchmark() {}
+
+    public static Result run(final String name,
+                             final int warmupIterations,
+                             final int iterations,
+                             final Task task) throws Exception {
+        final int scaledIterations = Math.max(1, (int) (iterations * SCALE));
+        for (int i = 0; i < warmupIterations; i++) {
+            task.run();
+        }
+
+        final long[] durations = new long[scaledIterations];
+        for (int i = 0; i < scaledIterations; i++) {
+            final long start = System.nanoTime();
+            task.run();
+            durations[i] = System.nanoTime() - start;
+        }
+
+        final Result result = new Result(name, durations);
+        System.out.println(result);
+        return result;
+    }
+
+    public static final class Result {
+        private final String name;
+        private final long[] sortedDurations;
+        private final long totalDuration;
+
+        private Result(final String name, final long[] durations) {
+            this.name = name;
+            this.sortedDurations = durations;
+            Arrays.sort(this.sortedDurations);
+            long total = 0;
+            for (final long duration : durations) total += duration;
+            this.totalDuration = total;
+        }
+
+        public int getIterations() {
+            return this.sortedDurations.length;
+        }
+
+        public long getPercentileNanos(final int percentile) {
+            final int index = (int) Math.ceil(percentile / 100.0 * this.sortedDurations.length) - 1;
+            return this.sortedDurations[Math.max(0, index)];
+        }
+
+        public long getMinNanos() {
+            return this.sortedDurations[0];
+        }
+
+        public long getMaxNanos() {
+            return this.sortedDurations[this.sortedDurations.length - 1];
+        }
+
+        public double getOpsPerSecond() {
+            return this.sortedDurations.length / (this.totalDuration / 1_000_000_000.0);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    Locale.US,
+                    "%s: iterations=%d p50=%.3fms p95=%.3fms max=%.3fms ops/s=%.1f",
+                    this.name,
+                    this.sortedDurations.length,
+                    toMillis(getPercentileNanos(50)),
+                    toMillis(getPercentileNanos(95)),
+                    toMillis(getMaxNanos()),
+                    getOpsPerSecond());
+        }
+
+        private static double toMillis(final long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
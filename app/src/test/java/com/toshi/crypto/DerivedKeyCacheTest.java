@@ -0,0 +1,65 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto;
+
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DerivedKeyCacheTest {
+
+    private final ECKey identityKey = ECKey.fromPrivate(new byte[] {1, 2, 3, 4});
+    private final ECKey paymentKey = ECKey.fromPrivate(new byte[] {5, 6, 7, 8});
+    private final String seedFingerprint = DerivedKeyCache.fingerprint("storedSeed");
+
+    @Test
+    public void encodedKeysDecodeToTheSameKeys() {
+        final String encoded = DerivedKeyCache.encode(this.seedFingerprint, this.identityKey, this.paymentKey);
+        final DerivedKeyCache.Keys keys = DerivedKeyCache.decode(encoded, this.seedFingerprint);
+
+        assertThat(keys.identityKey.getPrivKeyBytes(), is(this.identityKey.getPrivKeyBytes()));
+        assertThat(keys.identityKey.getAddress(), is(this.identityKey.getAddress()));
+        assertThat(keys.paymentKey.getPrivKeyBytes(), is(this.paymentKey.getPrivKeyBytes()));
+        assertThat(keys.paymentKey.getAddress(), is(this.paymentKey.getAddress()));
+    }
+
+    @Test
+    public void keyNotMatchingItsAddressIsRejected() {
+        final String[] parts = DerivedKeyCache.encode(this.seedFingerprint, this.identityKey, this.paymentKey).split(":");
+        final String swapped = parts[0] + ":" + parts[1] + ":" + parts[4] + ":" + parts[3] + ":" + parts[2];
+
+        assertThat(DerivedKeyCache.decode(swapped, this.seedFingerprint), is(nullValue()));
+    }
+
+    @Test
+    public void keysDerivedFromAnotherSeedAreRejected() {
+        final String encoded = DerivedKeyCache.encode(this.seedFingerprint, this.identityKey, this.paymentKey);
+        final String otherFingerprint = DerivedKeyCache.fingerprint("otherStoredSeed");
+
+        assertThat(DerivedKeyCache.decode(encoded, otherFingerprint), is(nullValue()));
+    }
+
+    @Test
+    public void malformedDataIsRejected() {
+        assertThat(DerivedKeyCache.decode(null, this.seedFingerprint), is(nullValue()));
+        assertThat(DerivedKeyCache.decode(this.seedFingerprint + ":notHex:00:00:00", this.seedFingerprint), is(nullValue()));
+        assertThat(DerivedKeyCache.decode("0102", this.seedFingerprint), is(nullValue()));
+    }
+}
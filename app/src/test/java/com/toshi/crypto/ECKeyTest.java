@@ -0,0 +1,90 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto;
+
+
+import com.toshi.benchmark.Benchmark;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.toshi.crypto.util.HashUtil.sha3;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ECKeyTest {
+
+    @Test
+    public void signMatchesDoSign() {
+        final Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            final ECKey key = new ECKey();
+            final byte[] messageHash = randomHash(random);
+
+            final ECKey.ECDSASignature signature = key.sign(messageHash);
+            final ECKey.ECDSASignature expected = key.doSign(messageHash);
+
+            assertThat(signature.r, is(expected.r));
+            assertThat(signature.s, is(expected.s));
+        }
+    }
+
+    @Test
+    public void signatureRecoversSigningKey() throws Exception {
+        final Random random = new Random(2);
+        for (int i = 0; i < 50; i++) {
+            final ECKey key = new ECKey();
+            final byte[] messageHash = randomHash(random);
+
+            final ECKey.ECDSASignature signature = key.sign(messageHash);
+            final byte[] recoveredKey = ECKey.signatureToKeyBytes(messageHash, signature);
+
+            assertThat(Arrays.equals(recoveredKey, key.getPubKey()), is(true));
+        }
+    }
+
+    @Test
+    public void benchmarkSigning() throws Exception {
+        final ECKey key = new ECKey();
+        final byte[] messageHash = sha3("benchmark".getBytes());
+
+        Benchmark.run("eckey-sign", 50, 500, () -> key.sign(messageHash));
+        Benchmark.run("eckey-sign-with-recovery-search", 50, 500, () -> signWithRecoverySearch(key, messageHash));
+    }
+
+    // The previous implementation, kept as a baseline for the benchmark.
+    private ECKey.ECDSASignature signWithRecoverySearch(final ECKey key, final byte[] messageHash) {
+        final ECKey.ECDSASignature signature = key.doSign(messageHash);
+        final byte[] publicKey = key.getPubKey();
+        for (int i = 0; i < 4; i++) {
+            final byte[] candidate = ECKey.recoverPubBytesFromSignature(i, signature, messageHash);
+            if (candidate != null && Arrays.equals(candidate, publicKey)) {
+                signature.v = (byte) (i + 27);
+                return signature;
+            }
+        }
+        throw new IllegalStateException("Could not construct a recoverable key");
+    }
+
+    private byte[] randomHash(final Random random) {
+        final byte[] input = new byte[64];
+        random.nextBytes(input);
+        return sha3(input);
+    }
+}
@@ -20,12 +20,19 @@ package com.toshi.crypto;
 
 import android.content.SharedPreferences;
 
+import com.toshi.crypto.util.TypeConverter;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 public class HDWalletTest {
 
@@ -41,7 +48,7 @@ public class HDWalletTest {
 
     @Before
     public void setup() {
-        this.sharedPreferencesMock = Mockito.mock(SharedPreferences.class);
+        this.sharedPreferencesMock = Mockito.mock(SharedPreferences.class, Mockito.RETURNS_DEEP_STUBS);
         Mockito
                 .when(this.sharedPreferencesMock.getString(Mockito.anyString(), Mockito.anyString()))
                 .thenReturn(this.expectedMasterSeed);
@@ -76,4 +83,47 @@ public class HDWalletTest {
                         .value();
         assertThat(wallet.getPaymentAddress(), is(this.expectedPaymentAddress));
     }
+
+    @Test
+    public void signAllReturnsSignaturesInInputOrder() {
+        final HDWallet wallet = createWallet();
+        final List<String> transactions = Arrays.asList("0x01", "0xe980850ba43b7400", "0x0203", "0xdeadbeef", "0x04");
+        final byte[][] payloads = new byte[transactions.size()][];
+        for (int i = 0; i < transactions.size(); i++) {
+            payloads[i] = TypeConverter.StringHexToByteArray(transactions.get(i));
+        }
+
+        final List<SignatureResult> results = wallet.signAll(Arrays.asList(payloads)).toBlocking().value();
+
+        assertThat(results.size(), is(transactions.size()));
+        for (int i = 0; i < transactions.size(); i++) {
+            assertThat(results.get(i).isSuccess(), is(true));
+            assertThat(results.get(i).getSignature(), is(wallet.signTransaction(transactions.get(i))));
+        }
+    }
+
+    @Test
+    public void signAllOnlyFailsTheItemThatCantBeSigned() {
+        final HDWallet wallet = createWallet();
+        final List<byte[]> payloads = Arrays.asList(
+                TypeConverter.StringHexToByteArray("0x01"),
+                null,
+                TypeConverter.StringHexToByteArray("0x02"));
+
+        final List<SignatureResult> results = wallet.signAll(payloads).toBlocking().value();
+
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0).getSignature(), is(wallet.signTransaction("0x01")));
+        assertThat(results.get(1).isSuccess(), is(false));
+        assertThat(results.get(1).getSignature(), is(nullValue()));
+        assertThat(results.get(1).getError(), is(notNullValue()));
+        assertThat(results.get(2).getSignature(), is(wallet.signTransaction("0x02")));
+    }
+
+    private HDWallet createWallet() {
+        return new HDWallet(this.sharedPreferencesMock)
+                .getExistingWallet()
+                .toBlocking()
+                .value();
+    }
 }
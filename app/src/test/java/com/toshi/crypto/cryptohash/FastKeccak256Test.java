@@ -0,0 +1,114 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.cryptohash;
+
+
+import com.toshi.benchmark.Benchmark;
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FastKeccak256Test {
+
+    private static final String EMPTY_HASH = "c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470";
+    private static final String HELLO_HASH = "1c8aff950685c2ed4bc3174f3472287b56d9517b9c948127319a09a7a36deac8";
+
+    @Test
+    public void hashesEmptyInput() {
+        final byte[] result = new FastKeccak256().digest();
+        assertThat(Hex.toHexString(result), is(EMPTY_HASH));
+    }
+
+    @Test
+    public void hashesKnownInput() {
+        final byte[] result = new FastKeccak256().digest("hello".getBytes());
+        assertThat(Hex.toHexString(result), is(HELLO_HASH));
+    }
+
+    @Test
+    public void threadInstanceIsResetBetweenUses() {
+        FastKeccak256.get().update("garbage".getBytes());
+        final byte[] result = FastKeccak256.get().digest("hello".getBytes());
+        assertThat(Hex.toHexString(result), is(HELLO_HASH));
+    }
+
+    @Test
+    public void matchesKeccakCoreForAllLengthsAndOffsets() {
+        final Random random = new Random(42);
+        final FastKeccak256 fastKeccak = new FastKeccak256();
+        // Covers lengths around one and two blocks of 136 bytes
+        for (int length = 0; length < 300; length++) {
+            final int offset = random.nextInt(8);
+            final byte[] input = new byte[offset + length];
+            random.nextBytes(input);
+
+            final Keccak256 keccak = new Keccak256();
+            keccak.update(input, offset, length);
+            final String expected = Hex.toHexString(keccak.digest());
+
+            final int split = length == 0 ? 0 : random.nextInt(length);
+            fastKeccak.update(input, offset, split);
+            fastKeccak.update(input, offset + split, length - split);
+            assertThat(Hex.toHexString(fastKeccak.digest()), is(expected));
+        }
+    }
+
+    @Test
+    public void hashesByteBuffersWithoutChangingTheirByteOrder() {
+        final Random random = new Random(7);
+        final byte[] input = new byte[500];
+        random.nextBytes(input);
+        final String expected = Hex.toHexString(new Keccak256().digest(input));
+
+        final ByteBuffer heapBuffer = ByteBuffer.wrap(input);
+        final FastKeccak256 fastKeccak = new FastKeccak256();
+        fastKeccak.update(heapBuffer);
+        assertThat(Hex.toHexString(fastKeccak.digest()), is(expected));
+        assertThat(heapBuffer.remaining(), is(0));
+
+        final ByteBuffer directBuffer = ByteBuffer.allocateDirect(input.length);
+        directBuffer.put(input).flip();
+        fastKeccak.update(directBuffer);
+        assertThat(Hex.toHexString(fastKeccak.digest()), is(expected));
+        assertThat(directBuffer.order(), is(ByteOrder.BIG_ENDIAN));
+    }
+
+    @Test
+    public void copyContinuesIndependently() {
+        final FastKeccak256 fastKeccak = new FastKeccak256();
+        fastKeccak.update("hel".getBytes());
+        final Digest copy = fastKeccak.copy();
+        copy.update("lo".getBytes());
+        assertThat(Hex.toHexString(copy.digest()), is(HELLO_HASH));
+    }
+
+    @Test
+    public void benchmarkAgainstKeccakCore() throws Exception {
+        final byte[] input = new byte[256];
+        new Random(1).nextBytes(input);
+
+        Benchmark.run("keccak-core-256b", 1000, 20000, () -> new Keccak256().digest(input));
+        Benchmark.run("fast-keccak-256b", 1000, 20000, () -> FastKeccak256.get().digest(input));
+    }
+}
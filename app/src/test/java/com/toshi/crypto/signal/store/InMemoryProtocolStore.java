@@ -0,0 +1,145 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.signal.store;
+
+
+import org.whispersystems.libsignal.IdentityKey;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.InvalidKeyIdException;
+import org.whispersystems.libsignal.SignalProtocolAddress;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SessionRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+import org.whispersystems.libsignal.state.impl.InMemorySignalProtocolStore;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+import java.util.List;
+
+/**
+ * A {@link ProtocolStore} that keeps its keys and sessions in memory instead of in Realm
+ * and the shared preferences, so the Signal senders can run in JVM tests.
+ */
+public class InMemoryProtocolStore extends ProtocolStore {
+
+    private final InMemorySignalProtocolStore store;
+
+    public InMemoryProtocolStore() {
+        this.store = new InMemorySignalProtocolStore(
+                KeyHelper.generateIdentityKeyPair(),
+                KeyHelper.generateRegistrationId(false));
+    }
+
+    @Override
+    public String getPassword() {
+        return "password";
+    }
+
+    @Override
+    public IdentityKeyPair getIdentityKeyPair() {
+        return this.store.getIdentityKeyPair();
+    }
+
+    @Override
+    public int getLocalRegistrationId() {
+        return this.store.getLocalRegistrationId();
+    }
+
+    @Override
+    public boolean saveIdentity(final SignalProtocolAddress address, final IdentityKey identityKey) {
+        return this.store.saveIdentity(address, identityKey);
+    }
+
+    @Override
+    public boolean isTrustedIdentity(final SignalProtocolAddress address, final IdentityKey identityKey, final Direction direction) {
+        return this.store.isTrustedIdentity(address, identityKey, direction);
+    }
+
+    @Override
+    public PreKeyRecord loadPreKey(final int preKeyId) throws InvalidKeyIdException {
+        return this.store.loadPreKey(preKeyId);
+    }
+
+    @Override
+    public void storePreKey(final int preKeyId, final PreKeyRecord record) {
+        this.store.storePreKey(preKeyId, record);
+    }
+
+    @Override
+    public boolean containsPreKey(final int preKeyId) {
+        return this.store.containsPreKey(preKeyId);
+    }
+
+    @Override
+    public void removePreKey(final int preKeyId) {
+        this.store.removePreKey(preKeyId);
+    }
+
+    @Override
+    public SessionRecord loadSession(final SignalProtocolAddress address) {
+        return this.store.loadSession(address);
+    }
+
+    @Override
+    public List<Integer> getSubDeviceSessions(final String number) {
+        return this.store.getSubDeviceSessions(number);
+    }
+
+    @Override
+    public void storeSession(final SignalProtocolAddress address, final SessionRecord record) {
+        this.store.storeSession(address, record);
+    }
+
+    @Override
+    public boolean containsSession(final SignalProtocolAddress address) {
+        return this.store.containsSession(address);
+    }
+
+    @Override
+    public void deleteSession(final SignalProtocolAddress address) {
+        this.store.deleteSession(address);
+    }
+
+    @Override
+    public void deleteAllSessions(final String number) {
+        this.store.deleteAllSessions(number);
+    }
+
+    @Override
+    public SignedPreKeyRecord loadSignedPreKey(final int signedPreKeyId) throws InvalidKeyIdException {
+        return this.store.loadSignedPreKey(signedPreKeyId);
+    }
+
+    @Override
+    public List<SignedPreKeyRecord> loadSignedPreKeys() {
+        return this.store.loadSignedPreKeys();
+    }
+
+    @Override
+    public void storeSignedPreKey(final int signedPreKeyId, final SignedPreKeyRecord record) {
+        this.store.storeSignedPreKey(signedPreKeyId, record);
+    }
+
+    @Override
+    public boolean containsSignedPreKey(final int signedPreKeyId) {
+        return this.store.containsSignedPreKey(signedPreKeyId);
+    }
+
+    @Override
+    public void removeSignedPreKey(final int signedPreKeyId) {
+        this.store.removeSignedPreKey(signedPreKeyId);
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.crypto.util;
+
+import com.toshi.benchmark.Benchmark;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class RLPWriterTest {
+
+    private static final int ROUNDS = 2000;
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void elementsMatchRLPEncoding() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final byte[] element = randomBytes();
+            final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.elementLength(element));
+            new RLPWriter(buffer).writeElement(element);
+
+            assertThat(buffer.remaining(), is(0));
+            assertThat(buffer.array(), is(RLP.encodeElement(element)));
+        }
+    }
+
+    @Test
+    public void numbersMatchRLPEncoding() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final BigInteger value = new BigInteger(this.random.nextInt(300), this.random);
+            final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.bigIntegerLength(value));
+            new RLPWriter(buffer).writeBigInteger(value);
+
+            assertThat(buffer.remaining(), is(0));
+            assertThat(buffer.array(), is(RLP.encodeBigInteger(value)));
+        }
+    }
+
+    @Test
+    public void longsAreEncodedAsUnsigned() {
+        final long[] values = {0, 1, 0x7F, 0x80, 0xFF, 0x100, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (final long value : values) {
+            final BigInteger unsigned = new BigInteger(1, ByteBuffer.allocate(8).putLong(value).array());
+            final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.longLength(value));
+            new RLPWriter(buffer).writeLong(value);
+
+            assertThat(buffer.remaining(), is(0));
+            assertThat(buffer.array(), is(RLP.encodeBigInteger(unsigned)));
+        }
+    }
+
+    @Test
+    public void listsMatchRLPEncoding() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final byte[][] elements = randomElements();
+            final byte[][] encodedElements = new byte[elements.length][];
+            int payloadLength = 0;
+            for (int j = 0; j < elements.length; j++) {
+                encodedElements[j] = RLP.encodeElement(elements[j]);
+                payloadLength += RLPWriter.elementLength(elements[j]);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.listLength(payloadLength));
+            final RLPWriter writer = new RLPWriter(buffer).writeListHeader(payloadLength);
+            for (final byte[] element : elements) {
+                writer.writeElement(element);
+            }
+
+            assertThat(buffer.remaining(), is(0));
+            assertThat(buffer.array(), is(RLP.encodeList(encodedElements)));
+        }
+    }
+
+    @Test
+    public void writtenListsReadBackThroughView() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final byte[][] elements = randomElements();
+            final BigInteger number = new BigInteger(this.random.nextInt(256), this.random);
+            int payloadLength = RLPWriter.bigIntegerLength(number);
+            for (final byte[] element : elements) {
+                payloadLength += RLPWriter.elementLength(element);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate(RLPWriter.listLength(payloadLength));
+            final RLPWriter writer = new RLPWriter(buffer)
+                    .writeListHeader(payloadLength)
+                    .writeBigInteger(number);
+            for (final byte[] element : elements) {
+                writer.writeElement(element);
+            }
+
+            final RLPView view = RLPView.wrap(buffer.array());
+            assertThat(view.isList(), is(true));
+            assertThat(view.size(), is(elements.length + 1));
+            assertThat(view.get(0).asBigInteger(), is(number));
+            for (int j = 0; j < elements.length; j++) {
+                final byte[] expected = elements[j].length == 0 ? null : elements[j];
+                assertThat(view.get(j + 1).getData(), is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void viewMatchesRLPDecoding() {
+        for (int i = 0; i < ROUNDS; i++) {
+            final byte[] nested = RLP.encodeList(RLP.encodeElement(randomBytes()), RLP.encodeElement(randomBytes()));
+            final byte[] encoded = RLP.encodeList(RLP.encodeElement(randomBytes()), nested, RLP.encodeElement(randomBytes()));
+
+            final RLPList decoded = (RLPList) RLP.decode2(encoded).get(0);
+            final RLPView view = RLPView.wrap(encoded);
+
+            assertThat(view.size(), is(decoded.size()));
+            assertThat(view.getEncoded(), is(decoded.getRLPData()));
+            assertThat(view.get(0).getData(), is(decoded.get(0).getRLPData()));
+            assertThat(view.get(1).getEncoded(), is(decoded.get(1).getRLPData()));
+            assertThat(view.get(1).get(1).getData(), is(((RLPList) decoded.get(1)).get(1).getRLPData()));
+            assertThat(view.get(2).getData(), is(decoded.get(2).getRLPData()));
+        }
+    }
+
+    @Test
+    public void emptyItemHasNoData() {
+        final RLPView view = RLPView.wrap(RLP.encodeElement(new byte[0]));
+        assertThat(view.isList(), is(false));
+        assertThat(view.getData(), is(nullValue()));
+        assertThat(view.asLong(), is(0L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDataIsRejected() {
+        final byte[] encoded = RLP.encodeElement(new byte[60]);
+        RLPView.wrap(encoded, 0, encoded.length - 1);
+    }
+
+    @Test
+    public void encodeAndDecodeTransactionBenchmark() throws Exception {
+        final byte[] to = randomBytes(20);
+        final byte[] data = randomBytes(68);
+        final BigInteger gasPrice = BigInteger.valueOf(20_000_000_000L);
+        final BigInteger value = new BigInteger("1000000000000000000");
+
+        Benchmark.run("rlp-encode-transaction-legacy", 1000, 20000, () -> RLP.encodeList(
+                RLP.encodeBigInteger(BigInteger.TEN),
+                RLP.encodeBigInteger(gasPrice),
+                RLP.encodeBigInteger(BigInteger.valueOf(21000)),
+                RLP.encodeElement(to),
+                RLP.encodeBigInteger(value),
+                RLP.encodeElement(data)));
+
+        Benchmark.run("rlp-encode-transaction-writer", 1000, 20000, () -> {
+            final int payloadLength = RLPWriter.longLength(10)
+                    + RLPWriter.bigIntegerLength(gasPrice)
+                    + RLPWriter.longLength(21000)
+                    + RLPWriter.elementLength(to)
+                    + RLPWriter.bigIntegerLength(value)
+                    + RLPWriter.elementLength(data);
+            new RLPWriter(ByteBuffer.allocate(RLPWriter.listLength(payloadLength)))
+                    .writeListHeader(payloadLength)
+                    .writeLong(10)
+                    .writeBigInteger(gasPrice)
+                    .writeLong(21000)
+                    .writeElement(to)
+                    .writeBigInteger(value)
+                    .writeElement(data);
+        });
+
+        final byte[] encoded = RLP.encodeList(
+                RLP.encodeBigInteger(BigInteger.TEN),
+                RLP.encodeBigInteger(gasPrice),
+                RLP.encodeBigInteger(BigInteger.valueOf(21000)),
+                RLP.encodeElement(to),
+                RLP.encodeBigInteger(value),
+                RLP.encodeElement(data));
+
+        Benchmark.run("rlp-read-recipient-legacy", 1000, 20000, () ->
+                ((RLPList) RLP.decode2(encoded).get(0)).get(3).getRLPData());
+
+        Benchmark.run("rlp-read-recipient-view", 1000, 20000, () ->
+                RLPView.wrap(encoded).get(3).getData());
+    }
+
+    private byte[][] randomElements() {
+        final byte[][] elements = new byte[this.random.nextInt(12)][];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = randomBytes();
+        }
+        return elements;
+    }
+
+    // Mostly short values, with the single byte and long element edge cases mixed in
+    private byte[] randomBytes() {
+        switch (this.random.nextInt(4)) {
+            case 0: return randomBytes(1);
+            case 1: return randomBytes(56 + this.random.nextInt(300));
+            default: return randomBytes(this.random.nextInt(56));
+        }
+    }
+
+    private byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        this.random.nextBytes(bytes);
+        return bytes;
+    }
+}
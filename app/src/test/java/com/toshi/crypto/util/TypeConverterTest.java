@@ -55,4 +55,21 @@ public class TypeConverterTest {
         final BigInteger actual = TypeConverter.StringHexToBigInteger("notHex");
         assertThat(actual, is(expected));
     }
+
+    @Test
+    public void stringHexToByteArrayConvertsCorrectly() {
+        final byte[] actual = TypeConverter.StringHexToByteArray("0x0a0B");
+        assertThat(actual, is(new byte[]{0x0a, 0x0b}));
+    }
+
+    @Test
+    public void stringHexToByteArrayPadsOddLengthInput() {
+        final byte[] actual = TypeConverter.StringHexToByteArray("0xa0b");
+        assertThat(actual, is(new byte[]{0x0a, 0x0b}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringHexToByteArrayThrowsIfCalledWithInvalidHex() {
+        TypeConverter.StringHexToByteArray("notHex");
+    }
 }
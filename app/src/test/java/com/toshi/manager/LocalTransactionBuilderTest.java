@@ -0,0 +1,223 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import com.toshi.manager.network.EthereumInterface;
+import com.toshi.manager.network.MockToshiServer;
+import com.toshi.model.adapter.MoshiProvider;
+import com.toshi.model.local.TransactionSkeleton;
+import com.toshi.model.network.TransactionRequest;
+import com.toshi.model.network.UnsignedTransaction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.moshi.MoshiConverterFactory;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LocalTransactionBuilderTest {
+
+    private static final String FROM_ADDRESS = "0x0a3b5c2e7d8b4e5b8c1d4f1e2a3b4c5d6e7f8091";
+    private static final String TO_ADDRESS = "0x011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f";
+    private static final String OTHER_ADDRESS = "0x5c2e7d8b4e5b8c1d4f1e2a3b4c5d6e7f80910a3b";
+    private static final String VALUE = "0x38d7ea4c680000";
+
+    private MockToshiServer server;
+    private LocalTransactionBuilder builder;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockToshiServer();
+        this.server.start();
+
+        final EthereumInterface api = new Retrofit.Builder()
+                .baseUrl(this.server.getUrl())
+                .addConverterFactory(MoshiConverterFactory.create(MoshiProvider.get()))
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .build()
+                .create(EthereumInterface.class);
+        this.builder = new LocalTransactionBuilder(() -> api);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    @Test
+    public void localEncodingMatchesServerSkeleton() {
+        final TransactionSkeleton serverSkeleton = TransactionSkeleton.decode(MockToshiServer.UNSIGNED_TRANSACTION);
+        final String localSkeleton = new TransactionSkeleton()
+                .setNonce(serverSkeleton.getNonce())
+                .setGasPrice(serverSkeleton.getGasPrice())
+                .setGas(serverSkeleton.getGas())
+                .setToAddress(TO_ADDRESS)
+                .setValue(new BigInteger(VALUE.substring(2), 16))
+                .encode();
+
+        assertThat(localSkeleton, is(MockToshiServer.UNSIGNED_TRANSACTION));
+    }
+
+    @Test
+    public void firstPaymentUsesServerSkeletonAndLaterOnesAreBuiltLocally() {
+        final UnsignedTransaction first = createPayment();
+        final UnsignedTransaction second = createPayment();
+        final UnsignedTransaction third = createPayment();
+
+        assertThat(first.getTransaction(), is(MockToshiServer.UNSIGNED_TRANSACTION));
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(1));
+
+        final TransactionSkeleton serverSkeleton = TransactionSkeleton.decode(first.getTransaction());
+        final TransactionSkeleton secondSkeleton = TransactionSkeleton.decode(second.getTransaction());
+        final TransactionSkeleton thirdSkeleton = TransactionSkeleton.decode(third.getTransaction());
+        assertThat(secondSkeleton.getNonce(), is(serverSkeleton.getNonce().add(BigInteger.ONE)));
+        assertThat(thirdSkeleton.getNonce(), is(serverSkeleton.getNonce().add(BigInteger.valueOf(2))));
+        assertThat(secondSkeleton.getGasPrice(), is(serverSkeleton.getGasPrice()));
+        assertThat(secondSkeleton.getGas(), is(serverSkeleton.getGas()));
+        assertThat(secondSkeleton.getValue(), is(serverSkeleton.getValue()));
+    }
+
+    @Test
+    public void invalidatingFetchesTheSkeletonAgain() {
+        final UnsignedTransaction first = createPayment();
+        this.builder.onTransactionSent(first);
+        this.builder.invalidate();
+        final UnsignedTransaction second = createPayment();
+
+        assertThat(second.getTransaction(), is(MockToshiServer.UNSIGNED_TRANSACTION));
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(2));
+    }
+
+    @Test
+    public void reconcilingKeepsTheNoncesInFlight() {
+        final UnsignedTransaction first = createPayment();
+        this.builder.invalidate();
+        final UnsignedTransaction second = createPayment();
+
+        // The mock server still reports the first nonce, but it is in flight
+        assertThat(nonceOf(second), is(nonceOf(first).add(BigInteger.ONE)));
+    }
+
+    @Test
+    public void rejectedNonceIsUsedByTheNextPayment() {
+        final UnsignedTransaction first = createPayment();
+        createPayment();
+        this.builder.onTransactionNotSent(first);
+        final UnsignedTransaction third = createPayment();
+
+        assertThat(nonceOf(third), is(nonceOf(first)));
+    }
+
+    @Test
+    public void burstOfPaymentsSharesOneSkeletonRequestAndGetsDistinctNonces() throws Exception {
+        final int paymentCount = 10;
+        final List<UnsignedTransaction> transactions = Observable
+                .range(0, paymentCount)
+                .flatMap(__ -> this.builder
+                        .createUnsignedTransaction(newPaymentRequest())
+                        .subscribeOn(Schedulers.io())
+                        .toObservable())
+                .toList()
+                .toBlocking()
+                .single();
+
+        final Set<BigInteger> nonces = new HashSet<>();
+        for (final UnsignedTransaction transaction : transactions) {
+            nonces.add(nonceOf(transaction));
+        }
+        assertThat(nonces.size(), is(paymentCount));
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(1));
+    }
+
+    @Test
+    public void contractCallsAlwaysUseTheServer() {
+        createPayment();
+        final TransactionRequest contractCall = newPaymentRequest().setData("0xa9059cbb");
+        this.builder.createUnsignedTransaction(contractCall).toBlocking().value();
+        createPayment();
+
+        // The contract call used a nonce, so the payment after it reconciles with the server
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(3));
+    }
+
+    @Test
+    public void dappTransactionDoesNotHoldBackLaterPayments() {
+        final UnsignedTransaction first = createPayment();
+        this.builder.onTransactionSent(first);
+
+        // Signed for a dapp, which may never broadcast it
+        this.builder.createServerTransaction(newPaymentRequest()).toBlocking().value();
+        final UnsignedTransaction payment = createPayment();
+
+        assertThat(nonceOf(payment), is(TransactionSkeleton.decode(MockToshiServer.UNSIGNED_TRANSACTION).getNonce()));
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(3));
+    }
+
+    @Test
+    public void gasLimitIsLearntForEachRecipient() {
+        createPayment();
+        createPayment(OTHER_ADDRESS);
+        createPayment();
+        createPayment(OTHER_ADDRESS);
+
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(2));
+    }
+
+    @Test
+    public void serverTimeIsOnlyFetchedOnce() {
+        final long first = this.builder.getTimestamp().toBlocking().value();
+        final long second = this.builder.getTimestamp().toBlocking().value();
+
+        assertThat(this.server.getRequestCount("/v1/timestamp"), is(1));
+        assertThat(Math.abs(second - first) <= 1, is(true));
+    }
+
+    private BigInteger nonceOf(final UnsignedTransaction transaction) {
+        return TransactionSkeleton.decode(transaction.getTransaction()).getNonce();
+    }
+
+    private UnsignedTransaction createPayment() {
+        return createPayment(TO_ADDRESS);
+    }
+
+    private UnsignedTransaction createPayment(final String toAddress) {
+        return this.builder
+                .createUnsignedTransaction(newPaymentRequest().setToAddress(toAddress))
+                .toBlocking()
+                .value();
+    }
+
+    private TransactionRequest newPaymentRequest() {
+        return new TransactionRequest()
+                .setFromAddress(FROM_ADDRESS)
+                .setToAddress(TO_ADDRESS)
+                .setValue(VALUE);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class NonceManagerTest {
+
+    private NonceManager nonceManager;
+
+    @Before
+    public void setUp() {
+        this.nonceManager = new NonceManager();
+        this.nonceManager.reconcile(nonce(5));
+    }
+
+    @Test
+    public void reservedNoncesAreConsecutive() {
+        assertThat(this.nonceManager.reserve(), is(nonce(5)));
+        assertThat(this.nonceManager.reserve(), is(nonce(6)));
+        assertThat(this.nonceManager.reserve(), is(nonce(7)));
+
+        // Nonces in flight are never handed out again, even if the server hasn't seen them yet
+        this.nonceManager.reconcile(nonce(5));
+        assertThat(this.nonceManager.reserve(), is(nonce(8)));
+    }
+
+    @Test
+    public void releasedNonceFillsTheGapFirst() {
+        final BigInteger first = this.nonceManager.reserve();
+        this.nonceManager.reserve();
+        this.nonceManager.release(first);
+
+        assertThat(this.nonceManager.reserve(), is(first));
+        assertThat(this.nonceManager.reserve(), is(nonce(7)));
+    }
+
+    @Test
+    public void releasingTheLastNonceIsNotAGap() {
+        this.nonceManager.reserve();
+        final BigInteger last = this.nonceManager.reserve();
+        this.nonceManager.release(last);
+
+        assertThat(this.nonceManager.reserve(), is(last));
+    }
+
+    @Test
+    public void acceptedNoncesAreNotHandedOutAgain() {
+        final BigInteger nonce = this.nonceManager.reserve();
+        this.nonceManager.onAccepted(nonce);
+        this.nonceManager.release(nonce);
+
+        assertThat(this.nonceManager.reserve(), is(nonce(6)));
+    }
+
+    @Test
+    public void reconcilingNeverReusesNoncesInFlight() {
+        this.nonceManager.reserve();
+        this.nonceManager.reserve();
+        this.nonceManager.invalidate();
+        // The server hasn't seen the transactions in flight yet
+        this.nonceManager.reconcile(nonce(5));
+
+        assertThat(this.nonceManager.reserve(), is(nonce(7)));
+    }
+
+    @Test
+    public void reconcilingMovesForwardWhenAnotherDeviceSent() {
+        final BigInteger first = this.nonceManager.reserve();
+        this.nonceManager.reserve();
+        this.nonceManager.release(first);
+        this.nonceManager.reconcile(nonce(10));
+
+        // Nonce 5 was used elsewhere, so it is no longer a gap to fill
+        assertThat(this.nonceManager.reserve(), is(nonce(10)));
+    }
+
+    @Test
+    public void invalidatedManagerNeedsReconciling() {
+        this.nonceManager.invalidate();
+        assertThat(this.nonceManager.isKnown(), is(false));
+    }
+
+    private static BigInteger nonce(final long value) {
+        return BigInteger.valueOf(value);
+    }
+}
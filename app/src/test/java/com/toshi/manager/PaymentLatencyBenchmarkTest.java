@@ -0,0 +1,147 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import android.content.SharedPreferences;
+
+import com.toshi.benchmark.Benchmark;
+import com.toshi.crypto.HDWallet;
+import com.toshi.crypto.SignatureResult;
+import com.toshi.crypto.util.TypeConverter;
+import com.toshi.manager.network.EthereumService;
+import com.toshi.manager.network.MockToshiServer;
+import com.toshi.manager.network.ServiceEndpoints;
+import com.toshi.model.network.SentTransaction;
+import com.toshi.model.network.SignedTransaction;
+import com.toshi.model.network.TransactionRequest;
+import com.toshi.model.network.UnsignedTransaction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import rx.Single;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * End-to-end latency of sending a payment against {@link MockToshiServer}, following the
+ * same steps as {@link TransactionManager}: build the transaction with a
+ * {@link LocalTransactionBuilder}, sign it, and send it with the builder's server time.
+ * Requests go through {@link EthereumService}, pointed at the mock server.
+ * <p>
+ * The emulated network latency can be set with <code>-Dbenchmark.latencyMs</code>.
+ *
+ * @see Benchmark
+ */
+public class PaymentLatencyBenchmarkTest {
+
+    private static final long LATENCY_MS = Long.getLong("benchmark.latencyMs", 20);
+    private static final int ITERATIONS = 20;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final String MASTER_SEED = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+    private static final String TO_ADDRESS = "0x011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f";
+
+    private MockToshiServer server;
+    private LocalTransactionBuilder transactionBuilder;
+    private HDWallet wallet;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockToshiServer().setLatency(LATENCY_MS, TimeUnit.MILLISECONDS);
+        this.server.start();
+
+        final SharedPreferences sharedPreferencesMock = Mockito.mock(SharedPreferences.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito
+                .when(sharedPreferencesMock.getString(Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(MASTER_SEED);
+        this.wallet = new HDWallet(sharedPreferencesMock)
+                .getExistingWallet()
+                .toBlocking()
+                .value();
+
+        final ServiceEndpoints endpoints = this.server
+                .toEndpoints()
+                .setWallet(this.wallet);
+        ServiceEndpoints.setOverride(endpoints);
+        // The service outlives a single test, so point it at this test's server
+        EthereumService.get().changeBaseUrl(endpoints.getEthUrl());
+        this.transactionBuilder = new LocalTransactionBuilder(EthereumService::getApi);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ServiceEndpoints.setOverride(null);
+        this.server.shutdown();
+    }
+
+    @Test
+    public void sendPaymentLatency() throws Exception {
+        final Benchmark.Result result = Benchmark.run("send-payment", WARMUP_ITERATIONS, ITERATIONS, this::sendPayment);
+
+        // Only the first payment fetches a skeleton and the server time
+        assertThat(this.server.getRequestCount("/v1/tx/skel"), is(1));
+        assertThat(this.server.getRequestCount("/v1/timestamp"), is(1));
+        assertThat(this.server.getRequestCount("/v1/tx"), is(WARMUP_ITERATIONS + result.getIterations()));
+    }
+
+    private void sendPayment() {
+        final TransactionRequest request = new TransactionRequest()
+                .setValue("0x38d7ea4c68000")
+                .setFromAddress(this.wallet.getPaymentAddress())
+                .setToAddress(TO_ADDRESS);
+
+        final SentTransaction sentTransaction = this.transactionBuilder
+                .createUnsignedTransaction(request)
+                .flatMap(this::signAndSend)
+                .toBlocking()
+                .value();
+
+        if (sentTransaction.getTxHash() == null) throw new IllegalStateException("Payment was not sent");
+    }
+
+    private Single<SentTransaction> signAndSend(final UnsignedTransaction unsignedTransaction) {
+        return Single.zip(
+                    sign(unsignedTransaction),
+                    this.transactionBuilder.getTimestamp(),
+                    (signedTransaction, timestamp) -> EthereumService.getApi().sendSignedTransaction(timestamp, signedTransaction))
+                .doOnError(__ -> this.transactionBuilder.onTransactionNotSent(unsignedTransaction))
+                .flatMap(sentTransaction -> sentTransaction)
+                .doOnSuccess(__ -> this.transactionBuilder.onTransactionSent(unsignedTransaction));
+    }
+
+    private Single<SignedTransaction> sign(final UnsignedTransaction unsignedTransaction) {
+        final byte[] transactionBytes = TypeConverter.StringHexToByteArray(unsignedTransaction.getTransaction());
+        return this.wallet
+                .signAll(Collections.singletonList(transactionBytes))
+                .map(results -> toSignedTransaction(unsignedTransaction, results.get(0)));
+    }
+
+    private SignedTransaction toSignedTransaction(final UnsignedTransaction unsignedTransaction,
+                                                  final SignatureResult result) {
+        if (!result.isSuccess()) throw new IllegalStateException("Unable to sign transaction", result.getError());
+        return new SignedTransaction()
+                .setEncodedTransaction(unsignedTransaction.getTransaction())
+                .setSignature(result.getSignature());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StartupGraphTest {
+
+    @Test
+    public void stagesRunAfterTheirDependencies() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final StartupGraph graph = new StartupGraph()
+                .add("a", () -> order.add("a"))
+                .add("b", () -> order.add("b"), "a")
+                .add("c", () -> order.add("c"), "a", "b");
+
+        graph.start(Schedulers.io()).await(5, TimeUnit.SECONDS);
+
+        assertThat(order.indexOf("a") < order.indexOf("b"), is(true));
+        assertThat(order.indexOf("b") < order.indexOf("c"), is(true));
+        assertThat(graph.getTrace().size(), is(3));
+    }
+
+    @Test
+    public void independentStagesRunConcurrently() {
+        // Each stage waits for the other to start, so this only finishes if both run at once
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final StartupGraph.Stage stage = () -> {
+            bothStarted.countDown();
+            if (!bothStarted.await(5, TimeUnit.SECONDS)) throw new IllegalStateException("Stages ran serially");
+        };
+        final StartupGraph graph = new StartupGraph()
+                .add("a", stage)
+                .add("b", stage);
+
+        graph.start(Schedulers.io()).await(10, TimeUnit.SECONDS);
+
+        assertThat(bothStarted.getCount(), is(0L));
+    }
+
+    @Test
+    public void failureIsPassedOnToDependentStages() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final StartupGraph graph = new StartupGraph()
+                .add("a", () -> { throw new IllegalStateException("Failed"); })
+                .add("b", () -> order.add("b"), "a");
+
+        final Throwable error = graph.start(Schedulers.io()).get(5, TimeUnit.SECONDS);
+        final Throwable dependentError = graph.ready("b").get(5, TimeUnit.SECONDS);
+
+        assertThat(error != null, is(true));
+        assertThat(dependentError != null, is(true));
+        assertThat(order.isEmpty(), is(true));
+    }
+
+    @Test
+    public void startingTwiceRunsStagesOnce() {
+        final List<String> order = Collections.synchronizedList(new ArrayList<>());
+        final StartupGraph graph = new StartupGraph()
+                .add("a", () -> order.add("a"));
+
+        graph.start(Schedulers.io()).await(5, TimeUnit.SECONDS);
+        graph.start(Schedulers.io()).await(5, TimeUnit.SECONDS);
+
+        assertThat(order.size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDependencyIsRejected() {
+        new StartupGraph().add("b", () -> {}, "a");
+    }
+}
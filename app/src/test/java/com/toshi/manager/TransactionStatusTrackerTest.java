@@ -0,0 +1,151 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager;
+
+
+import com.squareup.moshi.Moshi;
+import com.toshi.manager.network.EthereumInterface;
+import com.toshi.model.local.PendingTransaction;
+import com.toshi.model.network.TransactionStatusRequest;
+import com.toshi.model.sofa.Payment;
+import com.toshi.model.sofa.SofaType;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava.RxJavaCallAdapterFactory;
+import retrofit2.converter.moshi.MoshiConverterFactory;
+import rx.schedulers.Schedulers;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TransactionStatusTrackerTest {
+
+    private MockWebServer server;
+    private TransactionStatusTracker tracker;
+    private List<Payment> updatedPayments;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockWebServer();
+        this.server.start();
+        this.updatedPayments = new ArrayList<>();
+
+        final EthereumInterface api = new Retrofit.Builder()
+                .baseUrl(this.server.url("/"))
+                .addConverterFactory(MoshiConverterFactory.create(new Moshi.Builder().build()))
+                .addCallAdapterFactory(RxJavaCallAdapterFactory.create())
+                .build()
+                .create(EthereumInterface.class);
+
+        this.tracker = new TransactionStatusTracker(
+                txHashes -> api
+                        .getStatusOfTransactions(new TransactionStatusRequest(txHashes))
+                        .map(statuses -> statuses.getPayments()),
+                (pendingTransaction, existingPayment, updatedPayment) -> this.updatedPayments.add(updatedPayment),
+                Schedulers.immediate());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.server.shutdown();
+    }
+
+    @Test
+    public void confirmedTransactionsAreReportedAndUntracked() throws Exception {
+        track("0x1", 0);
+        track("0x2", 0);
+        this.server.enqueue(new MockResponse().setBody(
+                "{\"transactions\":[" +
+                "{\"tx_hash\":\"0x1\",\"status\":\"confirmed\"}," +
+                "{\"tx_hash\":\"0x2\",\"status\":\"unconfirmed\"}]}"));
+
+        this.tracker.poll(0).await();
+
+        final RecordedRequest request = this.server.takeRequest();
+        assertThat(request.getPath(), is("/v1/tx/status"));
+        final String body = request.getBody().readUtf8();
+        assertThat(body, containsString("0x1"));
+        assertThat(body, containsString("0x2"));
+
+        assertThat(this.updatedPayments.size(), is(1));
+        assertThat(this.updatedPayments.get(0).getTxHash(), is("0x1"));
+        assertThat(this.updatedPayments.get(0).getStatus(), is(SofaType.CONFIRMED));
+        assertThat(this.tracker.getTrackedCount(), is(1));
+    }
+
+    @Test
+    public void transactionsAreFetchedInBatches() throws Exception {
+        final int count = TransactionStatusTracker.MAX_BATCH_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            track("0x" + i, 0);
+            this.server.enqueue(new MockResponse().setBody("{\"transactions\":[]}"));
+        }
+
+        this.tracker.poll(0).await();
+
+        assertThat(this.server.getRequestCount(), is(2));
+        assertThat(this.tracker.getTrackedCount(), is(count));
+    }
+
+    @Test
+    public void transactionsAreNotPolledAgainBeforeTheirInterval() throws Exception {
+        track("0x1", 0);
+        this.server.enqueue(new MockResponse().setBody("{\"transactions\":[]}"));
+
+        this.tracker.poll(0).await();
+        this.tracker.poll(1).await();
+
+        assertThat(this.server.getRequestCount(), is(1));
+    }
+
+    @Test
+    public void failedRequestKeepsTransactionsTracked() throws Exception {
+        track("0x1", 0);
+        this.server.enqueue(new MockResponse().setResponseCode(500));
+
+        this.tracker.poll(0).await();
+
+        assertThat(this.updatedPayments.size(), is(0));
+        assertThat(this.tracker.getTrackedCount(), is(1));
+    }
+
+    @Test
+    public void oldTransactionsArePolledLessOften() {
+        final long freshInterval = TransactionStatusTracker.getPollInterval(0);
+        final long oldInterval = TransactionStatusTracker.getPollInterval(TimeUnit.HOURS.toMillis(2));
+        assertThat(oldInterval, greaterThan(freshInterval));
+    }
+
+    private void track(final String txHash, final long submittedAt) {
+        final PendingTransaction pendingTransaction = new PendingTransaction().setTxHash(txHash);
+        final Payment payment = new Payment().setTxHash(txHash).setStatus(SofaType.UNCONFIRMED);
+        this.tracker.track(pendingTransaction, payment, submittedAt);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class DappResourceCacheTest {
+
+    @Test
+    public void staticFilesAreCacheable() {
+        assertThat(DappResourceCache.isCacheableAsset("https://dapp.example/js/app.js"), is(true));
+        assertThat(DappResourceCache.isCacheableAsset("https://dapp.example/style.CSS?v=3"), is(true));
+        assertThat(DappResourceCache.isCacheableAsset("http://dapp.example/fonts/a.woff2#iefix"), is(true));
+    }
+
+    @Test
+    public void pagesAndApiCallsAreNotCacheable() {
+        assertThat(DappResourceCache.isCacheableAsset("https://dapp.example/"), is(false));
+        assertThat(DappResourceCache.isCacheableAsset("https://dapp.example/index.html"), is(false));
+        assertThat(DappResourceCache.isCacheableAsset("https://api.example/v1/balance?file=a.js"), is(false));
+        assertThat(DappResourceCache.isCacheableAsset("https://dapp.example.com/api"), is(false));
+        assertThat(DappResourceCache.isCacheableAsset("data:image/png;base64,AAAA.png"), is(false));
+        assertThat(DappResourceCache.isCacheableAsset(null), is(false));
+    }
+
+    @Test
+    public void visitsAreKeptMostRecentFirstWithoutDuplicates() {
+        final List<String> recent = Arrays.asList("https://a", "https://b", "https://c");
+        final List<String> updated = DappResourceCache.addRecent(recent, "https://b", 3);
+        assertThat(updated, is(Arrays.asList("https://b", "https://a", "https://c")));
+    }
+
+    @Test
+    public void oldestVisitIsDroppedWhenFull() {
+        final List<String> recent = Arrays.asList("https://a", "https://b");
+        final List<String> updated = DappResourceCache.addRecent(recent, "https://c", 2);
+        assertThat(updated, is(Arrays.asList("https://c", "https://a")));
+        assertThat(DappResourceCache.addRecent(Collections.<String>emptyList(), "https://a", 2),
+                is(Collections.singletonList("https://a")));
+    }
+}
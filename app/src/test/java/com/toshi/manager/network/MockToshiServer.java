@@ -0,0 +1,219 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import com.toshi.util.LogUtil;
+
+import org.spongycastle.util.encoders.Base64;
+import org.whispersystems.libsignal.IdentityKeyPair;
+import org.whispersystems.libsignal.InvalidKeyException;
+import org.whispersystems.libsignal.state.PreKeyRecord;
+import org.whispersystems.libsignal.state.SignedPreKeyRecord;
+import org.whispersystems.libsignal.util.KeyHelper;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * A local stand-in for the id, eth, directory and chat services.
+ * Every response is delayed by the configured latency to emulate a real network.
+ * Use {@link #toEndpoints()} to point the app's services at this server.
+ */
+public class MockToshiServer {
+
+    public static final String UNSIGNED_TRANSACTION =
+            "0xe9808504e3b29200830186a094011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f8738d7ea4c68000080";
+    public static final String TX_HASH =
+            "0x1d5f4e9b6bf5f0e2b5d1b3ea1a5c19f2e3a6c1a9b7f0c7a2f1e4d3c2b1a09f8e";
+
+    private final MockWebServer server;
+    private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+    private final String preKeyResponse;
+    private volatile long latencyMs;
+
+    public MockToshiServer() {
+        this.server = new MockWebServer();
+        this.server.setDispatcher(new ToshiDispatcher());
+        this.preKeyResponse = buildPreKeyResponse();
+    }
+
+    // Every user publishes the same Signal keys, so messages can be encrypted to anyone
+    private static String buildPreKeyResponse() {
+        try {
+            final IdentityKeyPair identityKeyPair = KeyHelper.generateIdentityKeyPair();
+            final SignedPreKeyRecord signedPreKey = KeyHelper.generateSignedPreKey(identityKeyPair, 1);
+            final PreKeyRecord preKey = KeyHelper.generatePreKeys(1, 1).get(0);
+            return "{\"identityKey\":\"" + Base64.toBase64String(identityKeyPair.getPublicKey().serialize()) + "\"," +
+                    "\"devices\":[{\"deviceId\":1," +
+                    "\"registrationId\":" + KeyHelper.generateRegistrationId(false) + "," +
+                    "\"signedPreKey\":{\"keyId\":" + signedPreKey.getId() + "," +
+                    "\"publicKey\":\"" + Base64.toBase64String(signedPreKey.getKeyPair().getPublicKey().serialize()) + "\"," +
+                    "\"signature\":\"" + Base64.toBase64String(signedPreKey.getSignature()) + "\"}," +
+                    "\"preKey\":{\"keyId\":" + preKey.getId() + "," +
+                    "\"publicKey\":\"" + Base64.toBase64String(preKey.getKeyPair().getPublicKey().serialize()) + "\"}}]}";
+        } catch (final InvalidKeyException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public MockToshiServer setLatency(final long latency, final TimeUnit unit) {
+        this.latencyMs = unit.toMillis(latency);
+        return this;
+    }
+
+    public void start() throws IOException {
+        this.server.start();
+    }
+
+    public void shutdown() throws IOException {
+        this.server.shutdown();
+    }
+
+    public String getUrl() {
+        final String url = this.server.url("/").toString();
+        // Drop the trailing slash so it matches the format of the configured service URLs
+        return url.substring(0, url.length() - 1);
+    }
+
+    public int getRequestCount() {
+        return this.server.getRequestCount();
+    }
+
+    public int getRequestCount(final String path) {
+        final AtomicInteger count = this.requestCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    // Blocks until the server has received count requests for path; returns false on timeout
+    public boolean awaitRequestCount(final String path,
+                                     final int count,
+                                     final long timeout,
+                                     final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.requestCounts) {
+            while (getRequestCount(path) < count) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this.requestCounts, remaining);
+            }
+            return true;
+        }
+    }
+
+    public ServiceEndpoints toEndpoints() {
+        final String url = getUrl();
+        return new ServiceEndpoints()
+                .setIdUrl(url)
+                .setEthUrl(url)
+                .setDirectoryUrl(url)
+                .setChatUrl(url)
+                .setReputationUrl(url)
+                .setCurrencyUrl(url);
+    }
+
+    private class ToshiDispatcher extends Dispatcher {
+        @Override
+        public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+            if (latencyMs > 0) Thread.sleep(latencyMs);
+            final String path = stripQuery(request.getPath());
+            countRequest(path);
+            return route(request.getMethod(), path);
+        }
+
+        private void countRequest(final String path) {
+            synchronized (requestCounts) {
+                AtomicInteger count = requestCounts.get(path);
+                if (count == null) {
+                    requestCounts.putIfAbsent(path, new AtomicInteger());
+                    count = requestCounts.get(path);
+                }
+                count.incrementAndGet();
+                requestCounts.notifyAll();
+            }
+        }
+
+        private MockResponse route(final String method, final String path) {
+            // Eth service
+            if (path.equals("/v1/timestamp") || path.equals("/v1/accounts/bootstrap") && method.equals("GET")) {
+                return json("{\"timestamp\":" + System.currentTimeMillis() / 1000 + "}");
+            }
+            if (path.equals("/v1/tx/skel")) {
+                return json("{\"tx\":\"" + UNSIGNED_TRANSACTION + "\"}");
+            }
+            if (path.equals("/v1/tx")) {
+                return json("{\"tx_hash\":\"" + TX_HASH + "\"}");
+            }
+            if (path.equals("/v1/tx/status")) {
+                return json("{\"transactions\":[]}");
+            }
+            if (path.startsWith("/v1/balance/")) {
+                return json("{\"confirmed_balance\":\"0x0\",\"unconfirmed_balance\":\"0x0\"}");
+            }
+
+            // Id service
+            if (path.startsWith("/v1/user/")) {
+                final String toshiId = path.substring("/v1/user/".length());
+                return json("{\"toshi_id\":\"" + toshiId + "\"," +
+                        "\"payment_address\":\"" + toshiId + "\"," +
+                        "\"username\":\"benchmark\"," +
+                        "\"name\":\"Benchmark User\"}");
+            }
+            if (path.startsWith("/v1/search/user")) {
+                return json("{\"offset\":0,\"limit\":0,\"results\":[]}");
+            }
+
+            // Directory service
+            if (path.startsWith("/v1/apps") || path.startsWith("/v1/search/apps")) {
+                return json("{\"offset\":0,\"limit\":0,\"results\":[]}");
+            }
+
+            // Chat service
+            if (path.startsWith("/v2/keys/")) {
+                return json(preKeyResponse);
+            }
+            if (path.startsWith("/v1/messages/")) {
+                return json("{\"needsSync\":false}");
+            }
+            if (path.equals("/v1/accounts/bootstrap")) {
+                return new MockResponse().setResponseCode(204);
+            }
+
+            LogUtil.i(getClass(), "Unhandled request: " + method + " " + path);
+            return new MockResponse().setResponseCode(404);
+        }
+
+        private String stripQuery(final String path) {
+            final int queryStart = path.indexOf('?');
+            return queryStart == -1 ? path : path.substring(0, queryStart);
+        }
+
+        private MockResponse json(final String body) {
+            return new MockResponse()
+                    .setHeader("Content-Type", "application/json")
+                    .setBody(body);
+        }
+    }
+}
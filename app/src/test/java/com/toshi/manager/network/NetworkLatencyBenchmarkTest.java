@@ -0,0 +1,198 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import android.content.SharedPreferences;
+
+import com.toshi.benchmark.Benchmark;
+import com.toshi.crypto.HDWallet;
+import com.toshi.crypto.signal.store.InMemoryProtocolStore;
+import com.toshi.manager.chat.SofaMessageSender;
+import com.toshi.manager.model.SofaMessageTask;
+import com.toshi.manager.store.ConversationStore;
+import com.toshi.model.local.Recipient;
+import com.toshi.model.local.User;
+import com.toshi.model.sofa.SofaMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.spongycastle.jce.provider.BouncyCastleProvider;
+import org.whispersystems.signalservice.api.push.TrustStore;
+import org.whispersystems.signalservice.internal.push.SignalServiceUrl;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.security.Security;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import rx.subjects.BehaviorSubject;
+import rx.subjects.PublishSubject;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * End-to-end latency of the main user flows against {@link MockToshiServer}.
+ * User lookups go through {@link IdService}, built from the mock server's {@link ServiceEndpoints}.
+ * Messages are sent with {@link SofaMessageSender}, which encrypts them with the real Signal sender.
+ * Sending a payment is measured by {@link com.toshi.manager.PaymentLatencyBenchmarkTest}.
+ * <p>
+ * The emulated network latency can be set with <code>-Dbenchmark.latencyMs</code>.
+ * Results are printed so regressions can be compared between runs; the request counts
+ * each flow makes are asserted.
+ *
+ * @see Benchmark
+ */
+public class NetworkLatencyBenchmarkTest {
+
+    private static final long LATENCY_MS = Long.getLong("benchmark.latencyMs", 20);
+    private static final int ITERATIONS = 20;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final String MASTER_SEED = "abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon abandon about";
+    private static final String RECIPIENT_ID = "0x011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f";
+    private static final String MESSAGES_PATH = "/v1/messages/" + RECIPIENT_ID;
+    private static final String KEYS_PATH = "/v2/keys/" + RECIPIENT_ID + "/*";
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public final TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockToshiServer server;
+    private ServiceEndpoints endpoints;
+    private HDWallet wallet;
+    private int lookupCount;
+    private int sentCount;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockToshiServer().setLatency(LATENCY_MS, TimeUnit.MILLISECONDS);
+        this.server.start();
+
+        final SharedPreferences sharedPreferencesMock = Mockito.mock(SharedPreferences.class, Mockito.RETURNS_DEEP_STUBS);
+        Mockito
+                .when(sharedPreferencesMock.getString(Mockito.anyString(), Mockito.anyString()))
+                .thenReturn(MASTER_SEED);
+        this.wallet = new HDWallet(sharedPreferencesMock)
+                .getExistingWallet()
+                .toBlocking()
+                .value();
+
+        this.endpoints = this.server
+                .toEndpoints()
+                .setCacheDir(this.cacheFolder.getRoot())
+                .setConnectivity(BehaviorSubject.create(true))
+                .setWallet(this.wallet);
+        ServiceEndpoints.setOverride(this.endpoints);
+        IdService.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IdService.reset();
+        ServiceEndpoints.setOverride(null);
+        this.server.shutdown();
+    }
+
+    @Test
+    public void sendMessageLatency() throws Exception {
+        final SofaMessageSender sender = createMessageSender();
+        final Recipient recipient = new Recipient(lookupUser(RECIPIENT_ID));
+        Benchmark.run("send-message", WARMUP_ITERATIONS, ITERATIONS, () -> sendMessage(sender, recipient));
+
+        // Only the first message fetches the recipient's keys; the rest reuse the session
+        assertThat(this.server.getRequestCount(KEYS_PATH), is(1));
+        assertThat(this.server.getRequestCount(MESSAGES_PATH), is(this.sentCount));
+    }
+
+    @Test
+    public void userLookupLatency() throws Exception {
+        final Benchmark.Result result = Benchmark.run("user-lookup", WARMUP_ITERATIONS, ITERATIONS, this::lookupNewUser);
+        assertThat(this.server.getRequestCount(), is(WARMUP_ITERATIONS + result.getIterations()));
+    }
+
+    @Test
+    public void cachedUserLookupLatency() throws Exception {
+        lookupUser(RECIPIENT_ID);
+        Benchmark.run("user-lookup-cached", WARMUP_ITERATIONS, ITERATIONS, () -> lookupUser(RECIPIENT_ID));
+
+        assertThat(this.server.getRequestCount("/v1/user/" + RECIPIENT_ID), is(1));
+    }
+
+    private SofaMessageSender createMessageSender() {
+        // The chat server's trust store is a BKS key store, which the JVM can't read by itself
+        Security.addProvider(new BouncyCastleProvider());
+        final SignalServiceUrl[] urls = { new SignalServiceUrl(this.endpoints.getChatUrl(), new ChatTrustStore()) };
+        return new SofaMessageSender(
+                this.wallet,
+                new InMemoryProtocolStore(),
+                new ConversationStore(),
+                urls,
+                this.endpoints.getConnectivity(),
+                PublishSubject.create());
+    }
+
+    // Waits until the chat server has received the message
+    private void sendMessage(final SofaMessageSender sender, final Recipient recipient) throws InterruptedException {
+        final SofaMessage message = new SofaMessage().makeNew("SOFA::Message:{\"body\":\"Benchmark\"}");
+        sender.addNewTask(new SofaMessageTask(recipient, message, SofaMessageTask.SEND_ONLY));
+        this.sentCount++;
+
+        final boolean isSent = this.server.awaitRequestCount(MESSAGES_PATH, this.sentCount, SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!isSent) throw new IllegalStateException("Message was not sent");
+    }
+
+    // A user that isn't in the service's cache yet
+    private void lookupNewUser() {
+        this.lookupCount++;
+        lookupUser(String.format(Locale.US, "0x%040x", this.lookupCount));
+    }
+
+    private User lookupUser(final String toshiId) {
+        final User user = IdService
+                .getApi()
+                .getUser(toshiId)
+                .toBlocking()
+                .value();
+
+        if (user == null) throw new IllegalStateException("User was not found");
+        return user;
+    }
+
+    // Reads the app's trust store from the source tree, as there are no resources in JVM tests
+    private static class ChatTrustStore implements TrustStore {
+        @Override
+        public InputStream getKeyStoreInputStream() {
+            try {
+                return new FileInputStream("src/main/res/raw/chatkey.store");
+            } catch (final FileNotFoundException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public String getKeyStorePassword() {
+            return "whisper";
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network;
+
+
+import com.toshi.benchmark.Benchmark;
+import com.toshi.model.local.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Locale;
+
+import rx.subjects.BehaviorSubject;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Cost of the first user lookup, the first request most screens make, with and without
+ * {@link ServicePrewarmer} having built the services ahead of time.
+ * <p>
+ * A cold lookup builds the real {@link IdService} on the calling thread before making its
+ * request; after prewarming the lookup only makes the request. The difference is what
+ * prewarming moves off the main thread at startup. Time to first frame itself can't be
+ * measured without a device, so only the printed timings are compared between runs;
+ * the asserts check that building the services makes no requests of its own.
+ *
+ * @see Benchmark
+ */
+public class ServiceStartupBenchmarkTest {
+
+    private static final int ITERATIONS = 30;
+    private static final int WARMUP_ITERATIONS = 3;
+
+    @Rule
+    public final TemporaryFolder cacheFolder = new TemporaryFolder();
+
+    private MockToshiServer server;
+    private ServiceEndpoints endpoints;
+    private int lookupCount;
+
+    @Before
+    public void setUp() throws Exception {
+        this.server = new MockToshiServer();
+        this.server.start();
+        this.endpoints = this.server
+                .toEndpoints()
+                .setConnectivity(BehaviorSubject.create(true));
+        ServiceEndpoints.setOverride(this.endpoints);
+        IdService.reset();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        IdService.reset();
+        ServiceEndpoints.setOverride(null);
+        this.server.shutdown();
+    }
+
+    @Test
+    public void firstLookupWithoutPrewarming() throws Exception {
+        final Benchmark.Result result = Benchmark.run("first-lookup-cold", WARMUP_ITERATIONS, ITERATIONS,
+                this::buildIdServiceAndLookupUser);
+        assertThat(this.server.getRequestCount(), is(WARMUP_ITERATIONS + result.getIterations()));
+    }
+
+    @Test
+    public void firstLookupAfterPrewarming() throws Exception {
+        this.endpoints.setCacheDir(this.cacheFolder.newFolder());
+        ServicePrewarmer.prewarm().await();
+        assertThat(this.server.getRequestCount(), is(0));
+
+        final Benchmark.Result result = Benchmark.run("first-lookup-prewarmed", WARMUP_ITERATIONS, ITERATIONS,
+                this::lookupNewUser);
+        assertThat(this.server.getRequestCount(), is(WARMUP_ITERATIONS + result.getIterations()));
+    }
+
+    // Each service gets its own cache directory, as two caches can't share one
+    private void buildIdServiceAndLookupUser() throws Exception {
+        this.endpoints.setCacheDir(this.cacheFolder.newFolder());
+        IdService.reset();
+        lookupNewUser();
+    }
+
+    // A user that isn't in the service's cache yet
+    private void lookupNewUser() {
+        this.lookupCount++;
+        final User user = IdService
+                .getApi()
+                .getUser(String.format(Locale.US, "0x%040x", this.lookupCount))
+                .toBlocking()
+                .value();
+
+        if (user == null) throw new IllegalStateException("User was not found");
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class JsonRpcCacheTest {
+
+    private static final String ADDRESS = "\"0x011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f\"";
+
+    private JsonRpcCache cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new JsonRpcCache();
+    }
+
+    @Test
+    public void resultsPinnedToASettledBlockAreKeptForever() {
+        seeBlockNumber("0x1c0");
+
+        assertThat(lifetimeOf("eth_getBalance", "[" + ADDRESS + ",\"0x1b4\"]", "\"0x64\""), is(JsonRpcCache.FOREVER));
+        assertThat(lifetimeOf("eth_getBlockByHash", "[\"0xabc\",false]", "{\"number\":\"0x1\"}"), is(JsonRpcCache.FOREVER));
+        assertThat(lifetimeOf("eth_getTransactionReceipt", "[\"0xabc\"]", "{\"blockNumber\":\"0x1b4\"}"), is(JsonRpcCache.FOREVER));
+        assertThat(lifetimeOf("eth_getBlockByNumber", "[\"earliest\",false]", "{\"number\":\"0x0\"}"), is(JsonRpcCache.FOREVER));
+    }
+
+    @Test
+    public void resultsPinnedToARecentBlockAreOnlyKeptBriefly() {
+        assertThat(lifetimeOf("eth_getBalance", "[" + ADDRESS + ",\"0x1b4\"]", "\"0x64\""), is(JsonRpcCache.RECENT_TTL));
+
+        seeBlockNumber("0x1bf");
+        assertThat(lifetimeOf("eth_getBalance", "[" + ADDRESS + ",\"0x1b4\"]", "\"0x64\""), is(JsonRpcCache.RECENT_TTL));
+        assertThat(lifetimeOf("eth_getTransactionReceipt", "[\"0xabc\"]", "{\"blockNumber\":\"0x1b4\"}"), is(JsonRpcCache.RECENT_TTL));
+        assertThat(lifetimeOf("eth_getBlockByNumber", "[\"safe\",false]", "{\"number\":\"0x1\"}"), is(JsonRpcCache.RECENT_TTL));
+
+        seeBlockNumber("0x1c0");
+        assertThat(lifetimeOf("eth_getTransactionReceipt", "[\"0xabc\"]", "{\"blockNumber\":\"0x1b4\"}"), is(JsonRpcCache.FOREVER));
+    }
+
+    @Test
+    public void deployedCodeIsKeptForever() {
+        assertThat(lifetimeOf("eth_getCode", "[" + ADDRESS + ",\"latest\"]", "\"0x6060\""), is(JsonRpcCache.FOREVER));
+        assertThat(lifetimeOf("eth_getCode", "[" + ADDRESS + ",\"latest\"]", "\"0x\""), is(JsonRpcCache.RECENT_TTL));
+    }
+
+    @Test
+    public void latestStateIsOnlyKeptBriefly() {
+        assertThat(lifetimeOf("eth_blockNumber", "[]", "\"0x10\""), is(JsonRpcCache.RECENT_TTL));
+        assertThat(lifetimeOf("eth_getBalance", "[" + ADDRESS + ",\"latest\"]", "\"0x64\""), is(JsonRpcCache.RECENT_TTL));
+        assertThat(lifetimeOf("eth_call", "[{\"to\":" + ADDRESS + "}]", "\"0x01\""), is(JsonRpcCache.RECENT_TTL));
+    }
+
+    @Test
+    public void pendingStateAndMissingResultsAreNotCached() {
+        assertThat(lifetimeOf("eth_getTransactionCount", "[" + ADDRESS + ",\"pending\"]", "\"0x1\""), is(JsonRpcCache.NOT_CACHED));
+        assertThat(lifetimeOf("eth_getTransactionReceipt", "[\"0xabc\"]", "null"), is(JsonRpcCache.NOT_CACHED));
+        assertThat(lifetimeOf("eth_getTransactionByHash", "[\"0xabc\"]", "{\"blockHash\":null}"), is(JsonRpcCache.NOT_CACHED));
+        assertThat(lifetimeOf("eth_sendRawTransaction", "[\"0xf86b\"]", "\"0xabc\""), is(JsonRpcCache.NOT_CACHED));
+    }
+
+    @Test
+    public void onlyReadsAreShared() {
+        assertThat(JsonRpcCache.isReadOnly("eth_getBalance"), is(true));
+        assertThat(JsonRpcCache.isReadOnly("eth_estimateGas"), is(true));
+        assertThat(JsonRpcCache.isReadOnly("eth_sendRawTransaction"), is(false));
+        assertThat(JsonRpcCache.isReadOnly("eth_newFilter"), is(false));
+    }
+
+    @Test
+    public void recentEntriesExpire() {
+        final ManualClockCache cache = new ManualClockCache();
+        cache.put("key", "\"0x10\"", JsonRpcCache.RECENT_TTL);
+        cache.put("immutable", "\"0x20\"", JsonRpcCache.FOREVER);
+        cache.put("uncached", "\"0x30\"", JsonRpcCache.NOT_CACHED);
+
+        cache.time = JsonRpcCache.RECENT_TTL - 1;
+        assertThat(cache.get("key"), is("\"0x10\""));
+        cache.time = JsonRpcCache.RECENT_TTL;
+        assertThat(cache.get("key") == null, is(true));
+        assertThat(cache.get("immutable"), is("\"0x20\""));
+        assertThat(cache.get("uncached") == null, is(true));
+    }
+
+    private long lifetimeOf(final String method, final String params, final String result) {
+        return this.cache.lifetimeOf(createRequest(method, params), result);
+    }
+
+    private void seeBlockNumber(final String blockNumber) {
+        this.cache.put(createRequest("eth_blockNumber", "[]"), "\"" + blockNumber + "\"");
+    }
+
+    private static JsonRpcRequest createRequest(final String method, final String params) {
+        return JsonRpcRequest.from("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"" + method + "\",\"params\":" + params + "}");
+    }
+
+    private static class ManualClockCache extends JsonRpcCache {
+        private long time;
+
+        @Override
+        /* package */ long now() {
+            return this.time;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.network.rpc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class JsonRpcProxyServerTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private MockWebServer node;
+    private AtomicInteger nodeCalls;
+    private volatile long nodeLatencyMs;
+    private JsonRpcProxyServer proxyServer;
+    private String proxyUrl;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        this.nodeCalls = new AtomicInteger();
+        this.node = new MockWebServer();
+        this.node.setDispatcher(new StandInNode());
+        this.node.start();
+
+        this.proxyServer = new JsonRpcProxyServer(new OkHttpJsonRpcTransport(this.node.url("/").toString()), 5);
+        this.proxyUrl = this.proxyServer.start();
+        this.client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.proxyServer.stop();
+        this.node.shutdown();
+    }
+
+    @Test
+    public void immutableResultsAreAnsweredFromCache() throws Exception {
+        final String first = post(request("1", "eth_getTransactionReceipt", "[\"0xabc\"]"));
+        final String second = post(request("2", "eth_getTransactionReceipt", "[\"0xabc\"]"));
+
+        assertThat(first, is("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"status\":\"0x1\"}}"));
+        assertThat(second, is("{\"jsonrpc\":\"2.0\",\"id\":2,\"result\":{\"status\":\"0x1\"}}"));
+        assertThat(this.nodeCalls.get(), is(1));
+        assertThat(this.proxyServer.getMetrics().getCacheHits(), is(1L));
+        assertThat(this.proxyServer.getMetrics().getHitRatio(), is(0.5));
+    }
+
+    @Test
+    public void identicalCallsInFlightShareOneNodeCall() throws Exception {
+        this.nodeLatencyMs = 200;
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final String id = String.valueOf(i);
+            final Callable<String> call = () -> post(request(id, "eth_getCode", "[\"0x1\",\"0x5\"]"));
+            responses.add(executor.submit(call));
+        }
+
+        for (int i = 0; i < responses.size(); i++) {
+            assertThat(responses.get(i).get(), containsString("\"id\":" + i + ","));
+        }
+        executor.shutdown();
+        assertThat(this.nodeCalls.get(), is(1));
+        assertThat(this.proxyServer.getMetrics().getSharedCalls(), is(3L));
+    }
+
+    @Test
+    public void batchFromDappReachesNodeAsOneRequest() throws Exception {
+        final String response = post("["
+                + request("1", "eth_getBalance", "[\"0x1\",\"latest\"]") + ","
+                + request("2", "eth_blockNumber", "[]") + ","
+                + request("3", "eth_getCode", "[\"0x1\",\"latest\"]")
+                + "]");
+
+        final List<String> elements = JsonRpcJson.elements(response);
+        assertThat(elements.size(), is(3));
+        for (int i = 0; i < elements.size(); i++) {
+            assertThat(JsonRpcJson.members(elements.get(i)).get("id"), is(String.valueOf(i + 1)));
+        }
+        assertThat(this.node.getRequestCount(), is(1));
+        assertThat(this.nodeCalls.get(), is(3));
+    }
+
+    @Test
+    public void errorsAndTransactionsAreNotCached() throws Exception {
+        assertThat(post(request("1", "eth_getBalance", "[\"0xbad\",\"0x5\"]")), containsString("\"error\""));
+        assertThat(post(request("2", "eth_getBalance", "[\"0xbad\",\"0x5\"]")), containsString("\"error\""));
+        post(request("3", "eth_sendRawTransaction", "[\"0xf86b\"]"));
+        post(request("4", "eth_sendRawTransaction", "[\"0xf86b\"]"));
+
+        assertThat(this.nodeCalls.get(), is(4));
+        assertThat(this.proxyServer.getMetrics().getCacheHits(), is(0L));
+    }
+
+    @Test
+    public void preflightIsAllowedFromAnyOrigin() throws Exception {
+        final Request request = new Request.Builder()
+                .url(this.proxyUrl)
+                .method("OPTIONS", null)
+                .header("Origin", "https://dapp.example")
+                .header("Access-Control-Request-Method", "POST")
+                .header("Access-Control-Request-Headers", "content-type")
+                .build();
+        final Response response = this.client.newCall(request).execute();
+        try {
+            assertThat(response.code(), is(204));
+            assertThat(response.header("Access-Control-Allow-Origin"), is("*"));
+            assertThat(response.header("Access-Control-Allow-Headers"), is("content-type"));
+            assertThat(response.header("Access-Control-Allow-Private-Network"), is(nullValue()));
+        } finally {
+            response.body().close();
+        }
+        assertThat(this.node.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void requestsWithoutTheTokenAreRejected() throws Exception {
+        final HttpUrl proxyUrl = HttpUrl.parse(this.proxyUrl);
+        final String token = proxyUrl.pathSegments().get(0);
+        for (final String path : new String[] {"", "guess", token + "x"}) {
+            final Request request = new Request.Builder()
+                    .url(proxyUrl.newBuilder().encodedPath("/" + path).build())
+                    .post(RequestBody.create(JSON, request("1", "eth_blockNumber", "[]")))
+                    .build();
+            final Response response = this.client.newCall(request).execute();
+            try {
+                assertThat(response.code(), is(404));
+            } finally {
+                response.body().close();
+            }
+        }
+        assertThat(this.node.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void malformedRequestIsAnsweredWithParseError() throws Exception {
+        final String response = post("{\"jsonrpc\":\"2.0\",");
+        assertThat(response, containsString("-32700"));
+        assertThat(response, not(containsString("\"result\"")));
+        assertThat(this.node.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void mismatchedBracketsAreNotForwarded() throws Exception {
+        final String response = post("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_call\",\"params\":[{\"to\":\"0x1\"},\"0x5\"}}");
+        assertThat(response, containsString("-32700"));
+        assertThat(post("[" + request("1", "eth_blockNumber", "[]") + "]]"), containsString("-32700"));
+        assertThat(this.node.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void validJsonThatIsNotARequestIsAnsweredWithInvalidRequest() throws Exception {
+        final String response = post(request("1", "eth_getBalance", "\"0x1\""));
+        assertThat(response, containsString("-32600"));
+        assertThat(response, not(containsString("\"result\"")));
+        assertThat(this.node.getRequestCount(), is(0));
+    }
+
+    @Test
+    public void invalidElementOnlyFailsItselfInABatch() throws Exception {
+        final String response = post("["
+                + request("1", "eth_getBalance", "[\"0x1\",\"latest\"]") + ","
+                + "{\"jsonrpc\":\"2.0\",\"id\":2}" + ","
+                + "42" + ","
+                + request("4", "eth_blockNumber", "[]")
+                + "]");
+
+        final List<String> elements = JsonRpcJson.elements(response);
+        assertThat(elements.size(), is(4));
+        assertThat(JsonRpcJson.members(elements.get(0)).get("id"), is("1"));
+        assertThat(elements.get(0), containsString("\"result\""));
+        assertThat(elements.get(1), containsString("\"id\":null"));
+        assertThat(elements.get(1), containsString("-32600"));
+        assertThat(elements.get(2), containsString("-32600"));
+        assertThat(JsonRpcJson.members(elements.get(3)).get("id"), is("4"));
+        assertThat(elements.get(3), containsString("\"result\""));
+        assertThat(this.nodeCalls.get(), is(2));
+    }
+
+    private String post(final String body) throws IOException {
+        final Request request = new Request.Builder()
+                .url(this.proxyUrl)
+                .post(RequestBody.create(JSON, body))
+                .build();
+        final Response response = this.client.newCall(request).execute();
+        try {
+            assertThat(response.code(), is(200));
+            assertThat(response.header("Access-Control-Allow-Origin"), is("*"));
+            return response.body().string();
+        } finally {
+            response.body().close();
+        }
+    }
+
+    private static String request(final String id, final String method, final String params) {
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"method\":\"" + method + "\",\"params\":" + params + "}";
+    }
+
+    // Answers every JSON-RPC call, alone or in a batch, with a fixed result
+    private class StandInNode extends Dispatcher {
+        @Override
+        public MockResponse dispatch(final RecordedRequest request) throws InterruptedException {
+            if (nodeLatencyMs > 0) Thread.sleep(nodeLatencyMs);
+            final String body = request.getBody().readUtf8();
+            if (!JsonRpcJson.isArray(body)) {
+                return new MockResponse().setBody(answer(body));
+            }
+
+            final StringBuilder sb = new StringBuilder("[");
+            for (final String call : JsonRpcJson.elements(body)) {
+                if (sb.length() > 1) sb.append(',');
+                sb.append(answer(call));
+            }
+            return new MockResponse().setBody(sb.append(']').toString());
+        }
+
+        private String answer(final String rawCall) {
+            nodeCalls.incrementAndGet();
+            final Map<String, String> members = JsonRpcJson.members(rawCall);
+            final String method = JsonRpcJson.unquote(members.get("method"));
+            final String prefix = "{\"jsonrpc\":\"2.0\",\"id\":" + members.get("id") + ",";
+            if (members.get("params").contains("0xbad")) {
+                return prefix + "\"error\":{\"code\":-32000,\"message\":\"unknown account\"}}";
+            }
+            switch (method) {
+                case "eth_getTransactionReceipt":
+                    return prefix + "\"result\":{\"status\":\"0x1\"}}";
+                case "eth_getCode":
+                    return prefix + "\"result\":\"0x6060\"}";
+                default:
+                    return prefix + "\"result\":\"0x10\"}";
+            }
+        }
+    }
+}
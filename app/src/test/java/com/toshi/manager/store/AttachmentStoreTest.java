@@ -0,0 +1,100 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.manager.store;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class AttachmentStoreTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void contentIsNamedBySha256() throws IOException {
+        final String hash = AttachmentStore.copyAndHash(new ByteArrayInputStream("abc".getBytes(UTF_8)), null);
+        assertThat(hash, is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    public void identicalContentGetsTheSameName() throws IOException {
+        final byte[] image = new byte[100_000];
+        Arrays.fill(image, (byte) 7);
+        final String first = AttachmentStore.copyAndHash(new ByteArrayInputStream(image), null);
+        final String second = AttachmentStore.copyAndHash(new ByteArrayInputStream(image.clone()), null);
+        image[image.length - 1] = 8;
+        final String changed = AttachmentStore.copyAndHash(new ByteArrayInputStream(image), null);
+
+        assertThat(first, is(second));
+        assertThat(changed, is(not(first)));
+    }
+
+    @Test
+    public void nothingIsEvictedWithinQuota() {
+        final List<AttachmentStore.StoredFile> files = Arrays.asList(
+                new AttachmentStore.StoredFile("a", 100, 1),
+                new AttachmentStore.StoredFile("b", 100, 2));
+        assertThat(AttachmentStore.selectForEviction(files, Collections.emptySet(), 200, 200), is(empty()));
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvictedFirst() {
+        final List<AttachmentStore.StoredFile> files = Arrays.asList(
+                new AttachmentStore.StoredFile("new", 100, 30),
+                new AttachmentStore.StoredFile("old", 100, 10),
+                new AttachmentStore.StoredFile("middle", 100, 20));
+
+        final List<AttachmentStore.StoredFile> evicted =
+                AttachmentStore.selectForEviction(files, Collections.emptySet(), 300, 150);
+
+        assertThat(pathsOf(evicted), contains("old", "middle"));
+    }
+
+    @Test
+    public void pinnedFilesAreNeverEvicted() {
+        final List<AttachmentStore.StoredFile> files = Arrays.asList(
+                new AttachmentStore.StoredFile("unsent", 100, 10),
+                new AttachmentStore.StoredFile("sent", 100, 20));
+        final Set<String> pinned = new HashSet<>(Collections.singletonList("unsent"));
+
+        final List<AttachmentStore.StoredFile> evicted =
+                AttachmentStore.selectForEviction(files, pinned, 200, 0);
+
+        assertThat(pathsOf(evicted), contains("sent"));
+    }
+
+    private static List<String> pathsOf(final List<AttachmentStore.StoredFile> files) {
+        final String[] paths = new String[files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            paths[i] = files.get(i).getPath();
+        }
+        return Arrays.asList(paths);
+    }
+}
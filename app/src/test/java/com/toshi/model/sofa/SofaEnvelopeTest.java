@@ -0,0 +1,191 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.sofa;
+
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Types;
+import com.toshi.benchmark.Benchmark;
+import com.toshi.model.adapter.MoshiProvider;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+public class SofaEnvelopeTest {
+
+    private static final int FUZZ_ITERATIONS = 20000;
+    private static final String[] FRAGMENTS = {
+            "SOFA::", "Message", "Payment", ":", "::", "{", "}", "{}", "\"", "\\", ",", " ",
+            "\n", "\r", "\u2028", "a", "\u00e9", "0x1", "\"body\":", "LOCAL::Timestamp"
+    };
+    private static final String LOCAL_PRICE_ALPHABET = "abc XYZ0123456789:,{\"\\$\u20ac.";
+
+    private final JsonAdapter<Map<String, Object>> mapAdapter =
+            MoshiProvider.get().adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+    @Test
+    public void headerAndBodyAreSplit() {
+        final String payload = "SOFA::Message:{\"body\":\"Hi: {there}\"}";
+        assertThat(SofaEnvelope.getHeader(payload), is("SOFA::Message:"));
+        assertThat(SofaEnvelope.getType(payload), is(SofaType.PLAIN_TEXT));
+        assertThat(SofaEnvelope.getBody(payload), is("{\"body\":\"Hi: {there}\"}"));
+    }
+
+    @Test
+    public void payloadWithoutHeaderHasNoType() {
+        assertThat(SofaEnvelope.getHeader("{\"body\":\"Hi\"}"), is(nullValue()));
+        assertThat(SofaEnvelope.getType("LOCAL::Timestamp"), is(SofaType.UNKNOWN));
+        assertThat(SofaEnvelope.getBody(""), is(""));
+    }
+
+    @Test
+    public void localOnlyDataIsStrippedWhereverItIs() {
+        final String first = "SOFA::Payment:{\"custom_local_only_payload\":{\"localPrice\":\"$1\"},\"value\":\"0x1\"}";
+        final String last = "SOFA::Payment:{\"value\":\"0x1\", \"custom_local_only_payload\" : {\"localPrice\":\"},\"}}";
+        final String only = "SOFA::Payment:{\"custom_local_only_payload\":{\"a\":[1,{\"b\":\"}\"}]}}";
+
+        assertThat(SofaEnvelope.toWireFormat(first), is("SOFA::Payment:{\"value\":\"0x1\"}"));
+        assertThat(SofaEnvelope.toWireFormat(last), is("SOFA::Payment:{\"value\":\"0x1\"}"));
+        assertThat(SofaEnvelope.toWireFormat(only), is("SOFA::Payment:{}"));
+    }
+
+    @Test
+    public void localOnlyKeyInsideAValueIsKept() {
+        final String payload = "SOFA::Message:{\"body\":\"\\\"custom_local_only_payload\\\":{}\"}";
+        assertThat(SofaEnvelope.toWireFormat(payload), is(payload));
+    }
+
+    @Test
+    public void malformedPayloadIsSentUnchanged() {
+        final String payload = "SOFA::Payment:{\"custom_local_only_payload\":{\"localPrice\":\"$1\"";
+        assertThat(SofaEnvelope.toWireFormat(payload), is(payload));
+    }
+
+    @Test
+    public void fuzzHeaderAndBodyMatchRegex() {
+        final Random random = new Random(42);
+        for (int i = 0; i < FUZZ_ITERATIONS; i++) {
+            final String payload = randomPayload(random);
+            assertThat(payload, SofaEnvelope.getHeader(payload), is(regexHeader(payload)));
+            assertThat(payload, SofaEnvelope.getBody(payload), is(regexBody(payload)));
+        }
+    }
+
+    @Test
+    public void fuzzWireFormatMatchesRegex() throws Exception {
+        final Random random = new Random(7);
+        for (int i = 0; i < FUZZ_ITERATIONS / 10; i++) {
+            final String payload = randomSofaPayload(random);
+            final String wireFormat = SofaEnvelope.toWireFormat(payload);
+            final String regexWireFormat = regexWireFormat(payload);
+
+            // The regex only handled local-only data without '}' that wasn't the last member
+            if (!regexWireFormat.contains(SofaType.LOCAL_ONLY_PAYLOAD)) {
+                assertThat(payload, wireFormat, is(regexWireFormat));
+            }
+            assertThat(payload, wireFormat, not(containsString(SofaType.LOCAL_ONLY_PAYLOAD)));
+            final Map<String, Object> expected = this.mapAdapter.fromJson(SofaEnvelope.getBody(payload));
+            expected.remove(SofaType.LOCAL_ONLY_PAYLOAD);
+            assertThat(payload, this.mapAdapter.fromJson(SofaEnvelope.getBody(wireFormat)), is(expected));
+        }
+    }
+
+    @Test
+    public void envelopeParserBenchmark() throws Exception {
+        final String payload = SofaAdapters.get().toJson(new Payment()
+                .setValue("0x38d7ea4c680000")
+                .setToAddress("0x011c6dd9565b8b83e6a9ee3f06e89ece3251ef2f")
+                .setFromAddress("0x0a3b5c2e7d8b4e5b8c1d4f1e2a3b4c5d6e7f8091")
+                .setTxHash("0x2f321aa116146a9bc62b61c76508295f708f42d56340c9e613ebfc27e33f240c")
+                .setLocalPrice("$1.23"));
+
+        final Benchmark.Result regex = Benchmark.run("SOFA regex", 20000, 100000, () -> {
+            regexHeader(payload);
+            regexBody(payload);
+            regexWireFormat(payload);
+        });
+        final Benchmark.Result envelope = Benchmark.run("SOFA envelope", 20000, 100000, () -> {
+            SofaEnvelope.getHeader(payload);
+            SofaEnvelope.getBody(payload);
+            SofaEnvelope.toWireFormat(payload);
+        });
+
+        assertThat(envelope.getPercentileNanos(50) < regex.getPercentileNanos(50), is(true));
+    }
+
+    private static String randomPayload(final Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int fragmentCount = random.nextInt(12);
+        for (int i = 0; i < fragmentCount; i++) {
+            builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static String randomSofaPayload(final Random random) {
+        final String text = randomText(random);
+        switch (random.nextInt(3)) {
+            case 0:
+                return SofaAdapters.get().toJson(new Message().setBody(text));
+            case 1: {
+                final Payment payment = new Payment().setValue("0x" + Integer.toHexString(random.nextInt()));
+                if (random.nextBoolean()) payment.setLocalPrice(text);
+                return SofaAdapters.get().toJson(payment);
+            }
+            default: {
+                final PaymentRequest request = new PaymentRequest().setValue("0x" + Integer.toHexString(random.nextInt()));
+                if (random.nextBoolean()) request.setState(PaymentRequest.ACCEPTED);
+                return SofaAdapters.get().toJson(request);
+            }
+        }
+    }
+
+    private static String randomText(final Random random) {
+        final int length = random.nextInt(20);
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(LOCAL_PRICE_ALPHABET.charAt(random.nextInt(LOCAL_PRICE_ALPHABET.length())));
+        }
+        return builder.toString();
+    }
+
+    // The regex based implementations SofaEnvelope replaced
+
+    private static String regexHeader(final String payload) {
+        final Matcher m = Pattern.compile("SOFA::.+?:").matcher(payload);
+        return m.find() ? m.group() : null;
+    }
+
+    private static String regexBody(final String payload) {
+        final Matcher m = Pattern.compile("\\{.*\\}").matcher(payload);
+        return m.find() ? m.group() : payload;
+    }
+
+    private static String regexWireFormat(final String payload) {
+        return payload.replaceFirst("\"" + SofaType.LOCAL_ONLY_PAYLOAD + "\":\\{.*?\\},", "");
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.model.sofa;
+
+
+import com.toshi.benchmark.Benchmark;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SofaPayloadCacheTest {
+
+    private static final int ROWS_PER_FRAME = 12;
+
+    private SofaPayloadCache cache;
+
+    @Before
+    public void setUp() {
+        this.cache = new SofaPayloadCache(100);
+    }
+
+    @Test
+    public void cachedPayloadIsNotParsedAgain() throws Exception {
+        final SofaMessage sofaMessage = createTextMessage("Hello");
+
+        final Message first = this.cache.messageFrom(sofaMessage);
+        final Message second = this.cache.messageFrom(sofaMessage);
+
+        assertThat(first.getBody(), is("Hello"));
+        assertThat(second, is(sameInstance(first)));
+    }
+
+    @Test
+    public void changedPayloadIsParsedAgain() throws Exception {
+        final SofaMessage sofaMessage = createPaymentMessage(SofaType.UNCONFIRMED);
+        final Payment unconfirmed = this.cache.paymentFrom(sofaMessage);
+
+        final String confirmedPayload = SofaAdapters.get().toJson(new Payment().setValue("0x1").setStatus(SofaType.CONFIRMED));
+        sofaMessage.makeNew(confirmedPayload);
+        final Payment confirmed = this.cache.paymentFrom(sofaMessage);
+
+        assertThat(confirmed, is(not(sameInstance(unconfirmed))));
+        assertThat(confirmed.getStatus(), is(SofaType.CONFIRMED));
+    }
+
+    @Test
+    public void warmingParsesEveryMessage() throws Exception {
+        final List<SofaMessage> sofaMessages = createConversation(20);
+        this.cache.warm(sofaMessages);
+
+        assertThat(this.cache.size(), is(20));
+    }
+
+    @Test
+    public void removedMessagesAreDropped() throws Exception {
+        final List<SofaMessage> sofaMessages = createConversation(20);
+        this.cache.warm(sofaMessages);
+        for (final SofaMessage sofaMessage : sofaMessages) {
+            this.cache.remove(sofaMessage.getPrivateKey());
+        }
+
+        assertThat(this.cache.size(), is(0));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws Exception {
+        final List<SofaMessage> sofaMessages = createConversation(150);
+        this.cache.warm(sofaMessages);
+
+        assertThat(this.cache.size(), is(100));
+    }
+
+    @Test
+    public void bindingFromWarmCacheDoesNotParse() throws Exception {
+        final List<SofaMessage> sofaMessages = createConversation(1000);
+        final SofaPayloadCache warmCache = new SofaPayloadCache(1000);
+        warmCache.warm(sofaMessages);
+        final int parsedWhileWarming = warmCache.getParseCount();
+
+        final FrameScroller cached = new FrameScroller(sofaMessages);
+        for (int i = 0; i < 2 * sofaMessages.size() / ROWS_PER_FRAME; i++) {
+            cached.bindNextFrame(warmCache::messageFrom);
+        }
+
+        assertThat(parsedWhileWarming, is(1000));
+        assertThat(warmCache.getParseCount(), is(parsedWhileWarming));
+    }
+
+    @Test
+    public void bindingFromCacheIsCheaperThanParsing() throws Exception {
+        final List<SofaMessage> sofaMessages = createConversation(1000);
+        final SofaPayloadCache warmCache = new SofaPayloadCache(1000);
+        warmCache.warm(sofaMessages);
+
+        final FrameScroller uncached = new FrameScroller(sofaMessages);
+        final Benchmark.Result parsing = Benchmark.run("Bind frame, parsing payloads", 200, 2000,
+                () -> uncached.bindNextFrame(message -> SofaAdapters.get().messageFrom(message.getPayload())));
+
+        final FrameScroller cached = new FrameScroller(sofaMessages);
+        final Benchmark.Result lookup = Benchmark.run("Bind frame, cached payloads", 200, 2000,
+                () -> cached.bindNextFrame(warmCache::messageFrom));
+
+        // Compared against parsing on the same machine, so a slow runner doesn't fail the test
+        assertThat(lookup.getPercentileNanos(50) < parsing.getPercentileNanos(50), is(true));
+    }
+
+    private interface Binder {
+        Message bind(SofaMessage sofaMessage) throws Exception;
+    }
+
+    // Binds the rows that come into view while scrolling through the conversation
+    private static class FrameScroller {
+        private final List<SofaMessage> sofaMessages;
+        private int position;
+
+        private FrameScroller(final List<SofaMessage> sofaMessages) {
+            this.sofaMessages = sofaMessages;
+        }
+
+        private void bindNextFrame(final Binder binder) throws Exception {
+            for (int i = 0; i < ROWS_PER_FRAME; i++) {
+                binder.bind(this.sofaMessages.get(this.position));
+                this.position = (this.position + 1) % this.sofaMessages.size();
+            }
+        }
+    }
+
+    private static List<SofaMessage> createConversation(final int size) {
+        final List<SofaMessage> sofaMessages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sofaMessages.add(createTextMessage("Message number " + i + " in a conversation that keeps going"));
+        }
+        return sofaMessages;
+    }
+
+    private static SofaMessage createTextMessage(final String body) {
+        final String payload = SofaAdapters.get().toJson(new Message().setBody(body));
+        return new SofaMessage().makeNew(payload);
+    }
+
+    private static SofaMessage createPaymentMessage(final String status) {
+        final String payload = SofaAdapters.get().toJson(new Payment().setValue("0x1").setStatus(status));
+        return new SofaMessage().makeNew(payload);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.presenter.webview;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SofaCallbackQueueTest {
+
+    @Test
+    public void onlyFirstCallbackSchedulesAFlush() {
+        final SofaCallbackQueue queue = new SofaCallbackQueue();
+        assertThat(queue.add("1", "a"), is(true));
+        assertThat(queue.add("2", "b"), is(false));
+        assertThat(queue.add("3", "c"), is(false));
+    }
+
+    @Test
+    public void drainJoinsCallbacksInOrder() {
+        final SofaCallbackQueue queue = new SofaCallbackQueue();
+        queue.add("1", "a");
+        queue.add("2", "b");
+        assertThat(queue.drain(), is("try{SOFA.callback(\"1\",\"a\");}catch(e){}try{SOFA.callback(\"2\",\"b\");}catch(e){}"));
+        assertThat(queue.drain() == null, is(true));
+    }
+
+    @Test
+    public void callbackAfterDrainSchedulesAnotherFlush() {
+        final SofaCallbackQueue queue = new SofaCallbackQueue();
+        queue.add("1", "a");
+        queue.drain();
+        assertThat(queue.add("2", "b"), is(true));
+        assertThat(queue.drain(), is("try{SOFA.callback(\"2\",\"b\");}catch(e){}"));
+    }
+
+    @Test
+    public void clearDropsPendingCallbacks() {
+        final SofaCallbackQueue queue = new SofaCallbackQueue();
+        queue.add("1", "a");
+        queue.clear();
+        assertThat(queue.drain() == null, is(true));
+        assertThat(queue.add("2", "b"), is(true));
+    }
+
+    @Test
+    public void callbackThatThrowsDoesNotStopTheRest() throws Exception {
+        final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+        Assume.assumeTrue(engine != null);
+        engine.eval("var completed = [];"
+                + "var SOFA = {callback: function(id, result) {"
+                + "  if (id === '2') throw new Error('Broken dapp callback');"
+                + "  completed.push(id);"
+                + "}};");
+
+        final SofaCallbackQueue queue = new SofaCallbackQueue();
+        queue.add("1", "a");
+        queue.add("2", "b");
+        queue.add("3", "c");
+        engine.eval(queue.drain());
+
+        assertThat(engine.eval("completed.join(',')"), is("1,3"));
+    }
+}
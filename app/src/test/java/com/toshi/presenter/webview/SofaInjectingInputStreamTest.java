@@ -0,0 +1,138 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.presenter.webview;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class SofaInjectingInputStreamTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SOFA = "<script>window.SOFA = {};</script>\n";
+
+    @Test
+    public void scriptIsInjectedBeforeTheFirstScriptTag() throws IOException {
+        final String page = "<html><head><title>Dapp</title><script src=\"a.js\"></script><script>b()</script></head></html>";
+        assertThat(inject(page, 8192), is(expected(page)));
+    }
+
+    @Test
+    public void tagIsMatchedIgnoringCase() throws IOException {
+        final String page = "<html><HEAD><SCRIPT>a()</SCRIPT></HEAD></html>";
+        assertThat(inject(page, 8192), is("<html><HEAD>" + SOFA + "<SCRIPT>a()</SCRIPT></HEAD></html>"));
+    }
+
+    @Test
+    public void pageWithoutScriptTagIsPassedThroughUnchanged() throws IOException {
+        final String page = "<html><body><p>No scripts < here, nor <scrip or <sc></p></body></html>";
+        assertThat(inject(page, 8192), is(page));
+    }
+
+    @Test
+    public void almostMatchingTagsAreKept() throws IOException {
+        final String page = "<<sc<scrip<script>x</script>";
+        assertThat(inject(page, 8192), is("<<sc<scrip" + SOFA + "<script>x</script>"));
+    }
+
+    @Test
+    public void tagSplitAcrossReadsIsFound() throws IOException {
+        final String page = "<html><head><script>a()</script></head></html>";
+        for (int readSize = 1; readSize <= page.length(); readSize++) {
+            assertThat("read size " + readSize, inject(page, readSize), is(expected(page)));
+        }
+    }
+
+    @Test
+    public void multiByteCharactersAreUntouched() throws IOException {
+        final String page = "<html><title>\u00e9t\u00e9 \u2603</title><script>a()</script><p>\u4e2d\u6587</p></html>";
+        assertThat(inject(page, 3), is(expected(page)));
+    }
+
+    @Test
+    public void randomPagesMatchTheStringInjection() throws IOException {
+        final Random random = new Random(47);
+        final String[] pieces = {"<", "s", "c", "<script", "<SCRIPT", "<scr", "ipt", "html", " ", "\u00e9", ">"};
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder page = new StringBuilder();
+            final int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                page.append(pieces[random.nextInt(pieces.length)]);
+            }
+            final int readSize = 1 + random.nextInt(16);
+            assertThat(page.toString(), inject(page.toString(), readSize), is(expected(page.toString())));
+        }
+    }
+
+    @Test
+    public void pageIsForwardedBeforeItIsFullyDownloaded() throws IOException {
+        final byte[] head = "<html><head><script>a()</script>".getBytes(UTF_8);
+        final TrickleInputStream source = new TrickleInputStream(head);
+        final InputStream injecting = new SofaInjectingInputStream(source, SOFA.getBytes(UTF_8));
+
+        final byte[] buffer = new byte[1024];
+        final int read = injecting.read(buffer, 0, buffer.length);
+
+        // The first chunk from the network is passed on without waiting for the end of the page
+        assertThat(read > 0, is(true));
+        assertThat(source.isEndReached, is(false));
+    }
+
+    private static String expected(final String page) {
+        final int position = page.toLowerCase().indexOf("<script");
+        if (position == -1) return page;
+        return page.substring(0, position) + SOFA + page.substring(position);
+    }
+
+    private static String inject(final String page, final int readSize) throws IOException {
+        final InputStream injecting = new SofaInjectingInputStream(
+                new ByteArrayInputStream(page.getBytes(UTF_8)),
+                SOFA.getBytes(UTF_8));
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[readSize];
+        int read;
+        while ((read = injecting.read(buffer, 0, readSize)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return new String(output.toByteArray(), UTF_8);
+    }
+
+    // Returns the given bytes first and only then signals the end of the stream
+    private static class TrickleInputStream extends FilterInputStream {
+        private boolean isEndReached;
+
+        private TrickleInputStream(final byte[] bytes) {
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int read = super.read(buffer, offset, length);
+            if (read == -1) this.isEndReached = true;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ImageCompressorTest {
+
+    @Test
+    public void cameraPhotoIsDownsampledWhileDecoding() {
+        // A 12 MP capture would need ~48 MB at full resolution
+        final int inSampleSize = ImageCompressor.calculateInSampleSize(4000, 3000, ImageCompressor.MAX_DIMENSION);
+        assertThat(inSampleSize, is(2));
+        assertThat(4000 / inSampleSize, lessThanOrEqualTo(ImageCompressor.MAX_DIMENSION));
+    }
+
+    @Test
+    public void smallImageIsDecodedAsIs() {
+        assertThat(ImageCompressor.calculateInSampleSize(800, 1200, ImageCompressor.MAX_DIMENSION), is(1));
+        assertThat(ImageCompressor.calculateInSampleSize(2048, 2048, ImageCompressor.MAX_DIMENSION), is(1));
+    }
+
+    @Test
+    public void panoramaIsBoundedByItsLongestSide() {
+        assertThat(ImageCompressor.calculateInSampleSize(12000, 2000, ImageCompressor.MAX_DIMENSION), is(8));
+    }
+
+    @Test
+    public void highestQualityThatFitsIsFound() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final int quality = ImageCompressor.findQuality(q -> {
+            attempts.incrementAndGet();
+            return q * 10_000L;
+        }, 700_000);
+
+        assertThat(quality, is(70));
+        assertThat(attempts.get(), lessThanOrEqualTo(8));
+    }
+
+    @Test
+    public void maxQualityIsUsedWhenItFits() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final int quality = ImageCompressor.findQuality(q -> {
+            attempts.incrementAndGet();
+            return 1000;
+        }, 1024 * 1024);
+
+        assertThat(quality, is(ImageCompressor.MAX_QUALITY));
+        assertThat(attempts.get(), is(1));
+    }
+
+    @Test
+    public void noQualityFitsWhenTheImageIsTooLarge() throws Exception {
+        final int quality = ImageCompressor.findQuality(q -> 2_000_000L + q, 1024 * 1024);
+        assertThat(quality, is(-1));
+    }
+}
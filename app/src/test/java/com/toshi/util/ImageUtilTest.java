@@ -0,0 +1,68 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ImageUtilTest {
+
+    private static final int DARK = 0xFF000000;
+    private static final int LIGHT = 0xFFFFFFFF;
+
+    @Test
+    public void qrCodeIsEncodedAtOneEntryPerModule() throws WriterException {
+        final BitMatrix modules = ImageUtil.encodeQrCodeModules("ethereum:0x0c6a3c4aae7e4b4b0e4bd22ab1e7bf6e5ae2e8a4");
+        // Versions 1 to 40 are 21 to 177 modules wide, in steps of four
+        assertThat(modules.getWidth(), is(modules.getHeight()));
+        assertThat((modules.getWidth() - 21) % 4, is(0));
+        assertThat(modules.getWidth() < 177, is(true));
+    }
+
+    @Test
+    public void pixelsAreWrittenRowByRow() {
+        final BitMatrix matrix = new BitMatrix(3, 2);
+        matrix.set(0, 0);
+        matrix.set(2, 1);
+
+        final int[] pixels = ImageUtil.toPixels(matrix, DARK, LIGHT);
+
+        assertThat(pixels.length, is(6));
+        assertThat(pixels[0], is(DARK));
+        assertThat(pixels[1], is(LIGHT));
+        assertThat(pixels[2], is(LIGHT));
+        assertThat(pixels[3], is(LIGHT));
+        assertThat(pixels[4], is(LIGHT));
+        assertThat(pixels[5], is(DARK));
+    }
+
+    @Test
+    public void finderPatternCornerIsDark() throws WriterException {
+        final BitMatrix modules = ImageUtil.encodeQrCodeModules("toshi");
+        final int[] pixels = ImageUtil.toPixels(modules, DARK, LIGHT);
+        final int width = modules.getWidth();
+
+        assertThat(pixels[0], is(DARK));
+        assertThat(pixels[width - 1], is(DARK));
+        assertThat(pixels[(width - 1) * width], is(DARK));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.util;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class ThumbnailGeneratorTest {
+
+    @Test
+    public void thumbnailsAreStoredNextToTheOriginal() {
+        final File original = new File("/data/files/images/photo.jpg");
+        assertThat(ThumbnailGenerator.getThumbnailFile(original).getParentFile(), is(original.getParentFile()));
+        assertThat(ThumbnailGenerator.getThumbnailFile(original).getName(), is("photo.jpg.thumbnail.jpg"));
+        assertThat(ThumbnailGenerator.getPreviewFile(original).getName(), is("photo.jpg.preview.jpg"));
+    }
+
+    @Test
+    public void previewFallsBackToTheOriginal() {
+        final File original = new File("/does/not/exist/photo.jpg");
+        assertThat(ThumbnailGenerator.getPreviewOrOriginal(original), is(original));
+    }
+
+    @Test
+    public void onlyStillImagesGetThumbnails() {
+        assertThat(ThumbnailGenerator.canGenerate("/images/photo.JPG"), is(true));
+        assertThat(ThumbnailGenerator.canGenerate("/images/photo.png"), is(true));
+        assertThat(ThumbnailGenerator.canGenerate("/images/animation.gif"), is(false));
+        assertThat(ThumbnailGenerator.canGenerate("/files/notes.pdf"), is(false));
+        assertThat(ThumbnailGenerator.canGenerate(null), is(false));
+    }
+
+    @Test
+    public void thumbnailKeepsTheAspectRatio() {
+        final int[] size = ThumbnailGenerator.fitWithin(1280, 960, ThumbnailGenerator.THUMBNAIL_SIZE);
+        assertThat(size[0], is(480));
+        assertThat(size[1], is(360));
+    }
+
+    @Test
+    public void smallImageIsNotScaledUp() {
+        final int[] size = ThumbnailGenerator.fitWithin(300, 200, ThumbnailGenerator.THUMBNAIL_SIZE);
+        assertThat(size[0], is(300));
+        assertThat(size[1], is(200));
+    }
+
+    @Test
+    public void narrowImageKeepsAtLeastOnePixel() {
+        final int[] size = ThumbnailGenerator.fitWithin(10000, 2, ThumbnailGenerator.THUMBNAIL_SIZE);
+        assertThat(size[0], is(480));
+        assertThat(size[1], is(1));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * 	Copyright (c) 2017. Toshi Inc
+ *
+ * 	This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.toshi.view.notification;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import rx.schedulers.TestScheduler;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class NotificationSchedulerTest {
+
+    private static final long DEBOUNCE = 300;
+    private static final long INTERVAL = 2000;
+
+    private TestScheduler testScheduler;
+    private NotificationScheduler scheduler;
+    private AtomicInteger posts;
+
+    @Before
+    public void setup() {
+        this.testScheduler = new TestScheduler();
+        this.scheduler = new NotificationScheduler(DEBOUNCE, INTERVAL, this.testScheduler);
+        this.posts = new AtomicInteger();
+    }
+
+    @Test
+    public void firstUpdateIsPostedAfterTheDebounce() {
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+
+        this.testScheduler.advanceTimeBy(DEBOUNCE - 1, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(0));
+        this.testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(1));
+    }
+
+    @Test
+    public void burstOfHundredMessagesIsPostedOnce() {
+        for (int i = 0; i < 100; i++) {
+            this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        }
+
+        this.testScheduler.advanceTimeBy(INTERVAL * 10, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(1));
+    }
+
+    @Test
+    public void steadyStreamIsPostedAtMostOncePerInterval() {
+        // One message every 100ms for ten seconds
+        for (int i = 0; i < 100; i++) {
+            this.scheduler.schedule("thread", this.posts::incrementAndGet);
+            this.testScheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        }
+        this.testScheduler.advanceTimeBy(INTERVAL, TimeUnit.MILLISECONDS);
+
+        final int maximumPosts = (int) (10_000 / INTERVAL) + 1;
+        assertThat(this.posts.get() <= maximumPosts, is(true));
+        assertThat(this.posts.get() >= maximumPosts - 1, is(true));
+    }
+
+    @Test
+    public void threadsAreScheduledIndependently() {
+        final AtomicInteger otherPosts = new AtomicInteger();
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        this.scheduler.schedule("other", otherPosts::incrementAndGet);
+
+        this.testScheduler.advanceTimeBy(DEBOUNCE, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(1));
+        assertThat(otherPosts.get(), is(1));
+    }
+
+    @Test
+    public void updateAfterPostWaitsForTheInterval() {
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        this.testScheduler.advanceTimeBy(DEBOUNCE, TimeUnit.MILLISECONDS);
+
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        this.testScheduler.advanceTimeBy(INTERVAL - 1, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(1));
+        this.testScheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(2));
+    }
+
+    @Test
+    public void resetLetsTheNextUpdateThroughAfterTheDebounce() {
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        this.testScheduler.advanceTimeBy(DEBOUNCE, TimeUnit.MILLISECONDS);
+
+        this.scheduler.reset("thread");
+        this.scheduler.schedule("thread", this.posts::incrementAndGet);
+        this.testScheduler.advanceTimeBy(DEBOUNCE, TimeUnit.MILLISECONDS);
+        assertThat(this.posts.get(), is(2));
+    }
+}